@@ -29,7 +29,9 @@ import java.util.List;
 import java.util.Locale;
 import javax.imageio.ImageIO;
 import javax.swing.JFrame;
+import javax.swing.JMenu;
 import javax.swing.JOptionPane;
+import javax.swing.JPopupMenu;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 import keyrepeatfix.RepeatingReleasedEventsFixer;
@@ -134,6 +136,16 @@ public class LemminiFrame extends JFrame {
             GameController.init();
             lemminiPanelMain.init();
             lemminiPanelMain.setCursor(LemmCursor.getCursor());
+            if (lemminiPanelMain.isActiveRendering()) {
+                // lightweight menus would be hidden behind the panel's canvas
+                JPopupMenu.setDefaultLightWeightPopupEnabled(false);
+                for (int i = 0; i < jMenuBarMain.getMenuCount(); i++) {
+                    JMenu menu = jMenuBarMain.getMenu(i);
+                    if (menu != null) {
+                        menu.getPopupMenu().setLightWeightPopupEnabled(false);
+                    }
+                }
+            }
             
             // load the panel size
             int w = Math.max(lemminiPanelMain.getWidth(), Core.programProps.getInt("frameWidth", lemminiPanelMain.getWidth()));
@@ -367,35 +379,35 @@ public class LemminiFrame extends JFrame {
                 switch (code) {
                     case KeyEvent.VK_1:
                     case KeyEvent.VK_F3:
-                        GameController.handleIconButton(Icons.IconType.CLIMB);
+                        GameController.queueCommand(InputCommand.icon(InputCommand.Type.HANDLE_ICON, Icons.IconType.CLIMB));
                         break;
                     case KeyEvent.VK_2:
                     case KeyEvent.VK_F4:
-                        GameController.handleIconButton(Icons.IconType.FLOAT);
+                        GameController.queueCommand(InputCommand.icon(InputCommand.Type.HANDLE_ICON, Icons.IconType.FLOAT));
                         break;
                     case KeyEvent.VK_3:
                     case KeyEvent.VK_F5:
-                        GameController.handleIconButton(Icons.IconType.BOMB);
+                        GameController.queueCommand(InputCommand.icon(InputCommand.Type.HANDLE_ICON, Icons.IconType.BOMB));
                         break;
                     case KeyEvent.VK_4:
                     case KeyEvent.VK_F6:
-                        GameController.handleIconButton(Icons.IconType.BLOCK);
+                        GameController.queueCommand(InputCommand.icon(InputCommand.Type.HANDLE_ICON, Icons.IconType.BLOCK));
                         break;
                     case KeyEvent.VK_5:
                     case KeyEvent.VK_F7:
-                        GameController.handleIconButton(Icons.IconType.BUILD);
+                        GameController.queueCommand(InputCommand.icon(InputCommand.Type.HANDLE_ICON, Icons.IconType.BUILD));
                         break;
                     case KeyEvent.VK_6:
                     case KeyEvent.VK_F8:
-                        GameController.handleIconButton(Icons.IconType.BASH);
+                        GameController.queueCommand(InputCommand.icon(InputCommand.Type.HANDLE_ICON, Icons.IconType.BASH));
                         break;
                     case KeyEvent.VK_7:
                     case KeyEvent.VK_F9:
-                        GameController.handleIconButton(Icons.IconType.MINE);
+                        GameController.queueCommand(InputCommand.icon(InputCommand.Type.HANDLE_ICON, Icons.IconType.MINE));
                         break;
                     case KeyEvent.VK_8:
                     case KeyEvent.VK_F10:
-                        GameController.handleIconButton(Icons.IconType.DIG);
+                        GameController.queueCommand(InputCommand.icon(InputCommand.Type.HANDLE_ICON, Icons.IconType.DIG));
                         break;
                     case KeyEvent.VK_D: //CTRL-ALT-SHIFT-D is to enter Debug mode. just D (while in Debug mode) is Draw mode
                     	if (lemminiPanelMain.isControlPressed() && lemminiPanelMain.isShiftPressed() && lemminiPanelMain.isAltPressed()) {
@@ -468,6 +480,10 @@ public class LemminiFrame extends JFrame {
                             GameController.requestRestartLevel(true, false);
                         }
                         break;
+                    case KeyEvent.VK_BACK_SPACE: //BACKSPACE rewinds about 3 seconds, SHIFT-BACKSPACE one frame
+                        GameController.queueCommand(InputCommand.rewind(
+                                lemminiPanelMain.isShiftPressed() ? 1 : GameController.REWIND_FRAMES));
+                        break;
                     case KeyEvent.VK_RIGHT /*39*/:
                         if (GameController.isOptionEnabled(GameController.Option.ADVANCED_SELECT)) {
                             if (LemmCursor.getType().isWalkerOnly()) {
@@ -535,15 +551,15 @@ public class LemminiFrame extends JFrame {
                     case KeyEvent.VK_ADD:
                     case KeyEvent.VK_EQUALS:
                     case KeyEvent.VK_F2:
-                        GameController.pressPlus(GameController.KEYREPEAT_KEY);
+                        GameController.queueCommand(InputCommand.plusMinus(InputCommand.Type.PRESS_PLUS, GameController.KEYREPEAT_KEY));
                         break;
                     case KeyEvent.VK_MINUS:
                     case KeyEvent.VK_SUBTRACT:
                     case KeyEvent.VK_F1:
-                        GameController.pressMinus(GameController.KEYREPEAT_KEY);
+                        GameController.queueCommand(InputCommand.plusMinus(InputCommand.Type.PRESS_MINUS, GameController.KEYREPEAT_KEY));
                         break;
                     case KeyEvent.VK_F12:
-                        GameController.handleIconButton(Icons.IconType.NUKE);
+                        GameController.queueCommand(InputCommand.icon(InputCommand.Type.HANDLE_ICON, Icons.IconType.NUKE));
                         break;
                     case KeyEvent.VK_ESCAPE:
                         GameController.endLevel();
@@ -689,15 +705,15 @@ public class LemminiFrame extends JFrame {
                 case KeyEvent.VK_ADD:
                 case KeyEvent.VK_EQUALS:
                 case KeyEvent.VK_F2:
-                    GameController.releasePlus(GameController.KEYREPEAT_KEY);
+                    GameController.queueCommand(InputCommand.plusMinus(InputCommand.Type.RELEASE_PLUS, GameController.KEYREPEAT_KEY));
                     break;
                 case KeyEvent.VK_MINUS:
                 case KeyEvent.VK_SUBTRACT:
                 case KeyEvent.VK_F1:
-                    GameController.releaseMinus(GameController.KEYREPEAT_KEY);
+                    GameController.queueCommand(InputCommand.plusMinus(InputCommand.Type.RELEASE_MINUS, GameController.KEYREPEAT_KEY));
                     break;
                 case KeyEvent.VK_F12:
-                    GameController.releaseIcon(Icons.IconType.NUKE);
+                    GameController.queueCommand(InputCommand.icon(InputCommand.Type.RELEASE_ICON, Icons.IconType.NUKE));
                     break;
                 case KeyEvent.VK_LEFT:
                     if (GameController.isOptionEnabled(GameController.Option.ADVANCED_SELECT)) {
@@ -912,6 +928,9 @@ public class LemminiFrame extends JFrame {
     void exit() {
         // stop the music
         Music.close();
+        System.out.println("frames presented: " + lemminiPanelMain.getFramesPresented()
+                + ", dropped: " + lemminiPanelMain.getFramesDropped()
+                + (lemminiPanelMain.isActiveRendering() ? " (active rendering)" : " (passive rendering)"));
         // store width and height
         Core.programProps.setInt("frameWidth", lemminiPanelMain.getUnmaximizedWidth());
         Core.programProps.setInt("frameHeight", lemminiPanelMain.getUnmaximizedHeight());
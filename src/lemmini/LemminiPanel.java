@@ -25,6 +25,10 @@ import java.nio.file.Path;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import lemmini.game.*;
@@ -32,9 +36,11 @@ import lemmini.game.GameController.SuperLemminiTooOption;
 //import lemmini.game.LemmFont.Color;
 import lemmini.game.MiscGfx.Index;
 import lemmini.gameutil.Fader;
+import lemmini.graphics.ActiveRenderer;
 import lemmini.graphics.GraphicsBuffer;
 import lemmini.graphics.GraphicsContext;
 import lemmini.graphics.LemmImage;
+import lemmini.graphics.TiledImage;
 import lemmini.gui.LevelCodeDialog;
 import lemmini.gui.LevelDialog;
 import lemmini.gui.OptionsDialog;
@@ -146,6 +152,18 @@ public class LemminiPanel extends JPanel implements Runnable {
     private GraphicsBuffer offBuffer;
     /** monitoring object used for synchronized painting */
     private final Object paintSemaphore = new Object();
+    /** presents frames from the game thread, or null to use repaint() */
+    private ActiveRenderer activeRenderer;
+    /** flag: a frame was passed to repaint() but not painted yet */
+    private boolean repaintPending;
+    /** number of frames that reached the screen */
+    private final AtomicLong framesPresented = new AtomicLong();
+    /** number of frames that were skipped or never reached the screen */
+    private final AtomicLong framesDropped = new AtomicLong();
+    /** newest snapshot that wasn't rendered yet, or null */
+    private final AtomicReference<FrameSnapshot> latestSnapshot = new AtomicReference<>();
+    /** thread that renders the snapshots published by the game thread */
+    private volatile Thread renderThread;
     private boolean drawNextFrame;
     private int unmaximizedWidth = 0;
     private int unmaximizedHeight = 0;
@@ -167,9 +185,38 @@ public class LemminiPanel extends JPanel implements Runnable {
      * Initialization.
      */
     void init() {
+        if (Core.programProps.getBoolean("activeRendering", true) && !GraphicsEnvironment.isHeadless()) {
+            activeRenderer = new ActiveRenderer(this);
+            setLayout(new BorderLayout());
+            add(activeRenderer.getCanvas(), BorderLayout.CENTER);
+        }
         setBufferSize(Core.unscale(getWidth()), Core.unscale(getHeight()));
     }
     
+    /**
+     * Check whether frames are presented from the game thread.
+     * @return true if active rendering is used, false if frames are painted by the event dispatch thread
+     */
+    boolean isActiveRendering() {
+        return activeRenderer != null;
+    }
+    
+    /**
+     * Get the number of frames that reached the screen.
+     * @return number of presented frames
+     */
+    long getFramesPresented() {
+        return framesPresented.get();
+    }
+    
+    /**
+     * Get the number of frames that were skipped or never reached the screen.
+     * @return number of dropped frames
+     */
+    long getFramesDropped() {
+        return framesDropped.get();
+    }
+    
     /**
      * This method is called from within the constructor to initialize the form.
      * WARNING: Do NOT modify this code. The content of this method is always
@@ -423,19 +470,11 @@ public class LemminiPanel extends JPanel implements Runnable {
                     	//clicking on icons
                     	Icons.IconType type = GameController.getIconType(x - menuOffsetX - getIconBarX());
                         if (type != null) {
-                            GameController.handleIconButton(type);
+                            GameController.queueCommand(InputCommand.icon(InputCommand.Type.HANDLE_ICON, type));
                         }
                     } else {
                     	//clicking on lemmings
-                        Lemming l = GameController.lemmUnderCursor(LemmCursor.getType());
-                        if (l != null) {
-                            GameController.requestSkill(l);
-                        } else if (y < LemminiFrame.LEVEL_HEIGHT) {
-                            GameController.stopReplayMode();
-                            if (!GameController.isOptionEnabled(GameController.SuperLemminiTooOption.DISABLE_FRAME_STEPPING)) {
-                            	GameController.advanceFrame();
-                            }
-                        }
+                        GameController.queueCommand(InputCommand.selectLemming(LemmCursor.getType(), y < LemminiFrame.LEVEL_HEIGHT));
                     }
                     // check minimap mouse move
                     if (x >= getSmallX() + menuOffsetX && x < getSmallX() + menuOffsetX + Minimap.getVisibleWidth()
@@ -461,10 +500,10 @@ public class LemminiPanel extends JPanel implements Runnable {
                     shiftPressed = true;
                 }
                 if (buttonPressed == 4) {
-                    GameController.pressMinus(GameController.KEYREPEAT_KEY);
+                    GameController.queueCommand(InputCommand.plusMinus(InputCommand.Type.PRESS_MINUS, GameController.KEYREPEAT_KEY));
                 }
                 if (buttonPressed == 5) {
-                    GameController.pressPlus(GameController.KEYREPEAT_KEY);
+                    GameController.queueCommand(InputCommand.plusMinus(InputCommand.Type.PRESS_PLUS, GameController.KEYREPEAT_KEY));
                 }
                 break;
             default:
@@ -487,18 +526,18 @@ public class LemminiPanel extends JPanel implements Runnable {
                     if (y > getIconBarY() && y < getIconBarY() + Icons.getIconHeight()) {
                         Icons.IconType type = GameController.getIconType(x - menuOffsetX - getIconBarX());
                         if (type != null) {
-                            GameController.releaseIcon(type);
+                            GameController.queueCommand(InputCommand.icon(InputCommand.Type.RELEASE_ICON, type));
                         }
                     }
                     // always release icons which don't stay pressed
                     // this is to avoid the icons get stuck when they're pressed,
                     // the the mouse is dragged out and released outside
-                    GameController.releasePlus(GameController.KEYREPEAT_ICON);
-                    GameController.releaseMinus(GameController.KEYREPEAT_ICON);
-                    GameController.releaseIcon(Icons.IconType.MINUS);
-                    GameController.releaseIcon(Icons.IconType.PLUS);
-                    GameController.releaseIcon(Icons.IconType.NUKE);
-                    GameController.releaseIcon(Icons.IconType.RESTART);
+                    GameController.queueCommand(InputCommand.plusMinus(InputCommand.Type.RELEASE_PLUS, GameController.KEYREPEAT_ICON));
+                    GameController.queueCommand(InputCommand.plusMinus(InputCommand.Type.RELEASE_MINUS, GameController.KEYREPEAT_ICON));
+                    GameController.queueCommand(InputCommand.icon(InputCommand.Type.RELEASE_ICON, Icons.IconType.MINUS));
+                    GameController.queueCommand(InputCommand.icon(InputCommand.Type.RELEASE_ICON, Icons.IconType.PLUS));
+                    GameController.queueCommand(InputCommand.icon(InputCommand.Type.RELEASE_ICON, Icons.IconType.NUKE));
+                    GameController.queueCommand(InputCommand.icon(InputCommand.Type.RELEASE_ICON, Icons.IconType.RESTART));
                 }
                 if (buttonPressed == (swapButtons ? MouseEvent.BUTTON2 : MouseEvent.BUTTON3)) {
                     switch (LemmCursor.getType()) {
@@ -517,10 +556,10 @@ public class LemminiPanel extends JPanel implements Runnable {
                     shiftPressed = false;
                 }
                 if (buttonPressed == 4) {
-                    GameController.releaseMinus(GameController.KEYREPEAT_KEY);
+                    GameController.queueCommand(InputCommand.plusMinus(InputCommand.Type.RELEASE_MINUS, GameController.KEYREPEAT_KEY));
                 }
                 if (buttonPressed == 5) {
-                    GameController.releasePlus(GameController.KEYREPEAT_KEY);
+                    GameController.queueCommand(InputCommand.plusMinus(InputCommand.Type.RELEASE_PLUS, GameController.KEYREPEAT_KEY));
                 }
                 evt.consume();
                 break;
@@ -614,11 +653,11 @@ public class LemminiPanel extends JPanel implements Runnable {
         	int wheelRotation = evt.getWheelRotation();
             if (wheelRotation > 0) {
                 for (int i = 0; i < wheelRotation; i++) {
-                    GameController.nextSkill();
+                    GameController.queueCommand(InputCommand.simple(InputCommand.Type.NEXT_SKILL));
                 }
             } else if (wheelRotation < 0) {
                 for (int i = 0; i > wheelRotation; i--) {
-                    GameController.previousSkill();
+                    GameController.queueCommand(InputCommand.simple(InputCommand.Type.PREVIOUS_SKILL));
                 }
             }
         }
@@ -644,6 +683,10 @@ public class LemminiPanel extends JPanel implements Runnable {
                                 : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
                 g2.drawImage(offBuffer.getImage().getImage(),
                         0, 0, Core.getScaledDrawWidth(), Core.getScaledDrawHeight(), null);
+                if (repaintPending) {
+                    repaintPending = false;
+                    framesPresented.incrementAndGet();
+                }
             }
         }
     }
@@ -660,12 +703,12 @@ public class LemminiPanel extends JPanel implements Runnable {
         rightPressed = false;
         upPressed = false;
         downPressed = false;
-        GameController.releasePlus(GameController.KEYREPEAT_ICON | GameController.KEYREPEAT_KEY);
-        GameController.releaseMinus(GameController.KEYREPEAT_ICON | GameController.KEYREPEAT_KEY);
-        GameController.releaseIcon(Icons.IconType.MINUS);
-        GameController.releaseIcon(Icons.IconType.PLUS);
-        GameController.releaseIcon(Icons.IconType.NUKE);
-        GameController.releaseIcon(Icons.IconType.RESTART);
+        GameController.queueCommand(InputCommand.plusMinus(InputCommand.Type.RELEASE_PLUS, GameController.KEYREPEAT_ICON | GameController.KEYREPEAT_KEY));
+        GameController.queueCommand(InputCommand.plusMinus(InputCommand.Type.RELEASE_MINUS, GameController.KEYREPEAT_ICON | GameController.KEYREPEAT_KEY));
+        GameController.queueCommand(InputCommand.icon(InputCommand.Type.RELEASE_ICON, Icons.IconType.MINUS));
+        GameController.queueCommand(InputCommand.icon(InputCommand.Type.RELEASE_ICON, Icons.IconType.PLUS));
+        GameController.queueCommand(InputCommand.icon(InputCommand.Type.RELEASE_ICON, Icons.IconType.NUKE));
+        GameController.queueCommand(InputCommand.icon(InputCommand.Type.RELEASE_ICON, Icons.IconType.RESTART));
         LemmCursor.setBox(false);
         setCursor(LemmCursor.CursorType.NORMAL);
         isFocused = false;
@@ -678,9 +721,10 @@ public class LemminiPanel extends JPanel implements Runnable {
     }
     
     /**
-     * Redraw the offscreen image, then flip buffers and force repaint.
+     * Redraw the offscreen image, then present it directly or force repaint.
+     * @param snapshot state of the simulation to draw
      */
-    private void redraw() {
+    private void redraw(final FrameSnapshot snapshot) {
         if (offBuffer == null) {
             return;
         }
@@ -688,21 +732,20 @@ public class LemminiPanel extends JPanel implements Runnable {
         synchronized (paintSemaphore) {
             GraphicsContext offGfx = offBuffer.getGraphicsContext();
             
-            switch (GameController.getGameState()) {
+            switch (snapshot.getGameState()) {
                 case INTRO:
                 case BRIEFING:
                 case DEBRIEFING:
                     offGfx.setClip(0, 0, Core.getDrawWidth(), Core.getDrawHeight());
-                    TextScreen.drawScreen(offGfx, 0, 0, Core.getDrawWidth(), Core.getDrawHeight());
+                    snapshot.drawTextScreen(offGfx, Core.getDrawWidth(), Core.getDrawHeight());
                     break;
                 case LEVEL:
                 case LEVEL_END:
-                    LemmImage fgImage = GameController.getFgImage();
-                    if (fgImage != null) {
-                        // store local copy of offsets to avoid sync problems with AWT threads
-                        int xOfsTemp = GameController.getXPos();
-                        int minimapXOfsTemp = Minimap.getXPos();
-                        int yOfsTemp = GameController.getYPos();
+                    if (snapshot.hasTerrain()) {
+                        // use the offsets of the snapshot so everything is drawn at the same position
+                        int xOfsTemp = snapshot.getXPos();
+                        int minimapXOfsTemp = snapshot.getMinimapXPos();
+                        int yOfsTemp = snapshot.getYPos();
                         
                         int width = Core.getDrawWidth();
                         int height = Core.getDrawHeight();
@@ -720,13 +763,13 @@ public class LemminiPanel extends JPanel implements Runnable {
                             GameController.getLevel().drawBackground(offGfx, width, levelHeight, xOfsTemp, yOfsTemp);
                             
                             // draw "behind" objects
-                            GameController.getLevel().drawBehindObjects(offGfx, width, height, xOfsTemp, yOfsTemp);
+                            snapshot.drawBehindObjects(offGfx, width, height);
                             
                             // draw foreground
-                            offGfx.drawImage(fgImage, 0, 0, width, levelHeight, xOfsTemp, yOfsTemp, xOfsTemp + width, yOfsTemp + levelHeight);
+                            snapshot.drawTerrain(offGfx, 0, 0, xOfsTemp, yOfsTemp, xOfsTemp + width, yOfsTemp + levelHeight);
                             
                             // draw "in front" objects
-                            GameController.getLevel().drawInFrontObjects(offGfx, width, height, xOfsTemp, yOfsTemp);
+                            snapshot.drawInFrontObjects(offGfx, width, height);
                         }
                         // clear parts of the screen for menu etc.
                         offGfx.setClip(0, LemminiFrame.LEVEL_HEIGHT, width, height - LemminiFrame.LEVEL_HEIGHT);
@@ -746,7 +789,7 @@ public class LemminiPanel extends JPanel implements Runnable {
                         	countBarY += 3;
                         }
                     	
-                        GameController.drawIconsAndCounters(offGfx, iconBarX, iconBarY, countBarX, countBarY);
+                        snapshot.drawIconsAndCounters(offGfx, iconBarX, iconBarY, countBarX, countBarY);
                         
                         //draw the icon bar filler?
                         if (GameController.isOptionEnabled(GameController.SuperLemminiTooOption.ENHANCED_ICONBAR)) {
@@ -757,21 +800,21 @@ public class LemminiPanel extends JPanel implements Runnable {
                         
                         // draw minimap
                         if (GameController.isOptionEnabled(GameController.SuperLemminiTooOption.ENHANCED_ICONBAR)) {
-                        	drawMiniMapLarge(offGfx, width, height, minimapXOfsTemp, yOfsTemp);
+                        	drawMiniMapLarge(offGfx, snapshot, width, height, minimapXOfsTemp, yOfsTemp);
                         } else {
-                        	drawMiniMap(offGfx, width, height, minimapXOfsTemp, yOfsTemp);
+                        	drawMiniMap(offGfx, snapshot, width, height, minimapXOfsTemp, yOfsTemp);
                         }
                          
                         // draw lemmings
                         offGfx.setClip(0, 0, width, levelHeight);
-                        GameController.drawLemmings(offGfx);
-                        Lemming lemmUnderCursor = GameController.lemmUnderCursor(LemmCursor.getType());
+                        snapshot.drawLemmings(offGfx);
+                        String lemmUnderCursor = snapshot.getLemmingUnderCursorName();
                         offGfx.setClip(0, 0, width, levelHeight);
                         // draw explosions
-                        GameController.drawExplosions(offGfx, width, LemminiFrame.LEVEL_HEIGHT, xOfsTemp, yOfsTemp);
+                        snapshot.drawExplosions(offGfx, width, LemminiFrame.LEVEL_HEIGHT);
                         offGfx.setClip(0, 0, width, height);
                         //draw Visual SFX
-                        GameController.drawVisualSfx(offGfx);
+                        snapshot.drawVisualSfx(offGfx);
                         
                         
                         // draw info string
@@ -813,9 +856,9 @@ public class LemminiPanel extends JPanel implements Runnable {
                         	//5: time: time left in the level
                         	String lemmingName;
                             if (lemmUnderCursor != null) {
-                                lemmingName = lemmUnderCursor.getName();
+                                lemmingName = lemmUnderCursor;
                                 // display also the total number of lemmings under the cursor
-                                int num = GameController.getNumLemmsUnderCursor();
+                                int num = snapshot.getNumLemmsUnderCursor();
                                 if (num > 1) {
                                     lemmingName += StringUtils.SPACE + num;
                                 }
@@ -825,20 +868,20 @@ public class LemminiPanel extends JPanel implements Runnable {
                             String strHome;
                             String strNeeded;
                             if (GameController.isOptionEnabled(GameController.Option.NO_PERCENTAGES)
-                                    || GameController.getNumLemmingsMax() > 100) {
-                                strHome = Integer.toString(GameController.getNumExited());
-                                strNeeded = Integer.toString(GameController.getNumToRescue());
+                                    || snapshot.getNumLemmingsMax() > 100) {
+                                strHome = Integer.toString(snapshot.getNumExited());
+                                strNeeded = Integer.toString(snapshot.getNumToRescue());
                             } else {
-                                int max = GameController.getNumLemmingsMax();
-                            	int home = GameController.getNumExited() * 100 / max;
+                                int max = snapshot.getNumLemmingsMax();
+                            	int home = snapshot.getNumExited() * 100 / max;
                                 strHome = String.format("%02d%%", home);
-                                int neededPercent = GameController.getNumToRescue() * 100 / max;
+                                int neededPercent = snapshot.getNumToRescue() * 100 / max;
                                 strNeeded = String.format("%02d%%", neededPercent);
                             }
 
                             if (!GameController.isOptionEnabled(GameController.SuperLemminiTooOption.ENHANCED_STATUS)) {
                                 String status;
-                                status = String.format("%-15s OUT %-4d IN %-4s TIME %s", lemmingName, GameController.getNumLemmings(), strHome, GameController.getTimeString());
+                                status = String.format("%-15s OUT %-4d IN %-4s TIME %s", lemmingName, snapshot.getNumLemmings(), strHome, snapshot.getTimeString());
                                 //use the standard original "text-based" status bar
                             	LemmFont.strImage(outStrGfx, status);
                                 offGfx.drawImage(outStrImg, menuOffsetX + 4, yOffset);
@@ -852,7 +895,7 @@ public class LemminiPanel extends JPanel implements Runnable {
 
                                 int xSpace = 18; //the game between text and value 
                             	//draw each element individually
-                                LemmImage lemmName = LemmFont.strImage(String.format("%-15s", lemmingName));
+                                LemmImage lemmName = LemmFont.getCachedStrImage(String.format("%-15s", lemmingName));
                                 offGfx.drawImage(lemmName, menuOffsetX + xName, yOffset);
                                 lemmName = null;
 
@@ -867,15 +910,15 @@ public class LemminiPanel extends JPanel implements Runnable {
                                 // first draw the headers (be they text or icons) 
                                 if (!showIcons) {
                                     //draw all the status labels with the original text placements.
-                                    LemmImage lemmTitleOut = LemmFont.strImage("OUT");
+                                    LemmImage lemmTitleOut = LemmFont.getCachedStrImage("OUT");
                                     xOutW = lemmTitleOut.getWidth();
                                     offGfx.drawImage(lemmTitleOut, menuOffsetX + xOut, yOffset);
 
-                                    LemmImage lemmTitleHome = LemmFont.strImage("IN"); //HOME was originally called IN, and is still labeled as such here, in the old status bar. 
+                                    LemmImage lemmTitleHome = LemmFont.getCachedStrImage("IN"); //HOME was originally called IN, and is still labeled as such here, in the old status bar. 
                                     xHomeW = lemmTitleHome.getWidth();
                                     offGfx.drawImage(lemmTitleHome, menuOffsetX + xHome, yOffset);
 
-                                    LemmImage lemmTitleTime = LemmFont.strImage("TIME");
+                                    LemmImage lemmTitleTime = LemmFont.getCachedStrImage("TIME");
                                     xTimeW = lemmTitleTime.getWidth();
                                     offGfx.drawImage(lemmTitleTime, menuOffsetX + xTime, yOffset);
 
@@ -932,45 +975,45 @@ public class LemminiPanel extends JPanel implements Runnable {
                                 }
                                
                                 //then draw the values
-                                int out = GameController.getNumLemmings();
-                                int needed = GameController.getNumToRescue();
+                                int out = snapshot.getNumLemmings();
+                                int needed = snapshot.getNumToRescue();
                                 //draw the values that go with those headings.
 
                                 //lemmOut is the number of lemmings out in the level
-                                LemmImage lemmOut = LemmFont.strImage(String.format("%d", out));
+                                LemmImage lemmOut = LemmFont.getCachedStrImage(String.format("%d", out));
                                 offGfx.drawImage(lemmOut, menuOffsetX + xOut, yOffset);
                                 xOut += lemmOut.getWidth(); //increase offset by the current image width.
 
                                 //show the number that have made it home
                                 LemmImage lemmHome;
-                                if (needed > GameController.getNumExited()) {
-                                	lemmHome = LemmFont.strImage(strHome, LemmFont.LemmColor.RED); //we don't have enough yet, so we show it as red.
+                                if (needed > snapshot.getNumExited()) {
+                                	lemmHome = LemmFont.getCachedStrImage(strHome, LemmFont.LemmColor.RED); //we don't have enough yet, so we show it as red.
                                 } else {
-                                	lemmHome = LemmFont.strImage(strHome);
+                                	lemmHome = LemmFont.getCachedStrImage(strHome);
                                 }
                                 offGfx.drawImage(lemmHome, menuOffsetX + xHome, yOffset);
                                 //xHome += (xSpace / 2) + lemmHome.getWidth();
                                 
                                 //and show the Needed icon
                                 if (showIcons) {
-                                    LemmImage lemmNeeded = LemmFont.strImage(strNeeded);
+                                    LemmImage lemmNeeded = LemmFont.getCachedStrImage(strNeeded);
                                     offGfx.drawImage(lemmNeeded, menuOffsetX + xNeeded, yOffset); //take off extra because the needed icon is very narrow
                                     xNeeded += lemmNeeded.getWidth();
                                     lemmNeeded = null;
                                 }
 
                                 //show the time left.
-                                LemmImage lemmTime = LemmFont.strImage(String.format("%s", GameController.getTimeString()));
+                                LemmImage lemmTime = LemmFont.getCachedStrImage(String.format("%s", snapshot.getTimeString()));
                                 offGfx.drawImage(lemmTime, menuOffsetX + xTime, yOffset);
 
                                 if (GameController.isOptionEnabled(GameController.SuperLemminiTooOption.SHOW_STATUS_TOTALS)) {
-                                    int stillIn = GameController.getNumLemmingsUnreleased();
-                                    LemmImage lemmGate = LemmFont.strImage(":" + String.format("%d", stillIn), LemmFont.LemmColor.GREEN);
+                                    int stillIn = snapshot.getNumLemmingsUnreleased();
+                                    LemmImage lemmGate = LemmFont.getCachedStrImage(":" + String.format("%d", stillIn), LemmFont.LemmColor.GREEN);
                                     offGfx.drawImage(lemmGate, menuOffsetX + xOut, yOffset + 12, 0.5);
 
                                     //if (GameController.isOptionEnabled(GameController.Option.NO_PERCENTAGES)) {
-	                                    int maxLemm = GameController.getNumLemmingsMax();
-	                                    LemmImage lemmMax = LemmFont.strImage("/" + String.format("%d", maxLemm), LemmFont.LemmColor.GREEN);
+	                                    int maxLemm = snapshot.getNumLemmingsMax();
+	                                    LemmImage lemmMax = LemmFont.getCachedStrImage("/" + String.format("%d", maxLemm), LemmFont.LemmColor.GREEN);
 	                                    offGfx.drawImage(lemmMax, menuOffsetX + xNeeded, yOffset + 12, 0.5);
                                     //}
                                 }
@@ -997,13 +1040,13 @@ public class LemminiPanel extends JPanel implements Runnable {
                             String rating = GameController.getCurLevelPack().getRatings().get(GameController.getCurRating());
                         	int levelNum = GameController.getCurLevelNumber() + 1;
                         	String levelName = rating + " " + levelNum + ": " + level.getLevelName().trim();
-                            LemmImage lemmLevelName = LemmFont.strImage(levelName, LemmFont.LemmColor.GREEN);
+                            LemmImage lemmLevelName = LemmFont.getCachedStrImage(levelName, LemmFont.LemmColor.GREEN);
                             offGfx.drawImage(lemmLevelName, menuOffsetX + 4, LemminiFrame.LEVEL_HEIGHT + 2, 0.5);
                             lemmLevelName = null;
                         }
                         
                         // replay icon
-                        LemmImage replayImage = GameController.getReplayImage();
+                        LemmImage replayImage = snapshot.getReplayImage();
                         if (replayImage != null) {
                             offGfx.drawImage(replayImage, width - 2 * replayImage.getWidth(), replayImage.getHeight());
                         }
@@ -1015,8 +1058,8 @@ public class LemminiPanel extends JPanel implements Runnable {
                                     setCursor(LemmCursor.getCursor());
                                 }
                             } else {
-                                int lx = lemmUnderCursor.footX() - xOfsTemp; //NOTE: footX() was .midX()
-                                int ly = lemmUnderCursor.midY() - yOfsTemp;
+                                int lx = snapshot.getLemmingUnderCursorX() - xOfsTemp; //NOTE: footX() was .midX()
+                                int ly = snapshot.getLemmingUnderCursorY() - yOfsTemp;
                                 LemmImage cursorImg = LemmCursor.getBoxImage();
                                 lx -= cursorImg.getWidth() / 2;
                                 ly -= cursorImg.getHeight() / 2;
@@ -1036,21 +1079,35 @@ public class LemminiPanel extends JPanel implements Runnable {
             }
             
             // fader
-            Fader.apply(offGfx);
+            snapshot.drawFader(offGfx);
             
-            repaint();
+            if (activeRenderer != null) {
+                if (activeRenderer.present(offBuffer.getImage(),
+                        Core.getScaledDrawWidth(), Core.getScaledDrawHeight(), Core.isBilinear())) {
+                    framesPresented.incrementAndGet();
+                } else {
+                    framesDropped.incrementAndGet();
+                }
+            } else {
+                if (repaintPending) {
+                    // the previous frame was overwritten before the EDT painted it
+                    framesDropped.incrementAndGet();
+                }
+                repaintPending = true;
+                repaint();
+            }
         }
     }
     
-    private void drawMiniMap(GraphicsContext offGfx, final int width, final int height, final int minimapXOfsTemp, final int yOfsTemp) {
+    private void drawMiniMap(GraphicsContext offGfx, final FrameSnapshot snapshot, final int width, final int height, final int minimapXOfsTemp, final int yOfsTemp) {
    	 	final int BORDER_WIDTH = 4; 
         // draw minimap
         offGfx.drawImage(MiscGfx.getMinimapImage(), menuOffsetX + getSmallX() - BORDER_WIDTH, getSmallY() - BORDER_WIDTH);
         offGfx.setClip(menuOffsetX + getSmallX(), getSmallY(), Minimap.getVisibleWidth(), Minimap.getVisibleHeight());
-        Minimap.draw(offGfx, menuOffsetX + getSmallX(), getSmallY());
-        GameController.drawMinimapLemmings(offGfx, menuOffsetX + getSmallX(), getSmallY());
+        snapshot.drawMinimap(offGfx, menuOffsetX + getSmallX(), getSmallY());
+        snapshot.drawMinimapLemmings(offGfx, menuOffsetX + getSmallX(), getSmallY());
         offGfx.setClip(0, 0, width, height);
-        Minimap.drawFrame(offGfx, menuOffsetX + getSmallX(), getSmallY());
+        snapshot.drawMinimapFrame(offGfx, menuOffsetX + getSmallX(), getSmallY());
         // draw minimap arrows
         if (minimapXOfsTemp > 0) {
             LemmImage leftArrow = MiscGfx.getImage(MiscGfx.Index.MINIMAP_ARROW_LEFT);
@@ -1078,19 +1135,19 @@ public class LemminiPanel extends JPanel implements Runnable {
         }
     }
     
-    private void drawMiniMapLarge(GraphicsContext offGfx, final int width, final int height, final int minimapXOfsTemp, final int yOfsTemp) {
+    private void drawMiniMapLarge(GraphicsContext offGfx, final FrameSnapshot snapshot, final int width, final int height, final int minimapXOfsTemp, final int yOfsTemp) {
     	 final int BORDER_WIDTH = 7; 
     	// draw minimap
         //draw border around minimap
     	offGfx.drawImage(MiscGfx.getMinimapLargeImage(), menuOffsetX + getSmallX() - BORDER_WIDTH, getSmallY() - BORDER_WIDTH);
         offGfx.setClip(menuOffsetX + getSmallX(), getSmallY(), Minimap.getVisibleWidth(), Minimap.getVisibleHeight());
         //draw contents of minimap
-        Minimap.draw(offGfx, menuOffsetX + getSmallX(), getSmallY());
+        snapshot.drawMinimap(offGfx, menuOffsetX + getSmallX(), getSmallY());
         //draw lemmings onto minimap
-        GameController.drawMinimapLemmings(offGfx, menuOffsetX + getSmallX(), getSmallY());
+        snapshot.drawMinimapLemmings(offGfx, menuOffsetX + getSmallX(), getSmallY());
         offGfx.setClip(0, 0, width, height);
         //draw the yellow frame around what's visible
-        Minimap.drawFrame(offGfx, menuOffsetX + getSmallX(), getSmallY());
+        snapshot.drawMinimapFrame(offGfx, menuOffsetX + getSmallX(), getSmallY());
 
         //if the minimap goes off screen??
         // draw minimap arrows
@@ -1121,7 +1178,7 @@ public class LemminiPanel extends JPanel implements Runnable {
     }
     
     private void updateFrame() {
-        LemmImage fgImage = GameController.getFgImage();
+        TiledImage fgImage = GameController.getFgImage();
         switch (GameController.getGameState()) {
             case INTRO:
                 TextScreen.setMode(TextScreen.Mode.INTRO);
@@ -1244,6 +1301,11 @@ public class LemminiPanel extends JPanel implements Runnable {
         ScheduledExecutorService repaintScheduler = Executors.newSingleThreadScheduledExecutor();
         Runnable repaintTask = thisPanel::drawNextFrame;
         
+        renderThread = new Thread(this::renderLoop, "Render");
+        renderThread.setDaemon(true);
+        renderThread.setPriority(Thread.NORM_PRIORITY + 1);
+        renderThread.start();
+        
         try {
             drawNextFrame = false;
             repaintScheduler.scheduleAtFixedRate(
@@ -1279,7 +1341,39 @@ public class LemminiPanel extends JPanel implements Runnable {
                         }
                     }
                     updateFrame();
-                    redraw();
+                    publishSnapshot();
+                }
+            }
+        } catch (Throwable ex) {
+            ToolBox.showException(ex);
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * Hand a snapshot of the current frame to the render thread. If the
+     * previous snapshot wasn't picked up yet, it is replaced and counted as
+     * dropped, so the game thread never waits for rendering.
+     */
+    private void publishSnapshot() {
+        if (latestSnapshot.getAndSet(GameController.createSnapshot()) != null) {
+            framesDropped.incrementAndGet();
+        }
+        LockSupport.unpark(renderThread);
+    }
+    
+    /**
+     * Render loop: draw the newest published snapshot, or park until one is
+     * available.
+     */
+    private void renderLoop() {
+        try {
+            while (true) {
+                FrameSnapshot snapshot = latestSnapshot.getAndSet(null);
+                if (snapshot == null) {
+                    LockSupport.park(this);
+                } else {
+                    render(snapshot);
                 }
             }
         } catch (Throwable ex) {
@@ -1288,10 +1382,34 @@ public class LemminiPanel extends JPanel implements Runnable {
         }
     }
     
+    /**
+     * Draw a snapshot while holding the render lock, so the level and the
+     * resources it refers to can't be replaced meanwhile. Snapshots taken
+     * before they were last replaced are dropped.
+     * @param snapshot state of the simulation to draw
+     */
+    private void render(final FrameSnapshot snapshot) {
+        Lock lock = GameController.getRenderLock();
+        lock.lock();
+        try {
+            if (snapshot.getResourceGeneration() == GameController.getResourceGeneration()) {
+                redraw(snapshot);
+            } else {
+                framesDropped.incrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
     /**
      * Signals that the next frame should be drawn.
      */
     public synchronized void drawNextFrame() {
+        if (drawNextFrame) {
+            // the previous frame hasn't been started yet, so it is skipped
+            framesDropped.incrementAndGet();
+        }
         drawNextFrame = true;
         notifyAll();
     }
@@ -1312,21 +1430,14 @@ public class LemminiPanel extends JPanel implements Runnable {
             }
             int xOfs = GameController.getXPos();
             int yOfs = GameController.getYPos();
-            LemmImage fgImage = GameController.getFgImage();
             LemmImage fgImageSmall = Minimap.getImage();
+            MinimapProjection projection = Minimap.getProjection();
             Stencil stencil = GameController.getStencil();
-            double scaleX = (double) fgImageSmall.getWidth() / (double) fgImage.getWidth();
-            double scaleY = (double) fgImageSmall.getHeight() / (double) fgImage.getHeight();
-            double scaleXHalf = scaleX / 2.0;
-            double scaleYHalf = scaleY / 2.0;
+            GameController.getDirtyRegion().add(x + xOfs, y + yOfs, 2, 2);
             for (int ya = y; ya < y + 2; ya++) {
-                double scaledY = (ya + 0.5) * scaleY % 1.0;
-                boolean drawSmallY = (scaledY >= (0.5 - scaleYHalf) % 1.0 && scaledY < (0.5 + scaleYHalf) % 1.0)
-                        || Math.abs(scaleY) >= 1.0;
+                int smallY = projection.getTargetY(ya + yOfs);
                 for (int xa = x; xa < x + 2; xa++) {
-                    double scaledX = (xa + 0.5) * scaleX % 1.0;
-                    boolean drawSmallX = (scaledX >= (0.5 - scaleXHalf) % 1.0 && scaledX < (0.5 + scaleXHalf) % 1.0)
-                            || Math.abs(scaleX) >= 1.0;
+                    int smallX = projection.getTargetX(xa + xOfs);
                     if (xa + xOfs >= 0 && xa + xOfs < GameController.getWidth()
                             && ya + yOfs >= 0 && ya + yOfs < GameController.getHeight()) {
                         int[] objects = stencil.getIDs(xa + xOfs, ya + yOfs);
@@ -1353,8 +1464,8 @@ public class LemminiPanel extends JPanel implements Runnable {
                                             : ~(Stencil.MSK_BRICK | Stencil.MSK_STEEL | Stencil.MSK_ONE_WAY));
                         }
                         GameController.getFgImage().setRGB(xa + xOfs, ya + yOfs, rgbVal);
-                        if (drawSmallX && drawSmallY) {
-                            fgImageSmall.setRGB(ToolBox.scale(xa + xOfs, scaleX), ToolBox.scale(ya + yOfs, scaleY), minimapVal);
+                        if (smallX >= 0 && smallY >= 0) {
+                            fgImageSmall.setRGB(smallX, smallY, minimapVal);
                         }
                     }
                 }
@@ -1379,48 +1490,10 @@ public class LemminiPanel extends JPanel implements Runnable {
                 if (FilenameUtils.getExtension(replayPath.getFileName().toString()).equalsIgnoreCase("rpl")) {
                     ReplayLevelInfo rli = GameController.loadReplay(replayPath);
                     if (rli != null) {
-                        int lpn = -1;
-                        int rn = -1;
-                        int ln = -1;
-                        LevelPack lp = null;
-                        for (int i = 0; i < GameController.getLevelPackCount(); i++) {
-                            LevelPack lpTemp = GameController.getLevelPack(i);
-                            if (ToolBox.looselyEquals(lpTemp.getName(), rli.getLevelPack())) {
-                                lpn = i;
-                                lp = lpTemp;
-                            }
-                        }
-                        if (lp != null && lpn >= 0) {
-                            java.util.List<String> ratings = lp.getRatings();
-                            int rnTemp = rli.getRatingNumber();
-                            if (rnTemp < ratings.size()) {
-                                rn = rnTemp;
-                            }
-                            if (rn < 0 || ToolBox.looselyEquals(ratings.get(rn), rli.getRatingName())) {
-                                for (int i = 0; i < ratings.size(); i++) {
-                                    if (ToolBox.looselyEquals(ratings.get(i), rli.getRatingName())) {
-                                        rn = i;
-                                    }
-                                }
-                            }
-                            if (rn >= 0) {
-                                java.util.List<String> levels = lp.getLevels(rn);
-                                int lnTemp = rli.getLvlNumber();
-                                if (lnTemp < levels.size()) {
-                                    ln = lnTemp;
-                                }
-                                if (ln < 0 || ToolBox.looselyEquals(levels.get(ln), rli.getLvlName())) {
-                                    for (int i = 0; i < levels.size(); i++) {
-                                        if (ToolBox.looselyEquals(levels.get(i), rli.getLvlName())) {
-                                            ln = i;
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                        if (lpn >= 0 && rn >= 0 && ln >= 0) {
+                        int[] replayLevel = GameController.findReplayLevel(rli);
+                        if (replayLevel != null) {
                             // success
-                            GameController.requestChangeLevel(lpn, rn, ln, true);
+                            GameController.requestChangeLevel(replayLevel[0], replayLevel[1], replayLevel[2], true);
                             getParentFrame().setRestartEnabled(true);
                         } else {
                             // no success
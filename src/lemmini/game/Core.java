@@ -2,6 +2,7 @@ package lemmini.game;
 
 //import java.awt.Image;
 //import java.awt.MediaTracker;
+import java.awt.GraphicsEnvironment;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
@@ -74,6 +75,8 @@ public class Core {
     public static final String ROOT_ZIP_NAME = "root.lzp";
     /** path of external level cache */
     public static final String EXTERNAL_LEVEL_CACHE_PATH = "levels/$external/";
+    /** path of painted level cache */
+    public static final String PAINTED_LEVEL_CACHE_PATH = "cache/levels/";
     /** path for temporary files */
     public static final String TEMP_PATH = "temp/";
     /** The revision string for resource compatibility - not necessarily the version number */
@@ -148,6 +151,10 @@ public class Core {
         programProps = new Props();
         
         if (!programProps.load(programPropsFilePath)) { 
+            if (GraphicsEnvironment.isHeadless()) {
+                throw new LemmException("Config file " + programPropsFilePath
+                        + " not found.\nRun the game once with a display to accept the disclaimer.");
+            }
         	System.out.println("    unable to read config file... prompting disclaimer agreement ...");
         	// might exist or not - if not, it's created
         	// show the Legal Disclaimer. And force the user to choose "I Agree."
@@ -321,6 +328,10 @@ public class Core {
         System.out.println("    creating external level cache folder: " + Paths.get(resourceTree.getRoot().toString(), EXTERNAL_LEVEL_CACHE_PATH).toString());
         resourceTree.createDirectories(EXTERNAL_LEVEL_CACHE_PATH);
         
+        // create folder for painted level cache
+        System.out.println("    creating painted level cache folder: " + Paths.get(resourceTree.getRoot().toString(), PAINTED_LEVEL_CACHE_PATH).toString());
+        resourceTree.createDirectories(PAINTED_LEVEL_CACHE_PATH);
+        
         System.out.println("    loading lzp add-on packs...");
         loadZipFiles();
        
@@ -642,7 +653,9 @@ public class Core {
      * @param rsrc name of missing resource.
      */
     public static void resourceError(final String rsrc) {
-        if (resourceSet.contains(rsrc)) {
+        if (GraphicsEnvironment.isHeadless()) {
+            System.err.println(String.format("The resource %s is missing.", rsrc));
+        } else if (resourceSet.contains(rsrc)) {
             String out = String.format("The resource %s is missing.%n"
                     + "Please restart to extract all resources.", rsrc);
             JOptionPane.showMessageDialog(null, out, "Error", JOptionPane.ERROR_MESSAGE);
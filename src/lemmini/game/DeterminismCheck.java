@@ -0,0 +1,165 @@
+package lemmini.game;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Command line tool that checks that Lemmings restored from the
+ * {@link LemmingPool} of a keyframe behave exactly like the Lemming objects
+ * they were stored from.<br>
+ * Each replay (or level without input) is played to its end while a hash of
+ * all Lemming states is recorded for every frame. It is then played again
+ * up to the last frame before the end, comparing the hashes, and rewound
+ * backwards in steps: every rewind restores a keyframe and simulates the
+ * frames up to the target again, and the result must match the hash
+ * recorded in the first run. Rewinding stops at the oldest keyframe that
+ * is still stored, which is after the start of long levels.
+ * <br>
+ * Usage: <code>DeterminismCheck [--frames=N] [--step=N] [--level=pack/rating/level]... [replay.rpl]...</code>
+ * <br>
+ * The exit code is 0 if all runs matched, 1 otherwise and 2 on usage
+ * errors.
+ */
+public final class DeterminismCheck {
+
+    private DeterminismCheck() {
+    }
+
+    public static void main(final String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int maxFrames = HeadlessGame.DEFAULT_MAX_FRAMES;
+        int step = 37;
+        List<String> items = new ArrayList<>(args.length);
+        for (String arg : args) {
+            if (arg.startsWith("--frames=")) {
+                maxFrames = Integer.parseInt(arg.substring("--frames=".length()));
+            } else if (arg.startsWith("--step=")) {
+                step = Math.max(1, Integer.parseInt(arg.substring("--step=".length())));
+            } else {
+                items.add(arg);
+            }
+        }
+        if (items.isEmpty()) {
+            System.err.println("usage: DeterminismCheck [--frames=N] [--step=N] [--level=pack/rating/level]... [replay.rpl]...");
+            System.exit(2);
+        }
+
+        try {
+            HeadlessGame.init(URLDecoder.decode(DeterminismCheck.class.getProtectionDomain().getCodeSource().getLocation().getFile(), "UTF-8"));
+        } catch (LemmException | ResourceException | IOException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(2);
+        }
+        int failed = 0;
+        for (String item : items) {
+            String result;
+            try {
+                result = check(item, maxFrames, step);
+            } catch (LemmException | ResourceException | RuntimeException ex) {
+                result = "ERROR " + ex;
+            }
+            if (!result.startsWith("PASS")) {
+                failed++;
+            }
+            System.out.printf(Locale.ROOT, "%s: %s%n", item, result);
+        }
+        System.out.printf(Locale.ROOT, "%d runs: %d passed, %d failed%n", items.size(), items.size() - failed, failed);
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    /**
+     * Check one replay or level.
+     * @param item replay file name or <code>--level=pack/rating/level</code>
+     * @param maxFrames maximum number of frames to simulate
+     * @param step frames between two rewind targets
+     * @return result line starting with PASS or FAIL
+     * @throws LemmException
+     * @throws ResourceException
+     */
+    private static String check(final String item, final int maxFrames, final int step)
+            throws LemmException, ResourceException {
+        int[] hashes = new int[maxFrames + 1];
+        start(item);
+        hashes[0] = GameController.getLemmingStateHash();
+        while (GameController.getGameState() == GameController.State.LEVEL && GameController.getReplayFrame() < maxFrames) {
+            GameController.update();
+            hashes[GameController.getReplayFrame()] = GameController.getLemmingStateHash();
+        }
+        // the level must still be running to rewind it, so stop one frame before its end
+        int last = GameController.getReplayFrame();
+        if (GameController.getGameState() != GameController.State.LEVEL) {
+            last--;
+        }
+
+        start(item);
+        while (GameController.getReplayFrame() < last) {
+            GameController.update();
+            int frame = GameController.getReplayFrame();
+            if (hashes[frame] != GameController.getLemmingStateHash()) {
+                return String.format(Locale.ROOT, "FAIL second run differs at frame %d", frame);
+            }
+        }
+
+        int rewinds = 0;
+        int oldest = 0;
+        for (int target = last - 1; target >= 0; target -= step) {
+            // on long levels the oldest keyframes are dropped to stay within the memory budget
+            oldest = Math.max(GameController.getOldestKeyframe(), 0);
+            if (target < oldest) {
+                break;
+            }
+            if (!GameController.travelTo(target)) {
+                return String.format(Locale.ROOT, "FAIL could not rewind to frame %d", target);
+            }
+            if (GameController.getReplayFrame() != target) {
+                return String.format(Locale.ROOT, "FAIL rewind to frame %d ended at frame %d",
+                        target, GameController.getReplayFrame());
+            }
+            if (hashes[target] != GameController.getLemmingStateHash()) {
+                return String.format(Locale.ROOT, "FAIL rewind differs at frame %d", target);
+            }
+            rewinds++;
+        }
+        if (oldest > 0) {
+            return String.format(Locale.ROOT, "PASS %d frames, %d rewinds down to the oldest keyframe at frame %d",
+                    last, rewinds, oldest);
+        }
+        return String.format(Locale.ROOT, "PASS %d frames, %d rewinds", last, rewinds);
+    }
+
+    /**
+     * Start a replay or level.
+     * @param item replay file name or <code>--level=pack/rating/level</code>
+     * @throws LemmException
+     * @throws ResourceException
+     */
+    private static void start(final String item) throws LemmException, ResourceException {
+        if (item.startsWith("--level=")) {
+            String[] lvl = item.substring("--level=".length()).split("/");
+            if (lvl.length != 3) {
+                throw new LemmException("Level must be given as pack/rating/level: " + item);
+            }
+            HeadlessGame.startLevel(Integer.parseInt(lvl[0]), Integer.parseInt(lvl[1]), Integer.parseInt(lvl[2]), null);
+        } else {
+            HeadlessGame.startReplay(Paths.get(item));
+        }
+    }
+}
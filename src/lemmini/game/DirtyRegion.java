@@ -0,0 +1,158 @@
+package lemmini.game;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Accumulates the areas of the level (in level pixels) that were modified
+ * since the last call to {@link #take()} or {@link #clear()}.<br>
+ * Overlapping or touching rectangles are merged. If too many disjoint
+ * rectangles pile up, they are collapsed into their bounding box.
+ * <br>
+ * Writers report one rectangle per operation, not single pixels. The
+ * region is taken once per drawn frame by
+ * {@link GameController#createSnapshot()}, so that only the modified
+ * tiles of the terrain are copied for the renderer. All methods are
+ * synchronized, since debug drawing modifies the terrain from the event
+ * thread.
+ */
+public class DirtyRegion {
+
+    /** maximum number of disjoint rectangles before collapsing to the bounds */
+    private static final int MAX_RECTANGLES = 16;
+
+    /** disjoint dirty rectangles */
+    private final List<Rectangle> rectangles = new ArrayList<>(MAX_RECTANGLES + 1);
+    /** rectangle that contained the last added area, checked first */
+    private Rectangle lastHit;
+
+    /**
+     * Mark a rectangular area as dirty.
+     * @param x x position in pixels
+     * @param y y position in pixels
+     * @param w width in pixels
+     * @param h height in pixels
+     */
+    public synchronized void add(final int x, final int y, final int w, final int h) {
+        if (w <= 0 || h <= 0) {
+            return;
+        }
+        if (lastHit != null && lastHit.contains(x, y, w, h)) {
+            return;
+        }
+
+        Rectangle r = new Rectangle(x, y, w, h);
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (int i = 0; i < rectangles.size(); i++) {
+                Rectangle other = rectangles.get(i);
+                if (touches(other, r)) {
+                    r.add(other);
+                    rectangles.remove(i);
+                    merged = true;
+                    break;
+                }
+            }
+        }
+        rectangles.add(r);
+        if (rectangles.size() > MAX_RECTANGLES) {
+            Rectangle bounds = getBounds();
+            rectangles.clear();
+            rectangles.add(bounds);
+            r = bounds;
+        }
+        lastHit = r;
+    }
+
+    /**
+     * Mark the whole level as dirty.
+     * @param w width of the level in pixels
+     * @param h height of the level in pixels
+     */
+    public synchronized void addAll(final int w, final int h) {
+        rectangles.clear();
+        lastHit = null;
+        add(0, 0, w, h);
+    }
+
+    /**
+     * Get the disjoint dirty rectangles and forget them, so that the next
+     * call only returns areas modified in between.
+     * @return list of dirty rectangles
+     */
+    public synchronized List<Rectangle> take() {
+        List<Rectangle> taken = Collections.unmodifiableList(new ArrayList<>(rectangles));
+        clear();
+        return taken;
+    }
+
+    /**
+     * Forget all dirty areas.
+     */
+    public synchronized void clear() {
+        rectangles.clear();
+        lastHit = null;
+    }
+
+    /**
+     * Check whether nothing was marked as dirty.
+     * @return true if there are no dirty areas, false otherwise
+     */
+    public synchronized boolean isEmpty() {
+        return rectangles.isEmpty();
+    }
+
+    /**
+     * Get copies of the disjoint dirty rectangles.
+     * @return list of dirty rectangles
+     */
+    public synchronized List<Rectangle> getRectangles() {
+        List<Rectangle> copy = new ArrayList<>(rectangles.size());
+        rectangles.stream().forEach(r -> copy.add(new Rectangle(r)));
+        return Collections.unmodifiableList(copy);
+    }
+
+    /**
+     * Get the bounding box of all dirty areas.
+     * @return bounding box, or an empty rectangle if nothing is dirty
+     */
+    public synchronized Rectangle getBounds() {
+        Rectangle bounds = null;
+        for (Rectangle r : rectangles) {
+            if (bounds == null) {
+                bounds = new Rectangle(r);
+            } else {
+                bounds.add(r);
+            }
+        }
+        return (bounds == null) ? new Rectangle() : bounds;
+    }
+
+    /**
+     * Check whether two rectangles overlap or share an edge.
+     * @param a first rectangle
+     * @param b second rectangle
+     * @return true if the rectangles overlap or touch
+     */
+    private static boolean touches(final Rectangle a, final Rectangle b) {
+        return a.x <= b.x + b.width && b.x <= a.x + a.width
+                && a.y <= b.y + b.height && b.y <= a.y + a.height;
+    }
+}
@@ -1,6 +1,7 @@
 package lemmini.game;
 
 import java.awt.Color;
+import java.util.List;
 import lemmini.graphics.GraphicsContext;
 import lemmini.graphics.LemmImage;
 
@@ -159,6 +160,25 @@ public class Explosion {
         }
     }
     
+    /**
+     * Add what {@link #draw} would draw to a list of draw items, in level
+     * coordinates.
+     * @param items list to add the items to
+     */
+    void capture(final List<FrameSnapshot.DrawItem> items) {
+        if (!finished) {
+            if (counter <= REMOVE_IMAGE_CTR) {
+                items.add(new FrameSnapshot.DrawItem(expImg, xExp, yExp));
+            } else {
+                for (Particle p : particles) {
+                    if (p != null) {
+                        items.add(new FrameSnapshot.DrawItem(p.color, (int) p.x, (int) p.y, PARTICLE_SIZE, PARTICLE_SIZE));
+                    }
+                }
+            }
+        }
+    }
+    
     /**
      * Get finished state.
      * @return true if the explosion is over, false otherwise
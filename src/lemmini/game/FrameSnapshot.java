@@ -0,0 +1,439 @@
+package lemmini.game;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import lemmini.LemminiFrame;
+import lemmini.gameutil.Fader;
+import lemmini.graphics.GraphicsContext;
+import lemmini.graphics.LemmImage;
+import lemmini.graphics.TiledImage;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Immutable copy of everything the renderer needs from the simulation for
+ * one frame: scroll position, counters and the images and positions of
+ * lemmings, objects, explosions and visual SFX, the terrain, the minimap,
+ * the icon bar, the text screen and the fader.<br>
+ * Snapshots are created by the simulation thread with
+ * {@link GameController#createSnapshot()} and can be drawn by any other
+ * thread without holding the GameController lock. The terrain is a
+ * {@link TiledImage.Snapshot}, so only the tiles modified since the
+ * previous frame are copied. The level background and the resources
+ * (fonts, icons, cursors) are drawn from the live level; they are only
+ * replaced while {@link GameController#getRenderLock()} is held for writing,
+ * and a snapshot taken before that must not be drawn, see
+ * {@link #getResourceGeneration()}.
+ */
+public final class FrameSnapshot {
+
+    /** game state this snapshot was taken in */
+    private final GameController.State gameState;
+    /** value of the update counter when this snapshot was taken */
+    private final long frame;
+    /** horizontal scroll position in pixels */
+    private final int xPos;
+    /** vertical scroll position in pixels */
+    private final int yPos;
+    /** horizontal scroll position of the minimap in pixels */
+    private final int minimapXPos;
+    private final int numLemmings;
+    private final int numExited;
+    private final int numToRescue;
+    private final int numLemmingsMax;
+    private final int numLemmingsUnreleased;
+    private final String timeString;
+    /** name of the lemming under the cursor, or null if there is none */
+    private final String lemmingUnderCursorName;
+    private final int numLemmsUnderCursor;
+    /** foot x position of the lemming under the cursor in pixels */
+    private final int lemmingUnderCursorX;
+    /** middle y position of the lemming under the cursor in pixels */
+    private final int lemmingUnderCursorY;
+    /** replay icon, or null if none is shown */
+    private final LemmImage replayImage;
+    /** "behind" objects in drawing order */
+    private final List<DrawItem> behindObjects;
+    /** "in front" objects in drawing order */
+    private final List<DrawItem> frontObjects;
+    /** lemmings, countdowns and selection images in drawing order */
+    private final List<DrawItem> lemmings;
+    /** explosion images and particles in drawing order */
+    private final List<DrawItem> explosions;
+    /** visual SFX in drawing order */
+    private final List<DrawItem> visualSfx;
+    /** foot positions of all lemmings (x and y interleaved) */
+    private final int[] lemmingFeet;
+    /** terrain, or null if no level is shown */
+    private final TiledImage.Snapshot terrain;
+    /** copy of the minimap image, or null if no level is shown */
+    private final LemmImage minimapImage;
+    /** copy of the icon bar, or null if no level is shown */
+    private final LemmImage iconBar;
+    /** skill counters relative to the counter bar, in drawing order */
+    private final List<DrawItem> counters;
+    /** text screen images in drawing order */
+    private final List<DrawItem> textScreen;
+    /** ARGB color of the fader */
+    private final int fadeColor;
+    /** value of {@link GameController#getResourceGeneration()} when this snapshot was taken */
+    private final int resourceGeneration;
+
+    FrameSnapshot(final GameController.State gameState, final long frame,
+            final int xPos, final int yPos, final int minimapXPos,
+            final int numLemmings, final int numExited, final int numToRescue,
+            final int numLemmingsMax, final int numLemmingsUnreleased, final String timeString,
+            final String lemmingUnderCursorName, final int numLemmsUnderCursor,
+            final int lemmingUnderCursorX, final int lemmingUnderCursorY, final LemmImage replayImage,
+            final List<DrawItem> behindObjects, final List<DrawItem> frontObjects,
+            final List<DrawItem> lemmings, final List<DrawItem> explosions,
+            final List<DrawItem> visualSfx, final int[] lemmingFeet,
+            final TiledImage.Snapshot terrain, final LemmImage minimapImage, final LemmImage iconBar,
+            final List<DrawItem> counters, final List<DrawItem> textScreen, final int fadeColor,
+            final int resourceGeneration) {
+        this.gameState = gameState;
+        this.frame = frame;
+        this.xPos = xPos;
+        this.yPos = yPos;
+        this.minimapXPos = minimapXPos;
+        this.numLemmings = numLemmings;
+        this.numExited = numExited;
+        this.numToRescue = numToRescue;
+        this.numLemmingsMax = numLemmingsMax;
+        this.numLemmingsUnreleased = numLemmingsUnreleased;
+        this.timeString = timeString;
+        this.lemmingUnderCursorName = lemmingUnderCursorName;
+        this.numLemmsUnderCursor = numLemmsUnderCursor;
+        this.lemmingUnderCursorX = lemmingUnderCursorX;
+        this.lemmingUnderCursorY = lemmingUnderCursorY;
+        this.replayImage = replayImage;
+        this.behindObjects = Collections.unmodifiableList(new ArrayList<>(behindObjects));
+        this.frontObjects = Collections.unmodifiableList(new ArrayList<>(frontObjects));
+        this.lemmings = Collections.unmodifiableList(new ArrayList<>(lemmings));
+        this.explosions = Collections.unmodifiableList(new ArrayList<>(explosions));
+        this.visualSfx = Collections.unmodifiableList(new ArrayList<>(visualSfx));
+        this.lemmingFeet = lemmingFeet.clone();
+        this.terrain = terrain;
+        this.minimapImage = minimapImage;
+        this.iconBar = iconBar;
+        this.counters = Collections.unmodifiableList(new ArrayList<>(counters));
+        this.textScreen = Collections.unmodifiableList(new ArrayList<>(textScreen));
+        this.fadeColor = fadeColor;
+        this.resourceGeneration = resourceGeneration;
+    }
+    
+    /**
+     * Check whether this snapshot contains the terrain of a level.
+     * @return true if a level is shown
+     */
+    public boolean hasTerrain() {
+        return terrain != null;
+    }
+    
+    /**
+     * Draw a region of the terrain unscaled.
+     * @param g graphics object to draw on
+     * @param dx x position of the region on the screen
+     * @param dy y position of the region on the screen
+     * @param sx1 left edge of the region in the level (inclusive)
+     * @param sy1 top edge of the region in the level (inclusive)
+     * @param sx2 right edge of the region in the level (exclusive)
+     * @param sy2 bottom edge of the region in the level (exclusive)
+     */
+    public void drawTerrain(final GraphicsContext g, final int dx, final int dy,
+            final int sx1, final int sy1, final int sx2, final int sy2) {
+        if (terrain != null) {
+            terrain.draw(g, dx, dy, sx1, sy1, sx2, sy2);
+        }
+    }
+    
+    /**
+     * Draw the icon bar and the skill counters.
+     * @param g graphics object to draw on
+     * @param iconsX x position of the icon bar in pixels
+     * @param iconsY y position of the icon bar in pixels
+     * @param countersX x position of the counters in pixels
+     * @param countersY y position of the counters in pixels
+     */
+    public void drawIconsAndCounters(final GraphicsContext g, final int iconsX, final int iconsY,
+            final int countersX, final int countersY) {
+        if (iconBar != null) {
+            g.drawImage(iconBar, iconsX, iconsY);
+        }
+        drawItems(g, counters, -countersX, -countersY, Core.getDrawWidth(), Core.getDrawHeight());
+    }
+    
+    /**
+     * Draw the minimap.
+     * @param g graphics object to draw on
+     * @param x x position of the minimap in pixels
+     * @param y y position of the minimap in pixels
+     */
+    public void drawMinimap(final GraphicsContext g, final int x, final int y) {
+        if (minimapImage != null) {
+            Minimap.draw(g, minimapImage, x, y, minimapXPos, yPos);
+        }
+    }
+    
+    /**
+     * Draw the frame that shows the visible part of the level in the minimap.
+     * @param g graphics object to draw on
+     * @param x x position of the minimap in pixels
+     * @param y y position of the minimap in pixels
+     */
+    public void drawMinimapFrame(final GraphicsContext g, final int x, final int y) {
+        Minimap.drawFrame(g, x, y, minimapXPos, xPos);
+    }
+    
+    /**
+     * Draw the text screen.
+     * @param g graphics object to draw on
+     * @param width width of screen in pixels
+     * @param height height of screen in pixels
+     */
+    public void drawTextScreen(final GraphicsContext g, final int width, final int height) {
+        drawItems(g, textScreen, 0, 0, width, height);
+    }
+    
+    /**
+     * Apply the fader.
+     * @param g graphics object to draw on
+     */
+    public void drawFader(final GraphicsContext g) {
+        Fader.apply(g, fadeColor);
+    }
+
+    /**
+     * Draw the "behind" objects.
+     * @param g graphics object to draw on
+     * @param width width of screen in pixels
+     * @param height height of screen in pixels
+     */
+    public void drawBehindObjects(final GraphicsContext g, final int width, final int height) {
+        drawItems(g, behindObjects, width, height);
+    }
+
+    /**
+     * Draw the "in front" objects.
+     * @param g graphics object to draw on
+     * @param width width of screen in pixels
+     * @param height height of screen in pixels
+     */
+    public void drawInFrontObjects(final GraphicsContext g, final int width, final int height) {
+        drawItems(g, frontObjects, width, height);
+    }
+
+    /**
+     * Draw the lemmings together with their countdowns and selection images.
+     * @param g graphics object to draw on
+     */
+    public void drawLemmings(final GraphicsContext g) {
+        drawItems(g, lemmings, Core.getDrawWidth(), LemminiFrame.LEVEL_HEIGHT);
+    }
+
+    /**
+     * Draw the explosions.
+     * @param g graphics object to draw on
+     * @param width width of screen in pixels
+     * @param height height of screen in pixels
+     */
+    public void drawExplosions(final GraphicsContext g, final int width, final int height) {
+        drawItems(g, explosions, width, height);
+    }
+
+    /**
+     * Draw the visual SFX.
+     * @param g graphics object to draw on
+     */
+    public void drawVisualSfx(final GraphicsContext g) {
+        drawItems(g, visualSfx, Core.getDrawWidth(), LemminiFrame.LEVEL_HEIGHT);
+    }
+
+    /**
+     * Draw the lemmings into the minimap.
+     * @param g graphics object to draw on
+     * @param x x position of the minimap in pixels
+     * @param y y position of the minimap in pixels
+     */
+    public void drawMinimapLemmings(final GraphicsContext g, final int x, final int y) {
+        for (int i = 0; i < lemmingFeet.length; i += 2) {
+            Minimap.drawLemming(g, x, y, lemmingFeet[i], lemmingFeet[i + 1], minimapXPos, yPos);
+        }
+    }
+
+    /**
+     * Draw all items that are at least partially inside the visible part of
+     * the level.
+     * @param g graphics object to draw on
+     * @param items items to draw
+     * @param width width of the visible area in pixels
+     * @param height height of the visible area in pixels
+     */
+    private void drawItems(final GraphicsContext g, final List<DrawItem> items, final int width, final int height) {
+        drawItems(g, items, xPos, yPos, width, height);
+    }
+
+    /**
+     * Draw all items that are at least partially inside the visible area.
+     * @param g graphics object to draw on
+     * @param items items to draw
+     * @param xOfs x position of the visible area in item coordinates
+     * @param yOfs y position of the visible area in item coordinates
+     * @param width width of the visible area in pixels
+     * @param height height of the visible area in pixels
+     */
+    private static void drawItems(final GraphicsContext g, final List<DrawItem> items,
+            final int xOfs, final int yOfs, final int width, final int height) {
+        for (DrawItem item : items) {
+            int x = item.x - xOfs;
+            int y = item.y - yOfs;
+            if (x + item.width > 0 && x < width && y + item.height > 0 && y < height) {
+                if (item.image != null) {
+                    g.drawImage(item.image, x, y);
+                } else {
+                    g.setColor(item.color);
+                    g.fillRect(x, y, item.width, item.height);
+                }
+            }
+        }
+    }
+
+    public GameController.State getGameState() {
+        return gameState;
+    }
+
+    public long getFrame() {
+        return frame;
+    }
+
+    public int getXPos() {
+        return xPos;
+    }
+
+    public int getYPos() {
+        return yPos;
+    }
+
+    public int getMinimapXPos() {
+        return minimapXPos;
+    }
+
+    public int getNumLemmings() {
+        return numLemmings;
+    }
+
+    public int getNumExited() {
+        return numExited;
+    }
+
+    public int getNumToRescue() {
+        return numToRescue;
+    }
+
+    public int getNumLemmingsMax() {
+        return numLemmingsMax;
+    }
+
+    public int getNumLemmingsUnreleased() {
+        return numLemmingsUnreleased;
+    }
+
+    public String getTimeString() {
+        return timeString;
+    }
+
+    /**
+     * Get the name of the lemming under the cursor.
+     * @return name of the lemming, or null if there is no lemming under the cursor
+     */
+    public String getLemmingUnderCursorName() {
+        return lemmingUnderCursorName;
+    }
+
+    public int getNumLemmsUnderCursor() {
+        return numLemmsUnderCursor;
+    }
+
+    public int getLemmingUnderCursorX() {
+        return lemmingUnderCursorX;
+    }
+
+    public int getLemmingUnderCursorY() {
+        return lemmingUnderCursorY;
+    }
+
+    public LemmImage getReplayImage() {
+        return replayImage;
+    }
+
+    /**
+     * Get the generation of the level and resources this snapshot refers to.
+     * @return value of {@link GameController#getResourceGeneration()} when this snapshot was taken
+     */
+    public int getResourceGeneration() {
+        return resourceGeneration;
+    }
+
+    /**
+     * Image or filled rectangle at a fixed position in the level.
+     */
+    static final class DrawItem {
+
+        /** image to draw, or null to fill a rectangle */
+        private final LemmImage image;
+        /** fill color if image is null */
+        private final Color color;
+        /** x position in the level in pixels */
+        private final int x;
+        /** y position in the level in pixels */
+        private final int y;
+        private final int width;
+        private final int height;
+
+        /**
+         * Create an item that draws an image.
+         * @param image image to draw
+         * @param x x position in the level in pixels
+         * @param y y position in the level in pixels
+         */
+        DrawItem(final LemmImage image, final int x, final int y) {
+            this.image = image;
+            color = null;
+            this.x = x;
+            this.y = y;
+            width = image.getWidth();
+            height = image.getHeight();
+        }
+
+        /**
+         * Create an item that fills a rectangle.
+         * @param color fill color
+         * @param x x position in the level in pixels
+         * @param y y position in the level in pixels
+         * @param width width in pixels
+         * @param height height in pixels
+         */
+        DrawItem(final Color color, final int x, final int y, final int width, final int height) {
+            image = null;
+            this.color = color;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+    }
+}
@@ -6,6 +6,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import javax.swing.JOptionPane;
@@ -19,6 +22,7 @@ import lemmini.gameutil.KeyRepeat;
 import lemmini.gameutil.Sprite;
 import lemmini.graphics.GraphicsContext;
 import lemmini.graphics.LemmImage;
+import lemmini.graphics.TiledImage;
 import lemmini.sound.Music;
 import lemmini.sound.Sound;
 import lemmini.tools.NanosecondTimer;
@@ -163,6 +167,16 @@ public class GameController {
     private static final long NANOSEC_KEYREPEAT_START = 250_000_000;
     /** +/- icons: time for key repeat rate */
     private static final long NANOSEC_KEYREPEAT_REPEAT = 67_000_000;
+    /** rewind: number of frames to go back per step (about 3 seconds) */
+    public static final int REWIND_FRAMES = 100;
+    /** rewind: default number of frames between two keyframes */
+    private static final int DEFAULT_KEYFRAME_INTERVAL = 100;
+    /** rewind: default memory budget for keyframes in MiB */
+    private static final int DEFAULT_KEYFRAME_BUDGET_MB = 64;
+    /** default disk budget for painted levels in MiB, 0 disables the cache */
+    private static final int DEFAULT_LEVEL_CACHE_MB = 128;
+    /** default memory budget for styles of previous levels in MiB */
+    private static final int DEFAULT_STYLE_CACHE_MB = 64;
     
     private static final String LEVEL_DIR_REGEX = "levels/[^/]+/levelpack.ini";
     private static final String LEVEL_CACHE_INI = "$levelcache.ini";
@@ -173,7 +187,9 @@ public class GameController {
     /** the foreground stencil */
     private static Stencil stencil;
     /** the foreground image */
-    private static LemmImage fgImage;
+    private static TiledImage fgImage;
+    /** areas of the level modified since a consumer last took them */
+    private static final DirtyRegion dirtyRegion = new DirtyRegion();
     private static final Set<Option> options = EnumSet.noneOf(Option.class);
     /** SuperLemminiToo Exclusive options*/
     private static final Set<SuperLemminiTooOption> SLToptions = EnumSet.noneOf(SuperLemminiTooOption.class);
@@ -228,13 +244,21 @@ public class GameController {
     private static int nextLevelNumber;
     private static List<String> modPaths;
     /** list of all active Lemmings in the Level */
-    private static final List<Lemming> lemmings = new LinkedList<>();
+    private static final LemmingRegistry lemmings = new LemmingRegistry();
+    /** active Lemmings by position, for picking and culling */
+    private static final LemmingGrid lemmingGrid = new LemmingGrid();
+    /** level objects to animate and their trigger states */
+    private static final SpriteObjectIndex objectIndex = new SpriteObjectIndex();
+    /** reused for grid queries */
+    private static final List<Lemming> lemmingQuery = new ArrayList<>(64);
     /** list of all active explosions */
     private static final List<Explosion> explosions = new LinkedList<>();
     /** list of all Lemmings under the mouse cursor */
     private static final Queue<Lemming> lemmsUnderCursor = Collections.asLifoQueue(new ArrayDeque<Lemming>(128));
     /** list of all active Visual SFX */
     private static final List<Vsfx> vsfxs = new LinkedList<>();
+    /** input queued by UI threads, applied at the start of the next update */
+    private static final Queue<InputCommand> inputQueue = new ConcurrentLinkedQueue<>();
     /** array of available level packs */
     private static List<LevelPack> levelPacks;
     private static Set<ExternalLevelEntry> externalLevelList;
@@ -316,17 +340,49 @@ public class GameController {
     private static int width = Level.DEFAULT_WIDTH;
     private static int height = Level.DEFAULT_HEIGHT;
     private static int timesFailed;
+    /** flag: running without window, sound output and music */
+    private static boolean headless;
+    /** keyframes of the current level used for rewinding */
+    private static KeyframeBuffer keyframes;
+    /** state of the current level right after it was painted, restored on restarts instead of painting it again */
+    private static Keyframe levelStart;
+    /** number of times a level was painted, identifies the terrain the minimap was created from */
+    private static int paintCount;
+    /** music chosen by the LevelPrefetcher for the next level start, or null */
+    private static String prefetchedMusic;
+    /** flag: frames are simulated again after a keyframe was restored */
+    private static boolean resimulating;
+    /** flag: a detached game state is simulated, see {@link GameState} */
+    private static boolean detached;
+    /** terrain of the last snapshot handed to the renderer */
+    private static TiledImage.Snapshot renderTerrain;
+    /** held for writing while the level or the resources are replaced, and for reading while a frame is drawn */
+    private static final ReentrantReadWriteLock resourceLock = new ReentrantReadWriteLock();
+    /** number of times the level or the resources were replaced */
+    private static volatile int resourceGeneration;
     
     /**
      * Initialization.
      * @throws ResourceException
      */
     public static void init() throws ResourceException {
+        init(false);
+    }
+    
+    /**
+     * Initialization.
+     * @param headlessMode true to run the game logic only: no audio lines
+     *                     are opened, no music is loaded and no mouse cursors
+     *                     are created
+     * @throws ResourceException
+     */
+    public static void init(final boolean headlessMode) throws ResourceException {
         System.out.println("initializing GameController...");
+        headless = headlessMode;
     	width = Level.DEFAULT_WIDTH;
         height = Level.DEFAULT_HEIGHT;
         
-        fgImage = ToolBox.createLemmImage(width, height);
+        fgImage = new TiledImage(width, height);
         
         gameState = State.INIT;
         
@@ -335,6 +391,19 @@ public class GameController {
         timerNuke = new NanosecondTimer();
         timerRestart = new NanosecondTimer();
         
+        int keyframeInterval = Core.programProps.getInt("rewindKeyframeInterval", DEFAULT_KEYFRAME_INTERVAL);
+        int keyframeBudget = Core.programProps.getInt("rewindBudgetMB", DEFAULT_KEYFRAME_BUDGET_MB);
+        Core.programProps.setInt("rewindKeyframeInterval", keyframeInterval);
+        Core.programProps.setInt("rewindBudgetMB", keyframeBudget);
+        keyframes = new KeyframeBuffer(keyframeInterval, keyframeBudget * 1024L * 1024L);
+        
+        int levelCacheBudget = Core.programProps.getInt("levelCacheMB", DEFAULT_LEVEL_CACHE_MB);
+        Core.programProps.setInt("levelCacheMB", levelCacheBudget);
+        PaintedLevelCache.init(Core.resourceTree.getPath(Core.PAINTED_LEVEL_CACHE_PATH), levelCacheBudget * 1024L * 1024L);
+        int styleCacheBudget = Core.programProps.getInt("styleCacheMB", DEFAULT_STYLE_CACHE_MB);
+        Core.programProps.setInt("styleCacheMB", styleCacheBudget);
+        GraphicSetCache.init(styleCacheBudget * 1024L * 1024L);
+        
         // read level packs
         levelPacks = new ArrayList<>(32);
         externalLevelList = new LinkedHashSet<>();
@@ -389,7 +458,7 @@ public class GameController {
         curLevelNumber = 0;
         modPaths = levelPacks.get(curLevelPack).getModPaths();
         
-        sound = new Sound();
+        sound = new Sound(headless);
         sound.setGain(soundGain);
         Icons.init();
         Explosion.init();
@@ -400,9 +469,11 @@ public class GameController {
         LemmFont.init();
         TextScreen.init();
         NumFont.init();
-        LemmCursor.init();
-        Music.init();
-        Music.setGain(musicGain);
+        if (!headless) {
+            LemmCursor.init();
+            Music.init();
+            Music.setGain(musicGain);
+        }
         
         timesFailed = 0;
         numSkillsUsed = 0;
@@ -501,7 +572,9 @@ public class GameController {
         }
         transitionState = TransitionState.END_LEVEL;
         gameState = State.LEVEL_END;
-        Fader.setState(Fader.State.OUT);
+        if (!detached) {
+            Fader.setState(Fader.State.OUT);
+        }
     }
     
     /**
@@ -525,6 +598,23 @@ public class GameController {
         
         replayMode = false;
         gameState = State.DEBRIEFING;
+        prefetchNextLevel();
+    }
+    
+    /**
+     * Start loading the level that follows a won level in the background,
+     * so that it is ready when the player continues from the debriefing.
+     */
+    private static void prefetchNextLevel() {
+        if (wasLost()) {
+            return;
+        }
+        LevelPack lvlPack = getCurLevelPack();
+        if (curLevelNumber + 1 < lvlPack.getLevelCount(curRating)) {
+            LevelPrefetcher.prefetch(lvlPack, curLevelPack, curRating, curLevelNumber + 1);
+        } else if (curRating + 1 < lvlPack.getRatings().size() && lvlPack.getLevelCount(curRating + 1) > 0) {
+            LevelPrefetcher.prefetch(lvlPack, curLevelPack, curRating + 1, 0);
+        }
     }
     
     /**
@@ -538,7 +628,8 @@ public class GameController {
                 || gameState == State.DEBRIEFING)) {
             timesFailed++;
         }
-        initLevel(showBriefing);
+        LevelPrefetcher.cancel();
+        initLevel(showBriefing, false);
         if (doReplay) {
             replayMode = true;
             replay.save(Core.TEMP_PATH + "/replay.rpl");
@@ -551,8 +642,10 @@ public class GameController {
     
     /**
      * Initialize a level after it was loaded.
+     * @param showBriefing true to show the briefing first
+     * @param painted true if the level was already painted by the LevelPrefetcher
      */
-    private static synchronized void initLevel(boolean showBriefing) throws LemmException, ResourceException {
+    private static synchronized void initLevel(boolean showBriefing, boolean painted) throws LemmException, ResourceException {
         Music.stop();
         
         setFastForward(false);
@@ -561,10 +654,12 @@ public class GameController {
         nuke = false;
         
         lemmSkillRequest = null;
+        inputQueue.clear();
         
         TextScreen.setMode(TextScreen.Mode.INIT);
         
         lemmings.clear();
+        lemmingGrid.clear();
         explosions.clear();
         Icons.reset();
         
@@ -603,9 +698,19 @@ public class GameController {
         timeLimit = time;
         timeElapsedTillLastExited = 0;
         
-        level.paintLevel();
+        boolean repaint = levelStart == null;
+        if (repaint) {
+            if (!painted) {
+                level.paintLevel();
+            }
+            paintCount++;
+        } else {
+            restoreLevelStart();
+        }
         stencil = level.getStencil();
         fgImage = level.getFgImage();
+        stencil.setDirtyRegion(dirtyRegion);
+        dirtyRegion.addAll(width, height);
         
         if (width != oldWidth || height != oldHeight) {
             MiscGfx.setMinimapWidth(ToolBox.scale(width, 1.0 / 16.0));
@@ -639,51 +744,67 @@ public class GameController {
             scaleFactorHeight++;
         }
         int scaleFactor = NumberUtils.max(4, scaleFactorWidth, scaleFactorHeight);
-        mapPreview = level.createMinimap(fgImage, 1.0 / scaleFactor, 1.0 / scaleFactor, true, false, true);
+        if (repaint) {
+            mapPreview = level.createMinimap(fgImage, 1.0 / scaleFactor, 1.0 / scaleFactor, true, false, true);
+        }
         
         setSuperLemming(level.isSuperLemming());
         forceNormalTimerSpeed = level.getForceNormalTimerSpeed();
         
         replayFrame = 0;
+        // nuking depends on the parity of the update counter
+        updateCtr = 0;
         stopReplayMode = false;
         releaseRateOld = releaseRate;
         lemmSkillOld = lemmSkill;
         nukeOld = false;
         
-        String music = level.getMusic();
-        try {
-            if (music == null) {
-                music = levelPacks.get(curLevelPack).getInfo(curRating, curLevelNumber).getMusic();
-            }
-            if (music == null) {
-                music = Music.getRandomTrack(level.getStyleName(), level.getSpecialStyleName());
-            }
-            Music.load("music/" + music);
-        } catch (ResourceException ex) {
-            Core.resourceError(ex.getMessage());
-        } catch (LemmException ex) {
-        	if (music==null) {
-            	music="";
-            }
-        	//get the "real" file, from the requested resource:
-        	Resource res = Core.findResource("music/" + music, Core.MUSIC_EXTENSIONS);
-        	String ext = FilenameUtils.getExtension(res.getFileName()).toLowerCase(Locale.ROOT);
-            //only show the error if it's not an .ogg file
-        	// .ogg files not playing properly is the result of missing dependencies.
-        	if(!ext.equals("ogg")) {
-            	JOptionPane.showMessageDialog(null, "Unable to load music resource:\n" + ex.getMessage() + "\n\nAttempting midi fallback.", "Error Loading Music", JOptionPane.ERROR_MESSAGE);
-            }
-
-            //TODO: Clean this up
-            //Ugh, this feels incredibly hacky... 
-            //but this is our fallback (and we must error catch here too, in case disaster strikes)
+        lemmingGrid.init(width, height);
+        objectIndex.rebuild(level);
+        keyframes.clear();
+        if (repaint) {
+            levelStart = createKeyframe(0, null);
+            keyframes.add(levelStart);
+        } else {
+            keyframes.add(createKeyframe(0, levelStart));
+        }
+        
+        if (!headless) {
+            String music = (prefetchedMusic != null) ? prefetchedMusic : level.getMusic();
             try {
-                music = Music.getRandomTrack(level.getStyleName(), level.getSpecialStyleName());
+                if (music == null) {
+                    music = levelPacks.get(curLevelPack).getInfo(curRating, curLevelNumber).getMusic();
+                }
+                if (music == null) {
+                    music = Music.getRandomTrack(level.getStyleName(), level.getSpecialStyleName());
+                }
                 Music.load("music/" + music);
-            } catch (ResourceException ex2) {
-                Core.resourceError(ex2.getMessage());
-            } catch (LemmException ex2) {
-                JOptionPane.showMessageDialog(null, "Unable to load music resource:\n" + ex2.getMessage() + "\n\nNo music will play for this level.", "Error Loading Music", JOptionPane.ERROR_MESSAGE);
+            } catch (ResourceException ex) {
+                Core.resourceError(ex.getMessage());
+            } catch (LemmException ex) {
+            	if (music==null) {
+                	music="";
+                }
+            	//get the "real" file, from the requested resource:
+            	Resource res = Core.findResource("music/" + music, Core.MUSIC_EXTENSIONS);
+            	String ext = FilenameUtils.getExtension(res.getFileName()).toLowerCase(Locale.ROOT);
+                //only show the error if it's not an .ogg file
+            	// .ogg files not playing properly is the result of missing dependencies.
+            	if(!ext.equals("ogg")) {
+                	JOptionPane.showMessageDialog(null, "Unable to load music resource:\n" + ex.getMessage() + "\n\nAttempting midi fallback.", "Error Loading Music", JOptionPane.ERROR_MESSAGE);
+                }
+
+                //TODO: Clean this up
+                //Ugh, this feels incredibly hacky... 
+                //but this is our fallback (and we must error catch here too, in case disaster strikes)
+                try {
+                    music = Music.getRandomTrack(level.getStyleName(), level.getSpecialStyleName());
+                    Music.load("music/" + music);
+                } catch (ResourceException ex2) {
+                    Core.resourceError(ex2.getMessage());
+                } catch (LemmException ex2) {
+                    JOptionPane.showMessageDialog(null, "Unable to load music resource:\n" + ex2.getMessage() + "\n\nNo music will play for this level.", "Error Loading Music", JOptionPane.ERROR_MESSAGE);
+                }
             }
         }
         
@@ -755,6 +876,9 @@ public class GameController {
      * @param doReplay true: replay, false: play
      */
     private static synchronized Level changeLevel(final int lPack, final int rating, final int lNum, final boolean doReplay) throws LemmException, ResourceException {
+        // this waits for a running prefetch, so it must happen before any global state is changed
+        LevelPrefetcher.Result prefetched = LevelPrefetcher.take(lPack, rating, lNum);
+        
         timesFailed = 0;
         
         curLevelPack = lPack;
@@ -771,15 +895,33 @@ public class GameController {
             LemmFont.init();
             TextScreen.init();
             NumFont.init();
-            LemmCursor.init();
+            if (!headless) {
+                LemmCursor.init();
+            }
             Lemming.loadLemmings();
         }
         
-        Resource lvlRes = levelPacks.get(curLevelPack).getInfo(curRating, curLevelNumber).getLevelResource();
-        // loading the level will patch appropriate lemmings pixels to the correct colors
-        level = new Level(lvlRes, level);
+        Level oldLevel = level;
+        if (prefetched != null) {
+            level = prefetched.level;
+            prefetchedMusic = prefetched.music;
+        } else {
+            Resource lvlRes = levelPacks.get(curLevelPack).getInfo(curRating, curLevelNumber).getLevelResource();
+            level = new Level(lvlRes, level);
+        }
+        if (oldLevel != null) {
+            // the new level already holds the styles it shares with the old one
+            oldLevel.releaseStyles();
+        }
+        // patch appropriate lemmings pixels to the correct colors
+        Lemming.replaceColors(level.getDebrisColor(), level.getDebrisColor2());
+        levelStart = null;
         
-        initLevel(true);
+        try {
+            initLevel(true, prefetched != null);
+        } finally {
+            prefetchedMusic = null;
+        }
         
         if (doReplay) {
             replayMode = true;
@@ -792,6 +934,79 @@ public class GameController {
         return level;
     }
     
+    /**
+     * Load a level and start playing it right away, without briefing and
+     * without fading. This is used to run levels headless.
+     * @param lPack index of level pack
+     * @param rating index of rating
+     * @param lNum level number
+     * @param doReplay true: play back the loaded replay, false: play
+     * @throws LemmException
+     * @throws ResourceException
+     */
+    public static synchronized void startLevel(final int lPack, final int rating, final int lNum, final boolean doReplay)
+            throws LemmException, ResourceException {
+        changeLevel(lPack, rating, lNum, doReplay);
+        Minimap.init(1.0 / 16.0, 1.0 / 8.0, true);
+        setXPos(xPosCenter - Core.getDrawWidth() / 2);
+        setYPos(yPosCenter - LemminiFrame.LEVEL_HEIGHT / 2);
+        xPosOld = xPos;
+        yPosOld = yPos;
+        transitionState = TransitionState.NONE;
+        gameState = State.LEVEL;
+    }
+    
+    /**
+     * Find the level a replay was recorded in.
+     * @param rli replay level info
+     * @return {level pack, rating, level number} or null if the level doesn't exist
+     */
+    public static int[] findReplayLevel(final ReplayLevelInfo rli) {
+        int lpn = -1;
+        int rn = -1;
+        int ln = -1;
+        LevelPack lp = null;
+        for (int i = 0; i < levelPacks.size(); i++) {
+            LevelPack lpTemp = levelPacks.get(i);
+            if (ToolBox.looselyEquals(lpTemp.getName(), rli.getLevelPack())) {
+                lpn = i;
+                lp = lpTemp;
+            }
+        }
+        if (lp != null && lpn >= 0) {
+            List<String> ratings = lp.getRatings();
+            int rnTemp = rli.getRatingNumber();
+            if (rnTemp < ratings.size()) {
+                rn = rnTemp;
+            }
+            if (rn < 0 || ToolBox.looselyEquals(ratings.get(rn), rli.getRatingName())) {
+                for (int i = 0; i < ratings.size(); i++) {
+                    if (ToolBox.looselyEquals(ratings.get(i), rli.getRatingName())) {
+                        rn = i;
+                    }
+                }
+            }
+            if (rn >= 0) {
+                List<String> levels = lp.getLevels(rn);
+                int lnTemp = rli.getLvlNumber();
+                if (lnTemp < levels.size()) {
+                    ln = lnTemp;
+                }
+                if (ln < 0 || ToolBox.looselyEquals(levels.get(ln), rli.getLvlName())) {
+                    for (int i = 0; i < levels.size(); i++) {
+                        if (ToolBox.looselyEquals(levels.get(i), rli.getLvlName())) {
+                            ln = i;
+                        }
+                    }
+                }
+            }
+        }
+        if (lpn >= 0 && rn >= 0 && ln >= 0) {
+            return new int[] {lpn, rn, ln};
+        }
+        return null;
+    }
+    
     /**
      * Get level lost state.
      * @return true if level was lost, false otherwise
@@ -996,6 +1211,15 @@ public class GameController {
         
         updateCtr++;
         
+        if (applyInputCommands()) {
+            // the rewind already simulated up to the target frame
+            return;
+        }
+        if (gameState != State.LEVEL) {
+            // e.g. a restart was requested from the icon bar
+            return;
+        }
+        
         if (!replayMode) {
             assignSkill(false); // first try to assign skill
         }
@@ -1038,6 +1262,14 @@ public class GameController {
             return;
         }
         
+        simulateFrame();
+    }
+    
+    /**
+     * Advance the simulation by one frame: handle replay events, time,
+     * release and nuking and animate Lemmings and objects.
+     */
+    private static void simulateFrame() {
         // test for end of replay mode
         if (replayMode && stopReplayMode) {
             stopReplayMode();
@@ -1164,34 +1396,7 @@ public class GameController {
                         ReplaySelectSkillEvent rs = (ReplaySelectSkillEvent) r;
                         if (rs.player == 0) {
                             lemmSkill = rs.skill;
-                            switch (lemmSkill) {
-                                case CLIMBER:
-                                    pressIcon(Icons.IconType.CLIMB);
-                                    break;
-                                case FLOATER:
-                                    pressIcon(Icons.IconType.FLOAT);
-                                    break;
-                                case FLAPPER:
-                                    pressIcon(Icons.IconType.BOMB);
-                                    break;
-                                case BLOCKER:
-                                    pressIcon(Icons.IconType.BLOCK);
-                                    break;
-                                case BUILDER:
-                                    pressIcon(Icons.IconType.BUILD);
-                                    break;
-                                case BASHER:
-                                    pressIcon(Icons.IconType.BASH);
-                                    break;
-                                case MINER:
-                                    pressIcon(Icons.IconType.MINE);
-                                    break;
-                                case DIGGER:
-                                    pressIcon(Icons.IconType.DIG);
-                                    break;
-                                default:
-                                    break;
-                            }
+                            pressSkillIcon(lemmSkill);
                             lemmSkillOld = lemmSkill;
                         }
                         break;
@@ -1239,6 +1444,7 @@ public class GameController {
                 Level.Entrance e = level.getEntrance(TrapDoor.getNext());
                 Lemming l = new Lemming(e.xPos + 2, e.yPos + Lemming.HEIGHT, e.leftEntrance ? Lemming.Direction.LEFT : Lemming.Direction.RIGHT);
                 lemmings.add(l);
+                lemmingGrid.add(l);
                 numLemmingsOut++;
             }
         }
@@ -1275,6 +1481,7 @@ public class GameController {
                         spr.setAnimMode(Sprite.Animation.ONCE);
                     }
                 }
+                objectIndex.rebuild(level);
                 level.openBackgroundEntrances();
                 //this is the *creak* sound of the doors opening.
                 //for now let's not play the "creak" sound as the entrance doors open.
@@ -1284,7 +1491,7 @@ public class GameController {
                 //System.out.println("opened");
                 entranceOpened = true;
                 releaseCtr = 0; // first lemming to enter at once
-                if (isOptionEnabled(Option.MUSIC_ON)) {
+                if (isOptionEnabled(Option.MUSIC_ON) && !resimulating) {
                     Music.play();
                 }
             }
@@ -1292,27 +1499,24 @@ public class GameController {
         // end of game conditions
         if ((nukeTemp || numLemmingsOut == getNumLemmingsMax()) && lemmings.isEmpty()) {
             // End the level only if no objects are triggered.
-            boolean endLevel = true;
-            for (int i = 0; i < level.getNumSprObjects(); i++) {
-                SpriteObject sprite = level.getSprObject(i);
-                if (sprite != null && sprite.isTriggered()) {
-                    endLevel = false;
-                    break;
-                }
-            }
-            if (endLevel) {
+            if (!objectIndex.isAnyTriggered()) {
                 endLevel();
             }
         }
         
-        //animate or remove Lemmings
-        for (Iterator<Lemming> it = lemmings.iterator(); it.hasNext(); ) {
-            Lemming l = it.next();
+        //animate Lemmings, then remove the dead and exited ones in one pass
+        for (int i = 0; i < lemmings.size(); i++) {
+            Lemming l = lemmings.get(i);
             l.animate();
+            lemmingGrid.update(l);
+        }
+        lemmings.removeIf(l -> {
             if (l.hasDied() || l.hasExited()) {
-                it.remove();
+                lemmingGrid.remove(l);
+                return true;
             }
-        }
+            return false;
+        });
         
         //animate or remove Explosions
         for (Iterator<Explosion> it = explosions.iterator(); it.hasNext(); ) {
@@ -1335,14 +1539,15 @@ public class GameController {
         
         
         // animate level objects
-        for (int n = 0; n < level.getNumSprObjects(); n++) {
-            SpriteObject spr = level.getSprObject(n);
-            if (spr != null) {
-                spr.getImageAnim(); // just to animate
-            }
-        }
+        objectIndex.animate();
         level.advanceBackgroundFrame();
         
+        // the keyframe for the next frame is taken before the 2nd try to
+        // assign a skill, since such an assignment is recorded for the next frame
+        if (!detached && keyframes.isDue(replayFrame + 1)) {
+            keyframes.add(createKeyframe(replayFrame + 1, keyframes.getNewest()));
+        }
+        
         if (!replayMode) {
             assignSkill(true); // 2nd try to assign skill
         }
@@ -1350,6 +1555,405 @@ public class GameController {
         replayFrame++;
     }
     
+    /**
+     * Go back in time by the given number of frames.
+     * @param frames number of frames
+     * @return true if the game was rewound
+     */
+    public static synchronized boolean rewind(final int frames) {
+        return travelTo(replayFrame - frames);
+    }
+    
+    /**
+     * Continue the level from the given frame. To go back in time, the
+     * newest keyframe at or before the frame is restored and the remaining
+     * frames are simulated again using the replay. If the game was not in
+     * replay mode, it switches to replay mode until the frame the rewind was
+     * started at, so the recorded actions are repeated unless the player
+     * takes over.
+     * @param frame replay frame to continue from (clamped to the oldest keyframe)
+     * @return true if the game continues from the given or the clamped frame
+     */
+    public static synchronized boolean travelTo(final int frame) {
+        if (gameState != State.LEVEL || (wasCheated && !replayMode)) {
+            // without a replay, the frames after the keyframe can't be simulated again
+            return false;
+        }
+        int target = Math.max(frame, Math.max(keyframes.getOldestFrame(), 0));
+        if (frame < replayFrame && target >= replayFrame) {
+            // all keyframes before the current frame were dropped
+            return false;
+        }
+        if (target < replayFrame) {
+            Keyframe k = keyframes.getAtOrBefore(target);
+            if (k == null) {
+                return false;
+            }
+            if (!replayMode) {
+                replay.addEndEvent(replayFrame);
+                replayMode = true;
+            }
+            keyframes.discardAfter(k.frame);
+            restoreKeyframe(k);
+        }
+        resimulating = true;
+        try {
+            while (replayFrame < target && gameState == State.LEVEL) {
+                updateCtr++;
+                simulateFrame();
+            }
+        } finally {
+            resimulating = false;
+        }
+        dirtyRegion.addAll(width, height);
+        return true;
+    }
+    
+    /**
+     * Create a game state from the current simulation state, e.g. to fork
+     * it for a solver.
+     * @return game state
+     * @throws IllegalStateException if no level is being played
+     */
+    public static synchronized GameState captureState() {
+        if (gameState != State.LEVEL) {
+            throw new IllegalStateException("No level is being played.");
+        }
+        return new GameState(createKeyframe(replayFrame, null));
+    }
+    
+    /**
+     * Notify the game that a level object was triggered by a Lemming.
+     * @param spr level object
+     */
+    static void objectTriggered(final SpriteObject spr) {
+        objectIndex.triggered(spr);
+    }
+    
+    /**
+     * Compute a hash over the state of all active Lemmings, e.g. to check
+     * that two simulations of the same level did not diverge.
+     * @return hash value
+     */
+    static synchronized int getLemmingStateHash() {
+        LemmingPool pool = new LemmingPool(lemmings.size());
+        for (Lemming l : lemmings) {
+            pool.add(l);
+        }
+        return pool.contentHash();
+    }
+    
+    /**
+     * Get the oldest frame that {@link #travelTo(int)} can still go back to
+     * without clamping the target.
+     * @return replay frame of the oldest keyframe or -1 if there is none
+     */
+    static int getOldestKeyframe() {
+        return (keyframes == null) ? -1 : keyframes.getOldestFrame();
+    }
+    
+    /**
+     * Get the number of frames simulated since the start of the level.
+     * @return replay frame
+     */
+    public static int getReplayFrame() {
+        return replayFrame;
+    }
+    
+    /**
+     * Simulate a detached game state. The keyframe is restored, the skill is
+     * assigned and the given number of frames is simulated without sound,
+     * replay recording or rewind keyframes. Since this reuses the single
+     * simulation, the state of the level being played is captured before
+     * and restored afterwards, and calls are serialized.
+     * @param k keyframe to start from
+     * @param lemming index of the Lemming to assign the skill to
+     * @param skill skill to assign or null
+     * @param frames number of frames to simulate
+     * @param assigned receives at index 0 whether the skill was assigned (may be null)
+     * @return keyframe of the resulting state, sharing unchanged tiles with k
+     * @throws IllegalStateException if the game isn't running headless
+     */
+    static synchronized Keyframe simulateDetached(final Keyframe k, final int lemming, final Lemming.Type skill,
+            final int frames, final boolean[] assigned) {
+        if (!headless) {
+            throw new IllegalStateException("Game states can only be simulated when running headless.");
+        }
+        Keyframe live = createKeyframe(replayFrame, k);
+        ReplayStream liveReplay = replay;
+        boolean liveReplayMode = replayMode;
+        State liveGameState = gameState;
+        TransitionState liveTransitionState = transitionState;
+        replay = new ReplayStream();
+        replayMode = false;
+        detached = true;
+        resimulating = true;
+        try {
+            restoreKeyframe(k);
+            gameState = k.levelEnded ? State.LEVEL_END : State.LEVEL;
+            if (skill != null && lemming >= 0 && lemming < lemmings.size()) {
+                lemmSkill = skill;
+                lemmSkillRequest = lemmings.get(lemming);
+                boolean ok = assignSkill(true);
+                if (assigned != null) {
+                    assigned[0] = ok;
+                }
+            }
+            for (int i = 0; i < frames && gameState == State.LEVEL; i++) {
+                updateCtr++;
+                simulateFrame();
+            }
+            return createKeyframe(replayFrame, k);
+        } finally {
+            replay = liveReplay;
+            restoreKeyframe(live);
+            replayMode = liveReplayMode;
+            stopReplayMode = false;
+            transitionState = liveTransitionState;
+            gameState = liveGameState;
+            detached = false;
+            resimulating = false;
+        }
+    }
+    
+    /**
+     * Create a keyframe from the current simulation state.
+     * @param frame replay frame the state belongs to
+     * @param previous keyframe to share unchanged tiles with, or null
+     * @return keyframe
+     */
+    private static Keyframe createKeyframe(final int frame, final Keyframe previous) {
+        LemmingPool lemmingStates = new LemmingPool(lemmings.size());
+        for (Lemming l : lemmings) {
+            lemmingStates.add(l);
+        }
+        List<SpriteObject> sprites = getAllSprObjects();
+        List<Sprite.State> spriteStates = new ArrayList<>(sprites.size());
+        int[] spriteLemmings = new int[sprites.size()];
+        for (int i = 0; i < sprites.size(); i++) {
+            SpriteObject spr = sprites.get(i);
+            Sprite.State state = spr.getState(spr.getVisOnTerrain());
+            spriteStates.add(state);
+            spriteLemmings[i] = lemmings.indexOf(state.getLemming());
+        }
+        Keyframe k = new Keyframe(frame,
+                stencil.snapshot(previous == null ? null : previous.stencil),
+                fgImage.snapshot(previous == null ? null : previous.fgImage),
+                lemmingStates, spriteStates, spriteLemmings);
+        k.updateCtr = updateCtr;
+        k.secondCtr = secondCtr;
+        k.releaseCtr = releaseCtr;
+        k.releaseRate = releaseRate;
+        k.releaseRateOld = releaseRateOld;
+        k.nuke = nuke;
+        k.nukeOld = nukeOld;
+        k.lemmSkill = lemmSkill;
+        k.lemmSkillOld = lemmSkillOld;
+        k.xPosOld = xPosOld;
+        k.yPosOld = yPosOld;
+        k.entranceOpened = entranceOpened;
+        k.entranceOpenCtr = entranceOpenCtr;
+        k.startSoundCtr = startSoundCtr;
+        k.startSoundPlayed = startSoundPlayed;
+        k.trapDoorCounter = TrapDoor.getCounter();
+        k.numExited = numExited;
+        k.numLemmingsOut = numLemmingsOut;
+        k.time = time;
+        k.timeElapsedTillLastExited = timeElapsedTillLastExited;
+        k.numClimbers = numClimbers;
+        k.numFloaters = numFloaters;
+        k.numBombers = numBombers;
+        k.numBlockers = numBlockers;
+        k.numBuilders = numBuilders;
+        k.numBashers = numBashers;
+        k.numMiners = numMiners;
+        k.numDiggers = numDiggers;
+        k.numSkillsUsed = numSkillsUsed;
+        k.nextLemmingId = lemmings.getNextId();
+        k.levelEnded = gameState != State.LEVEL;
+        return k;
+    }
+    
+    /**
+     * Reset the terrain, the level objects and the minimap to the state right
+     * after the level was painted. Only tiles modified since then are copied
+     * back, which is much faster than painting the level again.
+     */
+    private static void restoreLevelStart() {
+        stencil.restore(levelStart.stencil);
+        fgImage.restore(levelStart.fgImage);
+        List<SpriteObject> sprites = getAllSprObjects();
+        for (int i = 0; i < sprites.size(); i++) {
+            sprites.get(i).setState(levelStart.sprites.get(i), null);
+        }
+        Minimap.reset();
+    }
+    
+    /**
+     * Get the number of times a level was painted so far. Changes whenever
+     * the terrain was painted from scratch instead of being restored.
+     * @return paint count
+     */
+    static int getPaintCount() {
+        return paintCount;
+    }
+    
+    /**
+     * Restore the simulation state from a keyframe. The keyframe itself is
+     * not modified, so it can be restored again later.
+     * @param k keyframe
+     */
+    private static void restoreKeyframe(final Keyframe k) {
+        stencil.restore(k.stencil);
+        fgImage.restore(k.fgImage);
+        if (!detached) {
+            Minimap.refresh();
+        }
+        
+        List<Lemming> lemmingCopies = k.lemmings.toList();
+        lemmings.restore(lemmingCopies, k.nextLemmingId);
+        lemmingGrid.rebuild(lemmings);
+        List<SpriteObject> sprites = getAllSprObjects();
+        for (int i = 0; i < sprites.size(); i++) {
+            int idx = k.spriteLemmings[i];
+            sprites.get(i).setState(k.sprites.get(i), (idx >= 0) ? lemmingCopies.get(idx) : null);
+        }
+        objectIndex.rebuild(level);
+        explosions.clear();
+        vsfxs.clear();
+        lemmsUnderCursor.clear();
+        lemmSkillRequest = null;
+        
+        updateCtr = k.updateCtr;
+        secondCtr = k.secondCtr;
+        releaseCtr = k.releaseCtr;
+        releaseRate = k.releaseRate;
+        releaseRateOld = k.releaseRateOld;
+        calcReleaseBase();
+        nuke = k.nuke;
+        nukeOld = k.nukeOld;
+        lemmSkill = k.lemmSkill;
+        lemmSkillOld = k.lemmSkillOld;
+        if (lemmSkill != null && !detached) {
+            pressSkillIcon(lemmSkill);
+        }
+        xPosOld = k.xPosOld;
+        yPosOld = k.yPosOld;
+        entranceOpened = k.entranceOpened;
+        entranceOpenCtr = k.entranceOpenCtr;
+        startSoundCtr = k.startSoundCtr;
+        startSoundPlayed = k.startSoundPlayed;
+        TrapDoor.setCounter(k.trapDoorCounter);
+        numExited = k.numExited;
+        numLemmingsOut = k.numLemmingsOut;
+        time = k.time;
+        timeElapsedTillLastExited = k.timeElapsedTillLastExited;
+        numClimbers = k.numClimbers;
+        numFloaters = k.numFloaters;
+        numBombers = k.numBombers;
+        numBlockers = k.numBlockers;
+        numBuilders = k.numBuilders;
+        numBashers = k.numBashers;
+        numMiners = k.numMiners;
+        numDiggers = k.numDiggers;
+        numSkillsUsed = k.numSkillsUsed;
+        
+        replayFrame = k.frame;
+        stopReplayMode = false;
+        replay.seek(k.frame);
+        dirtyRegion.addAll(width, height);
+    }
+    
+    /**
+     * Get all level and background sprite objects in a fixed order.
+     * @return list of sprite objects
+     */
+    private static List<SpriteObject> getAllSprObjects() {
+        List<SpriteObject> sprites = new ArrayList<>(level.getNumSprObjects() + 32);
+        for (int i = 0; i < level.getNumSprObjects(); i++) {
+            SpriteObject spr = level.getSprObject(i);
+            if (spr != null) {
+                sprites.add(spr);
+            }
+        }
+        sprites.addAll(level.getBackgroundSprObjects());
+        return sprites;
+    }
+    
+    /**
+     * Check whether sound effects are played right now.
+     * @return true if sound is enabled and no frames are simulated again
+     */
+    public static boolean isSoundEnabled() {
+        return isOptionEnabled(Option.SOUND_ON) && !resimulating;
+    }
+    
+    /**
+     * Queue player input to be applied by the game thread at the start of the
+     * next update. This never blocks, so it can be called from any thread.
+     * @param cmd input command
+     */
+    public static void queueCommand(final InputCommand cmd) {
+        inputQueue.offer(cmd);
+    }
+    
+    /**
+     * Apply all queued input commands in the order they were queued.
+     * @return true if the game was rewound
+     */
+    private static synchronized boolean applyInputCommands() {
+        boolean rewound = false;
+        InputCommand cmd;
+        while ((cmd = inputQueue.poll()) != null) {
+            switch (cmd.getType()) {
+                case HANDLE_ICON:
+                    handleIconButton(cmd.getIcon());
+                    break;
+                case PRESS_ICON:
+                    pressIcon(cmd.getIcon());
+                    break;
+                case RELEASE_ICON:
+                    releaseIcon(cmd.getIcon());
+                    break;
+                case PRESS_PLUS:
+                    pressPlus(cmd.getKeyRepeatMask());
+                    break;
+                case RELEASE_PLUS:
+                    releasePlus(cmd.getKeyRepeatMask());
+                    break;
+                case PRESS_MINUS:
+                    pressMinus(cmd.getKeyRepeatMask());
+                    break;
+                case RELEASE_MINUS:
+                    releaseMinus(cmd.getKeyRepeatMask());
+                    break;
+                case NEXT_SKILL:
+                    nextSkill();
+                    break;
+                case PREVIOUS_SKILL:
+                    previousSkill();
+                    break;
+                case REWIND:
+                    rewound |= rewind(cmd.getFrames());
+                    break;
+                case SELECT_LEMMING:
+                    Lemming l = lemmUnderCursor(cmd.getCursorType());
+                    if (l != null) {
+                        requestSkill(l);
+                    } else if (cmd.isInLevel()) {
+                        stopReplayMode();
+                        if (!isOptionEnabled(SuperLemminiTooOption.DISABLE_FRAME_STEPPING)) {
+                            advanceFrame();
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return rewound;
+    }
+    
     /**
      * Request a skill change for a Lemming (currently selected skill).
      * @param lemm Lemming
@@ -1367,10 +1971,11 @@ public class GameController {
     /**
      * Assign the selected skill to the selected Lemming.
      * @param delete flag: reset the current skill request
+     * @return true if the skill was assigned
      */
-    private static synchronized void assignSkill(final boolean delete) {
+    private static synchronized boolean assignSkill(final boolean delete) {
         if (lemmSkillRequest == null || lemmSkill == null) {
-            return;
+            return false;
         }
         
         Lemming lemm = lemmSkillRequest;
@@ -1510,6 +2115,7 @@ public class GameController {
         } else if (!delete) {
             lemmSkillRequest = null;
         }
+        return canSet;
     }
     
     /**
@@ -1718,71 +2324,14 @@ public class GameController {
      */
     public static void fade() {
         if (Fader.getState() == Fader.State.BLACK && transitionState != TransitionState.NONE) {
-            switch (transitionState) {
-                case END_LEVEL:
-                    finishLevel();
-                    LemmCursor.setBox(false);
-                    LemminiFrame.getFrame().setCursor(LemmCursor.CursorType.NORMAL);
-                    break;
-                case TO_BRIEFING:
-                    gameState = State.BRIEFING;
-                    break;
-                case TO_DEBRIEFING:
-                    gameState = State.DEBRIEFING;
-                    break;
-                case TO_INTRO:
-                    gameState = State.INTRO;
-                    break;
-                case TO_LEVEL:
-                case REPLAY_LEVEL_NO_BRIEFING:
-                    setXPos(xPosCenter - Core.getDrawWidth() / 2);
-                    setYPos(yPosCenter - LemminiFrame.LEVEL_HEIGHT / 2);
-                    xPosOld = xPos;
-                    yPosOld = yPos;
-                    gameState = State.LEVEL;
-                    if (transitionState != TransitionState.REPLAY_LEVEL_NO_BRIEFING) {
-                        break;
-                    }
-                    /* falls through */
-                case RESTART_LEVEL:
-                case REPLAY_LEVEL:
-                    try {
-                        boolean doReplay = transitionState == TransitionState.REPLAY_LEVEL
-                                || transitionState == TransitionState.REPLAY_LEVEL_NO_BRIEFING;
-                        boolean showBriefing = transitionState != TransitionState.REPLAY_LEVEL_NO_BRIEFING;
-                        restartLevel(doReplay, showBriefing);
-                    } catch (ResourceException ex) {
-                        Core.resourceError(ex.getMessage());
-                    } catch (LemmException ex) {
-                        JOptionPane.showMessageDialog(LemminiFrame.getFrame(), ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-                        System.exit(1);
-                    }
-                    LemmCursor.setBox(false);
-                    LemminiFrame.getFrame().setCursor(LemmCursor.CursorType.NORMAL);
-                    break;
-                case LOAD_LEVEL:
-                case LOAD_REPLAY:
-                    try {
-                        changeLevel(nextLevelPack, nextRating, nextLevelNumber, transitionState == TransitionState.LOAD_REPLAY);
-                    } catch (ResourceException ex) {
-                        Core.resourceError(ex.getMessage());
-                    } catch (LemmException ex) {
-                        JOptionPane.showMessageDialog(LemminiFrame.getFrame(), ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-                        System.exit(1);
-                    }
-                    setTitle();
-                    LemminiFrame.getFrame().setCursor(LemmCursor.CursorType.NORMAL);
-                    break;
-                default:
-                    break;
-            }
-            if (transitionState == TransitionState.TO_LEVEL) {
-                Fader.setStep(Fader.FADE_STEP_SLOW);
-            } else {
-                Fader.setStep(Fader.FADE_STEP_FAST);
+            // the level and resources are replaced below, keep the renderer out until that is done
+            resourceLock.writeLock().lock();
+            try {
+                resourceGeneration++;
+                fadeBlack();
+            } finally {
+                resourceLock.writeLock().unlock();
             }
-            Fader.setState(Fader.State.IN);
-            transitionState = TransitionState.NONE;
         } else {
             Fader.fade();
         }
@@ -1792,6 +2341,97 @@ public class GameController {
         }
     }
     
+    /**
+     * Perform the pending transition while the screen is black.
+     */
+    private static void fadeBlack() {
+        switch (transitionState) {
+            case END_LEVEL:
+                finishLevel();
+                LemmCursor.setBox(false);
+                LemminiFrame.getFrame().setCursor(LemmCursor.CursorType.NORMAL);
+                break;
+            case TO_BRIEFING:
+                gameState = State.BRIEFING;
+                break;
+            case TO_DEBRIEFING:
+                gameState = State.DEBRIEFING;
+                break;
+            case TO_INTRO:
+                LevelPrefetcher.cancel();
+                gameState = State.INTRO;
+                break;
+            case TO_LEVEL:
+            case REPLAY_LEVEL_NO_BRIEFING:
+                setXPos(xPosCenter - Core.getDrawWidth() / 2);
+                setYPos(yPosCenter - LemminiFrame.LEVEL_HEIGHT / 2);
+                xPosOld = xPos;
+                yPosOld = yPos;
+                gameState = State.LEVEL;
+                if (transitionState != TransitionState.REPLAY_LEVEL_NO_BRIEFING) {
+                    break;
+                }
+                /* falls through */
+            case RESTART_LEVEL:
+            case REPLAY_LEVEL:
+                try {
+                    boolean doReplay = transitionState == TransitionState.REPLAY_LEVEL
+                            || transitionState == TransitionState.REPLAY_LEVEL_NO_BRIEFING;
+                    boolean showBriefing = transitionState != TransitionState.REPLAY_LEVEL_NO_BRIEFING;
+                    restartLevel(doReplay, showBriefing);
+                } catch (ResourceException ex) {
+                    Core.resourceError(ex.getMessage());
+                } catch (LemmException ex) {
+                    JOptionPane.showMessageDialog(LemminiFrame.getFrame(), ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    System.exit(1);
+                }
+                LemmCursor.setBox(false);
+                LemminiFrame.getFrame().setCursor(LemmCursor.CursorType.NORMAL);
+                break;
+            case LOAD_LEVEL:
+            case LOAD_REPLAY:
+                try {
+                    changeLevel(nextLevelPack, nextRating, nextLevelNumber, transitionState == TransitionState.LOAD_REPLAY);
+                } catch (ResourceException ex) {
+                    Core.resourceError(ex.getMessage());
+                } catch (LemmException ex) {
+                    JOptionPane.showMessageDialog(LemminiFrame.getFrame(), ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    System.exit(1);
+                }
+                setTitle();
+                LemminiFrame.getFrame().setCursor(LemmCursor.CursorType.NORMAL);
+                break;
+            default:
+                break;
+        }
+        if (transitionState == TransitionState.TO_LEVEL) {
+            Fader.setStep(Fader.FADE_STEP_SLOW);
+        } else {
+            Fader.setStep(Fader.FADE_STEP_FAST);
+        }
+        Fader.setState(Fader.State.IN);
+        transitionState = TransitionState.NONE;
+    }
+    
+    /**
+     * Get the lock the renderer has to hold while it draws a frame. The
+     * level and the resources are only replaced while it isn't held.
+     * @return read lock
+     */
+    public static Lock getRenderLock() {
+        return resourceLock.readLock();
+    }
+    
+    /**
+     * Get the number of times the level or the resources were replaced. A
+     * {@link FrameSnapshot} taken for an older generation refers to images
+     * that are no longer in use and must not be drawn.
+     * @return resource generation
+     */
+    public static int getResourceGeneration() {
+        return resourceGeneration;
+    }
+    
     private static void setTitle() {
         int numLemmings = level.getNumLemmings();
         String lemmingWord = (numLemmings == 1) ? "Lemming" : "Lemmings";
@@ -1846,7 +2486,9 @@ public class GameController {
     }
     
     public static synchronized void drawLemmings(final GraphicsContext g) {
-        lemmings.stream().forEachOrdered(l -> {
+        lemmingQuery.clear();
+        queryVisibleLemmings(lemmingQuery);
+        lemmingQuery.forEach(l -> {
             //draw lemming.
         	int lx = l.screenX();
             int ly = l.screenY();
@@ -1878,53 +2520,116 @@ public class GameController {
                 }
             }
         });
-    }
-    
-    public static synchronized void drawMinimapLemmings(final GraphicsContext g, final int x, final int y) {
-        lemmings.stream().forEachOrdered(l -> {
-            int lx = l.footX();
-            int ly = l.footY();
-            // draw pixel in minimap
-            Minimap.drawLemming(g, x, y, lx, ly);
-        });
-    }
-
-    /**
-     * Draw the original SuperLemmini icon bar, and accompanying skill/release rate values
-     * @param g graphics object
-     * @param x x coordinate in pixels
-     * @param y y coordinate in pixels
-     */
-    public static void drawIconsAndCounters(final GraphicsContext g, final int iconsX, final int iconsY, final int countersX, final int countersY) {
-    	drawIcons(g, iconsX, iconsY);
-    	drawCounters(g, countersX, countersY);
-/*
-    	if (!GameController.isOptionEnabled(GameController.SuperLemminiTooOption.ENHANCED_ICONBAR)) {
-        	//the enhanced icon bar should have the counters built into it.
-        	drawCounters(g, countersX, countersY);
+        lemmingQuery.clear();
+    }
+    
+    /**
+     * Find the Lemmings that may be visible at the current scroll position,
+     * including those whose countdown or selection image may be visible.
+     * @param out list the Lemmings are added to, in the order of the Lemming list
+     */
+    private static void queryVisibleLemmings(final List<Lemming> out) {
+        // images are drawn less than a cell away from the foot
+        lemmingGrid.query(xPos - LemmingGrid.CELL_SIZE, yPos - LemmingGrid.CELL_SIZE,
+                xPos + Core.getDrawWidth() + LemmingGrid.CELL_SIZE, yPos + LemminiFrame.LEVEL_HEIGHT + LemmingGrid.CELL_SIZE,
+                out);
+    }
+    
+    /**
+     * Take a snapshot of everything the renderer needs from the current
+     * frame, so that it can be drawn without holding this class's lock.
+     * Must be called by the thread that runs the simulation, between two
+     * updates.
+     * @return frame snapshot
+     */
+    public static FrameSnapshot createSnapshot() {
+        List<FrameSnapshot.DrawItem> behind = new ArrayList<>(64);
+        List<FrameSnapshot.DrawItem> front = new ArrayList<>(64);
+        List<FrameSnapshot.DrawItem> lemms = new ArrayList<>(lemmings.size() + 8);
+        List<FrameSnapshot.DrawItem> exps = new ArrayList<>(explosions.size() * 24);
+        List<FrameSnapshot.DrawItem> sfx = new ArrayList<>(vsfxs.size());
+        List<FrameSnapshot.DrawItem> counters = new ArrayList<>(16);
+        List<FrameSnapshot.DrawItem> text = new ArrayList<>(16);
+        int[] feet = new int[lemmings.size() * 2];
+        TiledImage.Snapshot terrain = null;
+        LemmImage minimapImage = null;
+        LemmImage iconBar = null;
+        String lemmingName = null;
+        int numLemmsUnder = 0;
+        int lemmX = 0;
+        int lemmY = 0;
+        int numLemmingsMax = 0;
+        int numUnreleased = 0;
+        String timeString = StringUtils.EMPTY;
+        if (level != null && (gameState == State.LEVEL || gameState == State.LEVEL_END)) {
+            level.captureObjects(behind, front, xPos, yPos, Core.getDrawWidth(), LemminiFrame.LEVEL_HEIGHT);
+            lemmingQuery.clear();
+            queryVisibleLemmings(lemmingQuery);
+            for (Lemming l : lemmingQuery) {
+                lemms.add(new FrameSnapshot.DrawItem(l.getImage(), l.screenX(), l.screenY()));
+                LemmImage cd = l.getCountdown();
+                if (cd != null) {
+                    lemms.add(new FrameSnapshot.DrawItem(cd, l.midX() - cd.getWidth() / 2, l.screenY() - cd.getHeight()));
+                }
+                LemmImage sel = l.getSelectImg();
+                if (sel != null) {
+                    lemms.add(new FrameSnapshot.DrawItem(sel, l.midX() - sel.getWidth() / 2, l.screenY() - sel.getHeight()));
+                }
+            }
+            lemmingQuery.clear();
+            // the minimap shows the whole level
+            int i = 0;
+            for (Lemming l : lemmings) {
+                feet[i++] = l.footX();
+                feet[i++] = l.footY();
+            }
+            explosions.stream().forEachOrdered(e -> e.capture(exps));
+            vsfxs.stream().forEachOrdered(v -> sfx.add(new FrameSnapshot.DrawItem(v.getImage(), v.screenX(), v.screenY())));
+            Lemming lemm = lemmUnderCursor(LemmCursor.getType());
+            if (lemm != null) {
+                lemmingName = lemm.getName();
+                numLemmsUnder = getNumLemmsUnderCursor();
+                lemmX = lemm.footX();
+                lemmY = lemm.midY();
+            }
+            numLemmingsMax = getNumLemmingsMax();
+            numUnreleased = getNumLemmingsUnreleased();
+            timeString = getTimeString();
+            if (fgImage != null) {
+                // only the tiles in the areas modified since the previous frame are copied
+                renderTerrain = fgImage.snapshot(renderTerrain, dirtyRegion.take());
+                terrain = renderTerrain;
+            }
+            minimapImage = Minimap.copyImage();
+            iconBar = captureIcons();
+            captureCounters(counters);
+        } else {
+            renderTerrain = null;
+            if (gameState == State.INTRO || gameState == State.BRIEFING || gameState == State.DEBRIEFING) {
+                TextScreen.capture(text, 0, 0, Core.getDrawWidth(), Core.getDrawHeight());
+            }
         }
-        */
+        return new FrameSnapshot(gameState, updateCtr, xPos, yPos, Minimap.getXPos(),
+                getNumLemmings(), getNumExited(), getNumToRescue(), numLemmingsMax, numUnreleased, timeString,
+                lemmingName, numLemmsUnder, lemmX, lemmY, getReplayImage(), behind, front, lemms, exps, sfx, feet,
+                terrain, minimapImage, iconBar, counters, text, Fader.getFadeColor(), resourceGeneration);
     }
     
     /**
-     * Draw icon bar.
-     * @param g graphics object
-     * @param x x coordinate in pixels
-     * @param y y coordinate in pixels
+     * Animate the icon bar and copy it.
+     * @return copy of the icon bar
      */
-    private static void drawIcons(final GraphicsContext g, final int x, final int y) {
-        //System.out.println("drawing IconBar: " + x + "/" + y);
-    	Icons.Animate();
-    	g.drawImage(Icons.getImg(), x, y);
+    private static LemmImage captureIcons() {
+        Icons.Animate();
+        return new LemmImage(Icons.getImg());
     }
     
     /**
-     * Draw the skill/release rate values
-     * @param g graphics object
-     * @param x x offset in pixels
-     * @param y y offset in pixels
+     * Capture the skill/release rate values. The items are positioned
+     * relative to the counter bar.
+     * @param items list to add the counters to
      */
-    private static void drawCounters(final GraphicsContext g, final int x, final int y) {
+    private static void captureCounters(final List<FrameSnapshot.DrawItem> items) {
         // draw counters
         Integer val = NumberUtils.INTEGER_ZERO;
         //TODO: match these up with wherever the actual 
@@ -1973,11 +2678,10 @@ public class GameController {
                 }
             }
             LemmImage numImage = NumFont.numImage(val);
-            int centerX = x + Icons.getIconWidth() * i + Icons.getIconWidth() / 2;
-            g.setColor(Color.BLACK);
-            g.fillRect(centerX-8, y, 16, 11);
-            g.fillRect(centerX-9, y+1, 18, 9);
-            g.drawImage(numImage, centerX - numImage.getWidth() / 2, y);
+            int centerX = Icons.getIconWidth() * i + Icons.getIconWidth() / 2;
+            items.add(new FrameSnapshot.DrawItem(Color.BLACK, centerX - 8, 0, 16, 11));
+            items.add(new FrameSnapshot.DrawItem(Color.BLACK, centerX - 9, 1, 18, 9));
+            items.add(new FrameSnapshot.DrawItem(numImage, centerX - numImage.getWidth() / 2, 0));
         }
     }
     
@@ -2386,6 +3090,41 @@ public class GameController {
         Icons.press(t);
     }
     
+    /**
+     * Press the icon of a skill.
+     * @param skill skill
+     */
+    private static void pressSkillIcon(final Lemming.Type skill) {
+        switch (skill) {
+            case CLIMBER:
+                pressIcon(Icons.IconType.CLIMB);
+                break;
+            case FLOATER:
+                pressIcon(Icons.IconType.FLOAT);
+                break;
+            case FLAPPER:
+                pressIcon(Icons.IconType.BOMB);
+                break;
+            case BLOCKER:
+                pressIcon(Icons.IconType.BLOCK);
+                break;
+            case BUILDER:
+                pressIcon(Icons.IconType.BUILD);
+                break;
+            case BASHER:
+                pressIcon(Icons.IconType.BASH);
+                break;
+            case MINER:
+                pressIcon(Icons.IconType.MINE);
+                break;
+            case DIGGER:
+                pressIcon(Icons.IconType.DIG);
+                break;
+            default:
+                break;
+        }
+    }
+    
     /**
      * Icon was released.
      * @param t icon type
@@ -2438,7 +3177,13 @@ public class GameController {
     
     public static synchronized void updateLemmsUnderCursor() {
         lemmsUnderCursor.clear();
-        lemmings.stream().forEachOrdered(l -> {
+        // the cursor hits the middle of a Lemming, which is less than a cell above its foot
+        int cx = LemmCursor.getX() + xPos;
+        int cy = LemmCursor.getY() + yPos;
+        lemmingQuery.clear();
+        lemmingGrid.query(cx - LemmCursor.HIT_DISTANCE, cy - LemmCursor.HIT_DISTANCE,
+                cx + LemmCursor.HIT_DISTANCE + 1, cy + LemmCursor.HIT_DISTANCE + LemmingGrid.CELL_SIZE, lemmingQuery);
+        for (Lemming l : lemmingQuery) {
             int lx = l.screenX();
             int ly = l.screenY();
             if (lx + l.width() >= xPos && lx < xPos + Core.getDrawWidth()
@@ -2447,7 +3192,8 @@ public class GameController {
                     lemmsUnderCursor.add(l);
                 }
             }
-        });
+        }
+        lemmingQuery.clear();
     }
     
     /**
@@ -2460,6 +3206,7 @@ public class GameController {
     
     public static synchronized void addLemming(Lemming l) {
         lemmings.add(l);
+        lemmingGrid.add(l);
     }
     
     /**
@@ -2583,7 +3330,7 @@ public class GameController {
      * Get foreground image of level.
      * @return foreground image of level
      */
-    public static LemmImage getFgImage() {
+    public static TiledImage getFgImage() {
         return fgImage;
     }
     
@@ -2595,6 +3342,17 @@ public class GameController {
         return stencil;
     }
     
+    /**
+     * Get the areas of the level that were modified by terrain masks,
+     * restores and rewinds (or the whole level right after it was
+     * initialized). Areas accumulate over frames, e.g. while fast forwarding,
+     * until {@link #createSnapshot()} takes them.
+     * @return dirty region
+     */
+    public static DirtyRegion getDirtyRegion() {
+        return dirtyRegion;
+    }
+    
     /**
      * Get small preview image of level.
      * @return small preview image of level
@@ -2634,13 +3392,22 @@ public class GameController {
     
     public static LevelRecord getLevelRecord() {
         if (!wasLost() && !wasCheated) {
-            return new LevelRecord(true, numExited, numSkillsUsed,
-                    timed ? (timeLimit - timeElapsedTillLastExited) : time, getScore());
+            return getOutcome();
         } else {
             return LevelRecord.BLANK_LEVEL_RECORD;
         }
     }
     
+    /**
+     * Get the result of the current level, whether it was won or not and
+     * regardless of cheating.
+     * @return level record
+     */
+    static synchronized LevelRecord getOutcome() {
+        return new LevelRecord(!wasLost(), numExited, numSkillsUsed,
+                timed ? (timeLimit - timeElapsedTillLastExited) : time, getScore());
+    }
+    
     public static int getTimesFailed() {
         return timesFailed;
     }
@@ -2765,6 +3532,22 @@ class TrapDoor {
         counter = 0;
     }
     
+    /**
+     * Get the position in the entrance order.
+     * @return index into the entrance order of the next entrance
+     */
+    static int getCounter() {
+        return counter;
+    }
+    
+    /**
+     * Set the position in the entrance order.
+     * @param c index into the entrance order of the next entrance
+     */
+    static void setCounter(final int c) {
+        counter = c;
+    }
+    
     /**
      * Get index of next entrance.
      * @return index of next entrance
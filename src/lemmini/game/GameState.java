@@ -0,0 +1,139 @@
+package lemmini.game;
+
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Handle to a copy of the in-level game state that can be forked and
+ * stepped independently of other copies, e.g. by solvers and level
+ * validation tools.<br>
+ * Each handle refers to an immutable {@link Keyframe}, so forking is free
+ * and forks share everything until they are stepped. Stepping restores the
+ * state into the (single, static) simulation of {@link GameController},
+ * simulates and captures the result again; stencil and foreground tiles
+ * that were not modified are shared with the previous state. Afterwards the
+ * level being played is restored to the state it was in before. Since the
+ * simulation is reused, steps of different handles are serialized, even
+ * when called from several threads, and stepping is only possible when the
+ * game runs headless, see {@link HeadlessGame}.
+ * <br>
+ * Create the first state with {@link GameController#captureState()}.
+ */
+public final class GameState {
+
+    private Keyframe keyframe;
+
+    GameState(final Keyframe keyframe) {
+        this.keyframe = keyframe;
+    }
+
+    /**
+     * Create an independent copy of this state.
+     * @return copy of this state
+     */
+    public GameState fork() {
+        return new GameState(keyframe);
+    }
+
+    /**
+     * Advance this state by the given number of frames or until the level
+     * ends.
+     * @param frames number of frames
+     * @throws IllegalStateException if the game isn't running headless
+     */
+    public void step(final int frames) {
+        if (!keyframe.levelEnded && frames > 0) {
+            keyframe = GameController.simulateDetached(keyframe, -1, null, frames, null);
+        }
+    }
+
+    /**
+     * Assign a skill to a Lemming with the same rules as a click in the
+     * game. The assignment takes effect at the start of the next frame.
+     * @param lemming index of the Lemming in {@link #getLemmings()}
+     * @param skill skill to assign
+     * @return true if the skill was assigned
+     * @throws IllegalStateException if the game isn't running headless
+     */
+    public boolean assignSkill(final int lemming, final Lemming.Type skill) {
+        if (keyframe.levelEnded || lemming < 0 || lemming >= keyframe.lemmings.size()) {
+            return false;
+        }
+        boolean[] assigned = new boolean[1];
+        Keyframe k = GameController.simulateDetached(keyframe, lemming, skill, 0, assigned);
+        if (assigned[0]) {
+            keyframe = k;
+        }
+        return assigned[0];
+    }
+
+    /**
+     * Get the number of frames since the start of the level.
+     * @return frame number
+     */
+    public int getFrame() {
+        return keyframe.frame;
+    }
+
+    /**
+     * Get copies of all active Lemmings.
+     * @return list of Lemmings in the order used by {@link #assignSkill(int, Lemming.Type)}
+     */
+    public List<Lemming> getLemmings() {
+        return Collections.unmodifiableList(keyframe.lemmings.toList());
+    }
+
+    public int getNumLemmings() {
+        return keyframe.lemmings.size();
+    }
+
+    public int getNumLemmingsOut() {
+        return keyframe.numLemmingsOut;
+    }
+
+    public int getNumExited() {
+        return keyframe.numExited;
+    }
+
+    public int getNumSkillsUsed() {
+        return keyframe.numSkillsUsed;
+    }
+
+    /**
+     * Get the time shown in the game.
+     * @return time left for timed levels, time elapsed otherwise (in seconds)
+     */
+    public int getTime() {
+        return keyframe.time;
+    }
+
+    /**
+     * Check whether the level ended in this state.
+     * @return true if the level ended
+     */
+    public boolean isFinished() {
+        return keyframe.levelEnded;
+    }
+
+    /**
+     * Check whether the level ended and enough Lemmings were saved.
+     * @return true if the level was completed
+     */
+    public boolean isCompleted() {
+        return keyframe.levelEnded && keyframe.numExited >= GameController.getNumToRescue();
+    }
+}
@@ -0,0 +1,111 @@
+package lemmini.game;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Command line tool that measures how fast {@link GameState}s can be forked
+ * and stepped.<br>
+ * The level is played for a number of frames to get some Lemmings out, then
+ * the state is forked repeatedly. Every fork gets a different skill
+ * assignment, so forks modify the terrain independently, and is stepped on
+ * its own. All states share the single simulation of the game, so steps are
+ * serialized and the measured throughput doesn't scale with threads.
+ * <br>
+ * Usage: <code>GameStateBenchmark [--warmup=N] [--forks=N] [--frames=N] levelPack rating level</code>
+ * (all indices zero-based).
+ */
+public final class GameStateBenchmark {
+
+    private static final Lemming.Type[] SKILLS = {
+        Lemming.Type.DIGGER, Lemming.Type.BASHER, Lemming.Type.MINER, Lemming.Type.BUILDER, Lemming.Type.BLOCKER
+    };
+
+    private GameStateBenchmark() {
+    }
+
+    public static void main(final String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int warmup = 300;
+        int forks = 1000;
+        int frames = 100;
+        List<String> params = new ArrayList<>(args.length);
+        for (String arg : args) {
+            if (arg.startsWith("--warmup=")) {
+                warmup = Integer.parseInt(arg.substring("--warmup=".length()));
+            } else if (arg.startsWith("--forks=")) {
+                forks = Integer.parseInt(arg.substring("--forks=".length()));
+            } else if (arg.startsWith("--frames=")) {
+                frames = Integer.parseInt(arg.substring("--frames=".length()));
+            } else {
+                params.add(arg);
+            }
+        }
+        if (params.size() != 3) {
+            System.err.println("usage: GameStateBenchmark [--warmup=N] [--forks=N] [--frames=N] levelPack rating level");
+            System.exit(2);
+        }
+
+        try {
+            HeadlessGame.init(URLDecoder.decode(GameStateBenchmark.class.getProtectionDomain().getCodeSource().getLocation().getFile(), "UTF-8"));
+            GameController.startLevel(Integer.parseInt(params.get(0)), Integer.parseInt(params.get(1)),
+                    Integer.parseInt(params.get(2)), false);
+        } catch (LemmException | ResourceException | IOException | NumberFormatException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(2);
+        }
+        for (int i = 0; i < warmup && GameController.getGameState() == GameController.State.LEVEL; i++) {
+            GameController.update();
+        }
+        GameState root = GameController.captureState();
+        System.out.printf(Locale.ROOT, "%s: state at frame %d with %d lemmings%n",
+                GameController.getLevel().getLevelName().trim(), root.getFrame(), root.getNumLemmings());
+
+        // forking alone
+        GameState[] states = new GameState[forks];
+        long start = System.nanoTime();
+        for (int i = 0; i < forks; i++) {
+            states[i] = root.fork();
+        }
+        long forkNanos = System.nanoTime() - start;
+
+        // assigning a skill and stepping each fork
+        int assigned = 0;
+        long steppedFrames = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < forks; i++) {
+            GameState s = states[i];
+            if (s.getNumLemmings() > 0 && s.assignSkill(i % s.getNumLemmings(), SKILLS[i % SKILLS.length])) {
+                assigned++;
+            }
+            int before = s.getFrame();
+            s.step(frames);
+            steppedFrames += s.getFrame() - before;
+        }
+        long stepNanos = System.nanoTime() - start;
+
+        System.out.printf(Locale.ROOT, "%d forks in %.2f ms: %.0f forks/s%n",
+                forks, forkNanos / 1e6, forks / (forkNanos / 1e9));
+        System.out.printf(Locale.ROOT, "%d forks (%d skills assigned) stepped %d frames in %.2f ms: %.0f frames/s%n",
+                forks, assigned, steppedFrames, stepNanos / 1e6, steppedFrames / (stepNanos / 1e9));
+        System.out.println("(steps are serialized on the single game simulation, including restoring the played state)");
+        System.exit(0);
+    }
+}
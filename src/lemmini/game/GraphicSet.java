@@ -204,6 +204,40 @@ public class GraphicSet {
         });
     }
     
+    /**
+     * Estimate the memory used by the images and masks loaded so far.
+     * @return size in bytes
+     */
+    public long getMemorySize() {
+        long size = 0;
+        for (LvlObject obj : objects) {
+            for (List<LemmImage> frames : obj.images.values()) {
+                for (LemmImage frame : frames) {
+                    size += getImageSize(frame);
+                }
+            }
+            size += getMaskSize(obj.mask);
+        }
+        for (Terrain ter : terrain) {
+            size += getImageSize(ter.image) + getMaskSize(ter.mask) + getMaskSize(ter.steelMask);
+        }
+        return size;
+    }
+    
+    private static long getImageSize(LemmImage image) {
+        return (image != null) ? (long) image.getWidth() * image.getHeight() * 4 : 0;
+    }
+    
+    private static long getMaskSize(boolean[][] mask) {
+        long size = 0;
+        if (mask != null) {
+            for (boolean[] row : mask) {
+                size += row.length;
+            }
+        }
+        return size;
+    }
+    
     public String getName() {
         return name;
     }
@@ -381,37 +415,59 @@ public class GraphicSet {
             return steel;
         }
         
-        public LemmImage getImage() throws ResourceException {
-            if (image == null) {
-                Resource res;
+        /**
+         * Find the resource the image of this terrain piece is loaded from.
+         * @return image resource
+         * @throws ResourceException if the image doesn't exist
+         */
+        public Resource getImageResource() throws ResourceException {
+            if (index >= 0) {
+                return Core.findResource(
+                        pathPrefix + "_" + index + ".png",
+                        Core.IMAGE_EXTENSIONS);
+            } else {
+                return Core.findResource(pathPrefix + ".png",
+                        Core.IMAGE_EXTENSIONS);
+            }
+        }
+        
+        /**
+         * Find the resource the mask of this terrain piece is loaded from.
+         * @return mask resource, or null if the mask is taken from the image
+         */
+        public Resource getMaskResource() {
+            try {
                 if (index >= 0) {
-                    res = Core.findResource(
-                            pathPrefix + "_" + index + ".png",
+                    return Core.findResource(
+                            pathPrefix + "m_" + index + ".png",
                             Core.IMAGE_EXTENSIONS);
                 } else {
-                    res = Core.findResource(pathPrefix + ".png",
+                    return Core.findResource(pathPrefix + "m.png",
                             Core.IMAGE_EXTENSIONS);
                 }
-                image = Core.loadLemmImage(res);
+            } catch (ResourceException ex) {
+                return null;
+            }
+        }
+        
+        public LemmImage getImage() throws ResourceException {
+            if (image == null) {
+                image = Core.loadLemmImage(getImageResource());
             }
             return image;
         }
         
         public boolean[][] getMask() throws ResourceException {
             if (mask == null) {
-                LemmImage sourceImage;
-                try {
-                    Resource res;
-                    if (index >= 0) {
-                        res = Core.findResource(
-                                pathPrefix + "m_" + index + ".png",
-                                Core.IMAGE_EXTENSIONS);
-                    } else {
-                        res = Core.findResource(pathPrefix + "m.png",
-                                Core.IMAGE_EXTENSIONS);
+                LemmImage sourceImage = null;
+                Resource res = getMaskResource();
+                if (res != null) {
+                    try {
+                        sourceImage = Core.loadLemmImage(res);
+                    } catch (ResourceException ex) {
                     }
-                    sourceImage = Core.loadLemmImage(res);
-                } catch (ResourceException ex) {
+                }
+                if (sourceImage == null) {
                     sourceImage = getImage();
                 }
                 mask = new boolean[sourceImage.getHeight()][sourceImage.getWidth()];
@@ -0,0 +1,165 @@
+package lemmini.game;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Process-wide cache of {@link GraphicSet}s, so that consecutive levels
+ * using the same style share its decoded images and masks instead of
+ * loading them again.<br>
+ * Styles are identified by their name and the mods that were active when
+ * they were loaded, since mods can replace style files. Every level holds
+ * a reference to the styles it uses from {@link #acquire(String)} until it
+ * calls {@link #release(GraphicSet)}. Styles that are no longer referenced
+ * stay in the cache and are evicted least recently used first once the
+ * estimated memory of all cached styles exceeds the budget. Referenced
+ * styles are never evicted, so the budget may be exceeded while a level
+ * uses many large styles.
+ */
+final class GraphicSetCache {
+
+    private static final class Entry {
+        private final GraphicSet style;
+        private int references;
+
+        private Entry(final GraphicSet style) {
+            this.style = style;
+        }
+    }
+
+    /** cached styles in access order, least recently used first */
+    private static final Map<String, Entry> ENTRIES = new LinkedHashMap<>(16, 0.75f, true);
+    /** entries by style, to release styles without knowing their key */
+    private static final Map<GraphicSet, Entry> BY_STYLE = new IdentityHashMap<>(16);
+    /** maximum estimated memory of all cached styles in bytes */
+    private static long budget;
+    private static int hits;
+    private static int misses;
+    private static int evictions;
+
+    private GraphicSetCache() {
+    }
+
+    /**
+     * Initialize the cache and remove all styles that aren't referenced.
+     * @param budgetBytes maximum estimated memory of all cached styles in
+     *                    bytes, 0 to keep only styles that are in use
+     */
+    static synchronized void init(final long budgetBytes) {
+        budget = Math.max(budgetBytes, 0);
+        evict();
+    }
+
+    /**
+     * Get a style from the cache, loading it if necessary, and add a
+     * reference to it.
+     * @param name style name
+     * @return style
+     * @throws LemmException
+     * @throws ResourceException
+     */
+    static synchronized GraphicSet acquire(final String name) throws LemmException, ResourceException {
+        String key = getKey(name);
+        Entry e = ENTRIES.get(key);
+        if (e == null) {
+            misses++;
+            e = new Entry(new GraphicSet(name));
+            ENTRIES.put(key, e);
+            BY_STYLE.put(e.style, e);
+        } else {
+            hits++;
+        }
+        e.references++;
+        return e.style;
+    }
+
+    /**
+     * Remove a reference from a style and evict styles if the cache exceeds
+     * its budget.
+     * @param style style returned by {@link #acquire(String)}
+     */
+    static synchronized void release(final GraphicSet style) {
+        Entry e = BY_STYLE.get(style);
+        if (e == null || e.references <= 0) {
+            return;
+        }
+        e.references--;
+        evict();
+    }
+
+    /**
+     * Get the statistics of this session and the current size of the cache.
+     * @return statistics as a single line of text
+     */
+    static synchronized String getStats() {
+        int referenced = 0;
+        for (Entry e : ENTRIES.values()) {
+            if (e.references > 0) {
+                referenced++;
+            }
+        }
+        return String.format(Locale.ROOT,
+                "style cache: %d hits, %d misses, %d evicted, %d styles (%d in use) with %d of %d KB",
+                hits, misses, evictions, ENTRIES.size(), referenced, getMemorySize() / 1024, budget / 1024);
+    }
+
+    /**
+     * Evict unreferenced styles, least recently used first, until the cache
+     * fits into its budget.
+     */
+    private static void evict() {
+        long size = getMemorySize();
+        for (Iterator<Entry> it = ENTRIES.values().iterator(); it.hasNext() && size > budget; ) {
+            Entry e = it.next();
+            if (e.references == 0) {
+                size -= e.style.getMemorySize();
+                it.remove();
+                BY_STYLE.remove(e.style);
+                evictions++;
+            }
+        }
+    }
+
+    private static long getMemorySize() {
+        long size = 0;
+        for (Entry e : ENTRIES.values()) {
+            size += e.style.getMemorySize();
+        }
+        return size;
+    }
+
+    /**
+     * Get the cache key of a style.
+     * @param name style name
+     * @return style name and active mods
+     */
+    private static String getKey(final String name) {
+        StringBuilder sb = new StringBuilder(name.toLowerCase(Locale.ROOT));
+        List<String> mods = GameController.getModPaths();
+        if (mods != null) {
+            for (String mod : mods) {
+                // mod paths are read from single lines of an INI file
+                sb.append('\n').append(mod);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,364 @@
+package lemmini.game;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import org.apache.commons.lang3.StringUtils;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Runs the game logic of a level without window, sound output or music.<br>
+ * The level is started without briefing, an optional replay is played back
+ * and {@link GameController#update()} is called as fast as possible until
+ * the level ends or a frame limit is reached.
+ * <br>
+ * Usage: <code>HeadlessGame [--frames=N] replay.rpl</code> or
+ * <code>HeadlessGame [--frames=N] levelPack rating level [replay.rpl]</code>
+ * (all indices zero-based). The exit code is 0 if the level was completed,
+ * 1 if it was lost and 2 on errors.
+ * <br>
+ * With <code>--worker</code>, replay file names are read from stdin, one per
+ * line, and for each one a line starting with {@link #RESULT_PREFIX} or
+ * {@link #ERROR_PREFIX} is written to stdout. This is used by
+ * {@link ReplayVerifier}.
+ */
+public final class HeadlessGame {
+
+    /** default frame limit: 100 minutes of game time */
+    public static final int DEFAULT_MAX_FRAMES = (int) (100L * 60 * 1_000_000_000L / GameController.NANOSEC_PER_FRAME);
+
+    /** prefix of result lines written in worker mode */
+    public static final String RESULT_PREFIX = "RESULT\t";
+    /** prefix of error lines written in worker mode */
+    public static final String ERROR_PREFIX = "ERROR\t";
+
+    private static boolean initialized = false;
+
+    private HeadlessGame() {
+    }
+
+    /**
+     * Initialize the core and the game controller in headless mode. Calling
+     * this more than once has no effect.
+     * @param workingFolder folder (or jar) the game was started from
+     * @throws LemmException
+     * @throws IOException
+     * @throws ResourceException
+     */
+    public static synchronized void init(final String workingFolder) throws LemmException, IOException, ResourceException {
+        if (initialized) {
+            return;
+        }
+        if (!Core.init(false, workingFolder)) {
+            throw new LemmException("Core initialization failed.");
+        }
+        GameController.setOption(GameController.Option.SOUND_ON, false);
+        GameController.setOption(GameController.Option.MUSIC_ON, false);
+        GameController.init(true);
+        initialized = true;
+    }
+
+    /**
+     * Play back a replay in the level it was recorded in.
+     * @param replayFile replay file
+     * @param maxFrames maximum number of frames to simulate
+     * @return outcome of the level
+     * @throws LemmException
+     * @throws ResourceException
+     */
+    public static synchronized Result playReplay(final Path replayFile, final int maxFrames)
+            throws LemmException, ResourceException {
+        startReplay(replayFile);
+        return run(maxFrames);
+    }
+
+    /**
+     * Start the level a replay was recorded in and prepare to play back the
+     * replay.
+     * @param replayFile replay file
+     * @throws LemmException
+     * @throws ResourceException
+     */
+    static synchronized void startReplay(final Path replayFile) throws LemmException, ResourceException {
+        ReplayLevelInfo rli = GameController.loadReplay(replayFile);
+        if (rli == null) {
+            throw new LemmException("Wrong format: " + replayFile);
+        }
+        int[] lvl = GameController.findReplayLevel(rli);
+        if (lvl == null) {
+            throw new LemmException("Level specified in replay file does not exist: " + replayFile);
+        }
+        GameController.startLevel(lvl[0], lvl[1], lvl[2], true);
+    }
+
+    /**
+     * Play a level, optionally applying a replay that may have been recorded
+     * in a different level.
+     * @param lPack index of level pack
+     * @param rating index of rating
+     * @param lNum level number
+     * @param replayFile replay file or null to play without input
+     * @param maxFrames maximum number of frames to simulate
+     * @return outcome of the level
+     * @throws LemmException
+     * @throws ResourceException
+     */
+    public static synchronized Result playLevel(final int lPack, final int rating, final int lNum,
+            final Path replayFile, final int maxFrames) throws LemmException, ResourceException {
+        startLevel(lPack, rating, lNum, replayFile);
+        return run(maxFrames);
+    }
+
+    /**
+     * Start a level, optionally preparing to apply a replay that may have
+     * been recorded in a different level.
+     * @param lPack index of level pack
+     * @param rating index of rating
+     * @param lNum level number
+     * @param replayFile replay file or null to play without input
+     * @throws LemmException
+     * @throws ResourceException
+     */
+    static synchronized void startLevel(final int lPack, final int rating, final int lNum, final Path replayFile)
+            throws LemmException, ResourceException {
+        if (lPack < 0 || lPack >= GameController.getLevelPackCount()
+                || rating < 0 || rating >= GameController.getLevelPack(lPack).getRatings().size()
+                || lNum < 0 || lNum >= GameController.getLevelPack(lPack).getLevelCount(rating)) {
+            throw new LemmException(String.format(Locale.ROOT, "Level %d/%d/%d does not exist.", lPack, rating, lNum));
+        }
+        if (replayFile != null && GameController.loadReplay(replayFile) == null) {
+            throw new LemmException("Wrong format: " + replayFile);
+        }
+        GameController.startLevel(lPack, rating, lNum, replayFile != null);
+    }
+
+    /**
+     * Update the game until the level ends or the frame limit is reached.
+     * @param maxFrames maximum number of frames to simulate
+     * @return outcome of the level
+     */
+    private static Result run(final int maxFrames) {
+        long start = System.nanoTime();
+        int frames = 0;
+        while (GameController.getGameState() == GameController.State.LEVEL && frames < maxFrames) {
+            GameController.update();
+            frames++;
+        }
+        long nanos = System.nanoTime() - start;
+        boolean finished = GameController.getGameState() != GameController.State.LEVEL;
+        return new Result(GameController.getLevel().getLevelName().trim(), GameController.getOutcome(),
+                GameController.getNumToRescue(), GameController.getNumLemmingsMax(), frames, finished, nanos);
+    }
+
+    public static void main(final String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int maxFrames = DEFAULT_MAX_FRAMES;
+        boolean worker = false;
+        List<String> params = new ArrayList<>(args.length);
+        for (String arg : args) {
+            if (arg.startsWith("--frames=")) {
+                maxFrames = Integer.parseInt(arg.substring("--frames=".length()));
+            } else if (arg.equals("--worker")) {
+                worker = true;
+            } else {
+                params.add(arg);
+            }
+        }
+        if (worker) {
+            runWorker(maxFrames);
+            return;
+        }
+        if (params.size() != 1 && params.size() != 3 && params.size() != 4) {
+            System.err.println("usage: HeadlessGame [--frames=N] replay.rpl");
+            System.err.println("       HeadlessGame [--frames=N] levelPack rating level [replay.rpl]");
+            System.exit(2);
+        }
+
+        try {
+            init(URLDecoder.decode(HeadlessGame.class.getProtectionDomain().getCodeSource().getLocation().getFile(), "UTF-8"));
+            Result result;
+            if (params.size() == 1) {
+                result = playReplay(Paths.get(params.get(0)), maxFrames);
+            } else {
+                Path replayFile = (params.size() == 4) ? Paths.get(params.get(3)) : null;
+                result = playLevel(Integer.parseInt(params.get(0)), Integer.parseInt(params.get(1)),
+                        Integer.parseInt(params.get(2)), replayFile, maxFrames);
+            }
+            System.out.println(result);
+            System.exit(result.isCompleted() ? 0 : 1);
+        } catch (LemmException | ResourceException | IOException | NumberFormatException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Play back the replays whose file names are read from stdin until stdin
+     * is closed, writing one result or error line per replay to stdout.
+     * @param maxFrames maximum number of frames to simulate per replay
+     */
+    private static void runWorker(final int maxFrames) {
+        try {
+            init(URLDecoder.decode(HeadlessGame.class.getProtectionDomain().getCodeSource().getLocation().getFile(), "UTF-8"));
+        } catch (LemmException | ResourceException | IOException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(2);
+        }
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String reply;
+                try {
+                    reply = RESULT_PREFIX + playReplay(Paths.get(line), maxFrames).toRecordString();
+                } catch (Exception ex) {
+                    reply = ERROR_PREFIX + ex.toString().replace('\n', ' ');
+                }
+                System.out.println(reply);
+                System.out.flush();
+            }
+        } catch (IOException ex) {
+            System.exit(2);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Outcome of a headless run.
+     */
+    public static final class Result {
+
+        private final String levelName;
+        private final LevelRecord record;
+        private final int lemmingsNeeded;
+        private final int lemmingsMax;
+        /** number of simulated frames */
+        private final int frames;
+        /** true if the level ended, false if the frame limit was reached */
+        private final boolean finished;
+        /** wall clock time needed for the simulation in nanoseconds */
+        private final long nanos;
+
+        Result(final String levelName, final LevelRecord record, final int lemmingsNeeded, final int lemmingsMax,
+                final int frames, final boolean finished, final long nanos) {
+            this.levelName = levelName;
+            this.record = record;
+            this.lemmingsNeeded = lemmingsNeeded;
+            this.lemmingsMax = lemmingsMax;
+            this.frames = frames;
+            this.finished = finished;
+            this.nanos = nanos;
+        }
+
+        public String getLevelName() {
+            return levelName;
+        }
+
+        public boolean isCompleted() {
+            return record.isCompleted();
+        }
+
+        public int getLemmingsSaved() {
+            return record.getLemmingsSaved();
+        }
+
+        public int getLemmingsNeeded() {
+            return lemmingsNeeded;
+        }
+
+        public int getLemmingsMax() {
+            return lemmingsMax;
+        }
+
+        public int getSkillsUsed() {
+            return record.getSkillsUsed();
+        }
+
+        /**
+         * Get the time value stored in level records: the time left at the
+         * last exit for timed levels, the time elapsed otherwise.
+         * @return time in seconds
+         */
+        public int getTime() {
+            return record.getTimeElapsed();
+        }
+
+        public int getScore() {
+            return record.getScore();
+        }
+
+        public int getFrames() {
+            return frames;
+        }
+
+        public boolean isFinished() {
+            return finished;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Convert this result to a single tab separated line that can be
+         * parsed with {@link #parse(String)}.
+         * @return result as string
+         */
+        public String toRecordString() {
+            return String.format(Locale.ROOT, "%b\t%d\t%d\t%d\t%d\t%d\t%d\t%d\t%b\t%d\t%s",
+                    isCompleted(), getLemmingsSaved(), lemmingsNeeded, lemmingsMax,
+                    getSkillsUsed(), getTime(), getScore(), frames, finished, nanos, levelName);
+        }
+
+        /**
+         * Parse a result written by {@link #toRecordString()}.
+         * @param s result as string
+         * @return result
+         * @throws NumberFormatException if the string is not a valid result
+         */
+        public static Result parse(final String s) {
+            String[] f = s.split("\t", 11);
+            if (f.length != 11) {
+                throw new NumberFormatException("Invalid result: " + s);
+            }
+            LevelRecord record = new LevelRecord(Boolean.parseBoolean(f[0]), Integer.parseInt(f[1]),
+                    Integer.parseInt(f[4]), Integer.parseInt(f[5]), Integer.parseInt(f[6]));
+            return new Result(f[10], record, Integer.parseInt(f[2]), Integer.parseInt(f[3]),
+                    Integer.parseInt(f[7]), Boolean.parseBoolean(f[8]), Long.parseLong(f[9]));
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%s: %s, saved %d of %d (needed %d), time %d, skills used %d, score %d, %d frames%s in %.1f ms",
+                    levelName, isCompleted() ? "completed" : "failed",
+                    getLemmingsSaved(), lemmingsMax, lemmingsNeeded, getTime(), getSkillsUsed(), getScore(),
+                    frames, finished ? StringUtils.EMPTY : " (frame limit reached)", nanos / 1_000_000.0);
+        }
+    }
+}
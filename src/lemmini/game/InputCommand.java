@@ -0,0 +1,143 @@
+package lemmini.game;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Player input that was queued by a UI thread with
+ * {@link GameController#queueCommand(InputCommand)} and is applied by the
+ * game thread at the start of the next {@link GameController#update()}.
+ */
+public final class InputCommand {
+
+    /** command types */
+    public static enum Type {
+        /** icon button was clicked or its key was pressed */
+        HANDLE_ICON,
+        /** icon was pressed (visual state only) */
+        PRESS_ICON,
+        /** icon was released (visual state only) */
+        RELEASE_ICON,
+        /** plus was pressed */
+        PRESS_PLUS,
+        /** plus was released */
+        RELEASE_PLUS,
+        /** minus was pressed */
+        PRESS_MINUS,
+        /** minus was released */
+        RELEASE_MINUS,
+        /** select the next skill */
+        NEXT_SKILL,
+        /** select the previous skill */
+        PREVIOUS_SKILL,
+        /** left click into the level: assign the skill to the lemming under the cursor */
+        SELECT_LEMMING,
+        /** go back in time */
+        REWIND
+    }
+
+    private final Type type;
+    /** icon for the icon commands, null otherwise */
+    private final Icons.IconType icon;
+    /** bitmask (key or icon) for the plus/minus commands */
+    private final int keyRepeatMask;
+    /** cursor type for SELECT_LEMMING */
+    private final LemmCursor.CursorType cursorType;
+    /** flag for SELECT_LEMMING: the click was inside the visible level */
+    private final boolean inLevel;
+    /** number of frames for REWIND */
+    private final int frames;
+
+    private InputCommand(final Type type, final Icons.IconType icon, final int keyRepeatMask,
+            final LemmCursor.CursorType cursorType, final boolean inLevel, final int frames) {
+        this.type = type;
+        this.icon = icon;
+        this.keyRepeatMask = keyRepeatMask;
+        this.cursorType = cursorType;
+        this.inLevel = inLevel;
+        this.frames = frames;
+    }
+
+    /**
+     * Create a command that refers to an icon.
+     * @param type HANDLE_ICON, PRESS_ICON or RELEASE_ICON
+     * @param icon icon type
+     * @return command
+     */
+    public static InputCommand icon(final Type type, final Icons.IconType icon) {
+        return new InputCommand(type, icon, 0, null, false, 0);
+    }
+
+    /**
+     * Create a command for the plus or minus button.
+     * @param type PRESS_PLUS, RELEASE_PLUS, PRESS_MINUS or RELEASE_MINUS
+     * @param mask bitmask: key or icon
+     * @return command
+     */
+    public static InputCommand plusMinus(final Type type, final int mask) {
+        return new InputCommand(type, null, mask, null, false, 0);
+    }
+
+    /**
+     * Create a command without parameters.
+     * @param type NEXT_SKILL or PREVIOUS_SKILL
+     * @return command
+     */
+    public static InputCommand simple(final Type type) {
+        return new InputCommand(type, null, 0, null, false, 0);
+    }
+
+    /**
+     * Create a command for a left click into the level.
+     * @param cursorType cursor type at the time of the click
+     * @param inLevel true if the click was inside the visible level
+     * @return command
+     */
+    public static InputCommand selectLemming(final LemmCursor.CursorType cursorType, final boolean inLevel) {
+        return new InputCommand(Type.SELECT_LEMMING, null, 0, cursorType, inLevel, 0);
+    }
+
+    /**
+     * Create a command that goes back in time.
+     * @param frames number of frames to go back
+     * @return command
+     */
+    public static InputCommand rewind(final int frames) {
+        return new InputCommand(Type.REWIND, null, 0, null, false, frames);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Icons.IconType getIcon() {
+        return icon;
+    }
+
+    public int getKeyRepeatMask() {
+        return keyRepeatMask;
+    }
+
+    public LemmCursor.CursorType getCursorType() {
+        return cursorType;
+    }
+
+    public boolean isInLevel() {
+        return inLevel;
+    }
+
+    public int getFrames() {
+        return frames;
+    }
+}
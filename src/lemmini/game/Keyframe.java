@@ -0,0 +1,116 @@
+package lemmini.game;
+
+import java.util.List;
+import lemmini.gameutil.Sprite;
+import lemmini.graphics.TiledImage;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copy of the complete simulation state of a level at the start of one
+ * frame, created and restored by {@link GameController} to rewind the game.
+ * Everything that is not stored here (explosion particles, visual SFX,
+ * scroll position) is only cosmetic and does not influence the simulation.
+ */
+final class Keyframe {
+
+    /** replay frame this keyframe was taken at */
+    final int frame;
+    final Stencil.Snapshot stencil;
+    final TiledImage.Snapshot fgImage;
+    /** states of all active Lemmings in list order (replay events refer to list indices) */
+    final LemmingPool lemmings;
+    /** animation state of all level and background sprite objects */
+    final List<Sprite.State> sprites;
+    /** index into lemmings of the Lemming that triggered each sprite, -1 for none */
+    final int[] spriteLemmings;
+
+    int updateCtr;
+    int secondCtr;
+    int releaseCtr;
+    int releaseRate;
+    int releaseRateOld;
+    boolean nuke;
+    boolean nukeOld;
+    Lemming.Type lemmSkill;
+    Lemming.Type lemmSkillOld;
+    int xPosOld;
+    int yPosOld;
+    boolean entranceOpened;
+    int entranceOpenCtr;
+    int startSoundCtr;
+    boolean startSoundPlayed;
+    int trapDoorCounter;
+    int numExited;
+    int numLemmingsOut;
+    int time;
+    int timeElapsedTillLastExited;
+    int numClimbers;
+    int numFloaters;
+    int numBombers;
+    int numBlockers;
+    int numBuilders;
+    int numBashers;
+    int numMiners;
+    int numDiggers;
+    int numSkillsUsed;
+    /** ID of the next Lemming added to the level */
+    int nextLemmingId;
+    /** flag: the level ended in this state */
+    boolean levelEnded;
+
+    Keyframe(final int frame, final Stencil.Snapshot stencil, final TiledImage.Snapshot fgImage,
+            final LemmingPool lemmings, final List<Sprite.State> sprites, final int[] spriteLemmings) {
+        this.frame = frame;
+        this.stencil = stencil;
+        this.fgImage = fgImage;
+        this.lemmings = lemmings;
+        this.sprites = sprites;
+        this.spriteLemmings = spriteLemmings;
+    }
+
+    /**
+     * Get the memory that was allocated for this keyframe, not counting
+     * terrain tiles shared with the previous keyframe.
+     * @return size in bytes
+     */
+    long getCopiedBytes() {
+        return stencil.getCopiedBytes() + fgImage.getCopiedBytes() + getPrivateBytes();
+    }
+
+    /**
+     * Get the memory that is freed when this keyframe is dropped while the
+     * given one is kept.
+     * @param other neighboring keyframe that is kept, or null
+     * @return size in bytes
+     */
+    long getBytesNotSharedWith(final Keyframe other) {
+        return stencil.getBytesNotSharedWith(other == null ? null : other.stencil)
+                + fgImage.getBytesNotSharedWith(other == null ? null : other.fgImage)
+                + getPrivateBytes();
+    }
+
+    /**
+     * Get the memory used by the parts that are never shared.
+     * @return size in bytes
+     */
+    private long getPrivateBytes() {
+        long bytes = lemmings.getBytes();
+        for (Sprite.State s : sprites) {
+            bytes += s.getFrameBytes();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,142 @@
+package lemmini.game;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Ring of keyframes ordered by frame with a memory budget. When the budget
+ * is exceeded, the oldest keyframes are dropped; the newest one is always
+ * kept. Terrain tiles that did not change between two neighboring keyframes
+ * are shared, so they are only counted once.
+ */
+final class KeyframeBuffer {
+
+    /** frames between two keyframes */
+    private final int interval;
+    /** memory budget in bytes */
+    private final long budget;
+    private final Deque<Keyframe> keyframes = new ArrayDeque<>(64);
+    /** memory used by all keyframes in bytes */
+    private long bytes;
+
+    /**
+     * Constructor.
+     * @param interval frames between two keyframes
+     * @param budget memory budget in bytes
+     */
+    KeyframeBuffer(final int interval, final long budget) {
+        this.interval = Math.max(1, interval);
+        this.budget = budget;
+    }
+
+    /**
+     * Check whether a keyframe should be taken at the given frame.
+     * @param frame replay frame
+     * @return true if frame is a multiple of the interval and no keyframe exists for it yet
+     */
+    boolean isDue(final int frame) {
+        if (frame % interval != 0) {
+            return false;
+        }
+        Keyframe newest = keyframes.peekLast();
+        return newest == null || newest.frame < frame;
+    }
+
+    /**
+     * Get the newest keyframe, whose terrain snapshots the next keyframe
+     * should share tiles with.
+     * @return newest keyframe or null
+     */
+    Keyframe getNewest() {
+        return keyframes.peekLast();
+    }
+
+    /**
+     * Add a keyframe that is newer than all stored ones and drop the oldest
+     * keyframes until the budget is met again.
+     * @param k keyframe
+     */
+    void add(final Keyframe k) {
+        keyframes.addLast(k);
+        bytes += k.getCopiedBytes();
+        while (bytes > budget && keyframes.size() > 1) {
+            Keyframe oldest = keyframes.removeFirst();
+            bytes -= oldest.getBytesNotSharedWith(keyframes.peekFirst());
+        }
+    }
+
+    /**
+     * Get the newest keyframe taken at or before the given frame.
+     * @param frame replay frame
+     * @return keyframe or null if there is none
+     */
+    Keyframe getAtOrBefore(final int frame) {
+        for (Iterator<Keyframe> it = keyframes.descendingIterator(); it.hasNext(); ) {
+            Keyframe k = it.next();
+            if (k.frame <= frame) {
+                return k;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drop all keyframes taken after the given frame, e.g. because the game
+     * was rewound to that frame and the future may change.
+     * @param frame replay frame
+     */
+    void discardAfter(final int frame) {
+        while (!keyframes.isEmpty() && keyframes.peekLast().frame > frame) {
+            Keyframe newest = keyframes.removeLast();
+            bytes -= newest.getBytesNotSharedWith(keyframes.peekLast());
+        }
+    }
+
+    /**
+     * Drop all keyframes.
+     */
+    void clear() {
+        keyframes.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Get the frame of the oldest stored keyframe.
+     * @return replay frame or -1 if there is no keyframe
+     */
+    int getOldestFrame() {
+        Keyframe oldest = keyframes.peekFirst();
+        return (oldest == null) ? -1 : oldest.frame;
+    }
+
+    /**
+     * Get the number of stored keyframes.
+     * @return number of keyframes
+     */
+    int size() {
+        return keyframes.size();
+    }
+
+    /**
+     * Get the memory used by all keyframes.
+     * @return size in bytes
+     */
+    long getBytes() {
+        return bytes;
+    }
+}
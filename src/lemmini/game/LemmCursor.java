@@ -34,7 +34,7 @@ import lemmini.tools.ToolBox;
 public class LemmCursor  {
     
     /** distance from center of cursor to be used to detect Lemmings under the cursor */
-    private static final int HIT_DISTANCE = 12;
+    static final int HIT_DISTANCE = 12;
     
     /** cursor type */
     public enum CursorType {
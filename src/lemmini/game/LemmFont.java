@@ -53,6 +53,10 @@ public class LemmFont {
     }
     
     private static final String FONT_INI_STR = "gfx/font/font.ini";
+    /** number of glyphs per row in the glyph atlas */
+    private static final int ATLAS_COLUMNS = 32;
+    /** maximum number of string images cached per color */
+    private static final int STR_CACHE_SIZE = 64;
     
     /** width of one character in pixels */
     private static int width;
@@ -62,6 +66,18 @@ public class LemmFont {
     private static final Map<String, Subset> subsets = new HashMap<>(4);
     private static Glyph missingChar;
     private static final List<Glyph> missingCharFont = new ArrayList<>(16);
+    /** all glyphs of all subsets in one image per color */
+    private static LemmImage[] atlas;
+    /** width of one glyph cell in the atlas in pixels */
+    private static int atlasCellWidth;
+    /** height of one glyph cell in the atlas in pixels */
+    private static int atlasCellHeight;
+    /**
+     * recently used string images per color, least recently used first;
+     * lookups change the order, so all access is synchronized on this map,
+     * since it is used from the game and the rendering thread
+     */
+    private static final Map<LemmColor, Map<String, LemmImage>> strCache = new EnumMap<>(LemmColor.class);
     
     /**
      * Initialization.
@@ -80,6 +96,10 @@ public class LemmFont {
         chars.clear();
         subsets.clear();
         missingCharFont.clear();
+        synchronized (strCache) {
+            strCache.clear();
+        }
+        List<Glyph> atlasGlyphs = new ArrayList<>(512);
         
         for (int i = 0; true; i++) {
             String fileName = p.get("subset_" + i + "_fileName", StringUtils.EMPTY);
@@ -98,7 +118,8 @@ public class LemmFont {
             List<Glyph> glyphs = new ArrayList<>(numChars);
             for (ListIterator<LemmImage> lit = glyphImg.listIterator(); lit.hasNext(); ) {
                 int c = lit.nextIndex();
-                glyphs.add(new Glyph(lit.next()));
+                glyphs.add(new Glyph(lit.next(), atlasGlyphs.size()));
+                atlasGlyphs.add(glyphs.get(c));
                 int codePoint = p.getInt("subset_" + i + "_char_" + c + "_codePoint", -1);
                 if (Character.isValidCodePoint(codePoint)) {
                     chars.put(codePoint, new LemmChar(name, c));
@@ -107,6 +128,31 @@ public class LemmFont {
             subsets.put(name, new Subset(glyphs));
         }
         
+        // copy all glyphs into one atlas per color
+        int atlasRows = Math.max((atlasGlyphs.size() + ATLAS_COLUMNS - 1) / ATLAS_COLUMNS, 1);
+        atlasCellWidth = 1;
+        atlasCellHeight = 1;
+        for (Glyph glyph : atlasGlyphs) {
+            atlasCellWidth = Math.max(atlasCellWidth, glyph.getWidth());
+            atlasCellHeight = Math.max(atlasCellHeight, glyph.getHeight());
+        }
+        atlas = new LemmImage[LemmColor.values().length];
+        for (LemmColor color : LemmColor.values()) {
+            LemmImage atlasImg = ToolBox.createLemmImage(atlasCellWidth * ATLAS_COLUMNS, atlasCellHeight * atlasRows);
+            GraphicsContext g = null;
+            try {
+                g = atlasImg.createGraphicsContext();
+                for (Glyph glyph : atlasGlyphs) {
+                    g.drawImage(glyph.getColor(color), glyph.getAtlasX(), glyph.getAtlasY());
+                }
+            } finally {
+                if (g != null) {
+                    g.dispose();
+                }
+            }
+            atlas[color.ordinal()] = atlasImg;
+        }
+        
         LemmImage img = ToolBox.createLemmImage(width, height);
         GraphicsContext g = null;
         try {
@@ -118,12 +164,12 @@ public class LemmFont {
                 g.dispose();
             }
         }
-        missingChar = new Glyph(img);
+        missingChar = new Glyph(img, -1);
         
         img = Core.loadLemmImageJar("missing_char_font.png");
         List<LemmImage> missingGlyphFontImg = ToolBox.getAnimation(img, 16);
         missingGlyphFontImg.stream().forEachOrdered(missingGlyphImg -> {
-            missingCharFont.add(new Glyph(missingGlyphImg));
+            missingCharFont.add(new Glyph(missingGlyphImg, -1));
         });
     }
     
@@ -191,6 +237,46 @@ public class LemmFont {
         return strImage(s, LemmColor.GREEN);
     }
     
+    /**
+     * Get image of string in given color from the string cache, creating it
+     * if necessary. The image is shared and must not be modified.
+     * @param s string to draw
+     * @param color Color
+     * @return a buffered image of the needed size that contains an image of the given string
+     */
+    public static LemmImage getCachedStrImage(final String s, final LemmColor color) {
+        synchronized (strCache) {
+            Map<String, LemmImage> cache = strCache.get(color);
+            if (cache == null) {
+                cache = new LinkedHashMap<String, LemmImage>(STR_CACHE_SIZE * 2, 0.75f, true) {
+                    private static final long serialVersionUID = 1L;
+                    
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, LemmImage> eldest) {
+                        return size() > STR_CACHE_SIZE;
+                    }
+                };
+                strCache.put(color, cache);
+            }
+            LemmImage image = cache.get(s);
+            if (image == null) {
+                image = strImage(s, color);
+                cache.put(s, image);
+            }
+            return image;
+        }
+    }
+    
+    /**
+     * Get image of string in default color (green) from the string cache,
+     * creating it if necessary. The image is shared and must not be modified.
+     * @param s string to draw
+     * @return a buffered image of the needed size that contains an image of the given string
+     */
+    public static LemmImage getCachedStrImage(final String s) {
+        return getCachedStrImage(s, LemmColor.GREEN);
+    }
+    
     /**
      * Draw string into graphics object in default color (green).
      * @param g graphics object to draw to.
@@ -201,9 +287,14 @@ public class LemmFont {
     }
     
     private static void drawCharacter(GraphicsContext g, int c, int x, int y, LemmColor color) {
-        if (chars.containsKey(c)) {
-            LemmChar lemmChar = chars.get(c);
-            g.drawImage(subsets.get(lemmChar.subset).getGlyph(lemmChar.glyphIndex).getColor(color), x, y);
+        LemmChar lemmChar = chars.get(c);
+        if (lemmChar != null) {
+            Glyph glyph = subsets.get(lemmChar.subset).getGlyph(lemmChar.glyphIndex);
+            int ax = glyph.getAtlasX();
+            int ay = glyph.getAtlasY();
+            int gw = glyph.getWidth();
+            int gh = glyph.getHeight();
+            g.drawImage(atlas[color.ordinal()], x, y, x + gw, y + gh, ax, ay, ax + gw, ay + gh);
         } else {
             drawMissingChar(g, c, x, y, color);
         }
@@ -391,8 +482,11 @@ public class LemmFont {
     private static class Glyph {
         
         private final List<LemmImage> glyphColors;
+        /** position of this glyph in the atlas, or -1 if it isn't in the atlas */
+        private final int atlasIndex;
         
-        Glyph(LemmImage glyph) {
+        Glyph(LemmImage glyph, int atlasIndex) {
+            this.atlasIndex = atlasIndex;
             int width = glyph.getWidth();
             int height = glyph.getHeight();
             
@@ -436,6 +530,22 @@ public class LemmFont {
         LemmImage getColor(LemmColor color) {
             return glyphColors.get(color.ordinal());
         }
+        
+        int getWidth() {
+            return glyphColors.get(0).getWidth();
+        }
+        
+        int getHeight() {
+            return glyphColors.get(0).getHeight();
+        }
+        
+        int getAtlasX() {
+            return (atlasIndex % ATLAS_COLUMNS) * atlasCellWidth;
+        }
+        
+        int getAtlasY() {
+            return (atlasIndex / ATLAS_COLUMNS) * atlasCellHeight;
+        }
     }
     
     private static class LemmChar {
@@ -1,6 +1,5 @@
 package lemmini.game;
 
-import java.awt.Transparency;
 import java.util.*;
 import lemmini.graphics.LemmImage;
 import lemmini.sound.Sound;
@@ -176,6 +175,9 @@ public class Lemming {
     private static final int EXPLODER_LIFE = 102;
     private static final int DEF_TEMPLATE_COLOR = 0xffff00ff;
     
+    private static final Type[] TYPES = Type.values();
+    private static final Direction[] DIRECTIONS = Direction.values();
+    
     /** resource (animation etc.) for the current Lemming */
     private LemmingResource lemRes;
     /** animation frame */
@@ -213,6 +215,10 @@ public class Lemming {
     private int explodeCtr;
     /** counter used to display the select image in replay mode */
     private int selectCtr;
+    /** stable ID assigned by {@link LemmingRegistry}, -1 if not registered */
+    private int id = -1;
+    /** cell in the {@link LemmingGrid}, -1 if not in the grid */
+    private int gridCell = -1;
     
     /** list of resources for each Lemming skill/type */
     private static List<LemmingResource> lemmings = new ArrayList<>(NUM_RESOURCES);
@@ -248,6 +254,93 @@ public class Lemming {
         nuke = false;
     }
     
+    /**
+     * Constructor: Create a copy of a Lemming.
+     * @param src Lemming to copy
+     */
+    public Lemming(final Lemming src) {
+        lemRes = src.lemRes;
+        frameIdx = src.frameIdx;
+        x = src.x;
+        y = src.y;
+        dir = src.dir;
+        type = src.type;
+        counter = src.counter;
+        counter2 = src.counter2;
+        explodeNumCtr = src.explodeNumCtr;
+        canFloat = src.canFloat;
+        canClimb = src.canClimb;
+        canChangeSkill = src.canChangeSkill;
+        flapper = src.flapper;
+        drowner = src.drowner;
+        homer = src.homer;
+        nuke = src.nuke;
+        hasDied = src.hasDied;
+        hasExited = src.hasExited;
+        explodeCtr = src.explodeCtr;
+        selectCtr = src.selectCtr;
+        id = src.id;
+    }
+    
+    /**
+     * Constructor: Create a Lemming from a state stored in a pool.
+     * @param pool pool
+     * @param i index of the state in the pool
+     */
+    Lemming(final LemmingPool pool, final int i) {
+        lemRes = pool.res[i];
+        id = pool.id[i];
+        frameIdx = pool.frameIdx[i];
+        x = pool.x[i];
+        y = pool.y[i];
+        dir = DIRECTIONS[pool.dir[i]];
+        type = TYPES[pool.type[i]];
+        counter = pool.counter[i];
+        counter2 = pool.counter2[i];
+        explodeNumCtr = pool.explodeNumCtr[i];
+        explodeCtr = pool.explodeCtr[i];
+        selectCtr = pool.selectCtr[i];
+        int f = pool.flags[i];
+        canFloat = (f & LemmingPool.CAN_FLOAT) != 0;
+        canClimb = (f & LemmingPool.CAN_CLIMB) != 0;
+        canChangeSkill = (f & LemmingPool.CAN_CHANGE_SKILL) != 0;
+        flapper = (f & LemmingPool.FLAPPER) != 0;
+        drowner = (f & LemmingPool.DROWNER) != 0;
+        homer = (f & LemmingPool.HOMER) != 0;
+        nuke = (f & LemmingPool.NUKE) != 0;
+        hasDied = (f & LemmingPool.HAS_DIED) != 0;
+        hasExited = (f & LemmingPool.HAS_EXITED) != 0;
+    }
+    
+    /**
+     * Store the state of this Lemming in a pool.
+     * @param pool pool
+     * @param i index of the state in the pool
+     */
+    void store(final LemmingPool pool, final int i) {
+        pool.res[i] = lemRes;
+        pool.id[i] = id;
+        pool.frameIdx[i] = frameIdx;
+        pool.x[i] = x;
+        pool.y[i] = y;
+        pool.dir[i] = (byte) dir.ordinal();
+        pool.type[i] = (byte) type.ordinal();
+        pool.counter[i] = counter;
+        pool.counter2[i] = counter2;
+        pool.explodeNumCtr[i] = explodeNumCtr;
+        pool.explodeCtr[i] = explodeCtr;
+        pool.selectCtr[i] = selectCtr;
+        pool.flags[i] = (short) ((canFloat ? LemmingPool.CAN_FLOAT : 0)
+                | (canClimb ? LemmingPool.CAN_CLIMB : 0)
+                | (canChangeSkill ? LemmingPool.CAN_CHANGE_SKILL : 0)
+                | (flapper ? LemmingPool.FLAPPER : 0)
+                | (drowner ? LemmingPool.DROWNER : 0)
+                | (homer ? LemmingPool.HOMER : 0)
+                | (nuke ? LemmingPool.NUKE : 0)
+                | (hasDied ? LemmingPool.HAS_DIED : 0)
+                | (hasExited ? LemmingPool.HAS_EXITED : 0));
+    }
+    
     /**
      * Get number of Lemming type in internal resource array.
      * @param t Type
@@ -1274,19 +1367,12 @@ public class Lemming {
      * @return true if bashing is possible, false otherwise.
      */
     private boolean canBash() {
-        int xm = x;
         int ypos = y - BASHER_CHECK_STEP;
-        int xb;
-        int bricks = 0;
-        for (int i = 18; i < 22; i++) {
-            if (dir == Direction.RIGHT) {
-                xb = xm + i;
-            } else {
-                xb = xm - i + 1;
-            }
-            if (BooleanUtils.toBoolean(GameController.getStencil().getMask(xb, ypos) & Stencil.MSK_BRICK)) {
-                bricks++;
-            }
+        int bricks;
+        if (dir == Direction.RIGHT) {
+            bricks = GameController.getStencil().countBricks(x + 18, x + 21, ypos);
+        } else {
+            bricks = GameController.getStencil().countBricks(x - 20, x - 17, ypos);
         }
         return bricks > 0;
     }
@@ -1339,22 +1425,21 @@ public class Lemming {
      */
     private boolean canDig(final boolean playSound) {
         boolean classicSteel = GameController.getLevel().getClassicSteel();
+        int xMin = x + (classicSteel ? 0 : -4);
+        int xMax = x + (classicSteel ? 0 : 5);
         for (int i = 0; i < 2; i++) {
-            for (int j = (classicSteel ? 0 : -4); j < (classicSteel ? 1 : 6); j++) {
-                int ym = y + i;
-                int xm = x + j;
-                int sval = GameController.getStencil().getMask(xm, ym);
-                if (BooleanUtils.toBoolean(sval & Stencil.MSK_BRICK) && BooleanUtils.toBoolean(sval & Stencil.MSK_STEEL)) {
-                    if (playSound) {
-                        SpriteObject spr = GameController.getLevel().getSprObject(GameController.getStencil().getMaskObjectID(xm, ym));
-                        if (spr != null && spr.getType() == SpriteObject.Type.STEEL) {
-                            GameController.sound.playVisualSFX(spr);
-                        } else {
-                        	playVisualSFX(Sound.Effect.STEEL);
-                        }
+            int ym = y + i;
+            int xm = GameController.getStencil().findSteelBrick(xMin, xMax, ym);
+            if (xm >= 0) {
+                if (playSound) {
+                    SpriteObject spr = GameController.getLevel().getSprObject(GameController.getStencil().getMaskObjectID(xm, ym));
+                    if (spr != null && spr.getType() == SpriteObject.Type.STEEL) {
+                        GameController.sound.playVisualSFX(spr);
+                    } else {
+                    	playVisualSFX(Sound.Effect.STEEL);
                     }
-                    return false;
                 }
+                return false;
             }
         }
         return true;
@@ -1444,22 +1529,13 @@ public class Lemming {
                 || x >= GameController.getWidth() + GameController.getLevel().getRightBoundary()) {
             return 0;
         }
-        int free = 0;
-        int pos;
-        Stencil stencil = GameController.getStencil();
-        int yb = y;
-        pos = x + yb * GameController.getWidth(); // line below the lemming
-        for (int i = 0; i < step; i++) {
-            if (yb + i >= GameController.getHeight()) {
-                return Integer.MAX_VALUE; // convert most skills to faller
-            }
-            int s = stencil.getMask(pos);
-            if (!BooleanUtils.toBoolean(s & Stencil.MSK_BRICK)) {
-                free++;
-            } else {
-                break;
-            }
-            pos += GameController.getWidth();
+        int pos = x + y * GameController.getWidth(); // line below the lemming
+        int xb = Math.floorMod(pos, GameController.getWidth());
+        int yb = Math.floorDiv(pos, GameController.getWidth());
+        int n = Math.max(Math.min(step, GameController.getHeight() - y), 0);
+        int free = GameController.getStencil().firstBrickBelow(xb, yb, n);
+        if (free == n && n < step) {
+            return Integer.MAX_VALUE; // convert most skills to faller
         }
         return free;
     }
@@ -1566,17 +1642,15 @@ public class Lemming {
         if (ym >= GameController.getHeight()) {
             return 0;
         }
-        int pos = x;
-        Stencil stencil = GameController.getStencil();
-        pos += ym * GameController.getWidth();
-        int levitation;
-        for (levitation = 0; levitation < WALKER_OBSTACLE_HEIGHT; levitation++, pos -= GameController.getWidth(), ym--) {
-            if (ym < GameController.getLevel().getTopBoundary() - 1) {
-                return WALKER_OBSTACLE_HEIGHT + 1; // forbid leaving level to the top
-            }
-            if (!BooleanUtils.toBoolean(stencil.getMask(pos) & Stencil.MSK_BRICK)) {
-                break;
-            }
+        int pos = x + ym * GameController.getWidth();
+        int xb = Math.floorMod(pos, GameController.getWidth());
+        int yb = Math.floorDiv(pos, GameController.getWidth());
+        // number of lines that can be checked before leaving the level to the top
+        int lines = ym - GameController.getLevel().getTopBoundary() + 2;
+        int n = Math.min(WALKER_OBSTACLE_HEIGHT, Math.max(lines, 0));
+        int levitation = GameController.getStencil().countBricksAbove(xb, yb, n);
+        if (levitation == n && n < WALKER_OBSTACLE_HEIGHT) {
+            return WALKER_OBSTACLE_HEIGHT + 1; // forbid leaving level to the top
         }
         return levitation;
     }
@@ -2026,6 +2100,39 @@ public class Lemming {
         return hasExited;
     }
     
+    /**
+     * Get the stable ID of this Lemming. IDs are assigned in the order the
+     * Lemmings were added to the level and are never reused within a level.
+     * @return ID or -1 if this Lemming was never added to a level
+     */
+    public int getId() {
+        return id;
+    }
+    
+    /**
+     * Set the stable ID of this Lemming.
+     * @param id ID
+     */
+    void setId(final int id) {
+        this.id = id;
+    }
+    
+    /**
+     * Get the cell of this Lemming in the {@link LemmingGrid}.
+     * @return cell index or -1 if not in the grid
+     */
+    int getGridCell() {
+        return gridCell;
+    }
+    
+    /**
+     * Set the cell of this Lemming in the {@link LemmingGrid}.
+     * @param gridCell cell index or -1
+     */
+    void setGridCell(final int gridCell) {
+        this.gridCell = gridCell;
+    }
+    
     /**
      * Get: Lemming is to be nuked.
      * @return true if Lemming is to be nuked, false otherwise
@@ -2067,143 +2174,6 @@ public class Lemming {
     }
 }
 
-/**
- * Storage class for a Lemming.
- * @author Volker Oth
- */
-class LemmingResource {
-    /** relative foot X position in pixels inside bitmap */
-    int footX;
-    /** relative foot Y position in pixels inside bitmap */
-    int footY;
-    /** "mid" position above foot in pixels */
-    int size;
-    int maskX;
-    int maskY;
-    /** width of image in pixels */
-    int width;
-    /** height of image in pixels */
-    int height;
-    /** number of animation frames */
-    int frames;
-    /** animation mode */
-    Lemming.Animation animMode;
-    /** number of directions (1 or 2) */
-    int dirs;
-    int maskStep;
-    /** list of images to store the animation [Direction][AnimationFrame] */
-    private final List<List<LemmImage>> img = new ArrayList<>(2);
-    private final List<List<LemmImage>> unpatchedImg = new ArrayList<>(2);
-    /** list of removal masks used for digging/bashing/mining/explosions etc. [Direction] */
-    private List<Mask> mask = null;
-    
-    /**
-     * Constructor.
-     */
-    LemmingResource() {
-        width = 1;
-        height = 1;
-        dirs = 1;
-        animMode = Lemming.Animation.NONE;
-        List<LemmImage> imgTemp = new ArrayList<>(1);
-        imgTemp.add(ToolBox.createLemmImage(width, height, Transparency.BITMASK));
-        img.add(imgTemp);
-        unpatchedImg.add(new ArrayList<>(imgTemp));
-    }
-    
-    /**
-     * Constructor.
-     * @param sourceImg  image containing animation frames (one above the other)
-     * @param animFrames number of animation frames.
-     */
-    LemmingResource(final LemmImage sourceImg, final int animFrames) {
-        frames = animFrames;
-        width = sourceImg.getWidth();
-        height = sourceImg.getHeight() / animFrames;
-        dirs = 1;
-        animMode = Lemming.Animation.NONE;
-        List<LemmImage> anim = ToolBox.getAnimation(sourceImg, animFrames);
-        img.add(anim);
-        unpatchedImg.add(new ArrayList<>(anim));
-    }
-    
-    /**
-     * Constructor.
-     * @param sourceImg  image containing animation frames (one above the other)
-     * @param sourceImgLeft 
-     * @param animFrames number of animation frames.
-     */
-    LemmingResource(final LemmImage sourceImg, final LemmImage sourceImgLeft, final int animFrames) {
-        frames = animFrames;
-        width = Math.min(sourceImg.getWidth(), sourceImgLeft.getWidth());
-        height = Math.min(sourceImg.getHeight() / animFrames, sourceImgLeft.getHeight() / animFrames);
-        dirs = 2;
-        animMode = Lemming.Animation.NONE;
-        List<LemmImage> animRight = ToolBox.getAnimation(sourceImg, animFrames);
-        List<LemmImage> animLeft = ToolBox.getAnimation(sourceImgLeft, animFrames);
-        img.add(animRight);
-        img.add(animLeft);
-        unpatchedImg.add(new ArrayList<>(animRight));
-        unpatchedImg.add(new ArrayList<>(animLeft));
-    }
-    
-    /**
-     * Get the mask for stencil manipulation.
-     * @param dir Direction
-     * @return mask for stencil manipulation
-     */
-    Mask getMask(final Lemming.Direction dir) {
-        if (dirs > 1) {
-            return mask.get(dir.ordinal());
-        } else {
-            return mask.get(0);
-        }
-    }
-    
-    /**
-     * Set the masks for stencil manipulation.
-     * @param m list of masks for stencil manipulation
-     */
-    void setMasks(final List<Mask> m) {
-        mask = m;
-    }
-    
-    /**
-     * Get specific animation frame.
-     * @param dir Direction.
-     * @param frame Index of animation frame.
-     * @return specific animation frame
-     */
-    LemmImage getImage(final Lemming.Direction dir, final int frame) {
-        if (dirs > 1) {
-            return img.get(dir.ordinal()).get(frame);
-        } else {
-            return img.get(0).get(frame);
-        }
-    }
-    
-    void replaceColors(final int templateCol, final int replaceCol,
-            final int templateCol2, final int replaceCol2) {
-        for (ListIterator<List<LemmImage>> itd = unpatchedImg.listIterator();
-                itd.hasNext(); ) { // go though all directions
-            int di = itd.nextIndex();
-            for (ListIterator<LemmImage> itf = itd.next().listIterator();
-                    itf.hasNext(); ) { // go through all frames
-                int fi = itf.nextIndex();
-                LemmImage i = ToolBox.copyLemmImage(itf.next());
-                i.replaceColor(templateCol, replaceCol);
-                i.replaceColor(templateCol2, replaceCol2);
-                img.get(di).set(fi, i);
-            }
-        }
-        if (mask != null) {
-            mask.stream().filter(Objects::nonNull).forEach(d -> { // go though all directions
-                d.replaceColors(templateCol, replaceCol, templateCol2, replaceCol2);
-            });
-        }
-    }
-}
-
 
 /**
  * Used to manage the font for the explosion counter.
@@ -0,0 +1,177 @@
+package lemmini.game;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Uniform grid of the active Lemmings by foot position, so that cursor
+ * picking and viewport culling only look at Lemmings near the area of
+ * interest.<br>
+ * Positions outside the level are clamped to the border cells. Cells are
+ * updated once per frame after the Lemmings were animated; a Lemming moved
+ * by a skill assignment in between is at most {@link #SLACK} pixels away
+ * from its cell, which queries allow for.
+ */
+final class LemmingGrid {
+
+    /** log2 of the cell size */
+    private static final int CELL_SHIFT = 6;
+    /** cell size in pixels */
+    static final int CELL_SIZE = 1 << CELL_SHIFT;
+    /** distance a Lemming can move between two updates of its cell */
+    private static final int SLACK = 4;
+    private static final int INITIAL_CELL_CAPACITY = 8;
+    /** orders query results like the Lemming list */
+    private static final Comparator<Lemming> CREATION_ORDER = Comparator.comparingInt(Lemming::getId);
+
+    private int cols = 1;
+    private int rows = 1;
+    private Lemming[][] cells = new Lemming[1][];
+    private int[] counts = new int[1];
+
+    /**
+     * Remove all Lemmings and resize the grid for a level.
+     * @param width level width in pixels
+     * @param height level height in pixels
+     */
+    void init(final int width, final int height) {
+        cols = Math.max(1, (width + CELL_SIZE - 1) >> CELL_SHIFT);
+        rows = Math.max(1, (height + CELL_SIZE - 1) >> CELL_SHIFT);
+        cells = new Lemming[cols * rows][];
+        counts = new int[cols * rows];
+    }
+
+    /**
+     * Remove all Lemmings.
+     */
+    void clear() {
+        for (int i = 0; i < cells.length; i++) {
+            if (counts[i] > 0) {
+                Arrays.fill(cells[i], 0, counts[i], null);
+                counts[i] = 0;
+            }
+        }
+    }
+
+    /**
+     * Replace the content with the given Lemmings.
+     * @param ls Lemmings
+     */
+    void rebuild(final Iterable<Lemming> ls) {
+        clear();
+        for (Lemming l : ls) {
+            add(l);
+        }
+    }
+
+    /**
+     * Add a Lemming at its current position.
+     * @param l Lemming
+     */
+    void add(final Lemming l) {
+        int c = cellOf(l.footX(), l.footY());
+        l.setGridCell(c);
+        Lemming[] cell = cells[c];
+        if (cell == null) {
+            cell = new Lemming[INITIAL_CELL_CAPACITY];
+            cells[c] = cell;
+        } else if (counts[c] == cell.length) {
+            cell = Arrays.copyOf(cell, cell.length * 2);
+            cells[c] = cell;
+        }
+        cell[counts[c]++] = l;
+    }
+
+    /**
+     * Remove a Lemming.
+     * @param l Lemming
+     */
+    void remove(final Lemming l) {
+        int c = l.getGridCell();
+        if (c < 0 || c >= cells.length) {
+            return;
+        }
+        Lemming[] cell = cells[c];
+        int n = counts[c];
+        for (int i = 0; i < n; i++) {
+            if (cell[i] == l) {
+                cell[i] = cell[n - 1];
+                cell[n - 1] = null;
+                counts[c] = n - 1;
+                break;
+            }
+        }
+        l.setGridCell(-1);
+    }
+
+    /**
+     * Move a Lemming to the cell of its current position if it changed.
+     * @param l Lemming
+     */
+    void update(final Lemming l) {
+        if (l.getGridCell() != cellOf(l.footX(), l.footY())) {
+            remove(l);
+            add(l);
+        }
+    }
+
+    /**
+     * Find all Lemmings whose foot is inside a rectangle.
+     * @param x0 left border in pixels (inclusive)
+     * @param y0 top border in pixels (inclusive)
+     * @param x1 right border in pixels (exclusive)
+     * @param y1 bottom border in pixels (exclusive)
+     * @param out list the Lemmings are added to, in the order of the Lemming list
+     */
+    void query(final int x0, final int y0, final int x1, final int y1, final List<Lemming> out) {
+        int first = out.size();
+        int c0 = col(x0 - SLACK);
+        int c1 = col(x1 + SLACK);
+        int r0 = row(y0 - SLACK);
+        int r1 = row(y1 + SLACK);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int idx = r * cols + c;
+                Lemming[] cell = cells[idx];
+                for (int i = 0; i < counts[idx]; i++) {
+                    Lemming l = cell[i];
+                    int fx = l.footX();
+                    int fy = l.footY();
+                    if (fx >= x0 && fx < x1 && fy >= y0 && fy < y1) {
+                        out.add(l);
+                    }
+                }
+            }
+        }
+        if (out.size() - first > 1) {
+            out.subList(first, out.size()).sort(CREATION_ORDER);
+        }
+    }
+
+    private int cellOf(final int x, final int y) {
+        return row(y) * cols + col(x);
+    }
+
+    private int col(final int x) {
+        return Math.min(Math.max(x >> CELL_SHIFT, 0), cols - 1);
+    }
+
+    private int row(final int y) {
+        return Math.min(Math.max(y >> CELL_SHIFT, 0), rows - 1);
+    }
+}
@@ -0,0 +1,202 @@
+package lemmini.game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * State of a number of Lemmings stored as structure of arrays: one
+ * primitive array per field instead of one object per Lemming.<br>
+ * Used for the Lemmings in keyframes and forked game states, which are
+ * stored much more often than they are looked at. A pool takes a few array
+ * allocations instead of one per Lemming, and Lemming objects are only
+ * created again when the state is restored or inspected.
+ */
+final class LemmingPool {
+
+    /** flags: bits of {@link #flags} */
+    static final int CAN_FLOAT = 1;
+    static final int CAN_CLIMB = 1 << 1;
+    static final int CAN_CHANGE_SKILL = 1 << 2;
+    static final int FLAPPER = 1 << 3;
+    static final int DROWNER = 1 << 4;
+    static final int HOMER = 1 << 5;
+    static final int NUKE = 1 << 6;
+    static final int HAS_DIED = 1 << 7;
+    static final int HAS_EXITED = 1 << 8;
+
+    /** approximate memory of one Lemming: 10 ints, 2 bytes, 1 short, 1 reference */
+    private static final long BYTES_PER_LEMMING = 10 * 4 + 2 + 2 + 4;
+
+    LemmingResource[] res;
+    int[] id;
+    int[] frameIdx;
+    int[] x;
+    int[] y;
+    /** ordinal of {@link Lemming.Direction} */
+    byte[] dir;
+    /** ordinal of {@link Lemming.Type} */
+    byte[] type;
+    int[] counter;
+    int[] counter2;
+    int[] explodeNumCtr;
+    int[] explodeCtr;
+    int[] selectCtr;
+    /** combination of the flag bits */
+    short[] flags;
+    private int size;
+
+    /**
+     * Constructor.
+     * @param capacity number of Lemmings to reserve space for
+     */
+    LemmingPool(final int capacity) {
+        int c = Math.max(capacity, 1);
+        res = new LemmingResource[c];
+        id = new int[c];
+        frameIdx = new int[c];
+        x = new int[c];
+        y = new int[c];
+        dir = new byte[c];
+        type = new byte[c];
+        counter = new int[c];
+        counter2 = new int[c];
+        explodeNumCtr = new int[c];
+        explodeCtr = new int[c];
+        selectCtr = new int[c];
+        flags = new short[c];
+    }
+
+    /**
+     * Get the number of stored Lemmings.
+     * @return number of Lemmings
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Store the state of a Lemming.
+     * @param l Lemming
+     * @return index of the stored state
+     */
+    int add(final Lemming l) {
+        if (size == x.length) {
+            grow(size * 2);
+        }
+        l.store(this, size);
+        return size++;
+    }
+
+    /**
+     * Create a Lemming from a stored state.
+     * @param i index
+     * @return new Lemming
+     */
+    Lemming get(final int i) {
+        Objects.checkIndex(i, size);
+        return new Lemming(this, i);
+    }
+
+    /**
+     * Create Lemmings from all stored states.
+     * @return list of new Lemmings in the order they were stored
+     */
+    List<Lemming> toList() {
+        List<Lemming> ls = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ls.add(new Lemming(this, i));
+        }
+        return ls;
+    }
+
+    /**
+     * Get the memory used by the stored states.
+     * @return size in bytes
+     */
+    long getBytes() {
+        return size * BYTES_PER_LEMMING;
+    }
+
+    /**
+     * Check whether two pools store exactly the same states.
+     * @param other other pool
+     * @return true if all states are equal
+     */
+    boolean contentEquals(final LemmingPool other) {
+        int n = size;
+        return n == other.size
+                && Arrays.equals(res, 0, n, other.res, 0, n)
+                && Arrays.equals(id, 0, n, other.id, 0, n)
+                && Arrays.equals(frameIdx, 0, n, other.frameIdx, 0, n)
+                && Arrays.equals(x, 0, n, other.x, 0, n)
+                && Arrays.equals(y, 0, n, other.y, 0, n)
+                && Arrays.equals(dir, 0, n, other.dir, 0, n)
+                && Arrays.equals(type, 0, n, other.type, 0, n)
+                && Arrays.equals(counter, 0, n, other.counter, 0, n)
+                && Arrays.equals(counter2, 0, n, other.counter2, 0, n)
+                && Arrays.equals(explodeNumCtr, 0, n, other.explodeNumCtr, 0, n)
+                && Arrays.equals(explodeCtr, 0, n, other.explodeCtr, 0, n)
+                && Arrays.equals(selectCtr, 0, n, other.selectCtr, 0, n)
+                && Arrays.equals(flags, 0, n, other.flags, 0, n);
+    }
+
+    /**
+     * Compute a hash over all stored states, e.g. to compare states of
+     * different runs without keeping them.
+     * @return hash value
+     */
+    int contentHash() {
+        int h = size;
+        for (int i = 0; i < size; i++) {
+            h = 31 * h + id[i];
+            h = 31 * h + frameIdx[i];
+            h = 31 * h + x[i];
+            h = 31 * h + y[i];
+            h = 31 * h + dir[i];
+            h = 31 * h + type[i];
+            h = 31 * h + counter[i];
+            h = 31 * h + counter2[i];
+            h = 31 * h + explodeNumCtr[i];
+            h = 31 * h + explodeCtr[i];
+            h = 31 * h + selectCtr[i];
+            h = 31 * h + flags[i];
+        }
+        return h;
+    }
+
+    /**
+     * Enlarge all arrays.
+     * @param capacity new capacity
+     */
+    private void grow(final int capacity) {
+        res = Arrays.copyOf(res, capacity);
+        id = Arrays.copyOf(id, capacity);
+        frameIdx = Arrays.copyOf(frameIdx, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        dir = Arrays.copyOf(dir, capacity);
+        type = Arrays.copyOf(type, capacity);
+        counter = Arrays.copyOf(counter, capacity);
+        counter2 = Arrays.copyOf(counter2, capacity);
+        explodeNumCtr = Arrays.copyOf(explodeNumCtr, capacity);
+        explodeCtr = Arrays.copyOf(explodeCtr, capacity);
+        selectCtr = Arrays.copyOf(selectCtr, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+    }
+}
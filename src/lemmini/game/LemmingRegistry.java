@@ -0,0 +1,180 @@
+package lemmini.game;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Array backed list of the active Lemmings of a level in creation order.<br>
+ * Every added Lemming gets a stable ID (see {@link Lemming#getId()}), so it
+ * can be found in constant time both by ID and by list index. Lemmings are
+ * only removed in batches with {@link #removeIf(Predicate)}, which compacts
+ * the array in one pass.
+ */
+final class LemmingRegistry extends AbstractList<Lemming> implements RandomAccess {
+
+    private static final int INITIAL_CAPACITY = 128;
+
+    private Lemming[] lemmings = new Lemming[INITIAL_CAPACITY];
+    private int size;
+    /** list index of each ID, -1 if the Lemming was removed */
+    private int[] indices = new int[INITIAL_CAPACITY];
+    /** ID of the next Lemming to add */
+    private int nextId;
+
+    @Override
+    public Lemming get(final int index) {
+        Objects.checkIndex(index, size);
+        return lemmings[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Add a Lemming and assign the next ID to it.
+     * @param l Lemming
+     * @return true
+     */
+    @Override
+    public boolean add(final Lemming l) {
+        l.setId(nextId++);
+        put(l);
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Get an active Lemming by its ID.
+     * @param id ID
+     * @return Lemming or null if there's no active Lemming with this ID
+     */
+    Lemming getById(final int id) {
+        if (id < 0 || id >= nextId || indices[id] < 0) {
+            return null;
+        }
+        return lemmings[indices[id]];
+    }
+
+    @Override
+    public int indexOf(final Object o) {
+        if (!(o instanceof Lemming)) {
+            return -1;
+        }
+        int id = ((Lemming) o).getId();
+        if (id < 0 || id >= nextId) {
+            return -1;
+        }
+        int idx = indices[id];
+        return (idx >= 0 && lemmings[idx] == o) ? idx : -1;
+    }
+
+    @Override
+    public int lastIndexOf(final Object o) {
+        return indexOf(o);
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * Remove all Lemmings matching the filter, keeping the order of the
+     * others.
+     * @param filter returns true for Lemmings to remove
+     * @return true if any Lemming was removed
+     */
+    @Override
+    public boolean removeIf(final Predicate<? super Lemming> filter) {
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            Lemming l = lemmings[i];
+            if (filter.test(l)) {
+                indices[l.getId()] = -1;
+            } else {
+                indices[l.getId()] = n;
+                lemmings[n++] = l;
+            }
+        }
+        if (n == size) {
+            return false;
+        }
+        Arrays.fill(lemmings, n, size, null);
+        size = n;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Remove all Lemmings and start assigning IDs from 0 again.
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(lemmings, 0, size, null);
+        size = 0;
+        nextId = 0;
+        modCount++;
+    }
+
+    /**
+     * Replace the content with Lemmings that already have IDs, e.g. copies
+     * stored in a keyframe.
+     * @param ls Lemmings in creation order
+     * @param nextId ID of the next Lemming to add
+     */
+    void restore(final Collection<Lemming> ls, final int nextId) {
+        clear();
+        this.nextId = nextId;
+        if (indices.length < nextId) {
+            indices = new int[Math.max(nextId, indices.length * 2)];
+        }
+        Arrays.fill(indices, 0, nextId, -1);
+        for (Lemming l : ls) {
+            put(l);
+        }
+    }
+
+    /**
+     * Get the ID the next added Lemming will get.
+     * @return ID of the next Lemming
+     */
+    int getNextId() {
+        return nextId;
+    }
+
+    /**
+     * Append a Lemming with an assigned ID.
+     * @param l Lemming
+     */
+    private void put(final Lemming l) {
+        if (size == lemmings.length) {
+            lemmings = Arrays.copyOf(lemmings, size * 2);
+        }
+        int id = l.getId();
+        if (id >= indices.length) {
+            indices = Arrays.copyOf(indices, Math.max(id + 1, indices.length * 2));
+        }
+        indices[id] = size;
+        lemmings[size++] = l;
+    }
+}
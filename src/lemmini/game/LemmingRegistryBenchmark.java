@@ -0,0 +1,131 @@
+package lemmini.game;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Command line tool that compares {@link LemmingRegistry} with the
+ * <code>LinkedList</code> it replaced, at 1000 and 10000 Lemmings.<br>
+ * Measured are lookups by list index (as done for replay skill assignments),
+ * lookups of the index of a Lemming (as done when recording them), a full
+ * iteration and the removal of every tenth Lemming.
+ * <br>
+ * Usage: <code>LemmingRegistryBenchmark [--rounds=N]</code>
+ */
+public final class LemmingRegistryBenchmark {
+
+    private static final int[] SIZES = {1_000, 10_000};
+    private static final int LOOKUPS = 10_000;
+
+    /** sink for results, so the JIT can't drop the measured loops */
+    private static long sink;
+
+    private LemmingRegistryBenchmark() {
+    }
+
+    public static void main(final String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int rounds = 20;
+        for (String arg : args) {
+            if (arg.startsWith("--rounds=")) {
+                rounds = Integer.parseInt(arg.substring("--rounds=".length()));
+            } else {
+                System.err.println("usage: LemmingRegistryBenchmark [--rounds=N]");
+                System.exit(2);
+            }
+        }
+        try {
+            // Lemmings can only be created once their resources are loaded
+            HeadlessGame.init(URLDecoder.decode(LemmingRegistryBenchmark.class.getProtectionDomain().getCodeSource().getLocation().getFile(), "UTF-8"));
+        } catch (LemmException | ResourceException | IOException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(2);
+        }
+
+        System.out.printf(Locale.ROOT, "%-16s %6s %14s %14s %14s %14s%n",
+                "storage", "size", "get(i) ns", "indexOf ns", "iterate ns", "remove 10% us");
+        for (int size : SIZES) {
+            for (int r = 0; r < rounds; r++) {
+                // only the last round is printed, the others warm up the JIT
+                boolean print = r == rounds - 1;
+                run("LinkedList", LinkedList::new, size, print);
+                run("LemmingRegistry", LemmingRegistry::new, size, print);
+            }
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Measure one list implementation.
+     * @param name name to print
+     * @param factory creates an empty list
+     * @param size number of Lemmings
+     * @param print flag: print the results
+     */
+    private static void run(final String name, final Supplier<List<Lemming>> factory, final int size, final boolean print) {
+        List<Lemming> list = factory.get();
+        for (int i = 0; i < size; i++) {
+            list.add(new Lemming(i, 0, Lemming.Direction.RIGHT));
+        }
+        Random rnd = new Random(size);
+        int[] idx = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            idx[i] = rnd.nextInt(size);
+        }
+        Lemming[] targets = new Lemming[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            targets[i] = list.get(idx[i]);
+        }
+
+        long start = System.nanoTime();
+        for (int i : idx) {
+            sink += list.get(i).footX();
+        }
+        long getNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (Lemming l : targets) {
+            sink += list.indexOf(l);
+        }
+        long indexOfNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (Lemming l : list) {
+            sink += l.footX();
+        }
+        long iterateNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        list.removeIf(l -> l.footX() % 10 == 0);
+        long removeNanos = System.nanoTime() - start;
+        sink += list.size();
+
+        if (print) {
+            System.out.printf(Locale.ROOT, "%-16s %6d %14.1f %14.1f %14.1f %14.1f%n", name, size,
+                    (double) getNanos / LOOKUPS, (double) indexOfNanos / LOOKUPS, (double) iterateNanos / size,
+                    removeNanos / 1e3);
+        }
+    }
+}
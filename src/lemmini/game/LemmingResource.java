@@ -0,0 +1,165 @@
+package lemmini.game;
+
+import java.awt.Transparency;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Objects;
+import lemmini.graphics.LemmImage;
+import lemmini.tools.ToolBox;
+
+/*
+ * FILE MODIFIED BY RYAN SAKOWSKI
+ * 
+ * 
+ * Copyright 2009 Volker Oth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Storage class for a Lemming.
+ * @author Volker Oth
+ */
+class LemmingResource {
+    /** relative foot X position in pixels inside bitmap */
+    int footX;
+    /** relative foot Y position in pixels inside bitmap */
+    int footY;
+    /** "mid" position above foot in pixels */
+    int size;
+    int maskX;
+    int maskY;
+    /** width of image in pixels */
+    int width;
+    /** height of image in pixels */
+    int height;
+    /** number of animation frames */
+    int frames;
+    /** animation mode */
+    Lemming.Animation animMode;
+    /** number of directions (1 or 2) */
+    int dirs;
+    int maskStep;
+    /** list of images to store the animation [Direction][AnimationFrame] */
+    private final List<List<LemmImage>> img = new ArrayList<>(2);
+    private final List<List<LemmImage>> unpatchedImg = new ArrayList<>(2);
+    /** list of removal masks used for digging/bashing/mining/explosions etc. [Direction] */
+    private List<Mask> mask = null;
+    
+    /**
+     * Constructor.
+     */
+    LemmingResource() {
+        width = 1;
+        height = 1;
+        dirs = 1;
+        animMode = Lemming.Animation.NONE;
+        List<LemmImage> imgTemp = new ArrayList<>(1);
+        imgTemp.add(ToolBox.createLemmImage(width, height, Transparency.BITMASK));
+        img.add(imgTemp);
+        unpatchedImg.add(new ArrayList<>(imgTemp));
+    }
+    
+    /**
+     * Constructor.
+     * @param sourceImg  image containing animation frames (one above the other)
+     * @param animFrames number of animation frames.
+     */
+    LemmingResource(final LemmImage sourceImg, final int animFrames) {
+        frames = animFrames;
+        width = sourceImg.getWidth();
+        height = sourceImg.getHeight() / animFrames;
+        dirs = 1;
+        animMode = Lemming.Animation.NONE;
+        List<LemmImage> anim = ToolBox.getAnimation(sourceImg, animFrames);
+        img.add(anim);
+        unpatchedImg.add(new ArrayList<>(anim));
+    }
+    
+    /**
+     * Constructor.
+     * @param sourceImg  image containing animation frames (one above the other)
+     * @param sourceImgLeft 
+     * @param animFrames number of animation frames.
+     */
+    LemmingResource(final LemmImage sourceImg, final LemmImage sourceImgLeft, final int animFrames) {
+        frames = animFrames;
+        width = Math.min(sourceImg.getWidth(), sourceImgLeft.getWidth());
+        height = Math.min(sourceImg.getHeight() / animFrames, sourceImgLeft.getHeight() / animFrames);
+        dirs = 2;
+        animMode = Lemming.Animation.NONE;
+        List<LemmImage> animRight = ToolBox.getAnimation(sourceImg, animFrames);
+        List<LemmImage> animLeft = ToolBox.getAnimation(sourceImgLeft, animFrames);
+        img.add(animRight);
+        img.add(animLeft);
+        unpatchedImg.add(new ArrayList<>(animRight));
+        unpatchedImg.add(new ArrayList<>(animLeft));
+    }
+    
+    /**
+     * Get the mask for stencil manipulation.
+     * @param dir Direction
+     * @return mask for stencil manipulation
+     */
+    Mask getMask(final Lemming.Direction dir) {
+        if (dirs > 1) {
+            return mask.get(dir.ordinal());
+        } else {
+            return mask.get(0);
+        }
+    }
+    
+    /**
+     * Set the masks for stencil manipulation.
+     * @param m list of masks for stencil manipulation
+     */
+    void setMasks(final List<Mask> m) {
+        mask = m;
+    }
+    
+    /**
+     * Get specific animation frame.
+     * @param dir Direction.
+     * @param frame Index of animation frame.
+     * @return specific animation frame
+     */
+    LemmImage getImage(final Lemming.Direction dir, final int frame) {
+        if (dirs > 1) {
+            return img.get(dir.ordinal()).get(frame);
+        } else {
+            return img.get(0).get(frame);
+        }
+    }
+    
+    void replaceColors(final int templateCol, final int replaceCol,
+            final int templateCol2, final int replaceCol2) {
+        for (ListIterator<List<LemmImage>> itd = unpatchedImg.listIterator();
+                itd.hasNext(); ) { // go though all directions
+            int di = itd.nextIndex();
+            for (ListIterator<LemmImage> itf = itd.next().listIterator();
+                    itf.hasNext(); ) { // go through all frames
+                int fi = itf.nextIndex();
+                LemmImage i = ToolBox.copyLemmImage(itf.next());
+                i.replaceColor(templateCol, replaceCol);
+                i.replaceColor(templateCol2, replaceCol2);
+                img.get(di).set(fi, i);
+            }
+        }
+        if (mask != null) {
+            mask.stream().filter(Objects::nonNull).forEach(d -> { // go though all directions
+                d.replaceColors(templateCol, replaceCol, templateCol2, replaceCol2);
+            });
+        }
+    }
+}
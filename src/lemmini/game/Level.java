@@ -3,11 +3,14 @@ package lemmini.game;
 import java.awt.Color;
 import java.awt.RenderingHints;
 import java.awt.Transparency;
+import java.security.MessageDigest;
 import java.util.*;
+import java.util.stream.IntStream;
 import lemmini.gameutil.Sprite;
 import lemmini.graphics.GraphicsBuffer;
 import lemmini.graphics.GraphicsContext;
 import lemmini.graphics.LemmImage;
+import lemmini.graphics.TiledImage;
 import lemmini.tools.Props;
 import lemmini.tools.ToolBox;
 import org.apache.commons.lang3.ArrayUtils;
@@ -71,6 +74,12 @@ public class Level {
     private static final int BG_BUFFER_PADDING = 4;
     private static final int BG_BUFFER_UNSCALED_INDEX = 0;
     private static final int BG_BUFFER_SCALED_INDEX = 1;
+    /**
+     * size of the blocks terrain is painted in, see {@link #paintTerrain(List)}.
+     * Must be a multiple of the tile size of {@link Stencil} and {@link TiledImage}
+     * (and thus of the bitplane word size) so that no two blocks share a tile.
+     */
+    private static final int PAINT_BLOCK_SIZE = TiledImage.TILE_SIZE;
     
     /** default maximum release rate */
     private static final int DEFAULT_MAX_RELEASE_RATE = 99;
@@ -82,7 +91,7 @@ public class Level {
     /** the foreground stencil */
     private Stencil stencil;
     /** the foreground image */
-    private LemmImage fgImage;
+    private TiledImage fgImage;
     /** the background images */
     private LemmImage[] bgImages;
     /** array of normal sprite objects - drawn behind foreground image */
@@ -142,6 +151,8 @@ public class Level {
     private final List<Terrain> terrain;
     /** steel areas which are indestructible - originally 32 objects, 4 bytes each */
     private final List<Steel> steel;
+    /** level INI followed by the INIs of its mainLevel chain */
+    private final List<Resource> levelResources;
     private final Background[] backgrounds;
     private final GraphicsBuffer[][] bgBuffers;
     /** level name - originally 32 bytes ASCII filled with whitespace */
@@ -164,6 +175,19 @@ public class Level {
      * @throws LemmException
      */
     public Level(final Resource res, final Level level2) throws ResourceException, LemmException {
+        this(res, level2, GameController.getCurLevelPack());
+    }
+    
+    /**
+     * Load a level and all level resources. This doesn't change any global
+     * state, so it may be called from a background thread.
+     * @param res resource object
+     * @param level2 level with resources to reuse
+     * @param pack level pack the level belongs to
+     * @throws ResourceException
+     * @throws LemmException
+     */
+    Level(final Resource res, final Level level2, final LevelPack pack) throws ResourceException, LemmException {
         levelProps = new ArrayList<>(4);
         hints = new ArrayList<>(4);
         // read level properties from file
@@ -172,6 +196,8 @@ public class Level {
             throw new ResourceException(res);
         }
         levelProps.add(p);
+        levelResources = new ArrayList<>(4);
+        levelResources.add(res);
         
         String mainLevel = p.get("mainLevel", StringUtils.EMPTY);
         while (!mainLevel.isEmpty()) {
@@ -181,6 +207,7 @@ public class Level {
                 throw new ResourceException(res2);
             }
             levelProps.add(p);
+            levelResources.add(res2);
             mainLevel = p.get("mainLevel", StringUtils.EMPTY);
         }
         
@@ -197,7 +224,7 @@ public class Level {
                 break;
             }
         }
-        maxFallDistance = Props.getInt(levelProps, "maxFallDistance", GameController.getCurLevelPack().getMaxFallDistance());
+        maxFallDistance = Props.getInt(levelProps, "maxFallDistance", pack.getMaxFallDistance());
         classicSteel = Props.getBoolean(levelProps, "classicSteel", false);
         switch (p.getInt("autosteelMode", 0)) {
             case 0:
@@ -303,10 +330,15 @@ public class Level {
         forceNormalTimerSpeed = Props.getBoolean(levelProps, "forceNormalTimerSpeed", false);
         
         styles = new HashMap<>(16);
-        mainStyle = new GraphicSet(styleName);
+        mainStyle = GraphicSetCache.acquire(styleName);
         styles.put(styleName.toLowerCase(Locale.ROOT), mainStyle);
         if (!specialStyleName.isEmpty()) {
-            specialStyle = new SpecialGraphicSet(specialStyleName);
+            try {
+                specialStyle = new SpecialGraphicSet(specialStyleName);
+            } catch (LemmException | ResourceException ex) {
+                releaseStyles();
+                throw ex;
+            }
         } else {
             specialStyle = null;
         }
@@ -414,34 +446,46 @@ public class Level {
             stencil = level2.stencil;
             level2.stencil = null;
         }
-        
-        Lemming.replaceColors(getDebrisColor(), getDebrisColor2());
+    }
+    
+    /**
+     * Release all styles used by this level, so that the
+     * {@link GraphicSetCache} may evict them. Must be called once the level
+     * is replaced.
+     */
+    void releaseStyles() {
+        styles.values().forEach(GraphicSetCache::release);
+        styles.clear();
     }
     
     /**
      * Paint a level.
      */
     void paintLevel() throws ResourceException, LemmException {
+        paintLevel(true);
+    }
+    
+    /**
+     * Paint a level.
+     * @param collectGarbage true to force garbage collections before and
+     *                       after painting; false when painting in the
+     *                       background, where a full collection would stall
+     *                       the game thread
+     */
+    void paintLevel(final boolean collectGarbage) throws ResourceException, LemmException {
         // flush all resources
         sprObjFront = null;
         sprObjBehind = null;
         sprObjects = null;
         entrances = null;
-        System.gc();
+        if (collectGarbage) {
+            System.gc();
+        }
         // create images and stencil
         if (fgImage != null && fgImage.getWidth() == levelWidth && fgImage.getHeight() == levelHeight) {
-            GraphicsContext gfx = null;
-            try {
-                gfx = fgImage.createGraphicsContext();
-                gfx.setBackground(BLANK_COLOR);
-                gfx.clearRect(0, 0, fgImage.getWidth(), fgImage.getHeight());
-            } finally {
-                if (gfx != null) {
-                    gfx.dispose();
-                }
-            }
+            fgImage.clear();
         } else {
-            fgImage = ToolBox.createLemmImage(levelWidth, levelHeight);
+            fgImage = new TiledImage(levelWidth, levelHeight);
         }
         bgImages = new LemmImage[backgrounds.length];
         for (int i = 0; i < backgrounds.length; i++) {
@@ -453,204 +497,18 @@ public class Level {
         } else {
             stencil = new Stencil(levelWidth, levelHeight);
         }
-        // paint terrain
-        for (Terrain t : terrain) {
-            if (t.id < 0) {
-                continue;
-            }
-            String styleLowerCase = t.style.toLowerCase(Locale.ROOT);
-            if (!styles.containsKey(styleLowerCase)) {
-                styles.put(styleLowerCase, new GraphicSet(t.style));
-            }
-            GraphicSet terrainStyle = styles.get(styleLowerCase);
-            
-            LemmImage i;
-            boolean[][] mask;
-            boolean[][] steelMask;
-            int width;
-            int height;
-            int maskWidth;
-            int maskHeight;
-            int steelMaskWidth;
-            int steelMaskHeight;
-            boolean isSteel;
-            if (t.specialGraphic) {
-                i = specialStyle.getImage();
-                mask = specialStyle.getMask();
-                steelMask = specialStyle.getSteelMask();
-                width = i.getWidth();
-                height = i.getHeight();
-                maskWidth = ArrayUtils.isNotEmpty(mask) ? mask[0].length : 0;
-                maskHeight = mask.length;
-                steelMaskWidth = ArrayUtils.isNotEmpty(steelMask) ? steelMask[0].length : 0;
-                steelMaskHeight = steelMask.length;
-                isSteel = true;
-            } else {
-                GraphicSet.Terrain t2 = terrainStyle.getTerrain(t.id);
-                i = t2.getImage();
-                mask = t2.getMask();
-                steelMask = t2.getSteelMask();
-                width = i.getWidth();
-                height = i.getHeight();
-                maskWidth = ArrayUtils.isNotEmpty(mask) ? mask[0].length : 0;
-                maskHeight = mask.length;
-                steelMaskWidth = ArrayUtils.isNotEmpty(steelMask) ? steelMask[0].length : 0;
-                steelMaskHeight = steelMask.length;
-                isSteel = t2.isSteel();
-            }
-            if (autosteelMode == AutosteelMode.NONE) {
-                isSteel = false;
-            }
-            
-            int tx = t.xPos;
-            int ty = t.yPos;
-            boolean rotate = BooleanUtils.toBoolean(t.modifier & Terrain.MODE_ROTATE);
-            boolean noOneWay = BooleanUtils.toBoolean(t.modifier & Terrain.MODE_NO_ONE_WAY);
-            boolean flipHorizontally = BooleanUtils.toBoolean(t.modifier & Terrain.MODE_FLIP_HORIZONTALLY);
-            boolean fake = BooleanUtils.toBoolean(t.modifier & Terrain.MODE_FAKE);
-            boolean upsideDown = BooleanUtils.toBoolean(t.modifier & Terrain.MODE_UPSIDE_DOWN);
-            boolean noOverwrite = BooleanUtils.toBoolean(t.modifier & Terrain.MODE_NO_OVERWRITE);
-            boolean remove = !noOverwrite && BooleanUtils.toBoolean(t.modifier & Terrain.MODE_REMOVE);
-            boolean invisible = BooleanUtils.toBoolean(t.modifier & Terrain.MODE_INVISIBLE);
-            int width2 = width;
-            int height2 = height;
-            if (rotate) {
-                width = height2;
-                height = width2;
-            }
-            
-            for (int y = 0; y < height; y++) {
-                if (y + ty < 0 || y + ty >= levelHeight) {
-                    continue;
-                }
-                for (int x = 0; x < width; x++) {
-                    if (x + tx < 0 || x + tx >= levelWidth) {
-                        continue;
-                    }
-                    int x2 = x;
-                    int y2 = y;
-                    if (upsideDown) {
-                        y2 = height - 1 - y2;
-                    }
-                    if (flipHorizontally) {
-                        x2 = width - 1 - x2;
-                    }
-                    if (rotate) {
-                        int oldX2 = x2;
-                        x2 = y2;
-                        y2 = height2 - 1 - oldX2;
-                    }
-                    int col = i.getRGB(x2, y2);
-                    int alpha = (col >>> 24) & 0xff;
-                    boolean isPixelOpaque = alpha >= 0x80;
-                    // ignore transparent pixels
-                    if (!invisible && (col & 0xff000000) != 0) {
-                        if (noOverwrite) {
-                            if (noOneWay && isPixelOpaque && !fgImage.isPixelOpaque(x + tx, y + ty)) {
-                                stencil.orMask(x + tx, y + ty, Stencil.MSK_NO_ONE_WAY_DRAW);
-                            }
-                            fgImage.addRGBBehind(x + tx, y + ty, col);
-                        } else if (remove) {
-                            if (noOneWay && isPixelOpaque) {
-                                stencil.andMask(x + tx, y + ty, ~Stencil.MSK_NO_ONE_WAY_DRAW);
-                            }
-                            fgImage.removeAlpha(x + tx, y + ty, alpha);
-                        } else {
-                            if (isPixelOpaque) {
-                                if (noOneWay) {
-                                    stencil.orMask(x + tx, y + ty, Stencil.MSK_NO_ONE_WAY_DRAW);
-                                } else {
-                                    stencil.andMask(x + tx, y + ty, ~Stencil.MSK_NO_ONE_WAY_DRAW);
-                                }
-                            }
-                            fgImage.addRGB(x + tx, y + ty, col);
-                        }
-                    }
-                    if (!fake && y2 < maskHeight && x2 < maskWidth && mask[y2][x2]) {
-                        int newMask;
-                        if (remove) {
-                            newMask = stencil.getMask(x + tx, y + ty) & Stencil.MSK_NO_ONE_WAY_DRAW;
-                        } else if (noOverwrite) {
-                            newMask = stencil.getMask(x + tx, y + ty) | Stencil.MSK_BRICK;
-                            if (noOneWay) {
-                                newMask |= Stencil.MSK_NO_ONE_WAY;
-                            }
-                        } else {
-                            newMask = stencil.getMask(x + tx, y + ty) | Stencil.MSK_BRICK;
-                            if (noOneWay) {
-                                newMask |= Stencil.MSK_NO_ONE_WAY;
-                            } else {
-                                newMask &= ~Stencil.MSK_NO_ONE_WAY;
-                            }
-                        }
-                        stencil.setMask(x + tx, y + ty, newMask);
-                    }
-                    if (!fake && y2 < steelMaskHeight && x2 < steelMaskWidth && steelMask[y2][x2]) {
-                        int newMask = stencil.getMask(x + tx, y + ty);
-                        if (remove) {
-                        } else if (noOverwrite) {
-                            switch (autosteelMode) {
-                                case NONE:
-                                default:
-                                    break;
-                                case SIMPLE:
-                                    if (isSteel) {
-                                        newMask |= Stencil.MSK_STEEL_BRICK;
-                                    }
-                                    break;
-                                case ADVANCED:
-                                    if (isSteel && !BooleanUtils.toBoolean(stencil.getMask(x + tx, y + ty) & Stencil.MSK_BRICK)) {
-                                        newMask |= Stencil.MSK_STEEL_BRICK;
-                                    }
-                                    break;
-                            }
-                        } else {
-                            switch (autosteelMode) {
-                                case NONE:
-                                default:
-                                    break;
-                                case SIMPLE:
-                                    if (isSteel) {
-                                        newMask |= Stencil.MSK_STEEL_BRICK;
-                                    }
-                                    break;
-                                case ADVANCED:
-                                    if (isSteel) {
-                                        newMask |= Stencil.MSK_STEEL_BRICK;
-                                    } else {
-                                        newMask &= ~Stencil.MSK_STEEL_BRICK;
-                                    }
-                                    break;
-                            }
-                        }
-                        stencil.setMask(x + tx, y + ty, newMask);
-                    }
-                }
+        // the terrain is painted from several threads, and the caller marks the whole level as dirty anyway
+        stencil.setDirtyRegion(null);
+        // paint terrain and steel areas unless they can be loaded from the cache
+        byte[] cacheKey = PaintedLevelCache.isEnabled() ? getPaintKey() : null;
+        if (cacheKey == null || !PaintedLevelCache.load(cacheKey, fgImage, stencil)) {
+            paintTerrain(resolveTerrain());
+            paintSteel();
+            if (cacheKey != null) {
+                PaintedLevelCache.store(cacheKey, fgImage, stencil);
             }
         }
         
-        // paint steel tiles into stencil
-        steel.stream().forEachOrdered(stl -> {
-            int sx = stl.xPos;
-            int sy = stl.yPos;
-            for (int y = 0; y < stl.height; y++) {
-                if (y + sy < 0 || y + sy >= levelHeight) {
-                    continue;
-                }
-                for (int x = 0; x < stl.width; x++) {
-                    if ((!classicSteel && !BooleanUtils.toBoolean(stencil.getMask(x + sx, y + sy) & Stencil.MSK_BRICK))
-                            || x + sx < 0 || x + sx >= levelWidth) {
-                        continue;
-                    }
-                    if (stl.negative) {
-                        stencil.andMask(x + sx, y + sy, ~Stencil.MSK_STEEL_BRICK);
-                    } else {
-                        stencil.orMask(x + sx, y + sy, Stencil.MSK_STEEL_BRICK);
-                    }
-                }
-            }
-        });
-        
         // now for the animated objects
         List<SpriteObject> oCombined = new ArrayList<>(64);
         List<SpriteObject> oBehind = new ArrayList<>(64);
@@ -665,7 +523,7 @@ public class Level {
             }
             String styleLowerCase = o.style.toLowerCase(Locale.ROOT);
             if (!styles.containsKey(styleLowerCase)) {
-                styles.put(styleLowerCase, new GraphicSet(o.style));
+                styles.put(styleLowerCase, GraphicSetCache.acquire(o.style));
             }
             GraphicSet objectStyle = styles.get(styleLowerCase);
             
@@ -805,7 +663,7 @@ public class Level {
                     }
                     String styleLowerCase = t.style.toLowerCase(Locale.ROOT);
                     if (!styles.containsKey(styleLowerCase)) {
-                        styles.put(styleLowerCase, new GraphicSet(t.style));
+                        styles.put(styleLowerCase, GraphicSetCache.acquire(t.style));
                     }
                     GraphicSet terrainStyle = styles.get(styleLowerCase);
                     
@@ -826,15 +684,16 @@ public class Level {
                         width = height2;
                         height = width2;
                     }
+                    int[] pixels = i.getRGB(0, 0, width2, height2, null, 0, width2);
+                    int xStart = Math.max(0, -tx);
+                    int xEnd = Math.min(width, unpaddedBg.getWidth() - tx);
+                    int[] row = new int[Math.max(width, 0)];
                     
                     for (int y = 0; y < height; y++) {
-                        if (y + ty < 0 || y + ty >= unpaddedBg.getHeight()) {
+                        if (y + ty < 0 || y + ty >= unpaddedBg.getHeight() || xStart >= xEnd) {
                             continue;
                         }
-                        for (int x = 0; x < width; x++) {
-                            if (x + tx < 0 || x + tx >= unpaddedBg.getWidth()) {
-                                continue;
-                            }
+                        for (int x = xStart; x < xEnd; x++) {
                             int x2 = x;
                             int y2 = y;
                             if (upsideDown) {
@@ -848,17 +707,16 @@ public class Level {
                                 x2 = y2;
                                 y2 = height2 - 1 - oldX2;
                             }
-                            int col = i.getRGB(x2, y2);
-                            // ignore transparent pixels
-                            if ((col & 0xff000000) != 0) {
-                                if (!overwrite) {
-                                    unpaddedBg.addRGBBehind(x + tx, y + ty, col);
-                                } else if (remove) {
-                                    unpaddedBg.removeAlpha(x + tx, y + ty, (col >>> 24) & 0xff);
-                                } else {
-                                    unpaddedBg.addRGB(x + tx, y + ty, col);
-                                }
-                            }
+                            int col = pixels[y2 * width2 + x2];
+                            row[x] = (overwrite && remove) ? (col >>> 24) & 0xff : col;
+                        }
+                        // transparent pixels are ignored by the span methods
+                        if (!overwrite) {
+                            unpaddedBg.addRGBBehindSpan(tx + xStart, y + ty, row, xStart, xEnd - xStart);
+                        } else if (remove) {
+                            unpaddedBg.removeAlphaSpan(tx + xStart, y + ty, row, xStart, xEnd - xStart);
+                        } else {
+                            unpaddedBg.addRGBSpan(tx + xStart, y + ty, row, xStart, xEnd - xStart);
                         }
                     }
                 }
@@ -885,7 +743,7 @@ public class Level {
                     }
                     String styleLowerCase = o.style.toLowerCase(Locale.ROOT);
                     if (!styles.containsKey(styleLowerCase)) {
-                        styles.put(styleLowerCase, new GraphicSet(o.style));
+                        styles.put(styleLowerCase, GraphicSetCache.acquire(o.style));
                     }
                     GraphicSet objectStyle = styles.get(styleLowerCase);
                     
@@ -946,10 +804,321 @@ public class Level {
         sprObjects = oCombined.toArray(new SpriteObject[oCombined.size()]);
         sprObjFront = oFront.toArray(new SpriteObject[oFront.size()]);
         sprObjBehind = oBehind.toArray(new SpriteObject[oBehind.size()]);
-        System.gc();
+        if (collectGarbage) {
+            System.gc();
+        }
+    }
+    
+    /**
+     * Paint the steel areas into the stencil.
+     */
+    private void paintSteel() {
+        steel.stream().forEachOrdered(stl -> {
+            int sx = stl.xPos;
+            int sy = stl.yPos;
+            for (int y = 0; y < stl.height; y++) {
+                if (y + sy < 0 || y + sy >= levelHeight) {
+                    continue;
+                }
+                for (int x = 0; x < stl.width; x++) {
+                    if ((!classicSteel && !BooleanUtils.toBoolean(stencil.getMask(x + sx, y + sy) & Stencil.MSK_BRICK))
+                            || x + sx < 0 || x + sx >= levelWidth) {
+                        continue;
+                    }
+                    if (stl.negative) {
+                        stencil.andMask(x + sx, y + sy, ~Stencil.MSK_STEEL_BRICK);
+                    } else {
+                        stencil.orMask(x + sx, y + sy, Stencil.MSK_STEEL_BRICK);
+                    }
+                }
+            }
+        });
+    }
+    
+    /**
+     * Compute the key of the painted terrain in the {@link PaintedLevelCache}.
+     * It covers everything terrain and steel painting depend on: the level
+     * INIs and the images and masks of all terrain pieces, read from wherever
+     * the current mods resolve them.
+     * @return cache key
+     * @throws ResourceException
+     * @throws LemmException
+     */
+    private byte[] getPaintKey() throws ResourceException, LemmException {
+        MessageDigest md = PaintedLevelCache.newKeyDigest();
+        PaintedLevelCache.updateKey(md, levelWidth);
+        PaintedLevelCache.updateKey(md, levelHeight);
+        for (Resource res : levelResources) {
+            PaintedLevelCache.updateKey(md, res);
+        }
+        Set<Object> hashed = Collections.newSetFromMap(new IdentityHashMap<>(64));
+        for (Terrain t : terrain) {
+            if (t.id < 0) {
+                continue;
+            }
+            if (t.specialGraphic) {
+                if (hashed.add(specialStyle)) {
+                    for (Resource res : specialStyle.getResources()) {
+                        PaintedLevelCache.updateKey(md, res);
+                    }
+                }
+                continue;
+            }
+            String styleLowerCase = t.style.toLowerCase(Locale.ROOT);
+            if (!styles.containsKey(styleLowerCase)) {
+                styles.put(styleLowerCase, GraphicSetCache.acquire(t.style));
+            }
+            GraphicSet.Terrain t2 = styles.get(styleLowerCase).getTerrain(t.id);
+            if (hashed.add(t2)) {
+                PaintedLevelCache.updateKey(md, t2.getImageResource());
+                PaintedLevelCache.updateKey(md, t2.getMaskResource());
+                PaintedLevelCache.updateKey(md, t2.isSteel() ? 1 : 0);
+            }
+        }
+        return md.digest();
+    }
+    
+    /**
+     * Look up the graphics of all terrain pieces, loading styles as needed.
+     * @return resolved terrain pieces in their original order
+     */
+    private List<TerrainPiece> resolveTerrain() throws ResourceException, LemmException {
+        List<TerrainPiece> pieces = new ArrayList<>(terrain.size());
+        // pieces using the same graphic share one copy of its pixels
+        Map<LemmImage, int[]> pixelCache = new IdentityHashMap<>(64);
+        for (Terrain t : terrain) {
+            if (t.id < 0) {
+                continue;
+            }
+            String styleLowerCase = t.style.toLowerCase(Locale.ROOT);
+            if (!styles.containsKey(styleLowerCase)) {
+                styles.put(styleLowerCase, GraphicSetCache.acquire(t.style));
+            }
+            GraphicSet terrainStyle = styles.get(styleLowerCase);
+            
+            TerrainPiece p = new TerrainPiece();
+            LemmImage i;
+            if (t.specialGraphic) {
+                i = specialStyle.getImage();
+                p.mask = specialStyle.getMask();
+                p.steelMask = specialStyle.getSteelMask();
+                p.isSteel = true;
+            } else {
+                GraphicSet.Terrain t2 = terrainStyle.getTerrain(t.id);
+                i = t2.getImage();
+                p.mask = t2.getMask();
+                p.steelMask = t2.getSteelMask();
+                p.isSteel = t2.isSteel();
+            }
+            if (autosteelMode == AutosteelMode.NONE) {
+                p.isSteel = false;
+            }
+            p.srcWidth = i.getWidth();
+            p.srcHeight = i.getHeight();
+            p.maskWidth = ArrayUtils.isNotEmpty(p.mask) ? p.mask[0].length : 0;
+            p.maskHeight = p.mask.length;
+            p.steelMaskWidth = ArrayUtils.isNotEmpty(p.steelMask) ? p.steelMask[0].length : 0;
+            p.steelMaskHeight = p.steelMask.length;
+            p.pixels = pixelCache.get(i);
+            if (p.pixels == null) {
+                p.pixels = i.getRGB(0, 0, p.srcWidth, p.srcHeight, null, 0, p.srcWidth);
+                pixelCache.put(i, p.pixels);
+            }
+            
+            p.tx = t.xPos;
+            p.ty = t.yPos;
+            p.rotate = BooleanUtils.toBoolean(t.modifier & Terrain.MODE_ROTATE);
+            p.noOneWay = BooleanUtils.toBoolean(t.modifier & Terrain.MODE_NO_ONE_WAY);
+            p.flipHorizontally = BooleanUtils.toBoolean(t.modifier & Terrain.MODE_FLIP_HORIZONTALLY);
+            p.fake = BooleanUtils.toBoolean(t.modifier & Terrain.MODE_FAKE);
+            p.upsideDown = BooleanUtils.toBoolean(t.modifier & Terrain.MODE_UPSIDE_DOWN);
+            p.noOverwrite = BooleanUtils.toBoolean(t.modifier & Terrain.MODE_NO_OVERWRITE);
+            p.remove = !p.noOverwrite && BooleanUtils.toBoolean(t.modifier & Terrain.MODE_REMOVE);
+            p.invisible = BooleanUtils.toBoolean(t.modifier & Terrain.MODE_INVISIBLE);
+            p.width = p.rotate ? p.srcHeight : p.srcWidth;
+            p.height = p.rotate ? p.srcWidth : p.srcHeight;
+            pieces.add(p);
+        }
+        return pieces;
+    }
+    
+    /**
+     * Paint terrain pieces into the foreground image and the stencil.<br>
+     * The level is split into horizontal bands of {@link #PAINT_BLOCK_SIZE}
+     * pixels, which are split further into blocks of the same width. The
+     * blocks are painted in parallel, each one applying all pieces that
+     * overlap it in their original order. Painting a pixel only reads and
+     * writes that pixel, so the result is identical to painting the pieces
+     * one after the other.
+     * @param pieces resolved terrain pieces
+     */
+    private void paintTerrain(final List<TerrainPiece> pieces) {
+        int numBands = (levelHeight + PAINT_BLOCK_SIZE - 1) / PAINT_BLOCK_SIZE;
+        int blocksPerBand = (levelWidth + PAINT_BLOCK_SIZE - 1) / PAINT_BLOCK_SIZE;
+        if (numBands <= 0 || blocksPerBand <= 0) {
+            return;
+        }
+        List<List<TerrainPiece>> bands = new ArrayList<>(numBands);
+        for (int b = 0; b < numBands; b++) {
+            bands.add(new ArrayList<>());
+        }
+        for (TerrainPiece p : pieces) {
+            int y0 = Math.max(p.ty, 0);
+            int y1 = Math.min(p.ty + p.height, levelHeight);
+            if (y0 >= y1 || Math.max(0, -p.tx) >= Math.min(p.width, levelWidth - p.tx)) {
+                continue;
+            }
+            for (int b = y0 / PAINT_BLOCK_SIZE; b <= (y1 - 1) / PAINT_BLOCK_SIZE; b++) {
+                bands.get(b).add(p);
+            }
+        }
+        IntStream.range(0, numBands * blocksPerBand).parallel().forEach(n -> {
+            int x0 = (n % blocksPerBand) * PAINT_BLOCK_SIZE;
+            int y0 = (n / blocksPerBand) * PAINT_BLOCK_SIZE;
+            paintTerrainBlock(bands.get(n / blocksPerBand), x0, y0,
+                    Math.min(x0 + PAINT_BLOCK_SIZE, levelWidth), Math.min(y0 + PAINT_BLOCK_SIZE, levelHeight));
+        });
+    }
+    
+    /**
+     * Paint the parts of terrain pieces that lie within a block of the level.
+     * @param pieces terrain pieces in painting order
+     * @param x0 left border of the block in pixels (inclusive)
+     * @param y0 top border of the block in pixels (inclusive)
+     * @param x1 right border of the block in pixels (exclusive)
+     * @param y1 bottom border of the block in pixels (exclusive)
+     */
+    private void paintTerrainBlock(final List<TerrainPiece> pieces, final int x0, final int y0, final int x1, final int y1) {
+        int[] row = new int[PAINT_BLOCK_SIZE];
+        for (TerrainPiece p : pieces) {
+            int tx = p.tx;
+            int ty = p.ty;
+            int width = p.width;
+            int height = p.height;
+            int xStart = Math.max(0, x0 - tx);
+            int xEnd = Math.min(width, x1 - tx);
+            int yStart = Math.max(0, y0 - ty);
+            int yEnd = Math.min(height, y1 - ty);
+            if (xStart >= xEnd || yStart >= yEnd) {
+                continue;
+            }
+            
+            for (int y = yStart; y < yEnd; y++) {
+                for (int x = xStart; x < xEnd; x++) {
+                    int x2 = x;
+                    int y2 = y;
+                    if (p.upsideDown) {
+                        y2 = height - 1 - y2;
+                    }
+                    if (p.flipHorizontally) {
+                        x2 = width - 1 - x2;
+                    }
+                    if (p.rotate) {
+                        int oldX2 = x2;
+                        x2 = y2;
+                        y2 = p.srcHeight - 1 - oldX2;
+                    }
+                    int col = p.pixels[y2 * p.srcWidth + x2];
+                    int alpha = (col >>> 24) & 0xff;
+                    boolean isPixelOpaque = alpha >= 0x80;
+                    // ignore transparent pixels
+                    if (!p.invisible && (col & 0xff000000) != 0) {
+                        // the row is composited into fgImage after this loop
+                        row[x - xStart] = p.remove ? alpha : col;
+                        if (p.noOverwrite) {
+                            if (p.noOneWay && isPixelOpaque && !fgImage.isPixelOpaque(x + tx, y + ty)) {
+                                stencil.orMask(x + tx, y + ty, Stencil.MSK_NO_ONE_WAY_DRAW);
+                            }
+                        } else if (p.remove) {
+                            if (p.noOneWay && isPixelOpaque) {
+                                stencil.andMask(x + tx, y + ty, ~Stencil.MSK_NO_ONE_WAY_DRAW);
+                            }
+                        } else {
+                            if (isPixelOpaque) {
+                                if (p.noOneWay) {
+                                    stencil.orMask(x + tx, y + ty, Stencil.MSK_NO_ONE_WAY_DRAW);
+                                } else {
+                                    stencil.andMask(x + tx, y + ty, ~Stencil.MSK_NO_ONE_WAY_DRAW);
+                                }
+                            }
+                        }
+                    } else {
+                        row[x - xStart] = 0;
+                    }
+                    if (!p.fake && y2 < p.maskHeight && x2 < p.maskWidth && p.mask[y2][x2]) {
+                        int newMask;
+                        if (p.remove) {
+                            newMask = stencil.getMask(x + tx, y + ty) & Stencil.MSK_NO_ONE_WAY_DRAW;
+                        } else if (p.noOverwrite) {
+                            newMask = stencil.getMask(x + tx, y + ty) | Stencil.MSK_BRICK;
+                            if (p.noOneWay) {
+                                newMask |= Stencil.MSK_NO_ONE_WAY;
+                            }
+                        } else {
+                            newMask = stencil.getMask(x + tx, y + ty) | Stencil.MSK_BRICK;
+                            if (p.noOneWay) {
+                                newMask |= Stencil.MSK_NO_ONE_WAY;
+                            } else {
+                                newMask &= ~Stencil.MSK_NO_ONE_WAY;
+                            }
+                        }
+                        stencil.setMask(x + tx, y + ty, newMask);
+                    }
+                    if (!p.fake && y2 < p.steelMaskHeight && x2 < p.steelMaskWidth && p.steelMask[y2][x2]) {
+                        int newMask = stencil.getMask(x + tx, y + ty);
+                        if (p.remove) {
+                        } else if (p.noOverwrite) {
+                            switch (autosteelMode) {
+                                case NONE:
+                                default:
+                                    break;
+                                case SIMPLE:
+                                    if (p.isSteel) {
+                                        newMask |= Stencil.MSK_STEEL_BRICK;
+                                    }
+                                    break;
+                                case ADVANCED:
+                                    if (p.isSteel && !BooleanUtils.toBoolean(stencil.getMask(x + tx, y + ty) & Stencil.MSK_BRICK)) {
+                                        newMask |= Stencil.MSK_STEEL_BRICK;
+                                    }
+                                    break;
+                            }
+                        } else {
+                            switch (autosteelMode) {
+                                case NONE:
+                                default:
+                                    break;
+                                case SIMPLE:
+                                    if (p.isSteel) {
+                                        newMask |= Stencil.MSK_STEEL_BRICK;
+                                    }
+                                    break;
+                                case ADVANCED:
+                                    if (p.isSteel) {
+                                        newMask |= Stencil.MSK_STEEL_BRICK;
+                                    } else {
+                                        newMask &= ~Stencil.MSK_STEEL_BRICK;
+                                    }
+                                    break;
+                            }
+                        }
+                        stencil.setMask(x + tx, y + ty, newMask);
+                    }
+                }
+                if (!p.invisible) {
+                    if (p.noOverwrite) {
+                        fgImage.addRGBBehindSpan(tx + xStart, y + ty, row, 0, xEnd - xStart);
+                    } else if (p.remove) {
+                        fgImage.removeAlphaSpan(tx + xStart, y + ty, row, 0, xEnd - xStart);
+                    } else {
+                        fgImage.addRGBSpan(tx + xStart, y + ty, row, 0, xEnd - xStart);
+                    }
+                }
+            }
+        }
     }
     
-    public LemmImage getFgImage() {
+    public TiledImage getFgImage() {
         return fgImage;
     }
     
@@ -980,6 +1149,50 @@ public class Level {
         }
     }
     
+    /**
+     * Add the current frames of the visible "behind" and "in front" objects
+     * to lists of draw items, in the same order as they are drawn.
+     * @param behind list for the "behind" objects
+     * @param front list for the "in front" objects
+     * @param xOfs level offset x position
+     * @param yOfs level offset y position
+     * @param width width of screen
+     * @param height height of screen
+     */
+    void captureObjects(final List<FrameSnapshot.DrawItem> behind, final List<FrameSnapshot.DrawItem> front,
+            final int xOfs, final int yOfs, final int width, final int height) {
+        if (sprObjBehind != null) {
+            for (int n = sprObjBehind.length - 1; n >= 0; n--) {
+                SpriteObject spr = sprObjBehind[n];
+                if (isVisible(spr, xOfs, yOfs, width, height)) {
+                    behind.add(new FrameSnapshot.DrawItem(spr.getImage(), spr.getX(), spr.getY()));
+                }
+            }
+        }
+        if (sprObjFront != null) {
+            for (SpriteObject spr : sprObjFront) {
+                if (isVisible(spr, xOfs, yOfs, width, height)) {
+                    front.add(new FrameSnapshot.DrawItem(spr.getImage(), spr.getX(), spr.getY()));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Check whether an object is at least partially on screen.
+     * @param spr object
+     * @param xOfs level offset x position
+     * @param yOfs level offset y position
+     * @param width width of screen
+     * @param height height of screen
+     * @return true if the object is visible
+     */
+    private static boolean isVisible(final SpriteObject spr, final int xOfs, final int yOfs,
+            final int width, final int height) {
+        return spr.getX() + spr.getWidth() > xOfs && spr.getX() < xOfs + width
+                && spr.getY() + spr.getHeight() > yOfs && spr.getY() < yOfs + height;
+    }
+    
     /**
      * Draw transparent objects in front of foreground image.
      * @param g graphics object to draw on
@@ -1031,47 +1244,12 @@ public class Level {
                 continue;
             }
             
-            LemmImage unscaledBufferImg = buffers[BG_BUFFER_UNSCALED_INDEX].getImage();
-            GraphicsContext unscaledBufferGfx = buffers[BG_BUFFER_UNSCALED_INDEX].getGraphicsContext();
-            unscaledBufferGfx.clearRect(0, 0, unscaledBufferImg.getWidth(), unscaledBufferImg.getHeight());
-            
-            for (int y = BG_BUFFER_PADDING - (bg.tiled ? bgImageHeight : 0), j = 0; j < (bg.tiled ? 3 : 1); y += bgImageHeight, j++) {
-                for (int x = BG_BUFFER_PADDING - (bg.tiled ? bgImageWidth : 0), k = 0; k < (bg.tiled ? 3 : 1);  x += bgImageWidth, k++) {
-                    // draw "behind" objects
-                    if (bg.sprObjBehind != null) {
-                        for (int n = bg.sprObjBehind.length - 1; n >= 0; n--) {
-                            SpriteObject spr = bg.sprObjBehind[n];
-                            LemmImage img = spr.getImage();
-                            unscaledBufferGfx.drawImage(img, x + spr.getX(), y + spr.getY());
-                        }
-                    }
-                }
+            // only re-render the layer if an object animated or the settings changed
+            if (!bg.isCacheValid(bgImage, Core.isBilinear())) {
+                renderBackground(bg, bgImage, buffers, bgImageWidth, bgImageHeight,
+                        bgImageWidthScaled, bgImageHeightScaled, bgBufferPaddingScaled);
             }
-            
-            unscaledBufferGfx.drawImage(bgImage, 0, 0);
-            
-            for (int y = BG_BUFFER_PADDING - (bg.tiled ? bgImageHeight : 0), j = 0; j < (bg.tiled ? 3 : 1); y += bgImageHeight, j++) {
-                for (int x = BG_BUFFER_PADDING - (bg.tiled ? bgImageWidth : 0), k = 0; k < (bg.tiled ? 3 : 1);  x += bgImageWidth, k++) {
-                    // draw "in front" objects
-                    if (bg.sprObjFront != null) {
-                        for (SpriteObject spr : bg.sprObjFront) {
-                            LemmImage img = spr.getImage();
-                            unscaledBufferGfx.drawImage(img, x + spr.getX(), y + spr.getY());
-                        }
-                    }
-                }
-            }
-            
             LemmImage scaledBufferImg = buffers[BG_BUFFER_SCALED_INDEX].getImage();
-            GraphicsContext scaledBufferGfx = buffers[BG_BUFFER_SCALED_INDEX].getGraphicsContext();
-            scaledBufferGfx.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
-                    Core.isBilinear()
-                            ? RenderingHints.VALUE_INTERPOLATION_BILINEAR
-                            : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
-            scaledBufferGfx.clearRect(0, 0, scaledBufferImg.getWidth(), scaledBufferImg.getHeight());
-            scaledBufferGfx.drawImage(unscaledBufferImg,
-                    -bgBufferPaddingScaled, -bgBufferPaddingScaled,
-                    bgImageWidthScaled + bgBufferPaddingScaled * 2, bgImageHeightScaled + bgBufferPaddingScaled * 2);
             
             int xOfsNew = (int) (-xOfs * bg.scrollSpeedX) + bg.offsetX;
             int yOfsNew = (int) (-yOfs * bg.scrollSpeedY) + bg.offsetY;
@@ -1096,6 +1274,64 @@ public class Level {
         }
     }
     
+    /**
+     * Draw a background layer and its objects into the unscaled buffer and
+     * scale the result into the scaled buffer.
+     * @param bg background layer
+     * @param bgImage background image (including padding)
+     * @param buffers unscaled and scaled buffer of the layer
+     * @param bgImageWidth width of the background in pixels
+     * @param bgImageHeight height of the background in pixels
+     * @param bgImageWidthScaled scaled width of the background in pixels
+     * @param bgImageHeightScaled scaled height of the background in pixels
+     * @param bgBufferPaddingScaled scaled padding in pixels
+     */
+    private static void renderBackground(final Background bg, final LemmImage bgImage,
+            final GraphicsBuffer[] buffers, final int bgImageWidth, final int bgImageHeight,
+            final int bgImageWidthScaled, final int bgImageHeightScaled, final int bgBufferPaddingScaled) {
+        LemmImage unscaledBufferImg = buffers[BG_BUFFER_UNSCALED_INDEX].getImage();
+        GraphicsContext unscaledBufferGfx = buffers[BG_BUFFER_UNSCALED_INDEX].getGraphicsContext();
+        unscaledBufferGfx.clearRect(0, 0, unscaledBufferImg.getWidth(), unscaledBufferImg.getHeight());
+        
+        for (int y = BG_BUFFER_PADDING - (bg.tiled ? bgImageHeight : 0), j = 0; j < (bg.tiled ? 3 : 1); y += bgImageHeight, j++) {
+            for (int x = BG_BUFFER_PADDING - (bg.tiled ? bgImageWidth : 0), k = 0; k < (bg.tiled ? 3 : 1);  x += bgImageWidth, k++) {
+                // draw "behind" objects
+                if (bg.sprObjBehind != null) {
+                    for (int n = bg.sprObjBehind.length - 1; n >= 0; n--) {
+                        SpriteObject spr = bg.sprObjBehind[n];
+                        LemmImage img = spr.getImage();
+                        unscaledBufferGfx.drawImage(img, x + spr.getX(), y + spr.getY());
+                    }
+                }
+            }
+        }
+        
+        unscaledBufferGfx.drawImage(bgImage, 0, 0);
+        
+        for (int y = BG_BUFFER_PADDING - (bg.tiled ? bgImageHeight : 0), j = 0; j < (bg.tiled ? 3 : 1); y += bgImageHeight, j++) {
+            for (int x = BG_BUFFER_PADDING - (bg.tiled ? bgImageWidth : 0), k = 0; k < (bg.tiled ? 3 : 1);  x += bgImageWidth, k++) {
+                // draw "in front" objects
+                if (bg.sprObjFront != null) {
+                    for (SpriteObject spr : bg.sprObjFront) {
+                        LemmImage img = spr.getImage();
+                        unscaledBufferGfx.drawImage(img, x + spr.getX(), y + spr.getY());
+                    }
+                }
+            }
+        }
+        
+        LemmImage scaledBufferImg = buffers[BG_BUFFER_SCALED_INDEX].getImage();
+        GraphicsContext scaledBufferGfx = buffers[BG_BUFFER_SCALED_INDEX].getGraphicsContext();
+        scaledBufferGfx.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                Core.isBilinear()
+                        ? RenderingHints.VALUE_INTERPOLATION_BILINEAR
+                        : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        scaledBufferGfx.clearRect(0, 0, scaledBufferImg.getWidth(), scaledBufferImg.getHeight());
+        scaledBufferGfx.drawImage(unscaledBufferImg,
+                -bgBufferPaddingScaled, -bgBufferPaddingScaled,
+                bgImageWidthScaled + bgBufferPaddingScaled * 2, bgImageHeightScaled + bgBufferPaddingScaled * 2);
+    }
+    
     public void advanceBackgroundFrame() {
         for (Background bg : backgrounds) {
             for (SpriteObject spr : bg.sprObjects) {
@@ -1106,6 +1342,22 @@ public class Level {
         }
     }
     
+    /**
+     * Get the sprite objects of all backgrounds.
+     * @return list of background sprite objects
+     */
+    public List<SpriteObject> getBackgroundSprObjects() {
+        List<SpriteObject> objects = new ArrayList<>(32);
+        for (Background bg : backgrounds) {
+            for (SpriteObject spr : bg.sprObjects) {
+                if (spr != null) {
+                    objects.add(spr);
+                }
+            }
+        }
+        return objects;
+    }
+    
     public void openBackgroundEntrances() {
         for (Background bg : backgrounds) {
             for (SpriteObject spr : bg.sprObjects) {
@@ -1135,8 +1387,69 @@ public class Level {
      * @param highQuality
      * @return image with minimap
      */
-    public LemmImage createMinimap(final LemmImage fgImage, final double scaleX, final double scaleY,
+    public LemmImage createMinimap(final TiledImage fgImage, final double scaleX, final double scaleY,
             final boolean highQuality, final boolean tint, final boolean drawBackground) {
+        LemmImage img = composeMinimap(fgImage, tint, drawBackground);
+        
+        // scale the image if necessary
+        if (scaleX != 1.0 || scaleY != 1.0) {
+            int width = ToolBox.scale(fgImage.getWidth(), scaleX);
+            int height = ToolBox.scale(fgImage.getHeight(), scaleY);
+            Object interpolationHint = highQuality
+                    ? RenderingHints.VALUE_INTERPOLATION_BILINEAR
+                    : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
+            img = img.getScaledInstance(width, height, interpolationHint, highQuality);
+        }
+        
+        // now tint green
+        if (tint) {
+            for (int y = 0; y < img.getHeight(); y++) {
+                for (int x = 0; x < img.getWidth(); x++) {
+                    int c = img.getRGB(x, y);
+                    c = Minimap.tintColor(c);
+                    img.setRGB(x, y, c);
+                }
+            }
+        }
+        
+        return img;
+    }
+    
+    /**
+     * Create a minimap for this level by sampling exactly the level pixels
+     * the given projection maps to the minimap. Terrain modifications that
+     * use the same projection then stay consistent with the initial image.
+     * @param fgImage foreground image used as source for the minimap
+     * @param projection mapping between level and minimap pixels
+     * @param tint apply a greenish color tint
+     * @return image with minimap
+     */
+    public LemmImage createMinimap(final TiledImage fgImage, final MinimapProjection projection, final boolean tint) {
+        LemmImage fullImg = composeMinimap(fgImage, tint, false);
+        LemmImage img = ToolBox.createLemmImage(projection.getWidth(), projection.getHeight());
+        int[] row = new int[fullImg.getWidth()];
+        for (int y = 0; y < img.getHeight(); y++) {
+            fullImg.getRGB(0, projection.getSourceY(y), row.length, 1, row, 0, row.length);
+            for (int x = 0; x < img.getWidth(); x++) {
+                int c = row[projection.getSourceX(x)];
+                if (tint) {
+                    c = Minimap.tintColor(c);
+                }
+                img.setRGB(x, y, c);
+            }
+        }
+        return img;
+    }
+    
+    /**
+     * Draw the level (foreground and objects, optionally background) at its
+     * original size as the source for a minimap.
+     * @param fgImage foreground image
+     * @param tint true to leave the background transparent instead of using the background color
+     * @param drawBackground true to draw the background layers
+     * @return unscaled image
+     */
+    private LemmImage composeMinimap(final TiledImage fgImage, final boolean tint, final boolean drawBackground) {
         Level level = GameController.getLevel();
         LemmImage img = ToolBox.createLemmImage(fgImage.getWidth(), fgImage.getHeight());
         
@@ -1163,7 +1476,7 @@ public class Level {
                 }
             }
             
-            gx.drawImage(fgImage, 0, 0);
+            fgImage.draw(gx, 0, 0);
             // draw "in front" objects
             if (level != null && level.sprObjFront != null) {
                 for (SpriteObject spr : level.sprObjFront) {
@@ -1176,28 +1489,6 @@ public class Level {
                 gx.dispose();
             }
         }
-        
-        // scale the image if necessary
-        if (scaleX != 1.0 || scaleY != 1.0) {
-            int width = ToolBox.scale(fgImage.getWidth(), scaleX);
-            int height = ToolBox.scale(fgImage.getHeight(), scaleY);
-            Object interpolationHint = highQuality
-                    ? RenderingHints.VALUE_INTERPOLATION_BILINEAR
-                    : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
-            img = img.getScaledInstance(width, height, interpolationHint, highQuality);
-        }
-        
-        // now tint green
-        if (tint) {
-            for (int y = 0; y < img.getHeight(); y++) {
-                for (int x = 0; x < img.getWidth(); x++) {
-                    int c = img.getRGB(x, y);
-                    c = Minimap.tintColor(c);
-                    img.setRGB(x, y, c);
-                }
-            }
-        }
-        
         return img;
     }
     
@@ -1608,6 +1899,42 @@ public class Level {
         }
     }
     
+    /**
+     * Terrain piece with its graphics looked up, ready to be painted.
+     */
+    private static class TerrainPiece {
+        
+        /** ARGB pixels of the unrotated graphic */
+        int[] pixels;
+        /** width of the unrotated graphic in pixels */
+        int srcWidth;
+        /** height of the unrotated graphic in pixels */
+        int srcHeight;
+        /** width in the level in pixels */
+        int width;
+        /** height in the level in pixels */
+        int height;
+        boolean[][] mask;
+        int maskWidth;
+        int maskHeight;
+        boolean[][] steelMask;
+        int steelMaskWidth;
+        int steelMaskHeight;
+        boolean isSteel;
+        /** x position in pixels */
+        int tx;
+        /** y position in pixels */
+        int ty;
+        boolean rotate;
+        boolean noOneWay;
+        boolean flipHorizontally;
+        boolean fake;
+        boolean upsideDown;
+        boolean noOverwrite;
+        boolean remove;
+        boolean invisible;
+    }
+    
     /**
      * Storage class for steel tiles.
      * @author Volker Oth
@@ -1680,6 +2007,12 @@ public class Level {
         double scrollSpeedX;
         double scrollSpeedY;
         double scale;
+        /** background image the scaled buffer was last rendered from */
+        LemmImage cachedImage;
+        /** animation frame of each "behind" and "in front" object in the scaled buffer */
+        int[] cachedFrames;
+        /** filtering used for the scaled buffer */
+        boolean cachedBilinear;
         
         Background(int width, int height, List<LvlObject> objects, List<Terrain> terrain,
                 boolean tiled, int tint, int offsetX, int offsetY,
@@ -1696,5 +2029,32 @@ public class Level {
             this.scrollSpeedY = scrollSpeedY;
             this.scale = scale;
         }
+        
+        /**
+         * Check whether the scaled buffer of this layer still shows the
+         * current animation frames, and remember the current state if not.
+         * @param bgImage background image the buffer is rendered from
+         * @param bilinear true if bilinear filtering is used for scaling
+         * @return true if the scaled buffer can be reused, false if it must be rendered again
+         */
+        boolean isCacheValid(final LemmImage bgImage, final boolean bilinear) {
+            int numBehind = (sprObjBehind == null) ? 0 : sprObjBehind.length;
+            int numFront = (sprObjFront == null) ? 0 : sprObjFront.length;
+            boolean valid = cachedImage == bgImage && cachedBilinear == bilinear
+                    && cachedFrames != null && cachedFrames.length == numBehind + numFront;
+            if (!valid) {
+                cachedFrames = new int[numBehind + numFront];
+            }
+            for (int n = 0; n < numBehind + numFront; n++) {
+                int frame = (n < numBehind) ? sprObjBehind[n].getFrameIdx() : sprObjFront[n - numBehind].getFrameIdx();
+                if (cachedFrames[n] != frame) {
+                    cachedFrames[n] = frame;
+                    valid = false;
+                }
+            }
+            cachedImage = bgImage;
+            cachedBilinear = bilinear;
+            return valid;
+        }
     }
 }
@@ -0,0 +1,187 @@
+package lemmini.game;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import lemmini.sound.Music;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Loads and paints the level the player will most likely play next on a
+ * background thread, so that continuing from the debriefing doesn't have to
+ * wait for it.<br>
+ * The prefetched level has its own foreground image and stencil and is
+ * handed over by {@link #take(int, int, int)} if the requested level is
+ * the prefetched one. Otherwise, and whenever the prefetch is no longer
+ * needed, it is cancelled and the styles it acquired are released.
+ * <br>
+ * The worker only reads global game state that can't change while the
+ * debriefing is shown, e.g. the active mods. Everything that changes global
+ * state, like recoloring the Lemmings or loading the music into the
+ * player, is left to the game thread, which always waits for a running
+ * prefetch before it changes levels.
+ */
+final class LevelPrefetcher {
+
+    /** result of a prefetch */
+    static final class Result {
+        final Level level;
+        /** music file name relative to the music folder */
+        final String music;
+
+        private Result(final Level level, final String music) {
+            this.level = level;
+            this.music = music;
+        }
+    }
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Level prefetch");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    private static Future<Result> task;
+    private static int taskPack = -1;
+    private static int taskRating = -1;
+    private static int taskLevel = -1;
+    /** set to stop the running prefetch as early as possible */
+    private static volatile boolean cancelled;
+
+    private LevelPrefetcher() {
+    }
+
+    /**
+     * Start prefetching a level, cancelling any other prefetch.
+     * @param pack level pack
+     * @param lPack index of level pack
+     * @param rating index of rating
+     * @param lNum level number
+     */
+    static synchronized void prefetch(final LevelPack pack, final int lPack, final int rating, final int lNum) {
+        if (task != null && lPack == taskPack && rating == taskRating && lNum == taskLevel) {
+            return;
+        }
+        cancel();
+        LevelInfo info = pack.getInfo(rating, lNum);
+        cancelled = false;
+        taskPack = lPack;
+        taskRating = rating;
+        taskLevel = lNum;
+        task = EXECUTOR.submit(() -> load(pack, info));
+    }
+
+    /**
+     * Get the prefetched level, waiting for the prefetch to finish if
+     * necessary. If a different level was prefetched, it is discarded.
+     * @param lPack index of level pack
+     * @param rating index of rating
+     * @param lNum level number
+     * @return prefetched level and its music, or null if the level wasn't prefetched
+     */
+    static synchronized Result take(final int lPack, final int rating, final int lNum) {
+        if (task == null) {
+            return null;
+        }
+        if (lPack != taskPack || rating != taskRating || lNum != taskLevel) {
+            cancel();
+            return null;
+        }
+        Result result = await();
+        task = null;
+        return result;
+    }
+
+    /**
+     * Cancel the prefetch and release the prefetched level. Returns after the
+     * worker stopped.
+     */
+    static synchronized void cancel() {
+        if (task == null) {
+            return;
+        }
+        cancelled = true;
+        Result result = await();
+        if (result != null) {
+            result.level.releaseStyles();
+        }
+        task = null;
+    }
+
+    /**
+     * Wait for the prefetch to finish.
+     * @return result or null if the prefetch failed or was cancelled
+     */
+    private static Result await() {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                } catch (ExecutionException | CancellationException ex) {
+                    // the level is loaded again by the game thread, which reports errors
+                    return null;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Load and paint a level. Runs on the worker thread.
+     * @param pack level pack
+     * @param info level info
+     * @return result or null if the prefetch was cancelled
+     * @throws LemmException
+     * @throws ResourceException
+     */
+    private static Result load(final LevelPack pack, final LevelInfo info) throws LemmException, ResourceException {
+        if (cancelled) {
+            return null;
+        }
+        Level level = new Level(info.getLevelResource(), null, pack);
+        try {
+            if (cancelled) {
+                level.releaseStyles();
+                return null;
+            }
+            String music = level.getMusic();
+            if (music == null) {
+                music = info.getMusic();
+            }
+            if (music == null) {
+                music = Music.getRandomTrack(level.getStyleName(), level.getSpecialStyleName());
+            }
+            if (cancelled) {
+                level.releaseStyles();
+                return null;
+            }
+            level.paintLevel(false);
+            return new Result(level, music);
+        } catch (LemmException | ResourceException | RuntimeException ex) {
+            level.releaseStyles();
+            throw ex;
+        }
+    }
+}
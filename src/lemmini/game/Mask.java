@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.ListIterator;
 import lemmini.graphics.LemmImage;
+import lemmini.graphics.TiledImage;
 import lemmini.tools.ToolBox;
 import org.apache.commons.lang3.BooleanUtils;
 
@@ -39,8 +40,8 @@ public class Mask {
     private final int width;
     /** height of mask in pixels */
     private final int height;
-    /** array of images. Note: masks may be animated and thus contain multiple frames. */
-    private final List<LemmImage> mask;
+    /** array of frames. Note: masks may be animated and thus contain multiple frames. */
+    private final List<MaskFrame> mask;
     private final List<LemmImage> unpatchedMask;
     
     /**
@@ -51,8 +52,9 @@ public class Mask {
     public Mask(final LemmImage img, final int frames) {
         width = img.getWidth();
         height = img.getHeight() / frames;
-        mask = ToolBox.getAnimation(img, frames);
-        unpatchedMask = new ArrayList<>(mask);
+        unpatchedMask = ToolBox.getAnimation(img, frames);
+        mask = new ArrayList<>(unpatchedMask.size());
+        unpatchedMask.stream().forEach(frame -> mask.add(new MaskFrame(frame)));
     }
     
     /**
@@ -64,49 +66,48 @@ public class Mask {
      * @param checkMask Stencil attributes that make the pixel indestructible
      */
     public void eraseMask(final int x0, final int y0, final int maskNum, final int eraseMask, final int checkMask) {
-        LemmImage fgImage = GameController.getFgImage();
+        TiledImage fgImage = GameController.getFgImage();
         LemmImage fgImageSmall = Minimap.getImage();
         Stencil stencil = GameController.getStencil();
-        LemmImage m = mask.get(maskNum);
-        double scaleX = (double) fgImageSmall.getWidth() / (double) fgImage.getWidth();
-        double scaleY = (double) fgImageSmall.getHeight() / (double) fgImage.getHeight();
-        double scaleXHalf = scaleX / 2.0;
-        double scaleYHalf = scaleY / 2.0;
-        int yMax = y0 + height;
-        if (yMax >= fgImage.getHeight()) {
-            yMax = fgImage.getHeight();
-        }
-        int xMax = x0 + width;
-        if (xMax >= fgImage.getWidth()) {
-            xMax = fgImage.getWidth();
+        MaskFrame m = mask.get(maskNum);
+        MinimapProjection projection = Minimap.getProjection();
+        // only visit the bounding box of the non-transparent mask pixels
+        int xMin = Math.max(x0 + m.xMin, 0);
+        int yMin = Math.max(y0 + m.yMin, 0);
+        int xMax = Math.min(x0 + m.xMax, fgImage.getWidth());
+        int yMax = Math.min(y0 + m.yMax, fgImage.getHeight());
+        if (xMin >= xMax || yMin >= yMax) {
+            return;
         }
         
         int bgCol = Minimap.isTinted() ? 0 : GameController.getLevel().getBgColor().getRGB();
         
-        for (int y = y0; y < yMax; y++) {
-            if (y < 0) {
+        GameController.getDirtyRegion().add(xMin, yMin, xMax - xMin, yMax - yMin);
+        
+        int[] alphaRow = new int[xMax - xMin];
+        for (int y = yMin; y < yMax; y++) {
+            if (m.isRowTransparent(y - y0)) {
                 continue;
             }
-            double scaledY = (y + 0.5) * scaleY % 1.0;
-            boolean drawSmallY = (scaledY >= (0.5 - scaleYHalf) % 1.0 && scaledY < (0.5 + scaleYHalf) % 1.0)
-                    || Math.abs(scaleY) >= 1.0;
-            for (int x = x0; x < xMax; x++) {
-                if (x < 0) {
-                    continue;
+            // collect the alpha to remove from each pixel that isn't indestructible
+            for (int x = xMin; x < xMax; x++) {
+                int maskAlpha = m.getAlpha(x - x0, y - y0);
+                if (maskAlpha != 0 && BooleanUtils.toBoolean(stencil.getMask(x, y) & checkMask)) {
+                    maskAlpha = 0;
                 }
-                double scaledX = (x + 0.5) * scaleX % 1.0;
-                boolean drawSmallX = (scaledX >= (0.5 - scaleXHalf) % 1.0 && scaledX < (0.5 + scaleXHalf) % 1.0)
-                        || Math.abs(scaleX) >= 1.0;
-                int maskAlpha = m.getRGB(x - x0, y - y0) >>> 24;
-                int s = stencil.getMask(x, y);
-                if (!BooleanUtils.toBoolean(s & checkMask)) {
+                alphaRow[x - xMin] = maskAlpha;
+            }
+            fgImage.removeAlphaSpan(xMin, y, alphaRow, 0, alphaRow.length); // erase pixels in fgImage
+            int smallY = projection.getTargetY(y);
+            for (int x = xMin; x < xMax; x++) {
+                int maskAlpha = alphaRow[x - xMin];
+                if (maskAlpha != 0) {
+                    int smallX = projection.getTargetX(x);
                     int[] objects = stencil.getIDs(x, y);
-                    // erase pixel
-                    fgImage.removeAlpha(x, y, maskAlpha); // erase pixel in fgImage
-                    if (drawSmallX && drawSmallY) {
+                    if (smallX >= 0 && smallY >= 0) {
                         // erase pixel in fgImageSmall
-                        fgImageSmall.removeAlpha(ToolBox.scale(x, scaleX), ToolBox.scale(y, scaleY), maskAlpha);
-                        fgImageSmall.addRGBBehind(ToolBox.scale(x, scaleX), ToolBox.scale(y, scaleY), bgCol);
+                        fgImageSmall.removeAlpha(smallX, smallY, maskAlpha);
+                        fgImageSmall.addRGBBehind(smallX, smallY, bgCol);
                     }
                     if (!fgImage.isPixelOpaque(x, y)) {
                         for (int obj : objects) {
@@ -117,7 +118,7 @@ public class Mask {
                             }
                         }
                     }
-                    if (m.isPixelOpaque(x - x0, y - y0)) {
+                    if (m.isOpaque(x - x0, y - y0)) {
                         // erase brick in stencil
                         stencil.andMask(x, y, ~eraseMask);
                     }
@@ -133,43 +134,36 @@ public class Mask {
      * @param maskNum index of mask if there are multiple animation frames, else 0
      */
     public void paintStep(final int x0, final int y0, final int maskNum) {
-        LemmImage fgImage = GameController.getFgImage();
+        TiledImage fgImage = GameController.getFgImage();
         LemmImage fgImageSmall = Minimap.getImage();
         Stencil stencil = GameController.getStencil();
-        LemmImage m = mask.get(maskNum);
-        double scaleX = (double) fgImageSmall.getWidth() / (double) fgImage.getWidth();
-        double scaleY = (double) fgImageSmall.getHeight() / (double) fgImage.getHeight();
-        double scaleXHalf = scaleX / 2.0;
-        double scaleYHalf = scaleY / 2.0;
-        int yMax = y0 + height;
-        if (yMax >= fgImage.getHeight()) {
-            yMax = fgImage.getHeight();
-        }
-        int xMax = x0 + width;
-        if (xMax >= fgImage.getWidth()) {
-            xMax = fgImage.getWidth();
+        MaskFrame m = mask.get(maskNum);
+        MinimapProjection projection = Minimap.getProjection();
+        // only visit the bounding box of the non-transparent mask pixels
+        int xMin = Math.max(x0 + m.xMin, 0);
+        int yMin = Math.max(y0 + m.yMin, 0);
+        int xMax = Math.min(x0 + m.xMax, fgImage.getWidth());
+        int yMax = Math.min(y0 + m.yMax, fgImage.getHeight());
+        if (xMin >= xMax || yMin >= yMax) {
+            return;
         }
         
-        for (int y = y0; y < yMax; y++) {
-            if (y < 0) {
+        GameController.getDirtyRegion().add(xMin, yMin, xMax - xMin, yMax - yMin);
+        
+        for (int y = yMin; y < yMax; y++) {
+            if (m.isRowTransparent(y - y0)) {
                 continue;
             }
-            double scaledY = (y + 0.5) * scaleY % 1.0;
-            boolean drawSmallY = (scaledY >= (0.5 - scaleYHalf) % 1.0
-                    && scaledY < (0.5 + scaleYHalf) % 1.0)
-                    || Math.abs(scaleY) >= 1.0;
-            for (int x = x0; x < xMax; x++) {
-                if (x < 0) {
+            m.addRGBSpan(fgImage, xMin, y, xMin - x0, y - y0, xMax - xMin);
+            int smallY = projection.getTargetY(y);
+            for (int x = xMin; x < xMax; x++) {
+                int color = m.getRGB(x - x0, y - y0);
+                if ((color >>> 24) == 0) {
                     continue;
                 }
-                double scaledX = (x + 0.5) * scaleX % 1.0;
-                boolean drawSmallX = (scaledX >= (0.5 - scaleXHalf) % 1.0
-                        && scaledX < (0.5 + scaleXHalf) % 1.0)
-                        || Math.abs(scaleX) >= 1.0;
-                int color = m.getRGB(x - x0, y - y0);
+                int smallX = projection.getTargetX(x);
                 int[] objects = stencil.getIDs(x, y);
-                fgImage.addRGB(x, y, color);
-                if (drawSmallX && drawSmallY) {
+                if (smallX >= 0 && smallY >= 0) {
                     int stepCol;
                     if (Minimap.isTinted()) {
                         stepCol = Minimap.tintColor(color);
@@ -177,7 +171,7 @@ public class Mask {
                         stepCol = color;
                     }
                     // green pixel in fgImageSmall
-                    fgImageSmall.addRGB(ToolBox.scale(x, scaleX), ToolBox.scale(y, scaleY), stepCol);
+                    fgImageSmall.addRGB(smallX, smallY, stepCol);
                 }
                 if (fgImage.isPixelOpaque(x, y)) {
                     // get object
@@ -193,7 +187,7 @@ public class Mask {
                         }
                     }
                 }
-                if (m.isPixelOpaque(x - x0, y - y0)) {
+                if (m.isOpaque(x - x0, y - y0)) {
                     stencil.orMask(x, y, Stencil.MSK_BRICK);
                 }
             }
@@ -206,46 +200,35 @@ public class Mask {
      * @param y0 y position in pixels
      */
     public void setBlockerMask(final int x0, final int y0) {
-        LemmImage fgImage = GameController.getFgImage();
         Stencil stencil = GameController.getStencil();
-        int yMax = y0 + height;
-        if (yMax >= fgImage.getHeight()) {
-            yMax = fgImage.getHeight();
-        }
-        int xMax = x0 + width;
-        if (xMax >= fgImage.getWidth()) {
-            xMax = fgImage.getWidth();
-        }
-        
-        for (ListIterator<LemmImage> lit = mask.listIterator(); lit.hasNext(); ) {
+        for (ListIterator<MaskFrame> lit = mask.listIterator(); lit.hasNext(); ) {
             int i = lit.nextIndex();
             if (i >= 3) {
                 break;
             }
-            LemmImage m = lit.next();
-            for (int y = y0; y < yMax; y++) {
-                if (y < 0) {
-                    continue;
-                }
-                for (int x = x0; x < xMax; x++) {
-                    if (x < 0) {
-                        continue;
-                    }
-                    if (m.isPixelOpaque(x - x0, y - y0)) {
-                        switch (i) {
-                            case 0:
-                                stencil.orMask(x, y, Stencil.MSK_BLOCKER_LEFT); // set type in stencil
-                                break;
-                            case 1:
-                                stencil.orMask(x, y, Stencil.MSK_BLOCKER_CENTER); // set type in stencil
-                                break;
-                            case 2:
-                                stencil.orMask(x, y, Stencil.MSK_BLOCKER_RIGHT); // set type in stencil
-                                break;
-                            default:
-                                break;
-                        }
-                        //fgImage.setRGB(x, y, 0xff00ff00); // debug
+            MaskFrame m = lit.next();
+            int type;
+            switch (i) {
+                case 0:
+                    type = Stencil.MSK_BLOCKER_LEFT;
+                    break;
+                case 1:
+                    type = Stencil.MSK_BLOCKER_CENTER;
+                    break;
+                case 2:
+                default:
+                    type = Stencil.MSK_BLOCKER_RIGHT;
+                    break;
+            }
+            int xMin = Math.max(x0 + m.opaqueXMin, 0);
+            int yMin = Math.max(y0 + m.opaqueYMin, 0);
+            int xMax = Math.min(x0 + m.opaqueXMax, stencil.getWidth());
+            int yMax = Math.min(y0 + m.opaqueYMax, stencil.getHeight());
+            GameController.getDirtyRegion().add(xMin, yMin, xMax - xMin, yMax - yMin);
+            for (int y = yMin; y < yMax; y++) {
+                for (int x = xMin; x < xMax; x++) {
+                    if (m.isOpaque(x - x0, y - y0)) {
+                        stencil.orMask(x, y, type); // set type in stencil
                     }
                 }
             }
@@ -262,25 +245,15 @@ public class Mask {
      */
     public boolean checkType(final int x0, final int y0, final int maskNum, final int type) {
         Stencil stencil = GameController.getStencil();
-        LemmImage m = mask.get(maskNum);
-        int yMax = y0 + height;
-        if (yMax >= stencil.getHeight()) {
-            yMax = stencil.getHeight();
-        }
-        int xMax = x0 + width;
-        if (xMax >= stencil.getWidth()) {
-            xMax = stencil.getWidth();
-        }
+        MaskFrame m = mask.get(maskNum);
+        int xMin = Math.max(x0 + m.opaqueXMin, 0);
+        int yMin = Math.max(y0 + m.opaqueYMin, 0);
+        int xMax = Math.min(x0 + m.opaqueXMax, stencil.getWidth());
+        int yMax = Math.min(y0 + m.opaqueYMax, stencil.getHeight());
         
-        for (int y = y0; y < yMax; y++) {
-            if (y < 0) {
-                continue;
-            }
-            for (int x = x0; x < xMax; x++) {
-                if (x < 0) {
-                    continue;
-                }
-                if (m.isPixelOpaque(x - x0, y - y0)) {
+        for (int y = yMin; y < yMax; y++) {
+            for (int x = xMin; x < xMax; x++) {
+                if (m.isOpaque(x - x0, y - y0)) {
                     int s = stencil.getMask(x, y);
                     if ((s & type) != 0) {
                         return true;
@@ -299,29 +272,19 @@ public class Mask {
      * @param type Stencil bitmask to erase (may contain several attributes)
      */
     public void clearType(final int x0, final int y0, final int maskNum, final int type) {
-        LemmImage fgImage = GameController.getFgImage();
         Stencil stencil = GameController.getStencil();
-        LemmImage m = mask.get(maskNum);
-        int yMax = y0 + height;
-        if (yMax >= fgImage.getHeight()) {
-            yMax = fgImage.getHeight();
-        }
-        int xMax = x0 + width;
-        if (xMax >= fgImage.getWidth()) {
-            xMax = fgImage.getWidth();
-        }
+        MaskFrame m = mask.get(maskNum);
+        int xMin = Math.max(x0 + m.opaqueXMin, 0);
+        int yMin = Math.max(y0 + m.opaqueYMin, 0);
+        int xMax = Math.min(x0 + m.opaqueXMax, stencil.getWidth());
+        int yMax = Math.min(y0 + m.opaqueYMax, stencil.getHeight());
         
-        for (int y = y0; y < yMax; y++) {
-            if (y < 0) {
-                continue;
-            }
-            for (int x = x0; x < xMax; x++) {
-                if (x < 0) {
-                    continue;
-                }
-                if (m.isPixelOpaque(x - x0, y - y0)) {
+        GameController.getDirtyRegion().add(xMin, yMin, xMax - xMin, yMax - yMin);
+        
+        for (int y = yMin; y < yMax; y++) {
+            for (int x = xMin; x < xMax; x++) {
+                if (m.isOpaque(x - x0, y - y0)) {
                     stencil.andMask(x, y, ~type); // erase type in stencil
-                    //fgImage.setRGB(x, y, 0xffff0000); // debug
                 }
             }
         }
@@ -335,7 +298,7 @@ public class Mask {
             LemmImage i = ToolBox.copyLemmImage(itf.next());
             i.replaceColor(templateCol, replaceCol);
             i.replaceColor(templateCol2, replaceCol2);
-            mask.set(fi, i);
+            mask.set(fi, new MaskFrame(i));
         }
     }
     
@@ -363,3 +326,123 @@ public class Mask {
         return mask.size();
     }
 }
+
+/**
+ * Pixel data of one mask frame, unpacked once so that the mask operations
+ * don't have to go through the image's color model for every pixel.
+ */
+class MaskFrame {
+    
+    /** width of frame in pixels */
+    final int width;
+    /** height of frame in pixels */
+    final int height;
+    /** ARGB color of each pixel */
+    private final int[] rgb;
+    /** alpha of each pixel */
+    private final byte[] alpha;
+    /** one bit per pixel that is set if the pixel is opaque (alpha >= 0x80) */
+    private final long[] opaque;
+    /** number of words per row in opaque */
+    private final int rowWords;
+    /** true for every row without any non-transparent pixels */
+    private final boolean[] transparentRows;
+    /** bounding box of non-transparent pixels (max values exclusive, empty if min >= max) */
+    final int xMin, yMin, xMax, yMax;
+    /** bounding box of opaque pixels (max values exclusive, empty if min >= max) */
+    final int opaqueXMin, opaqueYMin, opaqueXMax, opaqueYMax;
+    
+    MaskFrame(final LemmImage img) {
+        width = img.getWidth();
+        height = img.getHeight();
+        rgb = img.getRGB(0, 0, width, height, null, 0, width);
+        alpha = new byte[width * height];
+        rowWords = (width + 63) >>> 6;
+        opaque = new long[rowWords * height];
+        transparentRows = new boolean[height];
+        int x0 = width, y0 = height, x1 = 0, y1 = 0;
+        int ox0 = width, oy0 = height, ox1 = 0, oy1 = 0;
+        for (int y = 0; y < height; y++) {
+            transparentRows[y] = true;
+            for (int x = 0; x < width; x++) {
+                int a = rgb[y * width + x] >>> 24;
+                alpha[y * width + x] = (byte) a;
+                if (a == 0) {
+                    continue;
+                }
+                transparentRows[y] = false;
+                x0 = Math.min(x0, x);
+                y0 = Math.min(y0, y);
+                x1 = Math.max(x1, x + 1);
+                y1 = Math.max(y1, y + 1);
+                if (a >= 0x80) {
+                    opaque[y * rowWords + (x >>> 6)] |= 1L << x;
+                    ox0 = Math.min(ox0, x);
+                    oy0 = Math.min(oy0, y);
+                    ox1 = Math.max(ox1, x + 1);
+                    oy1 = Math.max(oy1, y + 1);
+                }
+            }
+        }
+        xMin = x0;
+        yMin = y0;
+        xMax = x1;
+        yMax = y1;
+        opaqueXMin = ox0;
+        opaqueYMin = oy0;
+        opaqueXMax = ox1;
+        opaqueYMax = oy1;
+    }
+    
+    /**
+     * Get the ARGB color of a pixel. The position must be inside the frame.
+     * @param x x position in pixels
+     * @param y y position in pixels
+     * @return ARGB color
+     */
+    int getRGB(final int x, final int y) {
+        return rgb[y * width + x];
+    }
+    
+    /**
+     * Composite a part of a row of this frame over an image.
+     * @param img image to draw into
+     * @param dx x position of the first pixel in img
+     * @param dy y position of the row in img
+     * @param x x position of the first pixel in the frame
+     * @param y y position of the row in the frame
+     * @param length number of pixels
+     */
+    void addRGBSpan(final TiledImage img, final int dx, final int dy, final int x, final int y, final int length) {
+        img.addRGBSpan(dx, dy, rgb, y * width + x, length);
+    }
+    
+    /**
+     * Get the alpha of a pixel. The position must be inside the frame.
+     * @param x x position in pixels
+     * @param y y position in pixels
+     * @return alpha (0-255)
+     */
+    int getAlpha(final int x, final int y) {
+        return alpha[y * width + x] & 0xff;
+    }
+    
+    /**
+     * Check whether a pixel is opaque. The position must be inside the frame.
+     * @param x x position in pixels
+     * @param y y position in pixels
+     * @return true if the pixel is opaque
+     */
+    boolean isOpaque(final int x, final int y) {
+        return (opaque[y * rowWords + (x >>> 6)] & (1L << x)) != 0;
+    }
+    
+    /**
+     * Check whether a row contains only fully transparent pixels.
+     * @param y y position in pixels
+     * @return true if the row is fully transparent
+     */
+    boolean isRowTransparent(final int y) {
+        return transparentRows[y];
+    }
+}
@@ -3,6 +3,7 @@ package lemmini.game;
 import java.awt.Color;
 import lemmini.graphics.GraphicsContext;
 import lemmini.graphics.LemmImage;
+import lemmini.graphics.TiledImage;
 import lemmini.tools.ToolBox;
 
 /*
@@ -40,6 +41,8 @@ public class Minimap {
     
     /** image used for minimap */
     private static LemmImage img;
+    /** mapping between level pixels and minimap pixels */
+    private static MinimapProjection projection;
     /** X scale */
     private static double scaleX;
     /** Y scale */
@@ -50,20 +53,37 @@ public class Minimap {
     private static int visibleHeight;
     private static int xPos;
     private static boolean tinted;
+    /** copy of the minimap of the unmodified terrain */
+    private static LemmImage pristineImg;
+    /** paint count of the terrain pristineImg was created from, see {@link GameController#getPaintCount()} */
+    private static int pristinePaintCount;
     
     /**
-     * init
+     * init<br>
+     * Has to be called while the terrain is unmodified. If the terrain was
+     * not painted again since the last call with the same parameters, the
+     * minimap is copied from that call instead of being created again.
      * @param sx X Scale
      * @param sy Y Scale
      * @param tint true: apply greenish tint, false: use original colors
      */
     public static void init(final double sx, final double sy, final boolean tint) {
+        boolean reuse = pristineImg != null && pristinePaintCount == GameController.getPaintCount()
+                && sx == scaleX && sy == scaleY && tint == tinted;
         scaleX = sx;
         scaleY = sy;
         tinted = tint;
-        Level level = GameController.getLevel();
-        LemmImage fgImage = GameController.getFgImage();
-        img = level.createMinimap(fgImage, scaleX, scaleY, false, tint, false);
+        if (reuse) {
+            img = new LemmImage(pristineImg);
+        } else {
+            Level level = GameController.getLevel();
+            TiledImage fgImage = GameController.getFgImage();
+            projection = new MinimapProjection(fgImage.getWidth(), fgImage.getHeight(),
+                    ToolBox.scale(fgImage.getWidth(), scaleX), ToolBox.scale(fgImage.getHeight(), scaleY));
+            img = level.createMinimap(fgImage, projection, tint);
+            pristineImg = new LemmImage(img);
+            pristinePaintCount = GameController.getPaintCount();
+        }
         visibleWidth = Math.min(img.getWidth(), MAX_VISIBLE_WIDTH);
         visibleHeight = Math.min(img.getHeight(), MAX_VISIBLE_HEIGHT);
         MiscGfx.setMinimapWidth(visibleWidth);
@@ -75,14 +95,40 @@ public class Minimap {
         }
     }
     
+    /**
+     * Reset the minimap to the unmodified terrain after the terrain was
+     * restored to the state right after painting it. Does nothing if the
+     * minimap was not created from that terrain.
+     */
+    public static void reset() {
+        if (img != null && pristineImg != null && pristinePaintCount == GameController.getPaintCount()) {
+            img = new LemmImage(pristineImg);
+        }
+    }
+    
+    /**
+     * Recreate the minimap image from the foreground image, e.g. after the
+     * terrain was restored. The scale and scroll position are kept.
+     */
+    public static void refresh() {
+        if (img == null) {
+            return;
+        }
+        img = GameController.getLevel().createMinimap(GameController.getFgImage(), projection, tinted);
+    }
+    
     /**
      * Draw minimap.
      * @param g Graphics object to draw on
+     * @param image minimap image, see {@link #copyImage()}
      * @param x x position in pixels
      * @param y y position in pixels
+     * @param minimapXPos horizontal scroll position of the minimap in pixels
+     * @param levelYPos vertical scroll position of the level in pixels
      */
-    public static void draw(final GraphicsContext g, final int x, final int y) {
-        g.drawImage(img, x - xPos, y - ToolBox.scale(GameController.getYPos(), scaleY));
+    public static void draw(final GraphicsContext g, final LemmImage image, final int x, final int y,
+            final int minimapXPos, final int levelYPos) {
+        g.drawImage(image, x - minimapXPos, y - ToolBox.scale(levelYPos, scaleY));
     }
     
     /**
@@ -92,10 +138,13 @@ public class Minimap {
      * @param y y position in pixels
      * @param lx original lemming x position in pixels
      * @param ly original lemming y position in pixels
+     * @param minimapXPos horizontal scroll position of the minimap in pixels
+     * @param levelYPos vertical scroll position of the level in pixels
      */
-    public static void drawLemming(final GraphicsContext g, final int x, final int y, final int lx, final int ly) {
-        int sx = x + ToolBox.scale(lx, scaleX) - xPos - LEMM_DOT_SCALE / 2;
-        int sy = y + ToolBox.scale(ly - GameController.getYPos(), scaleY) - LEMM_DOT_SCALE;
+    public static void drawLemming(final GraphicsContext g, final int x, final int y, final int lx, final int ly,
+            final int minimapXPos, final int levelYPos) {
+        int sx = x + ToolBox.scale(lx, scaleX) - minimapXPos - LEMM_DOT_SCALE / 2;
+        int sy = y + ToolBox.scale(ly - levelYPos, scaleY) - LEMM_DOT_SCALE;
         if (sx + LEMM_DOT_SCALE > x && sx < x + visibleWidth
                 && sy + LEMM_DOT_SCALE > y && sy < y + visibleHeight) {
             g.setColor(LEMM_COLOR);
@@ -108,15 +157,18 @@ public class Minimap {
      * @param g Graphics object to draw on
      * @param x x position in pixels
      * @param y y position in pixels
+     * @param minimapXPos horizontal scroll position of the minimap in pixels
+     * @param levelXPos horizontal scroll position of the level in pixels
      */
-    public static void drawFrame(final GraphicsContext g, final int x, final int y) {
+    public static void drawFrame(final GraphicsContext g, final int x, final int y,
+            final int minimapXPos, final int levelXPos) {
         int wWidth = ToolBox.scale(Core.getDrawWidth(), scaleX);
-        int scaledXPos = ToolBox.scale(GameController.getXPos(), scaleX);
+        int scaledXPos = ToolBox.scale(levelXPos, scaleX);
         g.setColor(FRAME_COLOR);
         if (GameController.getWidth() < Core.getDrawWidth()) {
             g.drawRect(x, y, ToolBox.scale(GameController.getWidth(), scaleX) - 1, visibleHeight - 1);
         } else {
-            g.drawRect(x + scaledXPos - xPos, y, wWidth - 1, visibleHeight - 1);
+            g.drawRect(x + scaledXPos - minimapXPos, y, wWidth - 1, visibleHeight - 1);
         }
     }
     
@@ -128,6 +180,23 @@ public class Minimap {
         return img;
     }
     
+    /**
+     * Copy the current image, which is modified together with the terrain,
+     * so that it can be drawn by another thread.
+     * @return copy of the current image, or null if there is none
+     */
+    public static LemmImage copyImage() {
+        return (img == null) ? null : new LemmImage(img);
+    }
+    
+    /**
+     * Return the mapping between level pixels and minimap pixels.
+     * @return minimap projection
+     */
+    public static MinimapProjection getProjection() {
+        return projection;
+    }
+    
     public static int getVisibleWidth() {
         return visibleWidth;
     }
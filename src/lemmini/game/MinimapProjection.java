@@ -0,0 +1,159 @@
+package lemmini.game;
+
+import lemmini.tools.ToolBox;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Maps level pixels to minimap pixels and back.<br>
+ * When the minimap is smaller than the level, only one level column (row)
+ * per minimap column (row) is drawn into the minimap. The lookup tables are
+ * computed once, so that terrain modifications can update the minimap
+ * without any floating point arithmetic.
+ */
+public class MinimapProjection {
+
+    /** width of the level in pixels */
+    private final int srcWidth;
+    /** height of the level in pixels */
+    private final int srcHeight;
+    /** width of the minimap in pixels */
+    private final int dstWidth;
+    /** height of the minimap in pixels */
+    private final int dstHeight;
+    /** minimap column of each level column, or -1 if the column is not drawn */
+    private final int[] targetX;
+    /** minimap row of each level row, or -1 if the row is not drawn */
+    private final int[] targetY;
+    /** level column sampled for each minimap column */
+    private final int[] sourceX;
+    /** level row sampled for each minimap row */
+    private final int[] sourceY;
+
+    /**
+     * Constructor.
+     * @param srcWidth width of the level in pixels
+     * @param srcHeight height of the level in pixels
+     * @param dstWidth width of the minimap in pixels
+     * @param dstHeight height of the minimap in pixels
+     */
+    public MinimapProjection(final int srcWidth, final int srcHeight, final int dstWidth, final int dstHeight) {
+        this.srcWidth = srcWidth;
+        this.srcHeight = srcHeight;
+        this.dstWidth = dstWidth;
+        this.dstHeight = dstHeight;
+        targetX = createTargetTable(srcWidth, (double) dstWidth / (double) srcWidth);
+        targetY = createTargetTable(srcHeight, (double) dstHeight / (double) srcHeight);
+        sourceX = createSourceTable(targetX, dstWidth, srcWidth);
+        sourceY = createSourceTable(targetY, dstHeight, srcHeight);
+    }
+
+    /**
+     * Create the table that maps level positions to minimap positions.
+     * @param srcSize level size in pixels
+     * @param scale minimap size divided by level size
+     * @return lookup table
+     */
+    private static int[] createTargetTable(final int srcSize, final double scale) {
+        int[] table = new int[srcSize];
+        double scaleHalf = scale / 2.0;
+        for (int i = 0; i < srcSize; i++) {
+            double scaled = (i + 0.5) * scale % 1.0;
+            boolean draw = (scaled >= (0.5 - scaleHalf) % 1.0 && scaled < (0.5 + scaleHalf) % 1.0)
+                    || Math.abs(scale) >= 1.0;
+            table[i] = draw ? ToolBox.scale(i, scale) : -1;
+        }
+        return table;
+    }
+
+    /**
+     * Create the table that maps minimap positions back to the level
+     * positions that are drawn there.
+     * @param target table that maps level positions to minimap positions
+     * @param dstSize minimap size in pixels
+     * @param srcSize level size in pixels
+     * @return lookup table
+     */
+    private static int[] createSourceTable(final int[] target, final int dstSize, final int srcSize) {
+        int[] table = new int[dstSize];
+        boolean[] assigned = new boolean[dstSize];
+        for (int i = 0; i < target.length; i++) {
+            int t = target[i];
+            if (t >= 0 && t < dstSize && !assigned[t]) {
+                table[t] = i;
+                assigned[t] = true;
+            }
+        }
+        // fall back to nearest neighbor for minimap positions nothing maps to
+        for (int t = 0; t < dstSize; t++) {
+            if (!assigned[t]) {
+                table[t] = ToolBox.cap(0, (int) ((t + 0.5) * srcSize / dstSize), Math.max(srcSize - 1, 0));
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Get the minimap column a level column is drawn into.
+     * @param x level x position in pixels
+     * @return minimap x position, or -1 if this column is not drawn
+     */
+    public int getTargetX(final int x) {
+        return (x >= 0 && x < srcWidth) ? targetX[x] : -1;
+    }
+
+    /**
+     * Get the minimap row a level row is drawn into.
+     * @param y level y position in pixels
+     * @return minimap y position, or -1 if this row is not drawn
+     */
+    public int getTargetY(final int y) {
+        return (y >= 0 && y < srcHeight) ? targetY[y] : -1;
+    }
+
+    /**
+     * Get the level column that is drawn into a minimap column.
+     * @param x minimap x position in pixels (must be inside the minimap)
+     * @return level x position in pixels
+     */
+    public int getSourceX(final int x) {
+        return sourceX[x];
+    }
+
+    /**
+     * Get the level row that is drawn into a minimap row.
+     * @param y minimap y position in pixels (must be inside the minimap)
+     * @return level y position in pixels
+     */
+    public int getSourceY(final int y) {
+        return sourceY[y];
+    }
+
+    /**
+     * Get the width of the minimap.
+     * @return width in pixels
+     */
+    public int getWidth() {
+        return dstWidth;
+    }
+
+    /**
+     * Get the height of the minimap.
+     * @return height in pixels
+     */
+    public int getHeight() {
+        return dstHeight;
+    }
+}
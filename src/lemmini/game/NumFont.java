@@ -2,6 +2,7 @@ package lemmini.game;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import lemmini.graphics.GraphicsContext;
@@ -35,6 +36,9 @@ import lemmini.tools.ToolBox;
  */
 public class NumFont {
     
+    /** maximum number of cached images for numbers outside the predefined range */
+    private static final int NUM_CACHE_SIZE = 64;
+    
     /** width in pixels */
     private static int width;
     /** height in pixels */
@@ -42,6 +46,22 @@ public class NumFont {
     /** list of images - one for each digit 0-9 */
     private static final List<LemmImage> NUM_IMG = new ArrayList<>(15);
     private static final Map<Integer, LemmImage> NUM_IMG_MAP = new HashMap<>();
+    /**
+     * recently used images of numbers that are not in NUM_IMG_MAP, least
+     * recently used first; lookups change the order, so all access is
+     * synchronized on this map, since it is used from the game and the
+     * rendering thread
+     */
+    private static final Map<Integer, LemmImage> NUM_IMG_CACHE = new LinkedHashMap<Integer, LemmImage>(NUM_CACHE_SIZE * 2, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, LemmImage> eldest) {
+            return size() > NUM_CACHE_SIZE;
+        }
+    };
+    /** all glyphs side by side in one image */
+    private static LemmImage atlas;
     
     /**
      * Load and initialize the font.
@@ -60,15 +80,30 @@ public class NumFont {
         numImgTemp = ToolBox.getAnimation(sourceImg, 5);
         NUM_IMG.addAll(numImgTemp);
         
+        atlas = ToolBox.createLemmImage(width * NUM_IMG.size(), height);
+        GraphicsContext g = null;
+        try {
+            g = atlas.createGraphicsContext();
+            for (int i = 0; i < NUM_IMG.size(); i++) {
+                g.drawImage(NUM_IMG.get(i), width * i, 0);
+            }
+        } finally {
+            if (g != null) {
+                g.dispose();
+            }
+        }
+        
         NUM_IMG_MAP.clear();
+        synchronized (NUM_IMG_CACHE) {
+            NUM_IMG_CACHE.clear();
+        }
         LemmImage numImgTemp2;
-        GraphicsContext g = null;
         for (int i = 0; i < 100; i++) {
             numImgTemp2 = ToolBox.createLemmImage(width * 2, height);
             try {
                 g = numImgTemp2.createGraphicsContext();
-                g.drawImage(NUM_IMG.get(i / 10), 0, 0);
-                g.drawImage(NUM_IMG.get(i % 10), width, 0);
+                drawGlyph(g, i / 10, 0);
+                drawGlyph(g, i % 10, width);
             } finally {
                 if (g != null) {
                     g.dispose();
@@ -79,8 +114,8 @@ public class NumFont {
         numImgTemp2 = ToolBox.createLemmImage(width * 2, height);
         try {
             g = numImgTemp2.createGraphicsContext();
-            g.drawImage(NUM_IMG.get(13), 0, 0);
-            g.drawImage(NUM_IMG.get(14), width, 0);
+            drawGlyph(g, 13, 0);
+            drawGlyph(g, 14, width);
         } finally {
             if (g != null) {
                 g.dispose();
@@ -90,9 +125,9 @@ public class NumFont {
         numImgTemp2 = ToolBox.createLemmImage(width * 3, height);
         try {
             g = numImgTemp2.createGraphicsContext();
-            g.drawImage(NUM_IMG.get(10), 0, 0);
-            g.drawImage(NUM_IMG.get(13), width, 0);
-            g.drawImage(NUM_IMG.get(14), width * 2, 0);
+            drawGlyph(g, 10, 0);
+            drawGlyph(g, 13, width);
+            drawGlyph(g, 14, width * 2);
         } finally {
             if (g != null) {
                 g.dispose();
@@ -102,8 +137,8 @@ public class NumFont {
         numImgTemp2 = ToolBox.createLemmImage(width * 2, height);
         try {
             g = numImgTemp2.createGraphicsContext();
-            g.drawImage(NUM_IMG.get(10), 0, 0);
-            g.drawImage(NUM_IMG.get(10), width, 0);
+            drawGlyph(g, 10, 0);
+            drawGlyph(g, 10, width);
         } finally {
             if (g != null) {
                 g.dispose();
@@ -119,6 +154,11 @@ public class NumFont {
      */
     public static LemmImage numImage(Integer n) {
         LemmImage numImgTemp = NUM_IMG_MAP.get(n);
+        if (numImgTemp == null) {
+            synchronized (NUM_IMG_CACHE) {
+                numImgTemp = NUM_IMG_CACHE.get(n);
+            }
+        }
         if (numImgTemp != null) {
             return numImgTemp;
         } else {
@@ -165,7 +205,7 @@ public class NumFont {
                             break;
                     }
                     if (numIndex >= 0) {
-                        g.drawImage(NUM_IMG.get(numIndex), width * i, 0);
+                        drawGlyph(g, numIndex, width * i);
                     }
                 }
             } finally {
@@ -173,8 +213,20 @@ public class NumFont {
                     g.dispose();
                 }
             }
-            NUM_IMG_MAP.put(n, numImgTemp);
+            synchronized (NUM_IMG_CACHE) {
+                NUM_IMG_CACHE.put(n, numImgTemp);
+            }
             return numImgTemp;
         }
     }
+    
+    /**
+     * Draw one glyph from the atlas.
+     * @param g graphics object to draw to
+     * @param index index of the glyph
+     * @param x X coordinate in pixels
+     */
+    private static void drawGlyph(final GraphicsContext g, final int index, final int x) {
+        g.drawImage(atlas, x, 0, x + width, height, width * index, 0, width * (index + 1), height);
+    }
 }
@@ -0,0 +1,475 @@
+package lemmini.game;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lemmini.graphics.TiledImage;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * On-disk cache of painted terrain. The foreground pixels and stencil values
+ * of a level after its terrain and steel areas were painted are stored in
+ * one file per level, which is read when the level is painted again, so
+ * terrain graphics don't even have to be decoded.<br>
+ * A file is named after a SHA-256 hash of everything the painted terrain
+ * depends on (see {@link Level#paintLevel()}): the resource revision, the
+ * level INI with its mainLevel chain and the contents of all terrain images
+ * and masks the level uses, wherever they were found. Changing any of them,
+ * e.g. by adding a mod or updating a style, leads to a different name, so
+ * outdated files are never read. They are removed once the cache exceeds
+ * its size budget, least recently used first.
+ * <br>
+ * Files are written to a temporary file first and then moved into place,
+ * so several game instances can share the cache.
+ */
+final class PaintedLevelCache {
+
+    /** "SLPC" */
+    private static final int MAGIC = 0x534c5043;
+    /** has to be increased whenever the file layout or the painting result changes */
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".bin";
+    private static final int TILE_INTS = TiledImage.TILE_SIZE * TiledImage.TILE_SIZE;
+    private static final int TILE_BYTES = TILE_INTS * 4;
+    private static final int KEY_BYTES = 32;
+    /** magic, version, key, width, height, tile size, number of tiles */
+    private static final int HEADER_INTS = 2 + KEY_BYTES / 4 + 4;
+
+    /** cache folder or null if the cache is disabled */
+    private static Path directory;
+    /** maximum size of all cache files in bytes */
+    private static long budget;
+    private static int hits;
+    private static int misses;
+    private static int evictions;
+    private static long bytesRead;
+    private static long bytesWritten;
+
+    private PaintedLevelCache() {
+    }
+
+    /**
+     * Initialize the cache.
+     * @param dir cache folder
+     * @param budgetBytes maximum size of all cache files in bytes, 0 to disable the cache
+     */
+    static synchronized void init(final Path dir, final long budgetBytes) {
+        directory = (budgetBytes > 0) ? dir : null;
+        budget = budgetBytes;
+        // the budget may have been reduced since the last session
+        evict();
+    }
+
+    /**
+     * Check whether the cache is used.
+     * @return true if the cache is enabled
+     */
+    static synchronized boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Create a message digest to compute a cache key with.
+     * @return SHA-256 message digest that already contains the format version and resource revision
+     */
+    static MessageDigest newKeyDigest() {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            // every Java platform has to support SHA-256
+            throw new IllegalStateException(ex);
+        }
+        updateKey(md, VERSION);
+        updateKey(md, Core.RES_REVISION);
+        return md;
+    }
+
+    /**
+     * Add the contents of a resource to a cache key.
+     * @param md message digest
+     * @param res resource or null
+     * @throws ResourceException if the resource can't be read
+     */
+    static void updateKey(final MessageDigest md, final Resource res) throws ResourceException {
+        if (res == null) {
+            updateKey(md, -1);
+            return;
+        }
+        byte[] data;
+        try {
+            data = res.readAllBytes();
+        } catch (IOException ex) {
+            throw new ResourceException(res);
+        }
+        updateKey(md, data.length);
+        md.update(data);
+    }
+
+    /**
+     * Add a string to a cache key.
+     * @param md message digest
+     * @param s string
+     */
+    static void updateKey(final MessageDigest md, final String s) {
+        byte[] data = s.getBytes(StandardCharsets.UTF_8);
+        updateKey(md, data.length);
+        md.update(data);
+    }
+
+    /**
+     * Add an integer to a cache key.
+     * @param md message digest
+     * @param v value
+     */
+    static void updateKey(final MessageDigest md, final int v) {
+        md.update((byte) (v >>> 24));
+        md.update((byte) (v >>> 16));
+        md.update((byte) (v >>> 8));
+        md.update((byte) v);
+    }
+
+    /**
+     * Load painted terrain from the cache. The image and the stencil must be
+     * empty. If the terrain is not in the cache or the cache file can't be
+     * used, they are empty again afterwards.
+     * @param key cache key
+     * @param fgImage foreground image to load the pixels into
+     * @param stencil stencil to load the stencil values into
+     * @return true if the terrain was loaded, false otherwise
+     */
+    static synchronized boolean load(final byte[] key, final TiledImage fgImage, final Stencil stencil) {
+        if (directory == null) {
+            return false;
+        }
+        Path file = getFile(key);
+        // the content is copied into the tiles anyway, and unlike a mapping
+        // a heap buffer doesn't keep the file open until it is collected,
+        // which would prevent deleting or replacing the file on Windows
+        ByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > budget || size > Integer.MAX_VALUE) {
+                throw new IOException("Cache file too large: " + file);
+            }
+            buf = ByteBuffer.allocate((int) size);
+            while (buf.hasRemaining()) {
+                if (ch.read(buf) < 0) {
+                    break;
+                }
+            }
+            buf.flip();
+        } catch (IOException ex) {
+            // usually the level isn't in the cache yet
+            misses++;
+            return false;
+        }
+        boolean valid;
+        try {
+            valid = read(buf.asIntBuffer(), key, fgImage, stencil);
+        } catch (BufferUnderflowException ex) {
+            valid = false;
+        }
+        if (!valid) {
+            fgImage.clear();
+            stencil.clear();
+            delete(file);
+            misses++;
+            return false;
+        }
+        hits++;
+        bytesRead += buf.limit();
+        try {
+            // the last modification time decides which files are evicted first
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ex) {
+        }
+        return true;
+    }
+
+    /**
+     * Store painted terrain in the cache and evict old files if the cache
+     * exceeds its budget. Errors are ignored, the terrain is just painted
+     * again next time.
+     * @param key cache key
+     * @param fgImage foreground image with the painted terrain
+     * @param stencil stencil with the painted terrain
+     */
+    static synchronized void store(final byte[] key, final TiledImage fgImage, final Stencil stencil) {
+        if (directory == null) {
+            return;
+        }
+        int[] fgTiles = getAllocatedTiles(fgImage.getNumTiles(), fgImage::isTileAllocated);
+        int[] stencilTiles = getAllocatedTiles(stencil.getNumTiles(), stencil::isMaskTileAllocated);
+        int headerInts = HEADER_INTS + 2 + fgTiles.length + stencilTiles.length;
+        long size = headerInts * 4L + (fgTiles.length + stencilTiles.length) * (long) TILE_BYTES;
+        if (size > budget) {
+            return;
+        }
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(directory, "paint", ".tmp");
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(headerInts * 4);
+                IntBuffer ints = header.asIntBuffer();
+                ints.put(MAGIC);
+                ints.put(VERSION);
+                ints.put(ByteBuffer.wrap(key).asIntBuffer());
+                ints.put(fgImage.getWidth());
+                ints.put(fgImage.getHeight());
+                ints.put(TiledImage.TILE_SIZE);
+                ints.put(fgImage.getNumTiles());
+                ints.put(fgTiles.length);
+                ints.put(fgTiles);
+                ints.put(stencilTiles.length);
+                ints.put(stencilTiles);
+                writeFully(ch, header);
+                ByteBuffer tile = ByteBuffer.allocate(TILE_BYTES);
+                for (int t : fgTiles) {
+                    tile.clear();
+                    fgImage.readTile(t, tile.asIntBuffer());
+                    writeFully(ch, tile);
+                }
+                for (int t : stencilTiles) {
+                    tile.clear();
+                    stencil.readMaskTile(t, tile.asIntBuffer());
+                    writeFully(ch, tile);
+                }
+            }
+            Path file = getFile(key);
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            tmp = null;
+            bytesWritten += size;
+        } catch (IOException ex) {
+            if (tmp != null) {
+                delete(tmp);
+            }
+            return;
+        }
+        evict();
+    }
+
+    /**
+     * Delete the least recently used cache files until the cache fits into
+     * its budget.
+     */
+    static synchronized void evict() {
+        if (directory == null) {
+            return;
+        }
+        List<Path> files = listFiles();
+        long[] sizes = new long[files.size()];
+        long total = 0;
+        for (int i = 0; i < files.size(); i++) {
+            try {
+                sizes[i] = Files.size(files.get(i));
+            } catch (IOException ex) {
+                sizes[i] = 0;
+            }
+            total += sizes[i];
+        }
+        for (int i = 0; i < files.size() && total > budget; i++) {
+            if (delete(files.get(i))) {
+                total -= sizes[i];
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * Delete all cache files.
+     */
+    static synchronized void clear() {
+        if (directory == null) {
+            return;
+        }
+        for (Path file : listFiles()) {
+            delete(file);
+        }
+    }
+
+    /**
+     * Get the statistics of this session and the current size of the cache.
+     * @return statistics as a single line of text
+     */
+    static synchronized String getStats() {
+        if (directory == null) {
+            return "level cache disabled";
+        }
+        List<Path> files = listFiles();
+        long total = 0;
+        for (Path file : files) {
+            try {
+                total += Files.size(file);
+            } catch (IOException ex) {
+            }
+        }
+        return String.format(Locale.ROOT,
+                "level cache: %d hits, %d misses, %d KB read, %d KB written, %d evicted, %d files with %d of %d KB",
+                hits, misses, bytesRead / 1024, bytesWritten / 1024, evictions, files.size(), total / 1024, budget / 1024);
+    }
+
+    /**
+     * Read the content of a cache file.
+     * @param ints content of the file
+     * @param key expected cache key
+     * @param fgImage foreground image to load the pixels into
+     * @param stencil stencil to load the stencil values into
+     * @return true if the file was valid and loaded completely
+     */
+    private static boolean read(final IntBuffer ints, final byte[] key, final TiledImage fgImage, final Stencil stencil) {
+        if (ints.get() != MAGIC || ints.get() != VERSION) {
+            return false;
+        }
+        IntBuffer keyInts = ByteBuffer.wrap(key).asIntBuffer();
+        while (keyInts.hasRemaining()) {
+            if (ints.get() != keyInts.get()) {
+                return false;
+            }
+        }
+        if (ints.get() != fgImage.getWidth() || ints.get() != fgImage.getHeight()
+                || ints.get() != TiledImage.TILE_SIZE || ints.get() != fgImage.getNumTiles()
+                || fgImage.getNumTiles() != stencil.getNumTiles()) {
+            return false;
+        }
+        int[] fgTiles = readTileIndices(ints, fgImage.getNumTiles());
+        int[] stencilTiles = readTileIndices(ints, stencil.getNumTiles());
+        if (fgTiles == null || stencilTiles == null
+                || ints.remaining() != (long) (fgTiles.length + stencilTiles.length) * TILE_INTS) {
+            return false;
+        }
+        for (int t : fgTiles) {
+            fgImage.writeTile(t, ints);
+        }
+        for (int t : stencilTiles) {
+            stencil.writeMaskTile(t, ints);
+        }
+        return true;
+    }
+
+    /**
+     * Read a list of tile indices.
+     * @param ints buffer to read from
+     * @param numTiles number of tiles
+     * @return strictly increasing tile indices or null if the list is invalid
+     */
+    private static int[] readTileIndices(final IntBuffer ints, final int numTiles) {
+        int n = ints.get();
+        if (n < 0 || n > numTiles || n > ints.remaining()) {
+            return null;
+        }
+        int[] tiles = new int[n];
+        ints.get(tiles);
+        for (int i = 0; i < n; i++) {
+            if (tiles[i] < 0 || tiles[i] >= numTiles || (i > 0 && tiles[i] <= tiles[i - 1])) {
+                return null;
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Collect the indices of all allocated tiles.
+     * @param numTiles number of tiles
+     * @param allocated tells whether a tile is allocated
+     * @return indices of allocated tiles in increasing order
+     */
+    private static int[] getAllocatedTiles(final int numTiles, final IntPredicate allocated) {
+        int[] tiles = new int[numTiles];
+        int n = 0;
+        for (int t = 0; t < numTiles; t++) {
+            if (allocated.test(t)) {
+                tiles[n++] = t;
+            }
+        }
+        return Arrays.copyOf(tiles, n);
+    }
+
+    /**
+     * Get all cache files, least recently used first.
+     * @return list of files
+     */
+    private static List<Path> listFiles() {
+        try (Stream<Path> s = Files.list(directory)) {
+            List<Path> files = s.filter(p -> p.getFileName().toString().endsWith(EXTENSION))
+                    .collect(Collectors.toCollection(ArrayList::new));
+            files.sort(Comparator.comparingLong(PaintedLevelCache::getLastModified));
+            return files;
+        } catch (IOException ex) {
+            return new ArrayList<>(0);
+        }
+    }
+
+    private static long getLastModified(final Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException ex) {
+            return 0;
+        }
+    }
+
+    private static Path getFile(final byte[] key) {
+        StringBuilder sb = new StringBuilder(key.length * 2 + EXTENSION.length());
+        for (byte b : key) {
+            sb.append(String.format(Locale.ROOT, "%02x", b & 0xff));
+        }
+        sb.append(EXTENSION);
+        return directory.resolve(sb.toString());
+    }
+
+    private static void writeFully(final FileChannel ch, final ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+    }
+
+    /**
+     * Delete a file, e.g. a damaged or evicted cache file.
+     * @param file file
+     * @return true if the file was deleted
+     */
+    private static boolean delete(final Path file) {
+        try {
+            return Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            // e.g. opened by another game instance; it is deleted by a later eviction
+            return false;
+        }
+    }
+}
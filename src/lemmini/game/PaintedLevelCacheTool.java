@@ -0,0 +1,103 @@
+package lemmini.game;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Command line tool that shows the statistics of the
+ * {@link PaintedLevelCache} and the {@link GraphicSetCache} and measures how
+ * long the given levels take to start with and without the painted level
+ * cache.<br>
+ * Each level is started twice. Unless it was cached before, the first start
+ * paints the terrain and stores it, and the second one loads it from the
+ * cache. Use <code>--clear</code> to measure painting.
+ * <br>
+ * Usage: <code>PaintedLevelCacheTool [--clear] [--level=pack/rating/level]...</code>
+ * <br>
+ * <code>--clear</code> deletes all cache files before the levels are
+ * started. The exit code is 0 on success and 2 on errors.
+ */
+public final class PaintedLevelCacheTool {
+
+    private PaintedLevelCacheTool() {
+    }
+
+    public static void main(final String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        boolean clear = false;
+        List<int[]> levels = new ArrayList<>(args.length);
+        for (String arg : args) {
+            if (arg.equals("--clear")) {
+                clear = true;
+            } else if (arg.startsWith("--level=")) {
+                String[] lvl = arg.substring("--level=".length()).split("/");
+                if (lvl.length != 3) {
+                    System.err.println("Level must be given as pack/rating/level: " + arg);
+                    System.exit(2);
+                }
+                levels.add(new int[]{Integer.parseInt(lvl[0]), Integer.parseInt(lvl[1]), Integer.parseInt(lvl[2])});
+            } else {
+                System.err.println("usage: PaintedLevelCacheTool [--clear] [--level=pack/rating/level]...");
+                System.exit(2);
+            }
+        }
+
+        try {
+            HeadlessGame.init(URLDecoder.decode(PaintedLevelCacheTool.class.getProtectionDomain().getCodeSource().getLocation().getFile(), "UTF-8"));
+        } catch (LemmException | ResourceException | IOException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(2);
+        }
+        if (clear) {
+            PaintedLevelCache.clear();
+        }
+        if (!levels.isEmpty() && !PaintedLevelCache.isEnabled()) {
+            System.err.println("The level cache is disabled (levelCacheMB = 0).");
+            System.exit(2);
+        }
+        for (int[] lvl : levels) {
+            try {
+                // the first start stores the level if it wasn't cached yet
+                long painted = start(lvl);
+                long loaded = start(lvl);
+                System.out.printf(Locale.ROOT, "%d/%d/%d: first start %.1f ms, cached start %.1f ms%n",
+                        lvl[0], lvl[1], lvl[2], painted / 1e6, loaded / 1e6);
+            } catch (LemmException | ResourceException | RuntimeException ex) {
+                System.out.printf(Locale.ROOT, "%d/%d/%d: ERROR %s%n", lvl[0], lvl[1], lvl[2], ex);
+            }
+        }
+        System.out.println(PaintedLevelCache.getStats());
+        System.out.println(GraphicSetCache.getStats());
+        System.exit(0);
+    }
+
+    /**
+     * Start a level.
+     * @param lvl level pack, rating and level number
+     * @return time needed to start the level in nanoseconds
+     * @throws LemmException
+     * @throws ResourceException
+     */
+    private static long start(final int[] lvl) throws LemmException, ResourceException {
+        long t = System.nanoTime();
+        HeadlessGame.startLevel(lvl[0], lvl[1], lvl[2], null);
+        return System.nanoTime() - t;
+    }
+}
@@ -68,6 +68,18 @@ public class ReplayStream {
         replayIndex = 0;
     }
     
+    /**
+     * Set the replay position to the first event stored for the given frame
+     * or a later one.
+     * @param ctr frame counter
+     */
+    void seek(final int ctr) {
+        replayIndex = 0;
+        while (replayIndex < events.size() && events.get(replayIndex).frameCtr < ctr) {
+            replayIndex++;
+        }
+    }
+    
     /**
      * Get next replay event
      * @param ctr frame counter
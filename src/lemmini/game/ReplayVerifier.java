@@ -0,0 +1,260 @@
+package lemmini.game;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Command line tool that plays back all replays found in the given files and
+ * directories and checks that each one completes its level.<br>
+ * The game state lives in static fields, so every worker is a separate JVM
+ * running {@link HeadlessGame} in worker mode. A worker is started once and
+ * then plays back one replay after the other, so resources are only loaded
+ * once per worker.
+ * <br>
+ * Usage: <code>ReplayVerifier [--jobs=N] [--frames=N] (file|directory)...</code>
+ * <br>
+ * The exit code is 0 if all replays completed their levels, 1 otherwise and
+ * 2 on usage errors.
+ */
+public final class ReplayVerifier {
+
+    /** replay file and its outcome */
+    private static final class Entry {
+        private final Path file;
+        private HeadlessGame.Result result;
+        private String error;
+
+        private Entry(final Path file) {
+            this.file = file;
+        }
+    }
+
+    private ReplayVerifier() {
+    }
+
+    public static void main(final String[] args) throws InterruptedException {
+        int jobs = Runtime.getRuntime().availableProcessors();
+        int maxFrames = HeadlessGame.DEFAULT_MAX_FRAMES;
+        List<Path> roots = new ArrayList<>(args.length);
+        for (String arg : args) {
+            if (arg.startsWith("--jobs=")) {
+                jobs = Math.max(1, Integer.parseInt(arg.substring("--jobs=".length())));
+            } else if (arg.startsWith("--frames=")) {
+                maxFrames = Integer.parseInt(arg.substring("--frames=".length()));
+            } else {
+                roots.add(Paths.get(arg));
+            }
+        }
+        if (roots.isEmpty()) {
+            System.err.println("usage: ReplayVerifier [--jobs=N] [--frames=N] (file|directory)...");
+            System.exit(2);
+        }
+
+        List<Entry> entries = new ArrayList<>(256);
+        for (Path root : roots) {
+            try (Stream<Path> files = Files.walk(root)) {
+                files.filter(Files::isRegularFile)
+                        .filter(ReplayVerifier::isReplay)
+                        .sorted()
+                        .forEachOrdered(file -> entries.add(new Entry(file.toAbsolutePath())));
+            } catch (IOException ex) {
+                System.err.println("Unable to read " + root + ": " + ex.getMessage());
+                System.exit(2);
+            }
+        }
+        if (entries.isEmpty()) {
+            System.out.println("No replays found.");
+            return;
+        }
+        jobs = Math.min(jobs, entries.size());
+
+        System.out.printf(Locale.ROOT, "Verifying %d replays with %d workers...%n", entries.size(), jobs);
+        long start = System.nanoTime();
+        AtomicInteger next = new AtomicInteger();
+        final int frames = maxFrames;
+        ExecutorService pool = Executors.newFixedThreadPool(jobs);
+        for (int i = 0; i < jobs; i++) {
+            pool.execute(() -> work(entries, next, frames));
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        long nanos = System.nanoTime() - start;
+
+        System.exit(printSummary(entries, jobs, nanos) ? 0 : 1);
+    }
+
+    /**
+     * Check whether a file is a replay file.
+     * @param file file
+     * @return true if the file has one of {@link Core#REPLAY_EXTENSIONS}
+     */
+    private static boolean isReplay(final Path file) {
+        String ext = FilenameUtils.getExtension(file.getFileName().toString());
+        for (String replayExt : Core.REPLAY_EXTENSIONS) {
+            if (ext.equalsIgnoreCase(replayExt)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Worker thread: take the next unprocessed entry and hand it to this
+     * thread's worker process until all entries are done. If the process
+     * dies, the current entry fails and a new process is started.
+     * @param entries all entries
+     * @param next index of the next unprocessed entry
+     * @param maxFrames maximum number of frames per replay
+     */
+    private static void work(final List<Entry> entries, final AtomicInteger next, final int maxFrames) {
+        Process process = null;
+        Writer toWorker = null;
+        BufferedReader fromWorker = null;
+        try {
+            int i;
+            while ((i = next.getAndIncrement()) < entries.size()) {
+                Entry entry = entries.get(i);
+                try {
+                    if (process == null) {
+                        process = startWorker(maxFrames);
+                        toWorker = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+                        fromWorker = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+                    }
+                    toWorker.write(entry.file.toString());
+                    toWorker.write('\n');
+                    toWorker.flush();
+                    String line;
+                    while ((line = fromWorker.readLine()) != null) {
+                        if (line.startsWith(HeadlessGame.RESULT_PREFIX)) {
+                            entry.result = HeadlessGame.Result.parse(line.substring(HeadlessGame.RESULT_PREFIX.length()));
+                            break;
+                        } else if (line.startsWith(HeadlessGame.ERROR_PREFIX)) {
+                            entry.error = line.substring(HeadlessGame.ERROR_PREFIX.length());
+                            break;
+                        }
+                        // everything else is initialization output of the worker
+                    }
+                    if (line == null) {
+                        throw new IOException("worker process terminated");
+                    }
+                } catch (IOException | NumberFormatException ex) {
+                    entry.error = ex.getMessage();
+                    if (process != null) {
+                        process.destroy();
+                        process = null;
+                    }
+                }
+            }
+        } finally {
+            if (process != null) {
+                try {
+                    toWorker.close();
+                    process.waitFor();
+                } catch (IOException | InterruptedException ex) {
+                    process.destroy();
+                }
+            }
+        }
+    }
+
+    /**
+     * Start a JVM that runs {@link HeadlessGame} in worker mode with the
+     * same class path and home directory as this one.
+     * @param maxFrames maximum number of frames per replay
+     * @return worker process
+     * @throws IOException
+     */
+    private static Process startWorker(final int maxFrames) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        ProcessBuilder pb = new ProcessBuilder(java,
+                "-Djava.awt.headless=true",
+                "-Duser.home=" + System.getProperty("user.home"),
+                "-cp", System.getProperty("java.class.path"),
+                HeadlessGame.class.getName(), "--worker", "--frames=" + maxFrames);
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        pb.directory(new File(System.getProperty("user.dir")));
+        return pb.start();
+    }
+
+    /**
+     * Print one line per replay and the totals.
+     * @param entries processed entries
+     * @param jobs number of workers
+     * @param nanos wall clock time in nanoseconds
+     * @return true if all replays completed their levels
+     */
+    private static boolean printSummary(final List<Entry> entries, final int jobs, final long nanos) {
+        int passed = 0;
+        int failed = 0;
+        int errors = 0;
+        long totalFrames = 0;
+        System.out.printf(Locale.ROOT, "%-6s %-32s %-28s %9s %5s %6s %6s %8s %9s%n",
+                "STATUS", "REPLAY", "LEVEL", "SAVED", "TIME", "SKILLS", "SCORE", "FRAMES", "MS");
+        for (Entry e : entries) {
+            String name = StringUtils.abbreviate(e.file.getFileName().toString(), 32);
+            if (e.result == null) {
+                errors++;
+                System.out.printf(Locale.ROOT, "%-6s %-32s %s%n", "ERROR", name, e.error);
+                continue;
+            }
+            HeadlessGame.Result r = e.result;
+            totalFrames += r.getFrames();
+            String status;
+            if (r.isCompleted()) {
+                passed++;
+                status = "PASS";
+            } else {
+                failed++;
+                status = "FAIL";
+            }
+            System.out.printf(Locale.ROOT, "%-6s %-32s %-28s %4d/%-4d %5d %6d %6d %8d %9.1f%n",
+                    status, name, StringUtils.abbreviate(r.getLevelName(), 28), r.getLemmingsSaved(), r.getLemmingsNeeded(),
+                    r.getTime(), r.getSkillsUsed(), r.getScore(), r.getFrames(), r.getNanos() / 1_000_000.0);
+        }
+        double seconds = nanos / 1_000_000_000.0;
+        System.out.printf(Locale.ROOT, "%d replays: %d passed, %d failed, %d errors%n",
+                entries.size(), passed, failed, errors);
+        System.out.printf(Locale.ROOT, "%.2f s with %d workers: %.1f replays/s, %.0f frames/s%n",
+                seconds, jobs, entries.size() / seconds, totalFrames / seconds);
+        if (failed + errors > 0) {
+            System.out.println("Failed: " + entries.stream()
+                    .filter(e -> e.result == null || !e.result.isCompleted())
+                    .map(e -> e.file.toString())
+                    .collect(Collectors.joining(", ")));
+        }
+        return failed + errors == 0;
+    }
+}
@@ -16,6 +16,7 @@
 package lemmini.game;
 
 import java.awt.Color;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import lemmini.graphics.LemmImage;
@@ -43,11 +44,14 @@ public class SpecialGraphicSet {
     private LemmImage image = null;
     private boolean[][] mask = null;
     private boolean[][] steelMask = null;
+    /** resources this style was loaded from */
+    private final List<Resource> resources = new ArrayList<>(4);
     
     public SpecialGraphicSet(String name) throws LemmException, ResourceException {
         this.name = name;
         props = new Props();
         Resource res = Core.findResource("styles/special/" + name + "/" + name + ".ini", true);
+        resources.add(res);
         if (!props.load(res)) {
             throw new LemmException("Unable to read " + name + ".ini.");
         }
@@ -67,6 +71,7 @@ public class SpecialGraphicSet {
         res = Core.findResource(
                 "styles/special/" + name + "/" + name + ".png",
                 Core.IMAGE_EXTENSIONS);
+        resources.add(res);
         image = Core.loadLemmImage(res);
         
         // load mask
@@ -76,6 +81,7 @@ public class SpecialGraphicSet {
                     "styles/special/" + name + "/" + name + "m.png",
                     Core.IMAGE_EXTENSIONS);
             sourceImage = Core.loadLemmImage(res);
+            resources.add(res);
         } catch (ResourceException ex) {
             sourceImage = image;
         }
@@ -92,6 +98,7 @@ public class SpecialGraphicSet {
                     "styles/special/" + name + "/" + name + "s.png",
                     Core.IMAGE_EXTENSIONS);
             sourceImage = Core.loadLemmImage(res);
+            resources.add(res);
             steelMask = new boolean[sourceImage.getHeight()][sourceImage.getWidth()];
             for (int y = 0; y < steelMask.length; y++) {
                 for (int x = 0; x < steelMask[y].length; x++) {
@@ -142,4 +149,12 @@ public class SpecialGraphicSet {
     public boolean[][] getSteelMask() {
         return steelMask;
     }
+    
+    /**
+     * Get the resources this style was loaded from, e.g. to detect changes.
+     * @return list of resources
+     */
+    public List<Resource> getResources() {
+        return resources;
+    }
 }
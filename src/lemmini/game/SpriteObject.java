@@ -350,6 +350,21 @@ public class SpriteObject extends Sprite {
         return type;
     }
     
+    /**
+     * Trigger a triggered animation and let the game controller know about
+     * it.
+     * @param l Lemming that triggered the animation
+     * @return true if not yet triggered, false if already triggered
+     */
+    @Override
+    public boolean trigger(final Lemming l) {
+        if (!super.trigger(l)) {
+            return false;
+        }
+        GameController.objectTriggered(this);
+        return true;
+    }
+    
     /**
      * Get whether this object is visible only on terrain.
      * @return whether this object is visible only on terrain
@@ -0,0 +1,110 @@
+package lemmini.game;
+
+import java.util.BitSet;
+import lemmini.gameutil.Sprite;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Keeps track of the level objects that need to be animated and of the
+ * number of triggered objects, so that the per-frame object work depends on
+ * the number of active objects instead of all objects.<br>
+ * Looping and one-shot animations are always active. A triggered animation
+ * is active from the moment it is triggered until one frame after its
+ * trigger flag was cleared, since that frame still resets its animation
+ * counter. Objects that aren't animated at all are never visited.
+ */
+final class SpriteObjectIndex {
+
+    private SpriteObject[] objects = new SpriteObject[0];
+    /** indices of the objects to animate */
+    private final BitSet active = new BitSet();
+    /** number of triggered objects */
+    private int numTriggered;
+
+    /**
+     * Rebuild the index from the current state of the objects of a level.
+     * Has to be called whenever animation modes or trigger states were
+     * changed from outside, e.g. when entrances opened or a state was
+     * restored.
+     * @param level level
+     */
+    void rebuild(final Level level) {
+        int n = level.getNumSprObjects();
+        objects = new SpriteObject[n];
+        active.clear();
+        numTriggered = 0;
+        for (int i = 0; i < n; i++) {
+            SpriteObject spr = level.getSprObject(i);
+            objects[i] = spr;
+            if (spr == null) {
+                continue;
+            }
+            if (spr.isTriggered()) {
+                numTriggered++;
+            }
+            switch (spr.getAnimMode()) {
+                case LOOP:
+                case ONCE:
+                case TRIGGERED:
+                    active.set(i);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Notify the index that an object was triggered. Objects are triggered
+     * rarely, so a linear search is good enough here.
+     * @param spr object
+     */
+    void triggered(final SpriteObject spr) {
+        for (int i = 0; i < objects.length; i++) {
+            if (objects[i] == spr) {
+                active.set(i);
+                numTriggered++;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Advance the animations of all active objects by one frame.
+     */
+    void animate() {
+        for (int i = active.nextSetBit(0); i >= 0; i = active.nextSetBit(i + 1)) {
+            SpriteObject spr = objects[i];
+            boolean wasTriggered = spr.isTriggered();
+            spr.getImageAnim();
+            if (spr.getAnimMode() == Sprite.Animation.TRIGGERED) {
+                if (!wasTriggered) {
+                    active.clear(i);
+                } else if (!spr.isTriggered()) {
+                    numTriggered--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Check whether any object is triggered.
+     * @return true if at least one object is triggered
+     */
+    boolean isAnyTriggered() {
+        return numTriggered > 0;
+    }
+}
@@ -1,5 +1,11 @@
 package lemmini.game;
 
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import org.apache.commons.lang3.ArrayUtils;
 
 /*
@@ -65,8 +71,43 @@ public class Stencil {
     /** the level exit */
     public static final int MSK_EXIT = 1 << 15;
     
-    /** array which represents the stencil buffer */
-    private final StencilPixel[] stencil;
+    /** log2 of the width and height of a stencil tile */
+    private static final int TILE_SHIFT = 6;
+    /** width and height of a stencil tile */
+    private static final int TILE_SIZE = 1 << TILE_SHIFT;
+    /** number of pixels in a stencil tile */
+    private static final int TILE_PIXELS = TILE_SIZE * TILE_SIZE;
+    /** memory needed for the values of one stencil tile */
+    private static final long TILE_BYTES = TILE_PIXELS * 4L;
+    
+    /** stencil values, one array per tile (null if the whole tile is MSK_EMPTY) */
+    private final int[][] maskTiles;
+    /** mask object ID of each pixel, one array per tile (null if the whole tile is -1) */
+    private final int[][] maskObjectIDTiles;
+    /** index into objectIDSets for each pixel, one array per tile (null if the whole tile is 0) */
+    private final int[][] objectIDSetIndexTiles;
+    /** distinct object ID sets referenced by objectIDSetIndexTiles (index 0 is the empty set) */
+    private final List<int[]> objectIDSets;
+    /** maps (set index, added ID) to the index of the resulting set */
+    private final Map<Long, Integer> objectIDSetTransitions;
+    /** MSK_BRICK bitplane, one row of rowWords words per line (bit x&63 of word x>>6) */
+    private final long[] brickRows;
+    /** MSK_BRICK bitplane, one column of columnWords words per x position (bit y&63 of word y>>6) */
+    private final long[] brickColumns;
+    /** bitplane of pixels with any MSK_STEEL bit set, same layout as brickRows */
+    private final long[] steelRows;
+    /** number of words per row in the row-major bitplanes */
+    private final int rowWords;
+    /** number of words per column in the column-major bitplane */
+    private final int columnWords;
+    /** epoch in which each mask tile was last modified, see {@link #snapshot(Snapshot)} */
+    private final long[] maskTileStamps;
+    /** current epoch, advanced by each snapshot and restore */
+    private long epoch;
+    /** receives the tiles replaced by restores and cache reads (may be null) */
+    private DirtyRegion dirtyRegion;
+    /** number of tiles per row */
+    private final int tilesX;
     /** width of stencil (=width of level) */
     private final int width;
     /** height of stencil (=height of level) */
@@ -75,26 +116,43 @@ public class Stencil {
     
     /**
      * Constructor.
+     * Tiles are only allocated once a non-default value is written to them.
      * @param w width in pixels
      * @param h height in pixels
      */
     public Stencil(final int w, final int h) {
         width = w;
         height = h;
-        stencil = new StencilPixel[width * height];
-        for (int i = 0; i < stencil.length; i++) {
-            stencil[i] = new StencilPixel();
-        }
+        tilesX = (width + TILE_SIZE - 1) >> TILE_SHIFT;
+        int tilesY = (height + TILE_SIZE - 1) >> TILE_SHIFT;
+        maskTiles = new int[tilesX * tilesY][];
+        maskTileStamps = new long[tilesX * tilesY];
+        maskObjectIDTiles = new int[tilesX * tilesY][];
+        objectIDSetIndexTiles = new int[tilesX * tilesY][];
+        objectIDSets = new ArrayList<>(64);
+        objectIDSetTransitions = new HashMap<>(64);
+        rowWords = (width + 63) >>> 6;
+        columnWords = (height + 63) >>> 6;
+        brickRows = new long[rowWords * height];
+        brickColumns = new long[columnWords * width];
+        steelRows = new long[rowWords * height];
+        clear();
     }
     
     /**
      * Clear stencil (fill with MSK_EMPTY).
      */
     public void clear() {
-        int size = width * height;
-        for (int idx = 0; idx < size; idx++) {
-            stencil[idx].clear();
-        }
+        Arrays.fill(maskTiles, null);
+        Arrays.fill(maskTileStamps, epoch);
+        Arrays.fill(maskObjectIDTiles, null);
+        Arrays.fill(objectIDSetIndexTiles, null);
+        objectIDSets.clear();
+        objectIDSets.add(ArrayUtils.EMPTY_INT_ARRAY);
+        objectIDSetTransitions.clear();
+        Arrays.fill(brickRows, 0L);
+        Arrays.fill(brickColumns, 0L);
+        Arrays.fill(steelRows, 0L);
     }
         
      /**
@@ -108,8 +166,17 @@ public class Stencil {
             return;
         }
         
-        int pos = x + y * width;
-        stencil[pos].setMask(val);
+        int[] tile = maskTiles[tileIndex(x, y)];
+        if (tile == null) {
+            if (val == MSK_EMPTY) {
+                return;
+            }
+            tile = allocateMaskTile(x, y);
+        }
+        int idx = indexInTile(x, y);
+        int oldVal = tile[idx];
+        tile[idx] = val;
+        maskChanged(x, y, oldVal, val);
     }
     
     /**
@@ -118,9 +185,11 @@ public class Stencil {
      * @param val stencil value
      */
     public void setMask(final int pos, final int val) {
-        int y = pos / width;
-        int x = pos % width;
-        setMask(x, y, val);
+        if (pos < 0 || pos >= width * height) {
+            return;
+        }
+        
+        setMask(pos % width, pos / width, val);
     }
     
     /**
@@ -134,8 +203,14 @@ public class Stencil {
             return;
         }
         
-        int pos = x + y * width;
-        stencil[pos].andMask(val);
+        int[] tile = maskTiles[tileIndex(x, y)];
+        if (tile == null) {
+            return;
+        }
+        int idx = indexInTile(x, y);
+        int oldVal = tile[idx];
+        tile[idx] &= val;
+        maskChanged(x, y, oldVal, tile[idx]);
     }
     
     /**
@@ -144,9 +219,11 @@ public class Stencil {
      * @param val stencil value
      */
     public void andMask(final int pos, final int val) {
-        int y = pos / width;
-        int x = pos % width;
-        andMask(x, y, val);
+        if (pos < 0 || pos >= width * height) {
+            return;
+        }
+        
+        andMask(pos % width, pos / width, val);
     }
     
     /**
@@ -160,8 +237,17 @@ public class Stencil {
             return;
         }
         
-        int pos = x + y * width;
-        stencil[pos].orMask(val);
+        int[] tile = maskTiles[tileIndex(x, y)];
+        if (tile == null) {
+            if (val == MSK_EMPTY) {
+                return;
+            }
+            tile = allocateMaskTile(x, y);
+        }
+        int idx = indexInTile(x, y);
+        int oldVal = tile[idx];
+        tile[idx] |= val;
+        maskChanged(x, y, oldVal, tile[idx]);
     }
     
     /**
@@ -170,9 +256,11 @@ public class Stencil {
      * @param val stencil value
      */
     public void orMask(final int pos, final int val) {
-        int y = pos / width;
-        int x = pos % width;
-        orMask(x, y, val);
+        if (pos < 0 || pos >= width * height) {
+            return;
+        }
+        
+        orMask(pos % width, pos / width, val);
     }
     
     /**
@@ -186,8 +274,17 @@ public class Stencil {
             return;
         }
         
-        int pos = x + y * width;
-        stencil[pos].setMaskObjectID(id);
+        int t = tileIndex(x, y);
+        int[] tile = maskObjectIDTiles[t];
+        if (tile == null) {
+            if (id == -1) {
+                return;
+            }
+            tile = new int[TILE_PIXELS];
+            Arrays.fill(tile, -1);
+            maskObjectIDTiles[t] = tile;
+        }
+        tile[indexInTile(x, y)] = id;
     }
     
     /**
@@ -196,9 +293,11 @@ public class Stencil {
      * @param id identifier
      */
     public void setMaskObjectID(final int pos, final int id) {
-        int y = pos / width;
-        int x = pos % width;
-        setMaskObjectID(x, y, id);
+        if (pos < 0 || pos >= width * height) {
+            return;
+        }
+        
+        setMaskObjectID(pos % width, pos / width, id);
     }
     
     /**
@@ -212,8 +311,8 @@ public class Stencil {
             return 0;
         }
         
-        int pos = x + y * width;
-        return stencil[pos].getMask();
+        int[] tile = maskTiles[tileIndex(x, y)];
+        return (tile == null) ? MSK_EMPTY : tile[indexInTile(x, y)];
     }
     
     /**
@@ -222,13 +321,18 @@ public class Stencil {
      * @return stencil value
      */
     public int getMask(final int pos) {
-        int y = pos / width;
-        int x = pos % width;
-        return getMask(x, y);
+        if (pos < 0 || pos >= width * height) {
+            return 0;
+        }
+        
+        return getMask(pos % width, pos / width);
     }
     
     /**
      * Adds an object ID to the stencil.
+     * Neighboring pixels almost always end up with identical sets, so each
+     * distinct set is stored only once and shared between all pixels that
+     * reference it.
      * @param x x position in pixels
      * @param y y position in pixels
      * @param id identifier
@@ -238,8 +342,22 @@ public class Stencil {
             return;
         }
         
-        int pos = x + y * width;
-        stencil[pos].addObjectID(id);
+        int t = tileIndex(x, y);
+        int[] tile = objectIDSetIndexTiles[t];
+        if (tile == null) {
+            tile = new int[TILE_PIXELS];
+            objectIDSetIndexTiles[t] = tile;
+        }
+        int idx = indexInTile(x, y);
+        int oldIndex = tile[idx];
+        Long key = ((long) oldIndex << 32) | (id & 0xffffffffL);
+        Integer newIndex = objectIDSetTransitions.get(key);
+        if (newIndex == null) {
+            newIndex = objectIDSets.size();
+            objectIDSets.add(ArrayUtils.add(objectIDSets.get(oldIndex), id));
+            objectIDSetTransitions.put(key, newIndex);
+        }
+        tile[idx] = newIndex;
     }
     
     /**
@@ -248,13 +366,16 @@ public class Stencil {
      * @param id identifier
      */
     public void addID(final int pos, final int id) {
-        int y = pos / width;
-        int x = pos % width;
-        addID(x, y, id);
+        if (pos < 0 || pos >= width * height) {
+            return;
+        }
+        
+        addID(pos % width, pos / width, id);
     }
     
     /**
      * Gets all object IDs from the stencil.
+     * The returned array is shared and must not be modified.
      * @param x x position in pixels
      * @param y y position in pixels
      * @return identifier
@@ -264,19 +385,22 @@ public class Stencil {
             return ArrayUtils.EMPTY_INT_ARRAY;
         }
         
-        int pos = x + y * width;
-        return stencil[pos].getObjectIDs();
+        int[] tile = objectIDSetIndexTiles[tileIndex(x, y)];
+        return (tile == null) ? ArrayUtils.EMPTY_INT_ARRAY : objectIDSets.get(tile[indexInTile(x, y)]);
     }
     
     /**
      * Gets all object IDs from the stencil.
+     * The returned array is shared and must not be modified.
      * @param pos position (x+y*width)
      * @return identifier
      */
     public int[] getIDs(final int pos) {
-        int y = pos / width;
-        int x = pos % width;
-        return getIDs(x, y);
+        if (pos < 0 || pos >= width * height) {
+            return ArrayUtils.EMPTY_INT_ARRAY;
+        }
+        
+        return getIDs(pos % width, pos / width);
     }
     
     public int getMaskObjectID(final int x, final int y) {
@@ -284,79 +408,423 @@ public class Stencil {
             return -1;
         }
         
-        int pos = x + y * width;
-        return stencil[pos].getMaskObjectID();
+        int[] tile = maskObjectIDTiles[tileIndex(x, y)];
+        return (tile == null) ? -1 : tile[indexInTile(x, y)];
     }
     
     public int getMaskObjectID(final int pos) {
-        int y = pos / width;
-        int x = pos % width;
-        return getMaskObjectID(x, y);
+        if (pos < 0 || pos >= width * height) {
+            return -1;
+        }
+        
+        return getMaskObjectID(pos % width, pos / width);
     }
     
-    /** Get width of stencil.
-     * @return width of stencil
+    /**
+     * Get the number of pixels in the given column, starting at the given
+     * position and going down, before the first pixel with MSK_BRICK set.
+     * Pixels outside the stencil count as empty.
+     * @param x x position in pixels
+     * @param y y position in pixels of the first pixel to check
+     * @param n maximum number of pixels to check
+     * @return distance to the first brick pixel, or n if there is none within n pixels
      */
-    public int getWidth() {
-        return width;
+    public int firstBrickBelow(final int x, final int y, final int n) {
+        if (n <= 0) {
+            return 0;
+        }
+        if (x < 0 || x >= width) {
+            return n;
+        }
+        
+        int free = 0;
+        int yb = y;
+        if (yb < 0) {
+            free = -yb;
+            yb = 0;
+        }
+        int base = x * columnWords;
+        while (free < n && yb < height) {
+            long word = brickColumns[base + (yb >>> 6)] >>> (yb & 63);
+            if (word != 0L) {
+                return Math.min(free + Long.numberOfTrailingZeros(word), n);
+            }
+            int skip = 64 - (yb & 63);
+            free += skip;
+            yb += skip;
+        }
+        return n;
     }
     
     /**
-     * Get height of stencil.
-     * @return height of stencil
+     * Get the number of consecutive pixels with MSK_BRICK set in the given
+     * column, starting at the given position and going up.
+     * Pixels outside the stencil count as empty.
+     * @param x x position in pixels
+     * @param y y position in pixels of the first pixel to check
+     * @param n maximum number of pixels to check
+     * @return number of consecutive brick pixels (at most n)
      */
-    public int getHeight() {
-        return height;
+    public int countBricksAbove(final int x, final int y, final int n) {
+        if (n <= 0 || x < 0 || x >= width || y < 0 || y >= height) {
+            return 0;
+        }
+        
+        int count = 0;
+        int yb = y;
+        int base = x * columnWords;
+        while (count < n && yb >= 0) {
+            int bit = yb & 63;
+            // move bit yb to the top and look for the first non-brick pixel below it
+            long word = ~brickColumns[base + (yb >>> 6)] << (63 - bit);
+            if (word != 0L) {
+                return Math.min(count + Long.numberOfLeadingZeros(word), n);
+            }
+            count += bit + 1;
+            yb -= bit + 1;
+        }
+        return Math.min(count, n);
     }
-}
-
-class StencilPixel {
     
-    private int mask;
-    private int maskObjectID;
-    private int[] objectIDs;
+    /**
+     * Count the pixels with MSK_BRICK set in the given horizontal span.
+     * @param xMin first x position in pixels (inclusive)
+     * @param xMax last x position in pixels (inclusive)
+     * @param y y position in pixels
+     * @return number of brick pixels
+     */
+    public int countBricks(final int xMin, final int xMax, final int y) {
+        int x0 = Math.max(xMin, 0);
+        int x1 = Math.min(xMax, width - 1);
+        if (y < 0 || y >= height || x0 > x1) {
+            return 0;
+        }
+        
+        int base = y * rowWords;
+        int w0 = x0 >>> 6;
+        int w1 = x1 >>> 6;
+        int count = 0;
+        for (int w = w0; w <= w1; w++) {
+            count += Long.bitCount(brickRows[base + w] & spanMask(w, w0, w1, x0, x1));
+        }
+        return count;
+    }
     
-    public StencilPixel() {
-        mask = 0;
-        maskObjectID = -1;
-        objectIDs = ArrayUtils.EMPTY_INT_ARRAY;
+    /**
+     * Find the leftmost pixel in the given horizontal span that has both
+     * MSK_BRICK and any of the MSK_STEEL bits set.
+     * @param xMin first x position in pixels (inclusive)
+     * @param xMax last x position in pixels (inclusive)
+     * @param y y position in pixels
+     * @return x position of the first steel brick, or -1 if there is none
+     */
+    public int findSteelBrick(final int xMin, final int xMax, final int y) {
+        int x0 = Math.max(xMin, 0);
+        int x1 = Math.min(xMax, width - 1);
+        if (y < 0 || y >= height || x0 > x1) {
+            return -1;
+        }
+        
+        int base = y * rowWords;
+        int w0 = x0 >>> 6;
+        int w1 = x1 >>> 6;
+        for (int w = w0; w <= w1; w++) {
+            long word = brickRows[base + w] & steelRows[base + w] & spanMask(w, w0, w1, x0, x1);
+            if (word != 0L) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+        }
+        return -1;
     }
     
-    public void clear() {
-        mask = 0;
-        maskObjectID = -1;
-        objectIDs = ArrayUtils.EMPTY_INT_ARRAY;
+    /**
+     * Get the bits of word w that lie within the span x0..x1.
+     * @param w word index within the row
+     * @param w0 word index of x0
+     * @param w1 word index of x1
+     * @param x0 first x position (inclusive)
+     * @param x1 last x position (inclusive)
+     * @return bit mask
+     */
+    private static long spanMask(final int w, final int w0, final int w1, final int x0, final int x1) {
+        long m = -1L;
+        if (w == w0) {
+            m &= -1L << (x0 & 63);
+        }
+        if (w == w1) {
+            m &= -1L >>> (63 - (x1 & 63));
+        }
+        return m;
     }
     
-    public void setMask(int newMask) {
-        mask = newMask;
+    /**
+     * Set the dirty region that receives the tiles replaced by
+     * {@link #restore(Snapshot)} and {@link #writeMaskTile(int, IntBuffer)}.
+     * Single pixel writes are not reported here, the callers (e.g.
+     * {@link Mask}) report the bounding box of each operation instead.
+     * @param region dirty region, or null to stop tracking modifications
+     */
+    public void setDirtyRegion(final DirtyRegion region) {
+        dirtyRegion = region;
+    }
+    
+    /**
+     * Keep the bitplanes and the tile stamps in sync after a write to the
+     * mask at the given position.
+     * @param x x position in pixels
+     * @param y y position in pixels
+     * @param oldVal previous stencil value
+     * @param newVal new stencil value
+     */
+    private void maskChanged(final int x, final int y, final int oldVal, final int newVal) {
+        if (oldVal == newVal) {
+            return;
+        }
+        maskTileStamps[tileIndex(x, y)] = epoch;
+        if (((oldVal ^ newVal) & MSK_BRICK) != 0) {
+            brickRows[y * rowWords + (x >>> 6)] ^= 1L << x;
+            brickColumns[x * columnWords + (y >>> 6)] ^= 1L << y;
+        }
+        if (((oldVal & MSK_STEEL) != 0) != ((newVal & MSK_STEEL) != 0)) {
+            steelRows[y * rowWords + (x >>> 6)] ^= 1L << x;
+        }
+    }
+    
+    /**
+     * Create a snapshot of the stencil values. Tiles that were not modified
+     * since the previous snapshot are shared with it instead of being copied.
+     * Object IDs are not part of the snapshot since they never change after
+     * the level was painted.
+     * @param previous previous snapshot of this stencil, or null
+     * @return snapshot
+     */
+    public Snapshot snapshot(Snapshot previous) {
+        if (previous != null && previous.owner != this) {
+            previous = null;
+        }
+        int[][] copies = new int[maskTiles.length][];
+        long copiedBytes = 0;
+        for (int i = 0; i < maskTiles.length; i++) {
+            if (maskTiles[i] == null) {
+                continue;
+            }
+            if (previous != null && previous.stamps[i] == maskTileStamps[i]) {
+                copies[i] = previous.tiles[i];
+            } else {
+                copies[i] = maskTiles[i].clone();
+                copiedBytes += TILE_BYTES;
+            }
+        }
+        Snapshot s = new Snapshot(this, maskTileStamps.clone(), copies, copiedBytes);
+        epoch++;
+        return s;
+    }
+    
+    /**
+     * Restore the stencil values from a snapshot of this stencil. Only tiles
+     * that differ from the snapshot are copied back.
+     * @param s snapshot created by {@link #snapshot(Snapshot)} of this stencil
+     */
+    public void restore(final Snapshot s) {
+        if (s.owner != this) {
+            throw new IllegalArgumentException("Snapshot belongs to a different stencil.");
+        }
+        for (int i = 0; i < maskTiles.length; i++) {
+            if (maskTileStamps[i] != s.stamps[i]) {
+                maskTiles[i] = (s.tiles[i] == null) ? null : s.tiles[i].clone();
+                maskTileStamps[i] = s.stamps[i];
+                updateBitplanes(i);
+                if (dirtyRegion != null) {
+                    int x = (i % tilesX) << TILE_SHIFT;
+                    int y = (i / tilesX) << TILE_SHIFT;
+                    dirtyRegion.add(x, y, Math.min(TILE_SIZE, width - x), Math.min(TILE_SIZE, height - y));
+                }
+            }
+        }
+        epoch++;
+    }
+    
+    /**
+     * Recalculate the bitplanes in the area of the given tile from its
+     * stencil values. A tile covers exactly one word of each bitplane per
+     * row and per column.
+     * @param t tile index
+     */
+    private void updateBitplanes(final int t) {
+        int[] tile = maskTiles[t];
+        int x0 = (t % tilesX) << TILE_SHIFT;
+        int y0 = (t / tilesX) << TILE_SHIFT;
+        int w = Math.min(TILE_SIZE, width - x0);
+        int h = Math.min(TILE_SIZE, height - y0);
+        int rowWord = x0 >>> 6;
+        int columnWord = y0 >>> 6;
+        for (int y = 0; y < h; y++) {
+            long brick = 0;
+            long steel = 0;
+            if (tile != null) {
+                for (int x = 0; x < w; x++) {
+                    int val = tile[(y << TILE_SHIFT) | x];
+                    if ((val & MSK_BRICK) != 0) {
+                        brick |= 1L << x;
+                    }
+                    if ((val & MSK_STEEL) != 0) {
+                        steel |= 1L << x;
+                    }
+                }
+            }
+            brickRows[(y0 + y) * rowWords + rowWord] = brick;
+            steelRows[(y0 + y) * rowWords + rowWord] = steel;
+        }
+        for (int x = 0; x < w; x++) {
+            long brick = 0;
+            if (tile != null) {
+                for (int y = 0; y < h; y++) {
+                    if ((tile[(y << TILE_SHIFT) | x] & MSK_BRICK) != 0) {
+                        brick |= 1L << y;
+                    }
+                }
+            }
+            brickColumns[(x0 + x) * columnWords + columnWord] = brick;
+        }
+    }
+    
+    /**
+     * Get the number of mask tiles, which are numbered in row-major order.
+     * @return number of tiles
+     */
+    public int getNumTiles() {
+        return maskTiles.length;
+    }
+    
+    /**
+     * Check whether a mask tile is allocated, i.e. may contain values other
+     * than MSK_EMPTY.
+     * @param t tile index
+     * @return true if the tile is allocated
+     */
+    public boolean isMaskTileAllocated(final int t) {
+        return maskTiles[t] != null;
+    }
+    
+    /**
+     * Copy the stencil values of an allocated mask tile to a buffer, row by row.
+     * @param t tile index
+     * @param dst buffer that receives TILE_SIZE * TILE_SIZE stencil values
+     */
+    public void readMaskTile(final int t, final IntBuffer dst) {
+        dst.put(maskTiles[t]);
     }
     
-    public void andMask(int newMask) {
-        mask &= newMask;
+    /**
+     * Replace a mask tile with stencil values read from a buffer, row by row.
+     * Object IDs are not affected.
+     * @param t tile index
+     * @param src buffer that provides TILE_SIZE * TILE_SIZE stencil values
+     */
+    public void writeMaskTile(final int t, final IntBuffer src) {
+        int[] tile = new int[TILE_PIXELS];
+        src.get(tile);
+        maskTiles[t] = tile;
+        maskTileStamps[t] = epoch;
+        updateBitplanes(t);
+        if (dirtyRegion != null) {
+            int x = (t % tilesX) << TILE_SHIFT;
+            int y = (t / tilesX) << TILE_SHIFT;
+            dirtyRegion.add(x, y, Math.min(TILE_SIZE, width - x), Math.min(TILE_SIZE, height - y));
+        }
     }
     
-    public void orMask(int newMask) {
-        mask |= newMask;
+    /**
+     * Allocate the (empty) mask tile containing the given position.
+     * @param x x position in pixels
+     * @param y y position in pixels
+     * @return the new tile
+     */
+    private int[] allocateMaskTile(final int x, final int y) {
+        int[] tile = new int[TILE_PIXELS];
+        maskTiles[tileIndex(x, y)] = tile;
+        return tile;
     }
     
-    public void setMaskObjectID(int mo) {
-        maskObjectID = mo;
+    /**
+     * Get the index of the tile containing the given position.
+     * @param x x position in pixels
+     * @param y y position in pixels
+     * @return tile index
+     */
+    private int tileIndex(final int x, final int y) {
+        return (y >> TILE_SHIFT) * tilesX + (x >> TILE_SHIFT);
     }
     
-    public void addObjectID(int newID) {
-        objectIDs = ArrayUtils.add(objectIDs, newID);
+    /**
+     * Get the index of the given position within its tile.
+     * @param x x position in pixels
+     * @param y y position in pixels
+     * @return index within the tile
+     */
+    private static int indexInTile(final int x, final int y) {
+        return ((y & (TILE_SIZE - 1)) << TILE_SHIFT) | (x & (TILE_SIZE - 1));
     }
     
-    public int getMask() {
-        return mask;
+    /** Get width of stencil.
+     * @return width of stencil
+     */
+    public int getWidth() {
+        return width;
     }
     
-    public int getMaskObjectID() {
-        return maskObjectID;
+    /**
+     * Get height of stencil.
+     * @return height of stencil
+     */
+    public int getHeight() {
+        return height;
     }
     
-    public int[] getObjectIDs() {
-        return objectIDs;
+    /**
+     * Immutable copy of the stencil values, see
+     * {@link Stencil#snapshot(Snapshot)}.
+     */
+    public static final class Snapshot {
+        
+        private final Stencil owner;
+        /** modification epoch of each tile when the snapshot was taken */
+        private final long[] stamps;
+        /** tile copies, possibly shared with the previous snapshot */
+        private final int[][] tiles;
+        /** memory of the tiles that were copied for this snapshot */
+        private final long copiedBytes;
+        
+        private Snapshot(final Stencil owner, final long[] stamps, final int[][] tiles, final long copiedBytes) {
+            this.owner = owner;
+            this.stamps = stamps;
+            this.tiles = tiles;
+            this.copiedBytes = copiedBytes;
+        }
+        
+        /**
+         * Get the memory of the tiles that were copied when this snapshot
+         * was taken, i.e. the tiles not shared with the previous snapshot.
+         * @return size in bytes
+         */
+        public long getCopiedBytes() {
+            return copiedBytes;
+        }
+        
+        /**
+         * Get the memory of the tiles of this snapshot that are not shared
+         * with another snapshot.
+         * @param other other snapshot, or null
+         * @return size in bytes
+         */
+        public long getBytesNotSharedWith(final Snapshot other) {
+            long bytes = 0;
+            for (int i = 0; i < tiles.length; i++) {
+                if (tiles[i] != null && (other == null || other.owner != owner || other.tiles[i] != tiles[i])) {
+                    bytes += TILE_BYTES;
+                }
+            }
+            return bytes;
+        }
     }
 }
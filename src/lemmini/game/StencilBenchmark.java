@@ -0,0 +1,249 @@
+package lemmini.game;
+
+import java.util.Locale;
+import java.util.Random;
+import org.apache.commons.lang3.ArrayUtils;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Command line tool that compares the primitive planes of {@link Stencil}
+ * with the layout they replaced, one object per pixel holding its mask,
+ * mask object ID and object ID array.<br>
+ * Both layouts are filled like a typical level: terrain in the lower half
+ * and a few objects whose IDs cover some of it. Measured are the heap used
+ * by the filled stencil, random and sequential reads of the mask (as done
+ * by Lemmings and the terrain painting) and writes of 16x16 blocks (as done
+ * by terrain masks).
+ * <br>
+ * Usage: <code>StencilBenchmark [--rounds=N] [--width=N] [--height=N]</code>
+ */
+public final class StencilBenchmark {
+
+    private static final int LOOKUPS = 1_000_000;
+    private static final int BLOCKS = 10_000;
+    private static final int BLOCK_SIZE = 16;
+
+    /** sink for results, so the JIT can't drop the measured loops */
+    private static long sink;
+
+    private StencilBenchmark() {
+    }
+
+    /**
+     * Common accessors of both layouts.
+     */
+    private interface Layout {
+        int getMask(int x, int y);
+        void setMask(int x, int y, int val);
+        void addID(int x, int y, int id);
+    }
+
+    /**
+     * The per-pixel object layout that was used before the stencil was
+     * stored as planes.
+     */
+    private static final class PixelLayout implements Layout {
+
+        private static final class Pixel {
+            private int mask;
+            private int maskObjectID = -1;
+            private int[] objectIDs = ArrayUtils.EMPTY_INT_ARRAY;
+        }
+
+        private final Pixel[] pixels;
+        private final int width;
+        private final int height;
+
+        private PixelLayout(final int w, final int h) {
+            width = w;
+            height = h;
+            pixels = new Pixel[w * h];
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = new Pixel();
+            }
+        }
+
+        @Override
+        public int getMask(final int x, final int y) {
+            if (x < 0 || x >= width || y < 0 || y >= height) {
+                return 0;
+            }
+            return pixels[x + y * width].mask;
+        }
+
+        @Override
+        public void setMask(final int x, final int y, final int val) {
+            if (x < 0 || x >= width || y < 0 || y >= height) {
+                return;
+            }
+            pixels[x + y * width].mask = val;
+        }
+
+        @Override
+        public void addID(final int x, final int y, final int id) {
+            if (x < 0 || x >= width || y < 0 || y >= height) {
+                return;
+            }
+            Pixel p = pixels[x + y * width];
+            p.objectIDs = ArrayUtils.add(p.objectIDs, id);
+        }
+    }
+
+    /**
+     * The current layout.
+     */
+    private static final class PlaneLayout implements Layout {
+
+        private final Stencil stencil;
+
+        private PlaneLayout(final int w, final int h) {
+            stencil = new Stencil(w, h);
+        }
+
+        @Override
+        public int getMask(final int x, final int y) {
+            return stencil.getMask(x, y);
+        }
+
+        @Override
+        public void setMask(final int x, final int y, final int val) {
+            stencil.setMask(x, y, val);
+        }
+
+        @Override
+        public void addID(final int x, final int y, final int id) {
+            stencil.addID(x, y, id);
+        }
+    }
+
+    private interface Factory {
+        Layout create(int w, int h);
+    }
+
+    public static void main(final String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int rounds = 10;
+        int width = 3200;
+        int height = 320;
+        for (String arg : args) {
+            if (arg.startsWith("--rounds=")) {
+                rounds = Integer.parseInt(arg.substring("--rounds=".length()));
+            } else if (arg.startsWith("--width=")) {
+                width = Integer.parseInt(arg.substring("--width=".length()));
+            } else if (arg.startsWith("--height=")) {
+                height = Integer.parseInt(arg.substring("--height=".length()));
+            } else {
+                System.err.println("usage: StencilBenchmark [--rounds=N] [--width=N] [--height=N]");
+                System.exit(2);
+            }
+        }
+
+        System.out.printf(Locale.ROOT, "%-14s %9s %10s %16s %16s %16s%n",
+                "layout", "size", "heap KB", "random get ns", "row get ns", "block set ns");
+        for (int r = 0; r < rounds; r++) {
+            // only the last round is printed, the others warm up the JIT
+            boolean print = r == rounds - 1;
+            run("StencilPixel", PixelLayout::new, width, height, print);
+            run("planes", PlaneLayout::new, width, height, print);
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Measure one layout.
+     * @param name name to print
+     * @param factory creates an empty stencil
+     * @param w width in pixels
+     * @param h height in pixels
+     * @param print flag: print the results
+     */
+    private static void run(final String name, final Factory factory, final int w, final int h, final boolean print) {
+        long heapBefore = usedHeap();
+        Layout stencil = factory.create(w, h);
+        for (int y = h / 2; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                stencil.setMask(x, y, Stencil.MSK_BRICK);
+            }
+        }
+        // objects covering about a tenth of the level, some of them overlapping
+        for (int i = 0; i < w / 64; i++) {
+            int x0 = i * 64;
+            int y0 = (i * 37) % Math.max(1, h - 32);
+            for (int y = y0; y < y0 + 32; y++) {
+                for (int x = x0; x < x0 + 48; x++) {
+                    stencil.addID(x, y, i);
+                }
+            }
+        }
+        long heap = usedHeap() - heapBefore;
+
+        Random rnd = new Random(w * 31 + h);
+        int[] xs = new int[LOOKUPS];
+        int[] ys = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            xs[i] = rnd.nextInt(w);
+            ys[i] = rnd.nextInt(h);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            sink += stencil.getMask(xs[i], ys[i]);
+        }
+        long randomNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                sink += stencil.getMask(x, y);
+            }
+        }
+        long rowNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BLOCKS; i++) {
+            int x0 = xs[i] - BLOCK_SIZE / 2;
+            int y0 = ys[i] - BLOCK_SIZE / 2;
+            int val = (i & 1) == 0 ? Stencil.MSK_EMPTY : Stencil.MSK_BRICK;
+            for (int y = y0; y < y0 + BLOCK_SIZE; y++) {
+                for (int x = x0; x < x0 + BLOCK_SIZE; x++) {
+                    stencil.setMask(x, y, val);
+                }
+            }
+        }
+        long blockNanos = System.nanoTime() - start;
+
+        if (print) {
+            System.out.printf(Locale.ROOT, "%-14s %9s %10d %16.2f %16.2f %16.2f%n", name, w + "x" + h,
+                    heap / 1024, (double) randomNanos / LOOKUPS, (double) rowNanos / ((long) w * h),
+                    (double) blockNanos / ((long) BLOCKS * BLOCK_SIZE * BLOCK_SIZE));
+        }
+    }
+
+    /**
+     * Get the heap in use after collecting garbage.
+     * @return used heap in bytes
+     */
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
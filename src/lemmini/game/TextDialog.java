@@ -1,7 +1,6 @@
 package lemmini.game;
 
 import java.util.*;
-import lemmini.graphics.GraphicsContext;
 import lemmini.graphics.LemmImage;
 
 /*
@@ -61,14 +60,15 @@ public class TextDialog {
     }
     
     /**
-     * Draw the text screen to the given graphics object.
-     * @param g graphics object to draw the text screen to
+     * Capture the images of the text screen in drawing order, so that they
+     * can be drawn by another thread.
+     * @param items list the images and their positions are added to
      * @param x
      * @param y
      * @param width
      * @param height
      */
-    public void drawScreen(GraphicsContext g, int x, int y, int width, int height) {
+    void capture(List<FrameSnapshot.DrawItem> items, int x, int y, int width, int height) {
         int widthHalf = width / 2;
         int heightHalf = height / 2;
         int centerX = widthHalf + x;
@@ -82,26 +82,26 @@ public class TextDialog {
                 int yMin = (heightHalf % imageHeight == 0) ? 0 : ((centerY - (heightHalf / imageHeight + 1) * imageHeight));
                 for (int xa = xMin; xa < x + width; xa += imageWidth) {
                     for (int ya = yMin; ya < y + width; ya += imageHeight) {
-                        g.drawImage(backgroundImage, xa, ya);
+                        items.add(new FrameSnapshot.DrawItem(backgroundImage, xa, ya));
                     }
                 }
             } else {
                 int xa = x + (width - backgroundImage.getWidth()) / 2;
                 int ya = y + (height - backgroundImage.getHeight()) / 2;
-                g.drawImage(backgroundImage, xa, ya);
+                items.add(new FrameSnapshot.DrawItem(backgroundImage, xa, ya));
             }
         }
         synchronized (images) {
             images.keySet().stream().forEachOrdered(s -> {
                 images.get(s).stream().forEachOrdered(img -> {
-                    img.draw(g, centerX, centerY);
+                    img.capture(items, centerX, centerY);
                 });
             });
         }
         synchronized (buttons) {
             buttons.keySet().stream().forEachOrdered(s -> {
                 buttons.get(s).stream().forEachOrdered(b -> {
-                    b.draw(g, centerX, centerY);
+                    b.capture(items, centerX, centerY);
                 });
             });
         }
@@ -417,15 +417,15 @@ class Button {
     }
     
     /**
-     * Draw the button.
-     * @param g graphics object to draw on
+     * Capture the current button image.
+     * @param items list the image and its position is added to
      * @param cx
      * @param cy
      */
-    void draw(final GraphicsContext g, final int cx, final int cy) {
+    void capture(final List<FrameSnapshot.DrawItem> items, final int cx, final int cy) {
         LemmImage img = getImage();
         if (img != null) {
-            g.drawImage(getImage(), cx + x, cy + y);
+            items.add(new FrameSnapshot.DrawItem(img, cx + x, cy + y));
         }
     }
     
@@ -514,12 +514,12 @@ class TextDialogImage {
     }
     
     /**
-     * Draw the image.
-     * @param g graphics object to draw on
+     * Capture the image.
+     * @param items list the image and its position is added to
      * @param cx
      * @param cy
      */
-    void draw(final GraphicsContext g, final int cx, final int cy) {
-        g.drawImage(image, cx + x, cy + y);
+    void capture(final List<FrameSnapshot.DrawItem> items, final int cx, final int cy) {
+        items.add(new FrameSnapshot.DrawItem(image, cx + x, cy + y));
     }
 }
\ No newline at end of file
@@ -478,16 +478,17 @@ public class TextScreen {
     }
     
     /**
-     * Draw the text screen to the given graphics object.
-     * @param g graphics object to draw the text screen to
+     * Capture the images of the text screen in drawing order, so that they
+     * can be drawn by another thread.
+     * @param items list the images and their positions are added to
      * @param x
      * @param y
      * @param width
      * @param height
      */
-    public static void drawScreen(GraphicsContext g, int x, int y, int width, int height) {
+    static void capture(List<FrameSnapshot.DrawItem> items, int x, int y, int width, int height) {
         synchronized (monitor) {
-            textDialog.drawScreen(g, x, y, width, height);
+            textDialog.capture(items, x, y, width, height);
         }
     }
 }
@@ -3,7 +3,6 @@ package lemmini.gameutil;
 import java.awt.Color;
 import lemmini.game.Core;
 import lemmini.graphics.GraphicsContext;
-import lemmini.graphics.LemmImage;
 import lemmini.tools.ToolBox;
 
 /*
@@ -28,7 +27,9 @@ import lemmini.tools.ToolBox;
 /**
  * Simple fader class.
  * instead of doing painfully slow pixel wise gamma manipulation,
- * use a square with transparency with is drawn over the whole graphic context.
+ * use a rectangle with transparency which is drawn over the whole graphic context.
+ * The game thread changes the fader state, and the color to fade with is
+ * passed to the render thread with each frame, see {@link #getFadeColor()}.
  *
  * @author Volker Oth
  */
@@ -37,10 +38,6 @@ public class Fader {
     public static final int FADE_STEP_FAST = 15;
     public static final int FADE_STEP_SLOW = 8;
     
-    /** width of square to use for fading */
-    private static final int WIDTH = 64;
-    /** height of square to use for fading */
-    private static final int HEIGHT = 64;
     /** maximum alpha (opaque) */
     private static final int MAX_ALPHA = 0xff;
     
@@ -66,10 +63,6 @@ public class Fader {
     private static int color = 0; // black
     /** alpha value of the fading rectangle */
     private static int alpha = 0x80; // half transparent
-    /** the image used as fading rectangle */
-    private static LemmImage alphaImg = null;
-    /** the graphics used as fading rectangle (static to avoid multiple allocation) */
-    private static GraphicsContext alphaGfx;
     
     /**
      * Set color to be used for fading.
@@ -77,7 +70,6 @@ public class Fader {
      */
     public static synchronized void setColor(final int c) {
         color = c & 0xffffff;
-        init();
     }
     
     /**
@@ -86,37 +78,27 @@ public class Fader {
      */
     public static synchronized void setAlpha(final int a) {
         alpha = ToolBox.cap(0, a, 0xff);
-        init();
     }
     
     /**
-     * Initialize fader.
+     * Get the color of the fading rectangle.
+     * @return ARGB color of the fading rectangle composed from alpha and color
      */
-    private static void init() {
-        Color fillColor; /* ARGB color of the fading rectangle composed from alpha and color */
-        // create alpha image if needed
-        if (alphaImg == null) {
-            alphaImg = ToolBox.createLemmImage(WIDTH, HEIGHT);
-            alphaGfx = alphaImg.createGraphicsContext();
-        }
-        // fill with alpha blended color
-        fillColor = new Color((color >> 16) & 0xff, (color >> 8) & 0xff, color & 0xff, alpha);
-        alphaGfx.setBackground(fillColor);
-        alphaGfx.clearRect(0, 0, WIDTH, HEIGHT);
+    public static synchronized int getFadeColor() {
+        return (alpha << 24) | color;
     }
     
     /**
      * Apply fader without changing the fader state.
      * @param g graphics to apply fader to
+     * @param fadeColor ARGB color of the fading rectangle, see {@link #getFadeColor()}
      */
-    public static synchronized void apply(final GraphicsContext g) {
-        int width = Core.getDrawWidth();
-        int height = Core.getDrawHeight();
-        for (int y = 0; y < height; y += HEIGHT) {
-            for (int x = 0; x < width; x += WIDTH) {
-                g.drawImage(alphaImg, x, y);
-            }
+    public static void apply(final GraphicsContext g, final int fadeColor) {
+        if ((fadeColor >>> 24) == 0) {
+            return;
         }
+        g.setColor(new Color(fadeColor, true));
+        g.fillRect(0, 0, Core.getDrawWidth(), Core.getDrawHeight());
     }
     
     /**
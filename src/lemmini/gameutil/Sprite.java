@@ -422,6 +422,43 @@ public class Sprite {
         }
     }
     
+    /**
+     * Get a copy of the animation state.
+     * @param copyFrames true to also copy the animation frames, e.g. if
+     *                   pixels are made visible or invisible during the game
+     * @return animation state
+     */
+    public State getState(final boolean copyFrames) {
+        List<LemmImage> frameCopies = null;
+        if (copyFrames) {
+            frameCopies = new ArrayList<>(frames.size());
+            for (LemmImage frame : frames) {
+                frameCopies.add(new LemmImage(frame));
+            }
+        }
+        return new State(counter, frameIdx, animMode, triggered, lemming, frameCopies);
+    }
+    
+    /**
+     * Restore the animation state.
+     * @param s animation state returned by {@link #getState(boolean)}
+     * @param l Lemming that triggered the animation (replaces the one stored in the state)
+     */
+    public void setState(final State s, final Lemming l) {
+        counter = s.counter;
+        frameIdx = s.frameIdx;
+        animMode = s.animMode;
+        triggered = s.triggered;
+        lemming = l;
+        if (s.frames != null) {
+            for (ListIterator<LemmImage> lit = frames.listIterator(); lit.hasNext(); ) {
+                int i = lit.nextIndex();
+                lit.next();
+                lit.set(new LemmImage(s.frames.get(i)));
+            }
+        }
+    }
+    
     /**
      * Get width of Sprite in pixels.
      * @return width of Sprite in pixels
@@ -437,4 +474,50 @@ public class Sprite {
     public int getHeight() {
         return height;
     }
+    
+    /**
+     * Copy of the animation state of a sprite.
+     */
+    public static final class State {
+        
+        private final int counter;
+        private final int frameIdx;
+        private final Animation animMode;
+        private final boolean triggered;
+        private final Lemming lemming;
+        /** copies of the animation frames or null */
+        private final List<LemmImage> frames;
+        
+        private State(final int counter, final int frameIdx, final Animation animMode,
+                final boolean triggered, final Lemming lemming, final List<LemmImage> frames) {
+            this.counter = counter;
+            this.frameIdx = frameIdx;
+            this.animMode = animMode;
+            this.triggered = triggered;
+            this.lemming = lemming;
+            this.frames = frames;
+        }
+        
+        /**
+         * Get the Lemming that triggered the animation.
+         * @return Lemming or null
+         */
+        public Lemming getLemming() {
+            return lemming;
+        }
+        
+        /**
+         * Get the memory used by the frame copies.
+         * @return size in bytes (0 if the frames were not copied)
+         */
+        public long getFrameBytes() {
+            long bytes = 0;
+            if (frames != null) {
+                for (LemmImage frame : frames) {
+                    bytes += frame.getWidth() * frame.getHeight() * 4L;
+                }
+            }
+            return bytes;
+        }
+    }
 }
@@ -0,0 +1,153 @@
+package lemmini.graphics;
+
+import java.awt.Canvas;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Toolkit;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferStrategy;
+import javax.swing.SwingUtilities;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Presents frames directly from the rendering thread through the
+ * {@link BufferStrategy} of a canvas instead of going through repaint() and
+ * the event dispatch thread. The buffer strategy uses page flipping if the
+ * platform supports it and accelerated (volatile) back buffers otherwise.
+ * <br>
+ * The canvas doesn't handle any input itself: mouse events are forwarded to
+ * the component it covers, and it never takes the keyboard focus.
+ */
+public class ActiveRenderer {
+
+    /** number of buffers used by the buffer strategy */
+    private static final int NUM_BUFFERS = 2;
+
+    private final Canvas canvas;
+    private BufferStrategy strategy;
+
+    /**
+     * Constructor.
+     * @param target component that receives the mouse events of the canvas
+     */
+    public ActiveRenderer(final Component target) {
+        canvas = new Canvas();
+        canvas.setIgnoreRepaint(true);
+        canvas.setFocusable(false);
+        canvas.setBackground(Color.BLACK);
+        MouseAdapter forwarder = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                forward(e);
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                forward(e);
+            }
+
+            @Override
+            public void mouseEntered(MouseEvent e) {
+                forward(e);
+            }
+
+            @Override
+            public void mouseExited(MouseEvent e) {
+                forward(e);
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                forward(e);
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                forward(e);
+            }
+
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                forward(e);
+            }
+
+            private void forward(MouseEvent e) {
+                target.dispatchEvent(SwingUtilities.convertMouseEvent(canvas, e, target));
+            }
+        };
+        canvas.addMouseListener(forwarder);
+        canvas.addMouseMotionListener(forwarder);
+        canvas.addMouseWheelListener(forwarder);
+    }
+
+    /**
+     * Get the canvas that frames are presented on.
+     * @return canvas
+     */
+    public Canvas getCanvas() {
+        return canvas;
+    }
+
+    /**
+     * Scale an image to the given size and present it on the canvas.
+     * @param image image to present
+     * @param width scaled width in pixels
+     * @param height scaled height in pixels
+     * @param bilinear true to use bilinear filtering, false for nearest neighbor
+     * @return true if the frame was presented, false if the canvas isn't ready
+     */
+    public synchronized boolean present(final LemmImage image, final int width, final int height, final boolean bilinear) {
+        if (!canvas.isDisplayable() || canvas.getWidth() <= 0 || canvas.getHeight() <= 0) {
+            return false;
+        }
+
+        try {
+            if (strategy == null) {
+                canvas.createBufferStrategy(NUM_BUFFERS);
+                strategy = canvas.getBufferStrategy();
+            }
+            do {
+                do {
+                    Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
+                    try {
+                        if (width < canvas.getWidth() || height < canvas.getHeight()) {
+                            g.setColor(Color.BLACK);
+                            g.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+                        }
+                        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                                bilinear
+                                        ? RenderingHints.VALUE_INTERPOLATION_BILINEAR
+                                        : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+                        g.drawImage(image.getImage(), 0, 0, width, height, null);
+                    } finally {
+                        g.dispose();
+                    }
+                } while (strategy.contentsRestored());
+                strategy.show();
+            } while (strategy.contentsLost());
+        } catch (IllegalStateException ex) {
+            // the canvas lost its peer; create a new strategy next time
+            strategy = null;
+            return false;
+        }
+        Toolkit.getDefaultToolkit().sync();
+        return true;
+    }
+}
@@ -3,6 +3,10 @@ package lemmini.graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.nio.IntBuffer;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
@@ -32,6 +36,17 @@ import lemmini.tools.ToolBox;
 public class LemmImage {
     
     private final BufferedImage image;
+    /**
+     * backing pixel array of a TYPE_INT_ARGB image, looked up by the first
+     * compositing write (null if not available or not looked up yet)
+     */
+    private int[] pixels;
+    /** index of pixel (0, 0) in pixels */
+    private int pixelOffset;
+    /** distance between two rows in pixels */
+    private int scanlineStride;
+    /** true once the raster has been checked for a usable pixel array */
+    private boolean rasterChecked;
     
     public LemmImage(BufferedImage image) {
         this.image = image;
@@ -179,35 +194,52 @@ public class LemmImage {
         }
     }
     
+    /**
+     * Copy all pixels to a buffer, row by row.
+     * @param dst buffer that receives width * height ARGB values
+     */
+    public void getPixels(IntBuffer dst) {
+        int w = getWidth();
+        int h = getHeight();
+        // don't look up the pixel array just to copy pixels, see initRaster()
+        if (pixels != null) {
+            for (int y = 0; y < h; y++) {
+                dst.put(pixels, pixelOffset + y * scanlineStride, w);
+            }
+        } else {
+            dst.put(image.getRGB(0, 0, w, h, null, 0, w));
+        }
+    }
+    
+    /**
+     * Replace all pixels with values read from a buffer, row by row.
+     * @param src buffer that provides width * height ARGB values
+     */
+    public void setPixels(IntBuffer src) {
+        int w = getWidth();
+        int h = getHeight();
+        if (pixels != null) {
+            for (int y = 0; y < h; y++) {
+                src.get(pixels, pixelOffset + y * scanlineStride, w);
+            }
+        } else {
+            int[] rgb = new int[w * h];
+            src.get(rgb);
+            image.setRGB(0, 0, w, h, rgb, 0, w);
+        }
+    }
+    
     public void addRGB(int x, int y, int rgb) {
         if (x < 0 || x >= getWidth() || y < 0 || y >= getHeight()) {
             return;
         }
         
-        final double alphaA = intToDouble((image.getRGB(x, y) >>> 24) & 0xff);
-        final double alphaB = intToDouble((rgb >>> 24) & 0xff);
-        if (alphaB <= 0.0) {
-            return;
-        } else if (alphaA <= 0.0 || alphaB >= 1.0) {
-            image.setRGB(x, y, rgb);
-            return;
+        if (initRaster()) {
+            int idx = pixelOffset + y * scanlineStride + x;
+            pixels[idx] = addRGB(pixels[idx], rgb);
+        } else {
+            image.setRGB(x, y, addRGB(image.getRGB(x, y), rgb));
         }
-        final double redA = intToDouble((image.getRGB(x, y) >>> 16) & 0xff);
-        final double greenA = intToDouble((image.getRGB(x, y) >>> 8) & 0xff);
-        final double blueA = intToDouble(image.getRGB(x, y) & 0xff);
-        final double redB = intToDouble((rgb >>> 16) & 0xff);
-        final double greenB = intToDouble((rgb >>> 8) & 0xff);
-        final double blueB = intToDouble(rgb & 0xff);
-        
-        double alphaNew = alphaB + alphaA * (1.0 - alphaB);
-        double redNew = (redB * alphaB + redA * alphaA * (1.0 - alphaB)) / alphaNew;
-        double greenNew = (greenB * alphaB + greenA * alphaA * (1.0 - alphaB)) / alphaNew;
-        double blueNew = (blueB * alphaB + blueA * alphaA * (1.0 - alphaB)) / alphaNew;
-        
-        int rgbNew = (doubleToInt(alphaNew) << 24) | (doubleToInt(redNew) << 16)
-                | (doubleToInt(greenNew) << 8) | doubleToInt(blueNew);
-        
-        image.setRGB(x, y, rgbNew);
     }
     
     public void addRGBBehind(int x, int y, int rgb) {
@@ -215,30 +247,66 @@ public class LemmImage {
             return;
         }
         
-        final double alphaA = intToDouble((image.getRGB(x, y) >>> 24) & 0xff);
-        final double alphaB = intToDouble((rgb >>> 24) & 0xff);
-        if (alphaA >= 1.0 || alphaB <= 0.0) {
+        if (initRaster()) {
+            int idx = pixelOffset + y * scanlineStride + x;
+            pixels[idx] = addRGBBehind(pixels[idx], rgb);
+        } else {
+            image.setRGB(x, y, addRGBBehind(image.getRGB(x, y), rgb));
+        }
+    }
+    
+    /**
+     * Composite a row of colors over this image, as if addRGB was called for
+     * each of them. Pixels outside the image are ignored.
+     * @param x x position of the first pixel
+     * @param y y position of the row
+     * @param rgb colors to add
+     * @param offset index of the first color in rgb
+     * @param length number of pixels
+     */
+    public void addRGBSpan(int x, int y, int[] rgb, int offset, int length) {
+        if (y < 0 || y >= getHeight()) {
             return;
-        } else if (alphaA <= 0.0) {
-            image.setRGB(x, y, rgb);
+        }
+        int start = Math.max(0, -x);
+        int end = Math.min(length, getWidth() - x);
+        if (initRaster()) {
+            int base = pixelOffset + y * scanlineStride + x;
+            for (int i = start; i < end; i++) {
+                pixels[base + i] = addRGB(pixels[base + i], rgb[offset + i]);
+            }
+        } else {
+            for (int i = start; i < end; i++) {
+                image.setRGB(x + i, y, addRGB(image.getRGB(x + i, y), rgb[offset + i]));
+            }
+        }
+    }
+    
+    /**
+     * Composite a row of colors behind this image, as if addRGBBehind was
+     * called for each of them. Pixels outside the image are ignored.
+     * @param x x position of the first pixel
+     * @param y y position of the row
+     * @param rgb colors to add
+     * @param offset index of the first color in rgb
+     * @param length number of pixels
+     */
+    public void addRGBBehindSpan(int x, int y, int[] rgb, int offset, int length) {
+        if (y < 0 || y >= getHeight()) {
             return;
         }
-        final double redA = intToDouble((image.getRGB(x, y) >>> 16) & 0xff);
-        final double greenA = intToDouble((image.getRGB(x, y) >>> 8) & 0xff);
-        final double blueA = intToDouble(image.getRGB(x, y) & 0xff);
-        final double redB = intToDouble((rgb >>> 16) & 0xff);
-        final double greenB = intToDouble((rgb >>> 8) & 0xff);
-        final double blueB = intToDouble(rgb & 0xff);
-        
-        double alphaNew = alphaA + alphaB * (1.0 - alphaA);
-        double redNew = (redA * alphaA + redB * alphaB * (1.0 - alphaA)) / alphaNew;
-        double greenNew = (greenA * alphaA + greenB * alphaB * (1.0 - alphaA)) / alphaNew;
-        double blueNew = (blueA * alphaA + blueB * alphaB * (1.0 - alphaA)) / alphaNew;
-        
-        int rgbNew = (doubleToInt(alphaNew) << 24) | (doubleToInt(redNew) << 16)
-                | (doubleToInt(greenNew) << 8) | doubleToInt(blueNew);
-        
-        image.setRGB(x, y, rgbNew);
+        int start = Math.max(0, -x);
+        int end = Math.min(length, getWidth() - x);
+        if (initRaster()) {
+            int base = pixelOffset + y * scanlineStride + x;
+            for (int i = start; i < end; i++) {
+                pixels[base + i] = addRGBBehind(pixels[base + i], rgb[offset + i]);
+            }
+        } else {
+            for (int i = start; i < end; i++) {
+                image.setRGB(x + i, y, addRGBBehind(image.getRGB(x + i, y), rgb[offset + i]));
+            }
+        }
     }
     
     public void replaceColor(int oldRGB, int newRGB) {
@@ -259,24 +327,48 @@ public class LemmImage {
             return;
         }
         
-        final double alphaA = intToDouble((image.getRGB(x, y) >>> 24) & 0xff);
-        final double alphaB = intToDouble(alpha);
-        if (alphaB >= 1.0) {
-            image.setRGB(x, y, 0);
-            return;
-        } else if (alphaB <= 0.0) {
+        if (initRaster()) {
+            int idx = pixelOffset + y * scanlineStride + x;
+            pixels[idx] = removeAlpha(pixels[idx], alpha);
+        } else {
+            image.setRGB(x, y, removeAlpha(image.getRGB(x, y), alpha));
+        }
+    }
+    
+    /**
+     * Remove alpha from a row of pixels, as if removeAlpha was called for
+     * each of them. Pixels outside the image are ignored.
+     * @param x x position of the first pixel
+     * @param y y position of the row
+     * @param alpha alpha values (0-255) to remove
+     * @param offset index of the first alpha value in alpha
+     * @param length number of pixels
+     */
+    public void removeAlphaSpan(int x, int y, int[] alpha, int offset, int length) {
+        if (y < 0 || y >= getHeight()) {
             return;
         }
-        
-        int alphaNew = doubleToInt(alphaA * (1.0 - alphaB));
-        if (alphaNew > 0) {
-            image.setRGB(x, y, image.getRGB(x, y) & 0xffffff | alphaNew << 24);
+        int start = Math.max(0, -x);
+        int end = Math.min(length, getWidth() - x);
+        if (initRaster()) {
+            int base = pixelOffset + y * scanlineStride + x;
+            for (int i = start; i < end; i++) {
+                pixels[base + i] = removeAlpha(pixels[base + i], alpha[offset + i]);
+            }
         } else {
-            image.setRGB(x, y, 0);
+            for (int i = start; i < end; i++) {
+                image.setRGB(x + i, y, removeAlpha(image.getRGB(x + i, y), alpha[offset + i]));
+            }
         }
     }
     
     public boolean isPixelOpaque(int x, int y) {
+        if (pixels != null) {
+            if (x < 0 || x >= getWidth() || y < 0 || y >= getHeight()) {
+                return false;
+            }
+            return (pixels[pixelOffset + y * scanlineStride + x] >>> 24) >= 0x80;
+        }
         return (getRGB(x, y) >>> 24) >= 0x80;
     }
     
@@ -327,6 +419,143 @@ public class LemmImage {
         return rgbNew;
     }
     
+    /**
+     * Look up the pixel array of TYPE_INT_ARGB images so that pixels can be
+     * composited without going through the color model.<br>
+     * Taking the array stops Java2D from caching the image in video memory,
+     * so this is only called by the compositing methods, which write many
+     * single pixels. Images that are only drawn, read or copied keep going
+     * through getRGB/setRGB.
+     * @return true if the pixel array can be used, false otherwise
+     */
+    private boolean initRaster() {
+        if (!rasterChecked) {
+            rasterChecked = true;
+            WritableRaster raster = image.getRaster();
+            if (image.getType() == BufferedImage.TYPE_INT_ARGB
+                    && raster.getDataBuffer() instanceof DataBufferInt
+                    && raster.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+                DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+                scanlineStride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+                pixelOffset = buffer.getOffset()
+                        - raster.getSampleModelTranslateY() * scanlineStride
+                        - raster.getSampleModelTranslateX();
+                pixels = buffer.getData();
+            }
+        }
+        return pixels != null;
+    }
+    
+    /**
+     * Composite a color over another one (Porter-Duff "over") using integer
+     * arithmetic only. The result is identical to the floating point
+     * formula, which is only used if a channel lands exactly halfway between
+     * two integers.
+     * @param dst original color
+     * @param rgb color to add on top
+     * @return new color
+     */
+    private static int addRGB(int dst, int rgb) {
+        int alphaA = dst >>> 24;
+        int alphaB = rgb >>> 24;
+        if (alphaB == 0) {
+            return dst;
+        } else if (alphaA == 0 || alphaB == 0xff) {
+            return rgb;
+        }
+        return over(rgb, dst);
+    }
+    
+    /**
+     * Composite a color behind another one using integer arithmetic only.
+     * @param dst original color
+     * @param rgb color to add behind
+     * @return new color
+     */
+    private static int addRGBBehind(int dst, int rgb) {
+        int alphaA = dst >>> 24;
+        int alphaB = rgb >>> 24;
+        if (alphaA == 0xff || alphaB == 0) {
+            return dst;
+        } else if (alphaA == 0) {
+            return rgb;
+        }
+        return over(dst, rgb);
+    }
+    
+    /**
+     * Remove alpha from a color using integer arithmetic only.
+     * @param dst original color
+     * @param alpha alpha to remove (0-255)
+     * @return new color
+     */
+    private static int removeAlpha(int dst, int alpha) {
+        if (alpha >= 0xff) {
+            return 0;
+        } else if (alpha <= 0) {
+            return dst;
+        }
+        // round(alphaA * (255 - alpha) / 255), which is never exactly halfway
+        int alphaNew = (2 * (dst >>> 24) * (0xff - alpha) + 0xff) / (2 * 0xff);
+        if (alphaNew > 0) {
+            return dst & 0xffffff | alphaNew << 24;
+        } else {
+            return 0;
+        }
+    }
+    
+    /**
+     * Porter-Duff "over" for two colors with non-zero alpha.
+     * @param top color in front
+     * @param bottom color behind
+     * @return composite color
+     */
+    private static int over(int top, int bottom) {
+        int alphaT = top >>> 24;
+        int alphaB = bottom >>> 24;
+        // new alpha scaled by 255 * 255
+        int den = 0xff * alphaT + alphaB * (0xff - alphaT);
+        // round(den / 255), which is never exactly halfway
+        int alphaNew = (2 * den + 0xff) / (2 * 0xff);
+        int rgbNew = alphaNew << 24;
+        for (int shift = 16; shift >= 0; shift -= 8) {
+            int num = ((top >>> shift) & 0xff) * alphaT * 0xff
+                    + ((bottom >>> shift) & 0xff) * alphaB * (0xff - alphaT);
+            int twice = 2 * num + den;
+            if (twice % (2 * den) == 0) {
+                // exactly halfway: defer to the floating point formula
+                return overDouble(top, bottom);
+            }
+            rgbNew |= (twice / (2 * den)) << shift;
+        }
+        return rgbNew;
+    }
+    
+    /**
+     * Floating point version of {@link #over(int, int)}.
+     * @param top color in front
+     * @param bottom color behind
+     * @return composite color
+     */
+    private static int overDouble(int top, int bottom) {
+        final double alphaA = intToDouble((bottom >>> 24) & 0xff);
+        final double alphaB = intToDouble((top >>> 24) & 0xff);
+        final double redA = intToDouble((bottom >>> 16) & 0xff);
+        final double greenA = intToDouble((bottom >>> 8) & 0xff);
+        final double blueA = intToDouble(bottom & 0xff);
+        final double redB = intToDouble((top >>> 16) & 0xff);
+        final double greenB = intToDouble((top >>> 8) & 0xff);
+        final double blueB = intToDouble(top & 0xff);
+        
+        double alphaNew = alphaB + alphaA * (1.0 - alphaB);
+        double redNew = (redB * alphaB + redA * alphaA * (1.0 - alphaB)) / alphaNew;
+        double greenNew = (greenB * alphaB + greenA * alphaA * (1.0 - alphaB)) / alphaNew;
+        double blueNew = (blueB * alphaB + blueA * alphaA * (1.0 - alphaB)) / alphaNew;
+        
+        return (doubleToInt(alphaNew) << 24) | (doubleToInt(redNew) << 16)
+                | (doubleToInt(greenNew) << 8) | doubleToInt(blueNew);
+    }
+    
     private static double intToDouble(int i) {
         return ToolBox.cap(0.0, i / 255.0, 1.0);
     }
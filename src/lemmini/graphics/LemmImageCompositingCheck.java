@@ -0,0 +1,254 @@
+package lemmini.graphics;
+
+import java.awt.image.BufferedImage;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+import lemmini.tools.ToolBox;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Command line tool that checks that the integer compositing of
+ * {@link LemmImage} is pixel-exact compared to the floating point formulas
+ * it replaced.<br>
+ * Every pair of alpha values is combined with a sweep of color channel
+ * pairs and composited with addRGB, addRGBBehind and removeAlpha, both per
+ * pixel and with the span methods. Images without a usable pixel array use
+ * the same formulas through getRGB/setRGB.
+ * <br>
+ * Usage: <code>LemmImageCompositingCheck [--step=N]</code>
+ * <br>
+ * <code>--step</code> is the distance between two swept channel values,
+ * 1 checks all channel pairs (default: 15). The exit code is 0 if all
+ * pixels matched, 1 otherwise and 2 on usage errors.
+ */
+public final class LemmImageCompositingCheck {
+
+    /** maximum number of mismatches to print */
+    private static final int MAX_REPORTS = 10;
+
+    private static int reports;
+
+    private LemmImageCompositingCheck() {
+    }
+
+    public static void main(final String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int step = 15;
+        for (String arg : args) {
+            if (arg.startsWith("--step=")) {
+                step = Math.max(1, Integer.parseInt(arg.substring("--step=".length())));
+            } else {
+                System.err.println("usage: LemmImageCompositingCheck [--step=N]");
+                System.exit(2);
+            }
+        }
+
+        // swept channel values, always including 0 and 255
+        int n = (0xff + step - 1) / step + 1;
+        int[] channels = new int[n];
+        for (int i = 0; i < n; i++) {
+            channels[i] = Math.min(i * step, 0xff);
+        }
+        int pairs = n * n;
+
+        long checked = 0;
+        long mismatches = 0;
+        long nanos = System.nanoTime();
+        LemmImage single = new LemmImage(new BufferedImage(pairs, 1, BufferedImage.TYPE_INT_ARGB));
+        LemmImage span = new LemmImage(new BufferedImage(pairs, 1, BufferedImage.TYPE_INT_ARGB));
+        int[] dst = new int[pairs];
+        int[] src = new int[pairs];
+        int[] alpha = new int[pairs];
+        int[] result = new int[pairs];
+        for (int alphaA = 0; alphaA <= 0xff; alphaA++) {
+            for (int alphaB = 0; alphaB <= 0xff; alphaB++) {
+                for (int i = 0; i < pairs; i++) {
+                    int a = channels[i / n];
+                    int b = channels[i % n];
+                    // every channel gets a different combination of the pair
+                    dst[i] = alphaA << 24 | a << 16 | b << 8 | (0xff - a);
+                    src[i] = alphaB << 24 | b << 16 | a << 8 | (0xff - b);
+                }
+                Arrays.fill(alpha, alphaB);
+
+                for (int i = 0; i < pairs; i++) {
+                    result[i] = addRGBDouble(dst[i], src[i]);
+                }
+                mismatches += compare("addRGB", single, span, dst, src, result, Op.ADD);
+                for (int i = 0; i < pairs; i++) {
+                    result[i] = addRGBBehindDouble(dst[i], src[i]);
+                }
+                mismatches += compare("addRGBBehind", single, span, dst, src, result, Op.ADD_BEHIND);
+                for (int i = 0; i < pairs; i++) {
+                    result[i] = removeAlphaDouble(dst[i], alphaB);
+                }
+                mismatches += compare("removeAlpha", single, span, dst, alpha, result, Op.REMOVE_ALPHA);
+                checked += 3L * pairs;
+            }
+        }
+        nanos = System.nanoTime() - nanos;
+
+        System.out.printf(Locale.ROOT, "%d pixels checked in %.1f s: %d mismatches%n",
+                checked, nanos / 1e9, mismatches);
+        System.exit(mismatches == 0 ? 0 : 1);
+    }
+
+    private static enum Op {
+        ADD,
+        ADD_BEHIND,
+        REMOVE_ALPHA
+    }
+
+    /**
+     * Composite a row of pixels per pixel and as a span and compare both
+     * with the expected colors.
+     * @param name name of the operation
+     * @param single image composited per pixel
+     * @param span image composited with the span method
+     * @param dst original colors
+     * @param arg colors to add or alpha values to remove
+     * @param expected expected colors
+     * @param op operation
+     * @return number of mismatching pixels
+     */
+    private static int compare(final String name, final LemmImage single, final LemmImage span,
+            final int[] dst, final int[] arg, final int[] expected, final Op op) {
+        single.setPixels(IntBuffer.wrap(dst));
+        span.setPixels(IntBuffer.wrap(dst));
+        for (int i = 0; i < dst.length; i++) {
+            switch (op) {
+                case ADD:
+                    single.addRGB(i, 0, arg[i]);
+                    break;
+                case ADD_BEHIND:
+                    single.addRGBBehind(i, 0, arg[i]);
+                    break;
+                case REMOVE_ALPHA:
+                default:
+                    single.removeAlpha(i, 0, arg[i]);
+                    break;
+            }
+        }
+        switch (op) {
+            case ADD:
+                span.addRGBSpan(0, 0, arg, 0, arg.length);
+                break;
+            case ADD_BEHIND:
+                span.addRGBBehindSpan(0, 0, arg, 0, arg.length);
+                break;
+            case REMOVE_ALPHA:
+            default:
+                span.removeAlphaSpan(0, 0, arg, 0, arg.length);
+                break;
+        }
+
+        int[] singleResult = new int[dst.length];
+        int[] spanResult = new int[dst.length];
+        single.getPixels(IntBuffer.wrap(singleResult));
+        span.getPixels(IntBuffer.wrap(spanResult));
+        int mismatches = 0;
+        for (int i = 0; i < dst.length; i++) {
+            if (singleResult[i] != expected[i] || spanResult[i] != expected[i]) {
+                mismatches++;
+                if (reports++ < MAX_REPORTS) {
+                    System.out.printf(Locale.ROOT, "%s: %08x, %08x -> expected %08x, got %08x (span %08x)%n",
+                            name, dst[i], arg[i], expected[i], singleResult[i], spanResult[i]);
+                }
+            }
+        }
+        return mismatches;
+    }
+
+    /*
+     * The floating point formulas below are the ones LemmImage used before
+     * the compositing was done with integer arithmetic.
+     */
+
+    private static int addRGBDouble(final int dst, final int rgb) {
+        final double alphaA = intToDouble((dst >>> 24) & 0xff);
+        final double alphaB = intToDouble((rgb >>> 24) & 0xff);
+        if (alphaB <= 0.0) {
+            return dst;
+        } else if (alphaA <= 0.0 || alphaB >= 1.0) {
+            return rgb;
+        }
+        final double redA = intToDouble((dst >>> 16) & 0xff);
+        final double greenA = intToDouble((dst >>> 8) & 0xff);
+        final double blueA = intToDouble(dst & 0xff);
+        final double redB = intToDouble((rgb >>> 16) & 0xff);
+        final double greenB = intToDouble((rgb >>> 8) & 0xff);
+        final double blueB = intToDouble(rgb & 0xff);
+
+        double alphaNew = alphaB + alphaA * (1.0 - alphaB);
+        double redNew = (redB * alphaB + redA * alphaA * (1.0 - alphaB)) / alphaNew;
+        double greenNew = (greenB * alphaB + greenA * alphaA * (1.0 - alphaB)) / alphaNew;
+        double blueNew = (blueB * alphaB + blueA * alphaA * (1.0 - alphaB)) / alphaNew;
+
+        return (doubleToInt(alphaNew) << 24) | (doubleToInt(redNew) << 16)
+                | (doubleToInt(greenNew) << 8) | doubleToInt(blueNew);
+    }
+
+    private static int addRGBBehindDouble(final int dst, final int rgb) {
+        final double alphaA = intToDouble((dst >>> 24) & 0xff);
+        final double alphaB = intToDouble((rgb >>> 24) & 0xff);
+        if (alphaA >= 1.0 || alphaB <= 0.0) {
+            return dst;
+        } else if (alphaA <= 0.0) {
+            return rgb;
+        }
+        final double redA = intToDouble((dst >>> 16) & 0xff);
+        final double greenA = intToDouble((dst >>> 8) & 0xff);
+        final double blueA = intToDouble(dst & 0xff);
+        final double redB = intToDouble((rgb >>> 16) & 0xff);
+        final double greenB = intToDouble((rgb >>> 8) & 0xff);
+        final double blueB = intToDouble(rgb & 0xff);
+
+        double alphaNew = alphaA + alphaB * (1.0 - alphaA);
+        double redNew = (redA * alphaA + redB * alphaB * (1.0 - alphaA)) / alphaNew;
+        double greenNew = (greenA * alphaA + greenB * alphaB * (1.0 - alphaA)) / alphaNew;
+        double blueNew = (blueA * alphaA + blueB * alphaB * (1.0 - alphaA)) / alphaNew;
+
+        return (doubleToInt(alphaNew) << 24) | (doubleToInt(redNew) << 16)
+                | (doubleToInt(greenNew) << 8) | doubleToInt(blueNew);
+    }
+
+    private static int removeAlphaDouble(final int dst, final int alpha) {
+        final double alphaA = intToDouble((dst >>> 24) & 0xff);
+        final double alphaB = intToDouble(alpha);
+        if (alphaB >= 1.0) {
+            return 0;
+        } else if (alphaB <= 0.0) {
+            return dst;
+        }
+
+        int alphaNew = doubleToInt(alphaA * (1.0 - alphaB));
+        if (alphaNew > 0) {
+            return dst & 0xffffff | alphaNew << 24;
+        } else {
+            return 0;
+        }
+    }
+
+    private static double intToDouble(final int i) {
+        return ToolBox.cap(0.0, i / 255.0, 1.0);
+    }
+
+    private static int doubleToInt(final double d) {
+        return ToolBox.cap(0, ToolBox.roundToInt(d * 255.0), 255);
+    }
+}
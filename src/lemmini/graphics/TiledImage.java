@@ -0,0 +1,487 @@
+package lemmini.graphics;
+
+import java.awt.Rectangle;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+import lemmini.tools.ToolBox;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Translucent image that is split into square tiles which are only allocated
+ * once a non-transparent pixel is written to them. Pixels in unallocated
+ * tiles are fully transparent.
+ */
+public class TiledImage {
+
+    /** size of a tile in pixels (width and height) */
+    public static final int TILE_SIZE = 64;
+    /** log2 of TILE_SIZE */
+    public static final int TILE_SHIFT = 6;
+    /** memory needed for the pixels of one tile */
+    private static final long TILE_BYTES = TILE_SIZE * TILE_SIZE * 4L;
+
+    private final int width;
+    private final int height;
+    private final int tilesX;
+    private final int tilesY;
+    /** tiles in row-major order, null if the tile is empty */
+    private final LemmImage[] tiles;
+    /** epoch in which each tile was last modified, see {@link #snapshot(Snapshot)} */
+    private final long[] tileStamps;
+    /** current epoch, advanced by each snapshot and restore */
+    private long epoch;
+
+    /**
+     * Constructor. No tiles are allocated until pixels are written.
+     * @param width width in pixels
+     * @param height height in pixels
+     */
+    public TiledImage(int width, int height) {
+        this.width = width;
+        this.height = height;
+        tilesX = (width + TILE_SIZE - 1) >> TILE_SHIFT;
+        tilesY = (height + TILE_SIZE - 1) >> TILE_SHIFT;
+        tiles = new LemmImage[tilesX * tilesY];
+        tileStamps = new long[tiles.length];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Release all tiles, making the whole image transparent.
+     */
+    public void clear() {
+        Arrays.fill(tiles, null);
+        Arrays.fill(tileStamps, epoch);
+    }
+
+    public int getRGB(int x, int y) {
+        LemmImage tile = getTile(x, y);
+        if (tile == null) {
+            return 0;
+        }
+        return tile.getRGB(x & (TILE_SIZE - 1), y & (TILE_SIZE - 1));
+    }
+
+    public void setRGB(int x, int y, int rgb) {
+        LemmImage tile = (rgb == 0) ? getTile(x, y) : getOrCreateTile(x, y);
+        if (tile != null) {
+            touch(x, y);
+            tile.setRGB(x & (TILE_SIZE - 1), y & (TILE_SIZE - 1), rgb);
+        }
+    }
+
+    public void addRGB(int x, int y, int rgb) {
+        LemmImage tile = ((rgb >>> 24) == 0) ? getTile(x, y) : getOrCreateTile(x, y);
+        if (tile != null) {
+            touch(x, y);
+            tile.addRGB(x & (TILE_SIZE - 1), y & (TILE_SIZE - 1), rgb);
+        }
+    }
+
+    public void addRGBBehind(int x, int y, int rgb) {
+        LemmImage tile = ((rgb >>> 24) == 0) ? getTile(x, y) : getOrCreateTile(x, y);
+        if (tile != null) {
+            touch(x, y);
+            tile.addRGBBehind(x & (TILE_SIZE - 1), y & (TILE_SIZE - 1), rgb);
+        }
+    }
+
+    public void removeAlpha(int x, int y, int alpha) {
+        LemmImage tile = getTile(x, y);
+        if (tile != null) {
+            touch(x, y);
+            tile.removeAlpha(x & (TILE_SIZE - 1), y & (TILE_SIZE - 1), alpha);
+        }
+    }
+
+    /**
+     * Composite a row of colors over this image, see {@link LemmImage#addRGBSpan}.
+     * @param x x position of the first pixel
+     * @param y y position of the row
+     * @param rgb colors to add
+     * @param offset index of the first color in rgb
+     * @param length number of pixels
+     */
+    public void addRGBSpan(int x, int y, int[] rgb, int offset, int length) {
+        addSpan(x, y, rgb, offset, length, false);
+    }
+
+    /**
+     * Composite a row of colors behind this image, see {@link LemmImage#addRGBBehindSpan}.
+     * @param x x position of the first pixel
+     * @param y y position of the row
+     * @param rgb colors to add
+     * @param offset index of the first color in rgb
+     * @param length number of pixels
+     */
+    public void addRGBBehindSpan(int x, int y, int[] rgb, int offset, int length) {
+        addSpan(x, y, rgb, offset, length, true);
+    }
+
+    /**
+     * Remove alpha from a row of pixels, see {@link LemmImage#removeAlphaSpan}.
+     * @param x x position of the first pixel
+     * @param y y position of the row
+     * @param alpha alpha values (0-255) to remove
+     * @param offset index of the first alpha value in alpha
+     * @param length number of pixels
+     */
+    public void removeAlphaSpan(int x, int y, int[] alpha, int offset, int length) {
+        if (y < 0 || y >= height) {
+            return;
+        }
+        int start = Math.max(x, 0);
+        int end = Math.min(x + length, width);
+        while (start < end) {
+            int chunkEnd = Math.min(end, (start | (TILE_SIZE - 1)) + 1);
+            LemmImage tile = getTile(start, y);
+            if (tile != null) {
+                touch(start, y);
+                tile.removeAlphaSpan(start & (TILE_SIZE - 1), y & (TILE_SIZE - 1),
+                        alpha, offset + start - x, chunkEnd - start);
+            }
+            start = chunkEnd;
+        }
+    }
+
+    /**
+     * Get the number of tiles, which are numbered in row-major order.
+     * @return number of tiles
+     */
+    public int getNumTiles() {
+        return tiles.length;
+    }
+
+    /**
+     * Check whether a tile is allocated, i.e. may contain non-transparent pixels.
+     * @param t tile index
+     * @return true if the tile is allocated
+     */
+    public boolean isTileAllocated(int t) {
+        return tiles[t] != null;
+    }
+
+    /**
+     * Copy the pixels of an allocated tile to a buffer, row by row.
+     * @param t tile index
+     * @param dst buffer that receives TILE_SIZE * TILE_SIZE ARGB values
+     */
+    public void readTile(int t, IntBuffer dst) {
+        tiles[t].getPixels(dst);
+    }
+
+    /**
+     * Allocate a tile and fill it with pixels read from a buffer, row by row.
+     * @param t tile index
+     * @param src buffer that provides TILE_SIZE * TILE_SIZE ARGB values
+     */
+    public void writeTile(int t, IntBuffer src) {
+        if (tiles[t] == null) {
+            tiles[t] = ToolBox.createLemmImage(TILE_SIZE, TILE_SIZE);
+        }
+        tiles[t].setPixels(src);
+        tileStamps[t] = epoch;
+    }
+
+    public boolean isPixelOpaque(int x, int y) {
+        LemmImage tile = getTile(x, y);
+        return tile != null && tile.isPixelOpaque(x & (TILE_SIZE - 1), y & (TILE_SIZE - 1));
+    }
+
+    /**
+     * Draw the whole image, skipping empty tiles.
+     * @param g graphics context to draw into
+     * @param x x position of the image in the target
+     * @param y y position of the image in the target
+     */
+    public void draw(GraphicsContext g, int x, int y) {
+        draw(g, x, y, 0, 0, width, height);
+    }
+
+    /**
+     * Draw a region of the image unscaled, touching only the allocated tiles
+     * that intersect the region.
+     * @param g graphics context to draw into
+     * @param dx x position of the region in the target
+     * @param dy y position of the region in the target
+     * @param sx1 left edge of the region in this image (inclusive)
+     * @param sy1 top edge of the region in this image (inclusive)
+     * @param sx2 right edge of the region in this image (exclusive)
+     * @param sy2 bottom edge of the region in this image (exclusive)
+     */
+    public void draw(GraphicsContext g, int dx, int dy, int sx1, int sy1, int sx2, int sy2) {
+        drawTiles(tiles, g, dx, dy, sx1, sy1, sx2, sy2);
+    }
+
+    /**
+     * Draw a region of the given tiles of this image, see
+     * {@link #draw(GraphicsContext, int, int, int, int, int, int)}.
+     * @param t tiles in row-major order, null if the tile is empty
+     */
+    private void drawTiles(LemmImage[] t, GraphicsContext g, int dx, int dy, int sx1, int sy1, int sx2, int sy2) {
+        int x1 = Math.max(sx1, 0);
+        int y1 = Math.max(sy1, 0);
+        int x2 = Math.min(sx2, width);
+        int y2 = Math.min(sy2, height);
+        if (x1 >= x2 || y1 >= y2) {
+            return;
+        }
+
+        for (int ty = y1 >> TILE_SHIFT; ty <= (y2 - 1) >> TILE_SHIFT; ty++) {
+            int tileY = ty << TILE_SHIFT;
+            int ty1 = Math.max(y1, tileY);
+            int ty2 = Math.min(y2, tileY + TILE_SIZE);
+            for (int tx = x1 >> TILE_SHIFT; tx <= (x2 - 1) >> TILE_SHIFT; tx++) {
+                LemmImage tile = t[ty * tilesX + tx];
+                if (tile == null) {
+                    continue;
+                }
+                int tileX = tx << TILE_SHIFT;
+                int tx1 = Math.max(x1, tileX);
+                int tx2 = Math.min(x2, tileX + TILE_SIZE);
+                g.drawImage(tile,
+                        dx + tx1 - sx1, dy + ty1 - sy1, dx + tx2 - sx1, dy + ty2 - sy1,
+                        tx1 - tileX, ty1 - tileY, tx2 - tileX, ty2 - tileY);
+            }
+        }
+    }
+
+    /**
+     * Split a row of colors at tile boundaries and composite each part,
+     * allocating a tile only if its part contains a non-transparent color.
+     */
+    private void addSpan(int x, int y, int[] rgb, int offset, int length, boolean behind) {
+        if (y < 0 || y >= height) {
+            return;
+        }
+        int start = Math.max(x, 0);
+        int end = Math.min(x + length, width);
+        while (start < end) {
+            int chunkEnd = Math.min(end, (start | (TILE_SIZE - 1)) + 1);
+            int chunkOffset = offset + start - x;
+            LemmImage tile = getTile(start, y);
+            if (tile == null) {
+                for (int i = chunkOffset; i < chunkOffset + chunkEnd - start; i++) {
+                    if ((rgb[i] >>> 24) != 0) {
+                        tile = getOrCreateTile(start, y);
+                        break;
+                    }
+                }
+            }
+            if (tile != null) {
+                touch(start, y);
+                if (behind) {
+                    tile.addRGBBehindSpan(start & (TILE_SIZE - 1), y & (TILE_SIZE - 1),
+                            rgb, chunkOffset, chunkEnd - start);
+                } else {
+                    tile.addRGBSpan(start & (TILE_SIZE - 1), y & (TILE_SIZE - 1),
+                            rgb, chunkOffset, chunkEnd - start);
+                }
+            }
+            start = chunkEnd;
+        }
+    }
+
+    /**
+     * Create a snapshot of all pixels. Tiles that were not modified since
+     * the previous snapshot are shared with it instead of being copied.
+     * @param previous previous snapshot of this image, or null
+     * @return snapshot
+     */
+    public Snapshot snapshot(Snapshot previous) {
+        if (previous != null && previous.owner != this) {
+            previous = null;
+        }
+        LemmImage[] copies = new LemmImage[tiles.length];
+        long copiedBytes = 0;
+        for (int i = 0; i < tiles.length; i++) {
+            if (tiles[i] == null) {
+                continue;
+            }
+            if (previous != null && previous.stamps[i] == tileStamps[i]) {
+                copies[i] = previous.tiles[i];
+            } else {
+                copies[i] = new LemmImage(tiles[i]);
+                copiedBytes += TILE_BYTES;
+            }
+        }
+        Snapshot s = new Snapshot(this, tileStamps.clone(), copies, copiedBytes);
+        epoch++;
+        return s;
+    }
+
+    /**
+     * Create a snapshot of all pixels when the caller knows which areas may
+     * have been modified since the previous snapshot. Only the tiles inside
+     * these areas are looked at; all others are shared with the previous
+     * snapshot, which is returned as is if nothing was modified.
+     * @param previous previous snapshot of this image, or null
+     * @param modified areas modified since the previous snapshot was taken
+     * @return snapshot
+     */
+    public Snapshot snapshot(Snapshot previous, List<Rectangle> modified) {
+        if (previous == null || previous.owner != this) {
+            return snapshot(null);
+        }
+        if (modified.isEmpty()) {
+            return previous;
+        }
+        LemmImage[] copies = previous.tiles.clone();
+        // shared tiles keep the stamp they were copied with
+        long[] stamps = previous.stamps.clone();
+        long copiedBytes = 0;
+        for (Rectangle r : modified) {
+            int tx1 = Math.max(r.x, 0) >> TILE_SHIFT;
+            int ty1 = Math.max(r.y, 0) >> TILE_SHIFT;
+            int tx2 = Math.min((Math.min(r.x + r.width, width) + TILE_SIZE - 1) >> TILE_SHIFT, tilesX);
+            int ty2 = Math.min((Math.min(r.y + r.height, height) + TILE_SIZE - 1) >> TILE_SHIFT, tilesY);
+            for (int ty = ty1; ty < ty2; ty++) {
+                for (int tx = tx1; tx < tx2; tx++) {
+                    int i = ty * tilesX + tx;
+                    // areas may overlap the same tile, copy it only once
+                    if (stamps[i] == tileStamps[i]) {
+                        continue;
+                    }
+                    stamps[i] = tileStamps[i];
+                    if (tiles[i] == null) {
+                        copies[i] = null;
+                    } else {
+                        copies[i] = new LemmImage(tiles[i]);
+                        copiedBytes += TILE_BYTES;
+                    }
+                }
+            }
+        }
+        Snapshot s = new Snapshot(this, stamps, copies, copiedBytes);
+        epoch++;
+        return s;
+    }
+
+    /**
+     * Restore all pixels from a snapshot of this image. Only tiles that
+     * differ from the snapshot are copied back.
+     * @param s snapshot created by {@link #snapshot(Snapshot)} of this image
+     */
+    public void restore(Snapshot s) {
+        if (s.owner != this) {
+            throw new IllegalArgumentException("Snapshot belongs to a different image.");
+        }
+        for (int i = 0; i < tiles.length; i++) {
+            if (tileStamps[i] != s.stamps[i]) {
+                tiles[i] = (s.tiles[i] == null) ? null : new LemmImage(s.tiles[i]);
+                tileStamps[i] = s.stamps[i];
+            }
+        }
+        epoch++;
+    }
+
+    /**
+     * Mark the tile containing the given position as modified.
+     * @param x x position in pixels
+     * @param y y position in pixels
+     */
+    private void touch(int x, int y) {
+        tileStamps[(y >> TILE_SHIFT) * tilesX + (x >> TILE_SHIFT)] = epoch;
+    }
+
+    private LemmImage getTile(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return null;
+        }
+        return tiles[(y >> TILE_SHIFT) * tilesX + (x >> TILE_SHIFT)];
+    }
+
+    private LemmImage getOrCreateTile(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return null;
+        }
+        int idx = (y >> TILE_SHIFT) * tilesX + (x >> TILE_SHIFT);
+        if (tiles[idx] == null) {
+            tiles[idx] = ToolBox.createLemmImage(TILE_SIZE, TILE_SIZE);
+        }
+        return tiles[idx];
+    }
+
+    /**
+     * Immutable copy of the pixels of a tiled image, see
+     * {@link TiledImage#snapshot(Snapshot)}.
+     */
+    public static final class Snapshot {
+
+        private final TiledImage owner;
+        /** modification epoch of each tile when the snapshot was taken */
+        private final long[] stamps;
+        /** tile copies, possibly shared with the previous snapshot */
+        private final LemmImage[] tiles;
+        /** memory of the tiles that were copied for this snapshot */
+        private final long copiedBytes;
+
+        private Snapshot(TiledImage owner, long[] stamps, LemmImage[] tiles, long copiedBytes) {
+            this.owner = owner;
+            this.stamps = stamps;
+            this.tiles = tiles;
+            this.copiedBytes = copiedBytes;
+        }
+
+        /**
+         * Draw a region of the snapshot unscaled. The tiles of a snapshot
+         * are never modified, so this may be called from any thread.
+         * @param g graphics context to draw into
+         * @param dx x position of the region in the target
+         * @param dy y position of the region in the target
+         * @param sx1 left edge of the region in the image (inclusive)
+         * @param sy1 top edge of the region in the image (inclusive)
+         * @param sx2 right edge of the region in the image (exclusive)
+         * @param sy2 bottom edge of the region in the image (exclusive)
+         */
+        public void draw(GraphicsContext g, int dx, int dy, int sx1, int sy1, int sx2, int sy2) {
+            owner.drawTiles(tiles, g, dx, dy, sx1, sy1, sx2, sy2);
+        }
+
+        /**
+         * Get the memory of the tiles that were copied when this snapshot
+         * was taken, i.e. the tiles not shared with the previous snapshot.
+         * @return size in bytes
+         */
+        public long getCopiedBytes() {
+            return copiedBytes;
+        }
+
+        /**
+         * Get the memory of the tiles of this snapshot that are not shared
+         * with another snapshot.
+         * @param other other snapshot, or null
+         * @return size in bytes
+         */
+        public long getBytesNotSharedWith(Snapshot other) {
+            long bytes = 0;
+            for (int i = 0; i < tiles.length; i++) {
+                if (tiles[i] != null && (other == null || other.owner != owner || other.tiles[i] != tiles[i])) {
+                    bytes += TILE_BYTES;
+                }
+            }
+            return bytes;
+        }
+    }
+}
@@ -156,6 +156,16 @@ public class Sound {
      * @throws ResourceException
      */
     public Sound() throws ResourceException {
+        this(false);
+    }
+    
+    /**
+     * Constructor.
+     * @param silent true to load the sound definitions without opening any
+     *               audio lines, so nothing is ever played
+     * @throws ResourceException
+     */
+    public Sound(final boolean silent) throws ResourceException {
         Props programProps = Core.programProps;
         sampleRate = (float) programProps.getDouble("sampleRate", 44100.0);
         bufferSize = programProps.getInt("bufferSize", 8192);
@@ -190,9 +200,15 @@ public class Sound {
         
         load();
         
+        availableLineHandlers = new LinkedList<>();
+        mixers = new ArrayList<>(16);
+        if (silent) {
+            mixerIdx = 0;
+            return;
+        }
+        
         // get all available mixers
         Mixer.Info[] mixInfo = AudioSystem.getMixerInfo();
-        mixers = new ArrayList<>(16);
         mixerIdx = -1;
         String selectedMixerName = Core.programProps.get("mixerName", StringUtils.EMPTY);
         for (Mixer.Info mixInfo1 : mixInfo) {
@@ -207,7 +223,6 @@ public class Sound {
         }
         mixerIdx = Math.max(0, mixerIdx);
         
-        availableLineHandlers = new LinkedList<>();
         for (int i = 0; i < MAX_SIMUL_SOUNDS; i++) {
             LineHandler lineHandler = new LineHandler((SourceDataLine) getLine(info), availableLineHandlers);
             availableLineHandlers.add(lineHandler);
@@ -396,7 +411,7 @@ public class Sound {
      * @param pan panning
      */
     public void play(final int idx, final double pan) {
-        if (idx < 0 || !GameController.isOptionEnabled(GameController.Option.SOUND_ON)) {
+        if (idx < 0 || !GameController.isSoundEnabled()) {
             return;
         }
         
@@ -525,7 +540,7 @@ public class Sound {
      * @param pitch pitch value
      */
     public void playPitched(final PitchedEffect pe, final int pitch) {
-        if (!GameController.isOptionEnabled(GameController.Option.SOUND_ON)) {
+        if (!GameController.isSoundEnabled()) {
             return;
         }
         